@@ -7,11 +7,51 @@
  */
 package com.cisco.ctao.sparkbot.cli.api;
 
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkOperation;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkTarget;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetHandlerRegistryOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetStatisticsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkOutput;
+
 public interface SparkBotCliCommands {
 
     /**
-     * Define the Karaf command method signatures and the Javadoc for each.
-     * Below method is just an example
+     * Gets the most recent webhook events received and Spark calls made by
+     * this node, through the get-recent-activity RPC.
+     * @param maxRecords the maximum number of records of each kind, all if null
+     * @param trackingId if not null, only the records whose tracking ID starts with this prefix
+     * @return the records, oldest first
+     * @throws Exception if the RPC fails
+     */
+    GetRecentActivityOutput getRecentActivity(Long maxRecords, String trackingId) throws Exception;
+
+    /**
+     * Gets the live ingest and outbound statistics and the state of the
+     * outbound rate limiters of this node, through the get-statistics RPC.
+     * @return the statistics, totals since startup
+     * @throws Exception if the RPC fails
+     */
+    GetStatisticsOutput getStatistics() throws Exception;
+
+    /**
+     * Gets the routes of the webhook server and the handlers registered on
+     * them, through the get-handler-registry RPC.
+     * @return the routes
+     * @throws Exception if the RPC fails
+     */
+    GetHandlerRegistryOutput getHandlerRegistry() throws Exception;
+
+    /**
+     * Runs a benchmark through the run-benchmark RPC and waits for its result.
+     * @param target where the requests are sent, LOCAL if null
+     * @param operation the request that is benchmarked, GET if null
+     * @param requests the number of requests, the default if null
+     * @param concurrency the number of requests in flight, the default if null
+     * @param identity the identity used with the SPARK target, the default identity if null
+     * @return the result
+     * @throws Exception if the RPC fails or does not complete in time
      */
-    Object testCommand(Object testArgument);
+    RunBenchmarkOutput runBenchmark(BenchmarkTarget target, BenchmarkOperation operation, Long requests,
+            Long concurrency, String identity) throws Exception;
 }
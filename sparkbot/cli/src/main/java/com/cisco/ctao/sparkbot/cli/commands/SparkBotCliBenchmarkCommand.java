@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.cli.commands;
+
+import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
+
+import java.util.Locale;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.AbstractAction;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkOperation;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkTarget;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.run.benchmark.output.Latency;
+
+/**
+ * Runs the built-in benchmark: read-only requests made through the SDK,
+ * against Spark with a configured identity or against an in-process
+ * stand-in that measures the overhead of the bot itself.
+ */
+@Command(name = "benchmark", scope = "sparkbot",
+        description = "Measure Spark request throughput and latency against Spark or a local stand-in")
+public class SparkBotCliBenchmarkCommand extends AbstractAction {
+
+    protected final SparkBotCliCommands service;
+
+    public SparkBotCliBenchmarkCommand(final SparkBotCliCommands service) {
+        this.service = service;
+    }
+
+    @Option(name = "-t",
+            aliases = { "--target" },
+            description = "local (an in-process stand-in, the default) or spark",
+            required = false,
+            multiValued = false)
+    private String target;
+
+    @Option(name = "-o",
+            aliases = { "--operation" },
+            description = "get (people/me, the default) or list (a page of rooms)",
+            required = false,
+            multiValued = false)
+    private String operation;
+
+    @Option(name = "-n",
+            aliases = { "--requests" },
+            description = "number of requests (default 1000)",
+            required = false,
+            multiValued = false)
+    private Long requests;
+
+    @Option(name = "-c",
+            aliases = { "--concurrency" },
+            description = "number of requests in flight (default 8)",
+            required = false,
+            multiValued = false)
+    private Long concurrency;
+
+    @Option(name = "-s",
+            aliases = { "--spark-identity" },
+            description = "the identity used with the spark target (default: the default identity)",
+            required = false,
+            multiValued = false)
+    private String identity;
+
+    @Override
+    protected Object doExecute() throws Exception {
+        final BenchmarkTarget benchmarkTarget;
+        final BenchmarkOperation benchmarkOperation;
+        try {
+            benchmarkTarget = target != null ? BenchmarkTarget.valueOf(target.toUpperCase(Locale.ROOT)) : null;
+            benchmarkOperation = operation != null
+                    ? BenchmarkOperation.valueOf(operation.toUpperCase(Locale.ROOT)) : null;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid target or operation; the target is local or spark, the operation get or list");
+            return null;
+        }
+        final RunBenchmarkOutput result = service.runBenchmark(benchmarkTarget, benchmarkOperation, requests,
+                concurrency, identity);
+        if (result.getRequests() == null) {
+            System.out.println("Benchmark not run: " + result.getErrorMessage());
+            return null;
+        }
+        System.out.println("Requests:     " + result.getRequests());
+        System.out.println("Errors:       " + result.getErrors());
+        System.out.println("Duration:     " + result.getDuration() + " ms");
+        System.out.println("Throughput:   " + result.getThroughput() + " requests/s");
+        final Latency latency = result.getLatency();
+        if (latency != null) {
+            System.out.println("Latency (us): p50 " + latency.getP50() + ", p99 " + latency.getP99() + ", p99.9 "
+                    + latency.getP999() + ", max " + latency.getMax());
+        }
+        if (result.getErrorMessage() != null) {
+            System.out.println("First error:  " + result.getErrorMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.cli.commands;
+
+import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.console.AbstractAction;
+import org.apache.karaf.shell.table.ShellTable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetHandlerRegistryOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.handler.registry.output.Route;
+
+/**
+ * Dumps the handler registry: the routes of the webhook server, the
+ * webhooks they are bound to and the handlers registered on them.
+ */
+@Command(name = "handlers", scope = "sparkbot",
+        description = "Show the webhook routes and the handlers registered on them")
+public class SparkBotCliHandlersCommand extends AbstractAction {
+
+    protected final SparkBotCliCommands service;
+
+    public SparkBotCliHandlersCommand(final SparkBotCliCommands service) {
+        this.service = service;
+    }
+
+    @Override
+    protected Object doExecute() throws Exception {
+        final GetHandlerRegistryOutput registry = service.getHandlerRegistry();
+        final ShellTable table = new ShellTable();
+        table.column("Route");
+        table.column("Webhook ID");
+        table.column("Resource");
+        table.column("Event");
+        table.column("Filter");
+        table.column("Identity");
+        table.column("Handlers");
+        table.column("Typed handlers");
+        for (Route route : nonNull(registry.getRoute())) {
+            table.addRow().addContent(route.getName(), route.getWebhookId(), route.getResource(), route.getEvent(),
+                    route.getFilter(), route.getSparkIdentity(), String.join(", ", nonNull(route.getHandler())),
+                    String.join(", ", nonNull(route.getTypedHandler())));
+        }
+        table.print(System.out);
+        return null;
+    }
+
+    private static <T> List<T> nonNull(final List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+}
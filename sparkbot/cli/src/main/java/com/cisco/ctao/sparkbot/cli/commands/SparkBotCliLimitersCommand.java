@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.cli.commands;
+
+import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.console.AbstractAction;
+import org.apache.karaf.shell.table.ShellTable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetStatisticsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.EndpointLimit;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.Lane;
+
+/**
+ * Shows the state of the outbound rate limiters: the adaptive concurrency
+ * limit of each identity's Spark endpoint families and the priority lanes of the
+ * outbound call scheduler.
+ */
+@Command(name = "limiters", scope = "sparkbot",
+        description = "Show the state of the Spark endpoint limits and the outbound priority lanes")
+public class SparkBotCliLimitersCommand extends AbstractAction {
+
+    protected final SparkBotCliCommands service;
+
+    public SparkBotCliLimitersCommand(final SparkBotCliCommands service) {
+        this.service = service;
+    }
+
+    @Override
+    protected Object doExecute() throws Exception {
+        final GetStatisticsOutput stats = service.getStatistics();
+
+        System.out.println("Endpoint limits:");
+        final ShellTable limits = new ShellTable();
+        limits.column("Identity");
+        limits.column("Endpoint");
+        limits.column("Limit").alignRight();
+        limits.column("In flight").alignRight();
+        limits.column("Queued").alignRight();
+        limits.column("Drops").alignRight();
+        limits.column("Avg RTT (us)").alignRight();
+        for (EndpointLimit limit : nonNull(stats.getEndpointLimit())) {
+            limits.addRow().addContent(limit.getIdentity(), limit.getFamily(), limit.getLimit(),
+                    limit.getInFlight(), limit.getQueued(), limit.getDrops(), limit.getAverageRtt());
+        }
+        limits.print(System.out);
+
+        System.out.println("Priority lanes:");
+        final ShellTable lanes = new ShellTable();
+        lanes.column("Lane");
+        lanes.column("Weight").alignRight();
+        lanes.column("Queue depth").alignRight();
+        lanes.column("Admitted").alignRight();
+        lanes.column("Max wait (ms)").alignRight();
+        for (Lane lane : nonNull(stats.getLane())) {
+            lanes.addRow().addContent(lane.getName(), lane.getWeight(), lane.getQueueDepth(), lane.getAdmitted(),
+                    lane.getMaxWait());
+        }
+        lanes.print(System.out);
+        System.out.println("Outbound calls in progress: " + stats.getOutboundInProgress());
+        return null;
+    }
+
+    private static <T> List<T> nonNull(final List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.cli.commands;
+
+import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.AbstractAction;
+import org.apache.karaf.shell.table.ShellTable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.recent.activity.output.IngestEvent;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.recent.activity.output.OutboundCall;
+
+/**
+ * Shows the most recent webhook events received and Spark calls made by this
+ * node, for post-mortem analysis of a misbehaving handler.
+ */
+@Command(name = "recent-activity", scope = "sparkbot",
+        description = "Show the most recent webhook events and Spark calls")
+public class SparkBotCliRecentActivityCommand extends AbstractAction {
+
+    protected final SparkBotCliCommands service;
+
+    public SparkBotCliRecentActivityCommand(final SparkBotCliCommands service) {
+        this.service = service;
+    }
+
+    @Option(name = "-n",
+            aliases = { "--max-records" },
+            description = "maximum number of records of each kind to show",
+            required = false,
+            multiValued = false)
+    private Long maxRecords;
+
+    @Option(name = "-t",
+            aliases = { "--tracking-id" },
+            description = "only show the records whose tracking ID starts with this prefix",
+            required = false,
+            multiValued = false)
+    private String trackingId;
+
+    @Option(name = "-i",
+            aliases = { "--ingest-only" },
+            description = "only show the webhook events",
+            required = false,
+            multiValued = false)
+    private boolean ingestOnly;
+
+    @Option(name = "-o",
+            aliases = { "--outbound-only" },
+            description = "only show the Spark calls",
+            required = false,
+            multiValued = false)
+    private boolean outboundOnly;
+
+    @Override
+    protected Object doExecute() throws Exception {
+        final GetRecentActivityOutput output = service.getRecentActivity(maxRecords, trackingId);
+        if (!outboundOnly) {
+            System.out.println("Webhook events:");
+            printIngestEvents(nonNull(output.getIngestEvent()));
+        }
+        if (!ingestOnly) {
+            System.out.println("Spark calls:");
+            printOutboundCalls(nonNull(output.getOutboundCall()));
+        }
+        return null;
+    }
+
+    private static void printIngestEvents(final List<IngestEvent> events) {
+        final ShellTable table = new ShellTable();
+        table.column("Seq").alignRight();
+        table.column("Time");
+        table.column("Servlet");
+        table.column("Tracking ID");
+        table.column("Resource");
+        table.column("Event");
+        table.column("Object ID");
+        table.column("Status").alignRight();
+        table.column("Duration (us)").alignRight();
+        for (IngestEvent event : events) {
+            table.addRow().addContent(event.getSeq(), formatTime(event.getTimestamp()), event.getServlet(),
+                    event.getTrackingId(), event.getResource(), event.getEvent(), event.getObjectId(),
+                    event.getStatusCode(), event.getDuration());
+        }
+        table.print(System.out);
+    }
+
+    private static void printOutboundCalls(final List<OutboundCall> calls) {
+        final ShellTable table = new ShellTable();
+        table.column("Seq").alignRight();
+        table.column("Time");
+        table.column("Tracking ID");
+        table.column("Method");
+        table.column("Endpoint");
+        table.column("Retry");
+        table.column("Status").alignRight();
+        table.column("Duration (us)").alignRight();
+        for (OutboundCall call : calls) {
+            table.addRow().addContent(call.getSeq(), formatTime(call.getTimestamp()), call.getTrackingId(),
+                    call.getMethod(), call.getEndpoint(), Boolean.TRUE.equals(call.isRetry()) ? "yes" : "",
+                    call.getStatusCode(), call.getDuration());
+        }
+        table.print(System.out);
+    }
+
+    private static String formatTime(final BigInteger timestamp) {
+        return timestamp == null ? "" : Instant.ofEpochMilli(timestamp.longValue()).toString();
+    }
+
+    private static <T> List<T> nonNull(final List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.cli.commands;
+
+import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.AbstractAction;
+import org.apache.karaf.shell.table.ShellTable;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.EventCounters;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetStatisticsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.LatencySummary;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.EndpointStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.HandlerStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.ServletStats;
+
+/**
+ * Shows the webhook ingest and Spark call statistics of this node. Without
+ * an interval the counters are totals since startup; with an interval the
+ * command samples the statistics twice and shows the counts and rates of
+ * the interval.
+ */
+@Command(name = "stats", scope = "sparkbot",
+        description = "Show webhook ingest and Spark call throughput and latency")
+public class SparkBotCliStatsCommand extends AbstractAction {
+
+    protected final SparkBotCliCommands service;
+
+    public SparkBotCliStatsCommand(final SparkBotCliCommands service) {
+        this.service = service;
+    }
+
+    @Option(name = "-i",
+            aliases = { "--interval" },
+            description = "measure the rates over this many seconds",
+            required = false,
+            multiValued = false)
+    private Long interval;
+
+    @Override
+    protected Object doExecute() throws Exception {
+        GetStatisticsOutput before = null;
+        if (interval != null && interval > 0) {
+            before = service.getStatistics();
+            TimeUnit.SECONDS.sleep(interval);
+        }
+        final GetStatisticsOutput after = service.getStatistics();
+        final double seconds = before != null ? interval : 0;
+
+        System.out.println(before != null ? "Webhook servlets (last " + interval + "s):" : "Webhook servlets:");
+        printCounters(nonNull(after.getServletStats()), before != null ? servletsByName(before) : null, seconds);
+        System.out.println(before != null ? "Webhook handlers (last " + interval + "s):" : "Webhook handlers:");
+        printCounters(nonNull(after.getHandlerStats()), before != null ? handlersByName(before) : null, seconds);
+        System.out.println("Handlers in flight: " + after.getHandlersInFlight());
+        System.out.println("Enrichment latency since startup (us): " + formatLatency(after.getEnrichmentLatency()));
+        System.out.println();
+        System.out.println(before != null ? "Spark calls (last " + interval + "s):" : "Spark calls:");
+        printEndpoints(nonNull(after.getEndpointStats()), before != null ? endpointsByKey(before) : null, seconds);
+        System.out.println("Latency percentiles are since startup.");
+        return null;
+    }
+
+    private static void printCounters(final List<? extends EventCounters> stats,
+            final Map<String, EventCounters> previous, final double seconds) {
+        final ShellTable table = new ShellTable();
+        table.column("Name");
+        table.column("Received").alignRight();
+        if (previous != null) {
+            table.column("Received/s").alignRight();
+        }
+        table.column("Dispatched").alignRight();
+        table.column("Dropped").alignRight();
+        table.column("Failed").alignRight();
+        for (EventCounters counters : stats) {
+            final String name = counters instanceof ServletStats ? ((ServletStats) counters).getName()
+                    : ((HandlerStats) counters).getName();
+            final EventCounters last = previous != null ? previous.get(name) : null;
+            final BigInteger received = delta(counters.getReceived(), last != null ? last.getReceived() : null);
+            if (previous != null) {
+                table.addRow().addContent(name, received, rate(received, seconds),
+                        delta(counters.getDispatched(), last != null ? last.getDispatched() : null),
+                        delta(counters.getDropped(), last != null ? last.getDropped() : null),
+                        delta(counters.getFailed(), last != null ? last.getFailed() : null));
+            } else {
+                table.addRow().addContent(name, received, counters.getDispatched(), counters.getDropped(),
+                        counters.getFailed());
+            }
+        }
+        table.print(System.out);
+    }
+
+    private static void printEndpoints(final List<EndpointStats> stats, final Map<String, EndpointStats> previous,
+            final double seconds) {
+        final ShellTable table = new ShellTable();
+        table.column("Endpoint");
+        table.column("Method");
+        table.column("Requests").alignRight();
+        if (previous != null) {
+            table.column("Requests/s").alignRight();
+        }
+        table.column("2xx").alignRight();
+        table.column("4xx").alignRight();
+        table.column("5xx").alignRight();
+        table.column("I/O errors").alignRight();
+        table.column("Retries").alignRight();
+        table.column("Latency (us)");
+        for (EndpointStats endpoint : stats) {
+            final EndpointStats last = previous != null ? previous.get(key(endpoint)) : null;
+            final BigInteger requests = delta(endpoint.getRequests(), last != null ? last.getRequests() : null);
+            final BigInteger successes = delta(endpoint.getSuccesses(), last != null ? last.getSuccesses() : null);
+            final BigInteger clientErrors = delta(endpoint.getClientErrors(),
+                    last != null ? last.getClientErrors() : null);
+            final BigInteger serverErrors = delta(endpoint.getServerErrors(),
+                    last != null ? last.getServerErrors() : null);
+            final BigInteger ioErrors = delta(endpoint.getIoErrors(), last != null ? last.getIoErrors() : null);
+            final BigInteger retries = delta(endpoint.getRetries(), last != null ? last.getRetries() : null);
+            if (previous != null) {
+                table.addRow().addContent(endpoint.getFamily(), endpoint.getMethod(), requests,
+                        rate(requests, seconds), successes, clientErrors, serverErrors, ioErrors, retries,
+                        formatLatency(endpoint.getLatency()));
+            } else {
+                table.addRow().addContent(endpoint.getFamily(), endpoint.getMethod(), requests, successes,
+                        clientErrors, serverErrors, ioErrors, retries, formatLatency(endpoint.getLatency()));
+            }
+        }
+        table.print(System.out);
+    }
+
+    private static Map<String, EventCounters> servletsByName(final GetStatisticsOutput stats) {
+        final Map<String, EventCounters> map = new HashMap<>();
+        for (ServletStats servlet : nonNull(stats.getServletStats())) {
+            map.put(servlet.getName(), servlet);
+        }
+        return map;
+    }
+
+    private static Map<String, EventCounters> handlersByName(final GetStatisticsOutput stats) {
+        final Map<String, EventCounters> map = new HashMap<>();
+        for (HandlerStats handler : nonNull(stats.getHandlerStats())) {
+            map.put(handler.getName(), handler);
+        }
+        return map;
+    }
+
+    private static Map<String, EndpointStats> endpointsByKey(final GetStatisticsOutput stats) {
+        final Map<String, EndpointStats> map = new HashMap<>();
+        for (EndpointStats endpoint : nonNull(stats.getEndpointStats())) {
+            map.put(key(endpoint), endpoint);
+        }
+        return map;
+    }
+
+    private static String key(final EndpointStats endpoint) {
+        return endpoint.getFamily() + " " + endpoint.getMethod();
+    }
+
+    private static BigInteger delta(final BigInteger current, final BigInteger previous) {
+        if (current == null) {
+            return BigInteger.ZERO;
+        }
+        return previous == null ? current : current.subtract(previous);
+    }
+
+    private static String rate(final BigInteger count, final double seconds) {
+        return String.format("%.1f", count.doubleValue() / seconds);
+    }
+
+    private static String formatLatency(final LatencySummary latency) {
+        if (latency == null || latency.getCount() == null || latency.getCount().signum() == 0) {
+            return "-";
+        }
+        return "p50 " + latency.getP50() + ", p99 " + latency.getP99() + ", p99.9 " + latency.getP999()
+                + ", max " + latency.getMax();
+    }
+
+    private static <T> List<T> nonNull(final List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+}
@@ -7,7 +7,20 @@
  */
 package com.cisco.ctao.sparkbot.cli.impl;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkOperation;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkTarget;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetHandlerRegistryOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetStatisticsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotService;
+import org.opendaylight.yangtools.yang.common.RpcResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
@@ -15,15 +28,54 @@ import com.cisco.ctao.sparkbot.cli.api.SparkBotCliCommands;
 public class SparkBotCliCommandsImpl implements SparkBotCliCommands {
 
     private static final Logger LOG = LoggerFactory.getLogger(SparkBotCliCommandsImpl.class);
+    private static final long RPC_TIMEOUT = 10;
+    // A benchmark of a million requests against Spark takes a while
+    private static final long BENCHMARK_TIMEOUT = TimeUnit.HOURS.toSeconds(1);
     private final DataBroker dataBroker;
+    private final SparkbotService sparkbotService;
 
-    public SparkBotCliCommandsImpl(final DataBroker db) {
+    public SparkBotCliCommandsImpl(final DataBroker db, final SparkbotService sparkbotService) {
         this.dataBroker = db;
+        this.sparkbotService = sparkbotService;
         LOG.info("SparkBotCliCommandImpl initialized");
     }
 
     @Override
-    public Object testCommand(Object testArgument) {
-        return "This is a test implementation of test-command";
+    public GetRecentActivityOutput getRecentActivity(final Long maxRecords, final String trackingId)
+            throws Exception {
+        return getResult("get-recent-activity", sparkbotService.getRecentActivity(
+                new GetRecentActivityInputBuilder().setMaxRecords(maxRecords).setTrackingId(trackingId).build()),
+                RPC_TIMEOUT);
+    }
+
+    @Override
+    public GetStatisticsOutput getStatistics() throws Exception {
+        return getResult("get-statistics", sparkbotService.getStatistics(), RPC_TIMEOUT);
+    }
+
+    @Override
+    public GetHandlerRegistryOutput getHandlerRegistry() throws Exception {
+        return getResult("get-handler-registry", sparkbotService.getHandlerRegistry(), RPC_TIMEOUT);
+    }
+
+    @Override
+    public RunBenchmarkOutput runBenchmark(final BenchmarkTarget target, final BenchmarkOperation operation,
+            final Long requests, final Long concurrency, final String identity) throws Exception {
+        return getResult("run-benchmark", sparkbotService.runBenchmark(new RunBenchmarkInputBuilder()
+                .setTarget(target)
+                .setOperation(operation)
+                .setRequests(requests)
+                .setConcurrency(concurrency)
+                .setSparkIdentity(identity)
+                .build()), BENCHMARK_TIMEOUT);
+    }
+
+    private static <T> T getResult(final String rpc, final Future<RpcResult<T>> future, final long timeout)
+            throws Exception {
+        final RpcResult<T> result = future.get(timeout, TimeUnit.SECONDS);
+        if (!result.isSuccessful()) {
+            throw new IllegalStateException(rpc + " failed: " + result.getErrors());
+        }
+        return result.getResult();
     }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/** Immutable DTO that reports the completion of a broadcast: how many
+ *  rooms were targeted, which sends failed, how long the broadcast took
+ *  and the latency percentiles of the individual sends.
+ * @author jmedved
+ *
+ */
+public final class BroadcastReport {
+    private final int targets;
+    private final int sent;
+    private final Map<String, String> failures;
+    private final int rateLimited;
+    private final long elapsedMillis;
+    private final long[] latencies;
+
+    /** Constructor.
+     * @param targets number of target rooms
+     * @param failures error messages of failed sends, by room id
+     * @param rateLimited number of sends that were rate limited by Spark
+     *          (and retried)
+     * @param elapsedMillis duration of the broadcast, in milliseconds
+     * @param latencies latencies of the successful sends, in milliseconds
+     */
+    BroadcastReport(final int targets, final Map<String, String> failures, final int rateLimited,
+            final long elapsedMillis, final long[] latencies) {
+        this.targets = targets;
+        this.sent = latencies.length;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.rateLimited = rateLimited;
+        this.elapsedMillis = elapsedMillis;
+        this.latencies = latencies.clone();
+        Arrays.sort(this.latencies);
+    }
+
+    public int getTargets() {
+        return targets;
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public int getRateLimited() {
+        return rateLimited;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** Gets a percentile of the latencies of successful sends.
+     * @param percentile the percentile (0 - 100)
+     * @return the latency in milliseconds; 0 if no message was sent
+     */
+    public long getLatencyPercentile(final double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+        return latencies[Math.min(Math.max(rank - 1, 0), latencies.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastReport [targets=" + targets + ", sent=" + sent + ", failed=" + failures.size()
+                + ", rateLimited=" + rateLimited + ", elapsedMillis=" + elapsedMillis
+                + ", p50=" + getLatencyPercentile(50) + ", p90=" + getLatencyPercentile(90)
+                + ", p99=" + getLatencyPercentile(99) + ", max=" + getLatencyPercentile(100) + "]";
+    }
+}
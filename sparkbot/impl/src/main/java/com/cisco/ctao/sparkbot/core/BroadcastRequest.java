@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.ciscospark.Room;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** Immutable DTO that describes a broadcast: the message template that is
+ *  posted and the set of target rooms. The targets are the explicitly
+ *  listed rooms plus, if a team or a room filter is specified, the rooms
+ *  of the team (or all rooms of the bot) that match the filter.
+ * @author jmedved
+ *
+ */
+public final class BroadcastRequest {
+    private final String identity;
+    private final String text;
+    private final String markdown;
+    private final URI files;
+    private final List<String> roomIds;
+    private final String teamId;
+    private final Predicate<Room> roomFilter;
+    private final Integer maxConcurrency;
+
+    /** Constructor for the immutable BroadcastRequest DTO.
+     * @param builder: a builder for the BroadcastRequest DTO
+     */
+    private BroadcastRequest(final BroadcastRequestBuilder builder) {
+        this.identity = builder.identity;
+        this.text = builder.text;
+        this.markdown = builder.markdown;
+        this.files = builder.files;
+        this.roomIds = Collections.unmodifiableList(new ArrayList<>(builder.roomIds));
+        this.teamId = builder.teamId;
+        this.roomFilter = builder.roomFilter;
+        this.maxConcurrency = builder.maxConcurrency;
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getMarkdown() {
+        return markdown;
+    }
+
+    public URI getFiles() {
+        return files;
+    }
+
+    public List<String> getRoomIds() {
+        return roomIds;
+    }
+
+    public String getTeamId() {
+        return teamId;
+    }
+
+    public Predicate<Room> getRoomFilter() {
+        return roomFilter;
+    }
+
+    public Integer getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastRequest [identity=" + identity + ", text=" + text + ", markdown=" + markdown
+                + ", files=" + files + ", roomIds=" + roomIds.size() + ", teamId=" + teamId
+                + ", roomFilter=" + (roomFilter != null) + ", maxConcurrency=" + maxConcurrency + "]";
+    }
+
+    /** Builder class for the BroadcastRequest DTO.
+     * @author jmedved
+     */
+    public static class BroadcastRequestBuilder {
+        private String identity;                // bot identity; null for the default identity
+        private String text;                    // message text
+        private String markdown;                // message in markdown format
+        private URI files;                      // message attachment
+        private final List<String> roomIds = new ArrayList<>(); // explicit target rooms
+        private String teamId;                  // team whose rooms are targets
+        private Predicate<Room> roomFilter;     // selects target rooms of the team or of the bot
+        private Integer maxConcurrency;         // max number of concurrent sends
+
+        /** This method builds the BroadcastRequest DTO using its constructor.
+         * @return: BroadcastRequest DTO
+         */
+        public BroadcastRequest build() {
+            return new BroadcastRequest(this);
+        }
+
+        public BroadcastRequestBuilder setIdentity(String identity) {
+            this.identity = identity;
+            return this;
+        }
+
+        public BroadcastRequestBuilder setText(String text) {
+            this.text = text;
+            return this;
+        }
+
+        public BroadcastRequestBuilder setMarkdown(String markdown) {
+            this.markdown = markdown;
+            return this;
+        }
+
+        public BroadcastRequestBuilder setFiles(URI files) {
+            this.files = files;
+            return this;
+        }
+
+        public BroadcastRequestBuilder addRoomIds(Collection<String> roomIds) {
+            this.roomIds.addAll(roomIds);
+            return this;
+        }
+
+        public BroadcastRequestBuilder setTeamId(String teamId) {
+            this.teamId = teamId;
+            return this;
+        }
+
+        public BroadcastRequestBuilder setRoomFilter(Predicate<Room> roomFilter) {
+            this.roomFilter = roomFilter;
+            return this;
+        }
+
+        public BroadcastRequestBuilder setMaxConcurrency(Integer maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.ciscospark.Message;
+import com.ciscospark.Room;
+import com.ciscospark.SparkException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** This class posts one message to many rooms. The sends of a broadcast
+ *  run concurrently on the core request executor, within a concurrency
+ *  window that adapts to Spark's rate limits: the window grows by about
+ *  one send per round-trip while sends succeed, and is halved when Spark
+ *  rate-limits a send (the send is retried after a backoff). Sends are
+ *  also subject to the identity's request budget and the endpoint's
+ *  concurrency limit. When all sends complete, the broadcast reports the
+ *  failed rooms and the latency percentiles of the sends.
+ *
+ * @author jmedved
+ *
+ */
+public final class Broadcasts {
+    private static final Logger LOG = LoggerFactory.getLogger(Broadcasts.class);
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+    private static final int MAX_RATE_LIMIT_RETRIES = 5;
+    private static final long RATE_LIMIT_BACKOFF = 1000;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final String RATE_LIMITED = "bad response code 429";
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-broadcast-%d").setDaemon(true).build());
+
+    private Broadcasts() {
+        LOG.info("Broadcasts created.");
+    }
+
+    /** Starts a broadcast. The target rooms are resolved and the message is
+     *  posted to them asynchronously; cancelling the returned future stops
+     *  the broadcast (sends in progress are completed).
+     * @param request the message template and the target rooms
+     * @return the future report of the broadcast; fails if the target
+     *          rooms can not be resolved
+     */
+    public static ListenableFuture<BroadcastReport> broadcast(final BroadcastRequest request) {
+        LOG.info("broadcast: {}", request);
+        Preconditions.checkArgument(request != null, "Missing broadcast request");
+        Preconditions.checkArgument(request.getText() != null || request.getMarkdown() != null
+                || request.getFiles() != null, "Missing broadcast message");
+        return new Broadcast(request).start();
+    }
+
+    /** The execution of a broadcast.
+     */
+    private static final class Broadcast {
+        private final BroadcastRequest request;
+        private final SparkApi<Message> messageApi;
+        private final int maxConcurrency;
+        private final SettableFuture<BroadcastReport> result = SettableFuture.create();
+        private final Deque<String> pending = new ArrayDeque<>();
+        private final Map<String, Integer> retries = new HashMap<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private final List<Long> latencies = new ArrayList<>();
+        private double concurrency = INITIAL_CONCURRENCY;
+        private long lastDecrease;
+        private long startTime;
+        private int targets;
+        private int inFlight;
+        private int remaining;
+        private int rateLimited;
+
+        private Broadcast(final BroadcastRequest request) {
+            this.request = request;
+            this.messageApi = Messages.api().forIdentity(request.getIdentity()).forLane(Lane.BULK);
+            this.maxConcurrency = (request.getMaxConcurrency() != null && request.getMaxConcurrency() > 0)
+                    ? request.getMaxConcurrency() : DEFAULT_MAX_CONCURRENCY;
+        }
+
+        private ListenableFuture<BroadcastReport> start() {
+            result.addListener(() -> {
+                if (result.isCancelled()) {
+                    synchronized (this) {
+                        pending.clear();
+                    }
+                    LOG.info("broadcast: cancelled");
+                }
+            }, MoreExecutors.directExecutor());
+            startTime = System.nanoTime();
+            lastDecrease = startTime - TimeUnit.MILLISECONDS.toNanos(RATE_LIMIT_BACKOFF);
+            try {
+                SparkExecution.requestExecutor(Lane.BULK).execute(this::resolveTargets);
+            } catch (RejectedExecutionException e) {
+                result.setException(e);
+            }
+            return result;
+        }
+
+        private void resolveTargets() {
+            final Set<String> roomIds = new LinkedHashSet<>(request.getRoomIds());
+            try {
+                if (request.getTeamId() != null || request.getRoomFilter() != null) {
+                    final SparkQueryParams queryParams = new SparkQueryParams();
+                    if (request.getTeamId() != null) {
+                        queryParams.add(SparkApi.TEAM_ID_KEY, request.getTeamId());
+                    }
+                    for (final Room room : Rooms.api().forIdentity(request.getIdentity()).forLane(Lane.BULK)
+                            .list(queryParams)) {
+                        if (request.getRoomFilter() == null || request.getRoomFilter().test(room)) {
+                            roomIds.add(room.getId());
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.error("broadcast: can not resolve target rooms", e);
+                result.setException(e);
+                return;
+            }
+            LOG.info("broadcast: {} target rooms", roomIds.size());
+            synchronized (this) {
+                targets = roomIds.size();
+                remaining = roomIds.size();
+                pending.addAll(roomIds);
+            }
+            if (roomIds.isEmpty()) {
+                finish();
+            } else {
+                pump();
+            }
+        }
+
+        /** Starts sends while the concurrency window allows it.
+         */
+        private void pump() {
+            final List<String> toSend = new ArrayList<>();
+            synchronized (this) {
+                while (!result.isDone() && inFlight < (int) concurrency && !pending.isEmpty()) {
+                    toSend.add(pending.poll());
+                    inFlight++;
+                }
+            }
+            for (final String roomId : toSend) {
+                try {
+                    SparkExecution.requestExecutor(Lane.BULK).execute(() -> send(roomId));
+                } catch (RejectedExecutionException e) {
+                    complete(roomId, null, "Request rejected");
+                }
+            }
+        }
+
+        private void send(final String roomId) {
+            final Message message = new Message();
+            message.setRoomId(roomId);
+            message.setText(request.getText());
+            message.setMarkdown(request.getMarkdown());
+            if (request.getFiles() != null) {
+                message.setFiles(request.getFiles());
+            }
+            final long sendStart = System.nanoTime();
+            try {
+                messageApi.create(message);
+                complete(roomId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendStart), null);
+            } catch (RuntimeException e) {
+                if (e instanceof SparkException && ((SparkException) e).getResponseCode() == TOO_MANY_REQUESTS) {
+                    rateLimit(roomId);
+                } else {
+                    LOG.warn("broadcast: send to room {} failed", roomId, e);
+                    complete(roomId, null, String.valueOf(e.getMessage()));
+                }
+            }
+        }
+
+        /** Records the completion of a send and starts the next sends. The
+         *  window grows additively on success.
+         * @param roomId the room
+         * @param latency latency of a successful send; null if the send
+         *          failed
+         * @param error error message of a failed send
+         */
+        private void complete(final String roomId, final Long latency, final String error) {
+            final boolean done;
+            synchronized (this) {
+                inFlight--;
+                remaining--;
+                if (latency != null) {
+                    latencies.add(latency);
+                    concurrency = Math.min(maxConcurrency, concurrency + 1 / concurrency);
+                } else {
+                    failures.put(roomId, error);
+                }
+                done = remaining == 0;
+            }
+            if (done) {
+                finish();
+            } else {
+                pump();
+            }
+        }
+
+        /** Handles a send that was rate limited by Spark: the window is
+         *  halved (at most once per backoff period, so that a burst of
+         *  rejections does not collapse it) and the send is retried after
+         *  a backoff.
+         * @param roomId the room
+         */
+        private void rateLimit(final String roomId) {
+            final int attempt;
+            synchronized (this) {
+                rateLimited++;
+                attempt = retries.merge(roomId, 1, Integer::sum);
+                final long now = System.nanoTime();
+                if (now - lastDecrease > TimeUnit.MILLISECONDS.toNanos(RATE_LIMIT_BACKOFF)) {
+                    concurrency = Math.max(1, concurrency / 2);
+                    lastDecrease = now;
+                    LOG.info("broadcast: rate limited, concurrency reduced to {}", (int) concurrency);
+                }
+            }
+            if (attempt > MAX_RATE_LIMIT_RETRIES) {
+                complete(roomId, null, RATE_LIMITED);
+                return;
+            }
+            RETRY_SCHEDULER.schedule(() -> {
+                synchronized (this) {
+                    inFlight--;
+                    if (!result.isDone()) {
+                        pending.addFirst(roomId);
+                    }
+                }
+                pump();
+            }, RATE_LIMIT_BACKOFF * attempt, TimeUnit.MILLISECONDS);
+        }
+
+        private void finish() {
+            final BroadcastReport report;
+            synchronized (this) {
+                final long[] sendLatencies = new long[latencies.size()];
+                for (int i = 0; i < sendLatencies.length; i++) {
+                    sendLatencies[i] = latencies.get(i);
+                }
+                report = new BroadcastReport(targets, new LinkedHashMap<>(failures), rateLimited,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), sendLatencies);
+            }
+            LOG.info("broadcast: completed, {}", report);
+            result.set(report);
+        }
+    }
+}
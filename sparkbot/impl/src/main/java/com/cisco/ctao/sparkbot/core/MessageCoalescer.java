@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.cisco.ctao.sparkbot.core.outbox.Outbox;
+import com.ciscospark.Message;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Coalesces bursts of notifications to a room into digest posts. In
+ *  digest mode, messages posted to a room within the linger time after
+ *  the first one are merged into a single markdown post; a digest is also
+ *  posted when it reaches the max number of messages or the max digest
+ *  size. Messages to a room are posted in order, and urgent messages
+ *  bypass the linger time (after the pending digest is posted). Posts go
+ *  through the outbox if it is open. Digest mode is off (every message is
+ *  posted on its own) unless a linger time is configured.
+ *
+ * @author jmedved
+ *
+ */
+public final class MessageCoalescer {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageCoalescer.class);
+    private static final int DEFAULT_MAX_MESSAGES = 20;
+    // Spark rejects messages longer than 7439 bytes
+    private static final int DEFAULT_MAX_DIGEST_SIZE = 7000;
+    private static final String DIGEST_SEPARATOR = "\n\n";
+    private static final ScheduledExecutorService LINGER_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-coalescer-%d").setDaemon(true).build());
+    private static final ConcurrentMap<String, RoomQueue> ROOMS = new ConcurrentHashMap<>();
+    private static final LongAdder MESSAGES = new LongAdder();
+    private static final LongAdder POSTS = new LongAdder();
+    private static volatile long lingerTime;
+    private static volatile int maxMessages = DEFAULT_MAX_MESSAGES;
+    private static volatile int maxDigestSize = DEFAULT_MAX_DIGEST_SIZE;
+
+    /** Message priorities. */
+    public enum Priority {
+        /** Coalesced into digests in digest mode. */
+        NORMAL,
+        /** Posted immediately, never coalesced. */
+        URGENT
+    }
+
+    private MessageCoalescer() {
+        LOG.info("MessageCoalescer created.");
+    }
+
+    /** Handles setting of coalescing parameters (on data change).
+     * @param newLingerTime time in milliseconds that a digest waits for
+     *          more messages; null or 0 to turn digest mode off
+     * @param newMaxMessages max number of messages in a digest; null for
+     *          default
+     * @param newMaxDigestSize max size of a digest, in characters; null for
+     *          default
+     */
+    public static void handleCoalescingParmsChange(final Integer newLingerTime, final Integer newMaxMessages,
+            final Integer newMaxDigestSize) {
+        lingerTime = newLingerTime != null ? newLingerTime : 0;
+        maxMessages = newMaxMessages != null ? newMaxMessages : DEFAULT_MAX_MESSAGES;
+        maxDigestSize = newMaxDigestSize != null ? newMaxDigestSize : DEFAULT_MAX_DIGEST_SIZE;
+        LOG.info("MessageCoalescer: lingerTime {}, maxMessages {}, maxDigestSize {}",
+                lingerTime, maxMessages, maxDigestSize);
+        if (lingerTime == 0) {
+            flushAll();
+        }
+    }
+
+    /** Handles the deletion of coalescing parameters from the MD-SAL data
+     *  store - turns digest mode off and posts the pending digests.
+     */
+    public static void handleCoalescingParmsDelete() {
+        handleCoalescingParmsChange(null, null, null);
+    }
+
+    /** Gets the number of messages posted through the coalescer.
+     * @return the number of messages
+     */
+    public static long getMessageCount() {
+        return MESSAGES.sum();
+    }
+
+    /** Gets the number of posts made to Spark by the coalescer.
+     * @return the number of posts (digests and single messages)
+     */
+    public static long getPostCount() {
+        return POSTS.sum();
+    }
+
+    /** Posts a normal priority markdown message to a room on behalf of the
+     *  default identity.
+     * @param roomId Room to which to post the message
+     * @param markdown The message in markdown format
+     * @return the future post that contains the message
+     */
+    public static ListenableFuture<Message> post(final String roomId, final String markdown) {
+        return post(null, roomId, markdown, Priority.NORMAL);
+    }
+
+    /** Posts a markdown message to a room, coalescing it with other
+     *  messages to the room in digest mode.
+     * @param identity name of the identity on whose behalf the message is
+     *          posted; null for the default identity
+     * @param roomId Room to which to post the message
+     * @param markdown The message in markdown format
+     * @param priority the message's priority
+     * @return the future post (digest) that contains the message
+     */
+    public static ListenableFuture<Message> post(final String identity, final String roomId,
+            final String markdown, final Priority priority) {
+        Preconditions.checkArgument(roomId != null, "RoomId must be specified");
+        Preconditions.checkArgument(markdown != null, "Missing message");
+        MESSAGES.increment();
+        final String key = identity + "/" + roomId;
+        while (true) {
+            final ListenableFuture<Message> future = ROOMS.computeIfAbsent(key,
+                    k -> new RoomQueue(k, identity, roomId)).add(markdown, priority);
+            if (future != null) {
+                return future;
+            }
+            // The queue went idle and was removed; add to a new one
+        }
+    }
+
+    private static void flushAll() {
+        for (final RoomQueue room : ROOMS.values()) {
+            room.flush();
+        }
+    }
+
+    private static ListenableFuture<Message> send(final String identity, final Message message) {
+        POSTS.increment();
+        if (Outbox.isOpen()) {
+            return Outbox.enqueue(null, identity, message);
+        }
+        return SparkExecution.requestExecutor(Lane.NORMAL)
+                .submit(() -> Messages.api().forIdentity(identity).create(message));
+    }
+
+    /** A digest that is ready to be posted, with the futures of the
+     *  messages it contains.
+     */
+    private static final class Digest {
+        private final String markdown;
+        private final List<SettableFuture<Message>> waiters;
+
+        private Digest(final String markdown, final List<SettableFuture<Message>> waiters) {
+            this.markdown = markdown;
+            this.waiters = waiters;
+        }
+    }
+
+    /** The messages to a room that are waiting to be posted. Digests are
+     *  posted one at a time, so that they reach the room in order. A queue
+     *  that has nothing pending, outgoing or being sent is retired and
+     *  removed from ROOMS; a message added concurrently sees the queue
+     *  retired and goes to a new queue.
+     */
+    private static final class RoomQueue {
+        private final String key;
+        private final String identity;
+        private final String roomId;
+        private final StringBuilder digest = new StringBuilder();
+        private List<SettableFuture<Message>> waiters = new ArrayList<>();
+        private final Deque<Digest> outgoing = new ArrayDeque<>();
+        private ScheduledFuture<?> lingerTimer;
+        private boolean sending;
+        private boolean retired;
+
+        private RoomQueue(final String key, final String identity, final String roomId) {
+            this.key = key;
+            this.identity = identity;
+            this.roomId = roomId;
+        }
+
+        /** Adds a message to the queue.
+         * @return the future post that contains the message; null if the
+         *          queue is retired
+         */
+        private ListenableFuture<Message> add(final String markdown, final Priority priority) {
+            final SettableFuture<Message> future = SettableFuture.create();
+            synchronized (this) {
+                if (retired) {
+                    return null;
+                }
+                final long linger = lingerTime;
+                if (priority == Priority.URGENT || linger == 0) {
+                    flushDigest();
+                    final List<SettableFuture<Message>> single = new ArrayList<>();
+                    single.add(future);
+                    outgoing.add(new Digest(markdown, single));
+                } else {
+                    if (!waiters.isEmpty()
+                            && digest.length() + DIGEST_SEPARATOR.length() + markdown.length() > maxDigestSize) {
+                        flushDigest();
+                    }
+                    if (!waiters.isEmpty()) {
+                        digest.append(DIGEST_SEPARATOR);
+                    }
+                    digest.append(markdown);
+                    waiters.add(future);
+                    if (waiters.size() >= maxMessages) {
+                        flushDigest();
+                    } else if (lingerTimer == null) {
+                        lingerTimer = LINGER_SCHEDULER.schedule(this::flush, linger, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            sendNext();
+            return future;
+        }
+
+        private void flush() {
+            synchronized (this) {
+                flushDigest();
+            }
+            sendNext();
+        }
+
+        private void flushDigest() {
+            if (lingerTimer != null) {
+                lingerTimer.cancel(false);
+                lingerTimer = null;
+            }
+            if (waiters.isEmpty()) {
+                return;
+            }
+            LOG.debug("flushDigest: room {}, {} messages", roomId, waiters.size());
+            outgoing.add(new Digest(digest.toString(), waiters));
+            digest.setLength(0);
+            waiters = new ArrayList<>();
+        }
+
+        private void sendNext() {
+            final Digest next;
+            synchronized (this) {
+                if (sending || outgoing.isEmpty()) {
+                    if (!sending && waiters.isEmpty() && !retired) {
+                        retired = true;
+                        ROOMS.remove(key, this);
+                    }
+                    return;
+                }
+                sending = true;
+                next = outgoing.poll();
+            }
+            final Message message = new Message();
+            message.setRoomId(roomId);
+            message.setMarkdown(next.markdown);
+            ListenableFuture<Message> post;
+            try {
+                post = send(identity, message);
+            } catch (RuntimeException e) {
+                // Outbox full or closed, or request executor shut down
+                post = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(post, new FutureCallback<Message>() {
+                @Override
+                public void onSuccess(final Message posted) {
+                    for (final SettableFuture<Message> waiter : next.waiters) {
+                        waiter.set(posted);
+                    }
+                    sent();
+                }
+
+                @Override
+                public void onFailure(final Throwable cause) {
+                    LOG.error("sendNext: post to room {} failed", roomId, cause);
+                    for (final SettableFuture<Message> waiter : next.waiters) {
+                        waiter.setException(cause);
+                    }
+                    sent();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void sent() {
+            synchronized (this) {
+                sending = false;
+            }
+            sendNext();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.ciscospark.ConcurrencyLimiter;
+import com.ciscospark.SparkException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Schedules outbound Spark calls in priority lanes. The number of
+ *  concurrent outbound calls is limited; when the limit is reached, calls
+ *  wait in their lane's queue, and freed call slots are shared between the
+ *  lanes with waiting calls in proportion to the lanes' weights (stride
+ *  scheduling). Interactive calls (bot replies and event enrichment) thus
+ *  keep a low latency while bulk work (broadcasts, large listings) uses
+ *  the remaining capacity. Each lane keeps its queue depth and wait time
+ *  statistics.
+ *
+ *  <p>Lane admission is the outermost gate of an outbound call: a call
+ *  takes its identity's and its endpoint's permits only once admitted, and
+ *  the SDK's adaptive concurrency limiter admits waiting requests by lane
+ *  weight. Waiting calls park on a lock condition rather than a
+ *  monitor, so that virtual threads waiting for a slot do not pin their
+ *  carrier threads.
+ * @author jmedved
+ *
+ */
+public final class OutboundScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(OutboundScheduler.class);
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+    private static final long STRIDE = 1L << 20;
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final Condition ADMITTED = LOCK.newCondition();
+    private static final Map<Lane, LaneState> LANES = new EnumMap<>(Lane.class);
+    private static int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private static int inUse;
+    private static long virtualTime;
+
+    /** The priority lanes, with their weights. */
+    public enum Lane {
+        /** Bot replies and the lookups on their critical path. */
+        INTERACTIVE(8),
+        /** RPCs and other on-demand calls. */
+        NORMAL(4),
+        /** Background work: broadcasts, listings, provisioning, cleanup. */
+        BULK(1);
+
+        private final int weight;
+
+        Lane(final int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    static {
+        for (final Lane lane : Lane.values()) {
+            LANES.put(lane, new LaneState(lane));
+        }
+    }
+
+    private OutboundScheduler() {
+        LOG.info("OutboundScheduler created");
+    }
+
+    /** Sets the max number of concurrent outbound calls.
+     * @param newMaxConcurrency the max number of concurrent calls; null for
+     *          default, 0 if not limited (lanes are not enforced)
+     */
+    public static void setMaxConcurrency(final Integer newMaxConcurrency) {
+        LOCK.lock();
+        try {
+            maxConcurrency = newMaxConcurrency != null ? newMaxConcurrency : DEFAULT_MAX_CONCURRENCY;
+            dispatch();
+        } finally {
+            LOCK.unlock();
+        }
+        LOG.info("OutboundScheduler: max concurrency {}", newMaxConcurrency);
+    }
+
+    /** Makes an outbound call in a lane, waiting for a call slot. The
+     *  Spark requests made by the call have the lane's weight as their
+     *  priority in the SDK's concurrency limiter.
+     * @param lane the lane
+     * @param call the blocking call
+     * @return the result of the call
+     */
+    public static <R> R call(final Lane lane, final Supplier<R> call) {
+        return call(lane, null, call);
+    }
+
+    /** Makes an outbound call in a lane, waiting for a call slot at most
+     *  until a deadline. The Spark requests made by the call have the
+     *  lane's weight as their priority in the SDK's concurrency limiter.
+     * @param lane the lane
+     * @param deadline the deadline, in System.nanoTime() terms; null if none
+     * @param call the blocking call
+     * @return the result of the call
+     * @throws SparkException if the deadline passes before a slot is free
+     */
+    public static <R> R call(final Lane lane, final Long deadline, final Supplier<R> call) {
+        acquire(LANES.get(lane), deadline);
+        try (ConcurrencyLimiter.PriorityScope scope = ConcurrencyLimiter.prioritize(lane.weight)) {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    /** Gets the number of calls waiting in a lane.
+     * @param lane the lane
+     * @return the queue depth
+     */
+    public static int getQueueDepth(final Lane lane) {
+        LOCK.lock();
+        try {
+            return LANES.get(lane).queue.size();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /** Gets the number of calls admitted from a lane.
+     * @param lane the lane
+     * @return the number of admitted calls
+     */
+    public static long getAdmittedCount(final Lane lane) {
+        LOCK.lock();
+        try {
+            return LANES.get(lane).admitted;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /** Gets the average time that admitted calls waited in a lane.
+     * @param lane the lane
+     * @return the average wait time in milliseconds
+     */
+    public static double getAverageWaitMillis(final Lane lane) {
+        LOCK.lock();
+        try {
+            final LaneState state = LANES.get(lane);
+            return state.admitted == 0 ? 0 : (double) state.waitNanos / state.admitted / 1000000;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /** Gets the longest time that a call waited in a lane.
+     * @param lane the lane
+     * @return the max wait time in milliseconds
+     */
+    public static long getMaxWaitMillis(final Lane lane) {
+        LOCK.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(LANES.get(lane).maxWaitNanos);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /** Gets the number of outbound calls in progress.
+     * @return the number of calls
+     */
+    public static int getCallsInProgress() {
+        LOCK.lock();
+        try {
+            return inUse;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    private static void acquire(final LaneState lane, final Long deadline) {
+        final Waiter waiter = new Waiter();
+        LOCK.lock();
+        try {
+            if (lane.queue.isEmpty()) {
+                // A lane that was idle does not get credit for the idle time
+                lane.pass = Math.max(lane.pass, virtualTime);
+            }
+            lane.queue.add(waiter);
+            dispatch();
+            try {
+                while (!waiter.admitted) {
+                    if (deadline == null) {
+                        ADMITTED.await();
+                    } else {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            lane.queue.remove(waiter);
+                            throw new SparkException("Deadline exceeded waiting in lane " + lane.lane);
+                        }
+                        ADMITTED.awaitNanos(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    inUse--;
+                    dispatch();
+                } else {
+                    lane.queue.remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new SparkException("Interrupted waiting in lane " + lane.lane, e);
+            }
+            final long waitNanos = System.nanoTime() - waiter.enqueued;
+            lane.admitted++;
+            lane.waitNanos += waitNanos;
+            lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waitNanos);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    private static void release() {
+        LOCK.lock();
+        try {
+            inUse--;
+            dispatch();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /** Admits waiting calls while call slots are free, always from the
+     *  lane with the lowest pass; a lane's pass advances inversely to its
+     *  weight with every admitted call. Must be called with LOCK held.
+     */
+    private static void dispatch() {
+        boolean admitted = false;
+        while (maxConcurrency == 0 || inUse < maxConcurrency) {
+            LaneState next = null;
+            for (final LaneState lane : LANES.values()) {
+                if (!lane.queue.isEmpty() && (next == null || lane.pass < next.pass)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            next.queue.poll().admitted = true;
+            virtualTime = next.pass;
+            next.pass += STRIDE / next.lane.weight;
+            inUse++;
+            admitted = true;
+        }
+        if (admitted) {
+            ADMITTED.signalAll();
+        }
+    }
+
+    /** A call waiting for a call slot. */
+    private static final class Waiter {
+        private final long enqueued = System.nanoTime();
+        private boolean admitted;
+    }
+
+    /** The queue and the statistics of a lane. */
+    private static final class LaneState {
+        private final Lane lane;
+        private final Deque<Waiter> queue = new ArrayDeque<>();
+        private long pass;
+        private long admitted;
+        private long waitNanos;
+        private long maxWaitNanos;
+
+        private LaneState(final Lane lane) {
+            this.lane = lane;
+        }
+    }
+}
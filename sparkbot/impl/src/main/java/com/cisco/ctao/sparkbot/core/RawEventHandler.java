@@ -22,4 +22,11 @@ public interface RawEventHandler {
      * @param requestData: values of various headers present in the request
      */
     void handleWebhookEvent(WebhookEvent msg, RequestHeaderData requestData);
+
+    /** Name under which the handler's event statistics are reported.
+     * @return the handler name; the handler's class name by default
+     */
+    default String getName() {
+        return getClass().getName();
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.ciscospark.MetricsListener;
+import com.ciscospark.RequestMetrics;
+import com.ciscospark.SparkMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** An in-memory record of the most recent webhook events received and
+ *  Spark calls made, for post-mortem analysis of a misbehaving handler
+ *  without INFO or DEBUG logging. The records are kept in two fixed-size
+ *  rings that are written lock-free; once a ring is full, each new record
+ *  overwrites the oldest one. The records are read with the
+ *  get-recent-activity RPC.
+ * @author jmedved
+ *
+ */
+public final class RecentActivity {
+    /** The number of records kept in each ring. */
+    public static final int CAPACITY = 1024;
+
+    private static final Ring<IngestRecord> INGEST = new Ring<>(CAPACITY);
+    private static final Ring<OutboundRecord> OUTBOUND = new Ring<>(CAPACITY);
+    private static final MetricsListener OUTBOUND_LISTENER = RecentActivity::recordOutbound;
+
+    private RecentActivity() {
+    }
+
+    /** Starts recording the Spark calls made by the SDK.
+     */
+    public static void start() {
+        SparkMetrics.removeListener(OUTBOUND_LISTENER);
+        SparkMetrics.addListener(OUTBOUND_LISTENER);
+    }
+
+    /** Stops recording the Spark calls made by the SDK.
+     */
+    public static void stop() {
+        SparkMetrics.removeListener(OUTBOUND_LISTENER);
+    }
+
+    /** Records a webhook event received by a servlet.
+     * @param servlet the name of the servlet
+     * @param trackingId the event's tracking ID
+     * @param resource the event's resource, null if the payload was not parsed
+     * @param event the event type, null if the payload was not parsed
+     * @param objectId the ID of the event's object, null if the payload was not parsed
+     * @param statusCode the HTTP status code returned to Spark
+     * @param durationNanos the time it took to process the event
+     */
+    public static void recordIngest(final String servlet, final String trackingId, final String resource,
+            final String event, final String objectId, final int statusCode, final long durationNanos) {
+        final long timestamp = System.currentTimeMillis();
+        final long durationMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        INGEST.add(seq -> new IngestRecord(seq, timestamp, servlet, trackingId, resource, event, objectId,
+                statusCode, durationMicros));
+    }
+
+    private static void recordOutbound(final RequestMetrics request) {
+        final long timestamp = System.currentTimeMillis();
+        final long durationMicros = TimeUnit.NANOSECONDS.toMicros(request.getLatencyNanos());
+        OUTBOUND.add(seq -> new OutboundRecord(seq, timestamp, request.getMethod(), request.getFamily(),
+                request.getTrackingId(), request.getStatusCode(), request.isRetry(), durationMicros));
+    }
+
+    /** Gets the most recent webhook events.
+     * @param max the maximum number of records to return
+     * @param trackingId if not null, only the events whose tracking ID starts with this prefix are returned
+     * @return the records, oldest first
+     */
+    public static List<IngestRecord> getIngestEvents(final int max, final String trackingId) {
+        return INGEST.snapshot(max, trackingId);
+    }
+
+    /** Gets the most recent Spark calls.
+     * @param max the maximum number of records to return
+     * @param trackingId if not null, only the calls whose tracking ID starts with this prefix are returned;
+     *          the calls made while handling an event carry the event's tracking ID with a suffix
+     * @return the records, oldest first
+     */
+    public static List<OutboundRecord> getOutboundCalls(final int max, final String trackingId) {
+        return OUTBOUND.snapshot(max, trackingId);
+    }
+
+    /** The fields common to all records.
+     */
+    public abstract static class Record {
+        private final long seq;
+        private final long timestamp;
+        private final String trackingId;
+        private final int statusCode;
+        private final long durationMicros;
+
+        Record(final long seq, final long timestamp, final String trackingId, final int statusCode,
+                final long durationMicros) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.trackingId = trackingId;
+            this.statusCode = statusCode;
+            this.durationMicros = durationMicros;
+        }
+
+        /** Gets the record's sequence number; gaps show overwritten records.
+         * @return the sequence number
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /** Gets the time the record was made.
+         * @return milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getTrackingId() {
+            return trackingId;
+        }
+
+        /** Gets the HTTP status code.
+         * @return the status code, -1 if the call failed with an I/O error
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public long getDurationMicros() {
+            return durationMicros;
+        }
+    }
+
+    /** A webhook event received by a servlet.
+     */
+    public static final class IngestRecord extends Record {
+        private final String servlet;
+        private final String resource;
+        private final String event;
+        private final String objectId;
+
+        IngestRecord(final long seq, final long timestamp, final String servlet, final String trackingId,
+                final String resource, final String event, final String objectId, final int statusCode,
+                final long durationMicros) {
+            super(seq, timestamp, trackingId, statusCode, durationMicros);
+            this.servlet = servlet;
+            this.resource = resource;
+            this.event = event;
+            this.objectId = objectId;
+        }
+
+        public String getServlet() {
+            return servlet;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public String getObjectId() {
+            return objectId;
+        }
+    }
+
+    /** A call made to Spark.
+     */
+    public static final class OutboundRecord extends Record {
+        private final String method;
+        private final String endpoint;
+        private final boolean retry;
+
+        OutboundRecord(final long seq, final long timestamp, final String method, final String endpoint,
+                final String trackingId, final int statusCode, final boolean retry, final long durationMicros) {
+            super(seq, timestamp, trackingId, statusCode, durationMicros);
+            this.method = method;
+            this.endpoint = endpoint;
+            this.retry = retry;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /** Gets the endpoint family, e.g. "messages".
+         * @return the endpoint family
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public boolean isRetry() {
+            return retry;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordFactory<T extends Record> {
+        T create(long seq);
+    }
+
+    /** A fixed-size ring of records. A writer claims a sequence number and
+     *  stores its record in the slot of that number; a reader walks the
+     *  slots of the last CAPACITY sequence numbers and skips the slots that
+     *  have since been overwritten or not yet written.
+     */
+    private static final class Ring<T extends Record> {
+        private final AtomicReferenceArray<T> slots;
+        private final int mask;
+        private final AtomicLong next = new AtomicLong();
+
+        Ring(final int capacity) {
+            // The capacity must be a power of two
+            slots = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        void add(final RecordFactory<T> factory) {
+            final long seq = next.getAndIncrement();
+            slots.lazySet((int) (seq & mask), factory.create(seq));
+        }
+
+        List<T> snapshot(final int max, final String trackingId) {
+            final long end = next.get();
+            final long begin = Math.max(0, end - slots.length());
+            final List<T> records = new ArrayList<>();
+            for (long seq = begin; seq < end; seq++) {
+                final T record = slots.get((int) (seq & mask));
+                if (record != null && record.getSeq() == seq && (trackingId == null
+                        || record.getTrackingId() != null && record.getTrackingId().startsWith(trackingId))) {
+                    records.add(record);
+                }
+            }
+            return records.size() > max ? new ArrayList<>(records.subList(records.size() - max, records.size()))
+                    : records;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.ciscospark.Cancellation;
+import com.ciscospark.SparkException;
+import com.ciscospark.TrackingContext;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Hedges idempotent Spark requests to cut their tail latency. A hedged
+ *  request that has not completed after the hedge delay - a percentile of
+ *  the endpoint's recent response times - is sent a second time; the first
+ *  response is taken and the other request is cancelled by disconnecting
+ *  its connection. The original request runs on the caller's thread and
+ *  the hedges on a small bounded pool; when the pool is busy, requests are
+ *  not hedged. Each request earns
+ *  a fraction of a hedge (the hedge budget), so that hedges stay a small
+ *  fraction of the traffic even when Spark is slow overall. Hedging is off
+ *  unless hedging parameters are configured.
+ * @author jmedved
+ *
+ */
+public final class RequestHedger {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestHedger.class);
+    private static final int DEFAULT_DELAY_PERCENTILE = 95;
+    private static final int DEFAULT_MIN_DELAY = 20;
+    private static final int DEFAULT_BUDGET_PERCENT = 5;
+    // Hedges that can be saved up while the endpoint is fast
+    private static final double MAX_BUDGET = 10;
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final int MAX_HEDGE_THREADS = 16;
+    private static final ThreadPoolExecutor HEDGE_POOL = new ThreadPoolExecutor(0, MAX_HEDGE_THREADS,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-hedge-%d").setDaemon(true).build());
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-hedge-timer").setDaemon(true).build());
+    private static final ConcurrentMap<String, EndpointLatency> ENDPOINTS = new ConcurrentHashMap<>();
+    private static final LongAdder REQUESTS = new LongAdder();
+    private static final LongAdder HEDGES = new LongAdder();
+    private static final LongAdder HEDGE_WINS = new LongAdder();
+    private static volatile boolean enabled;
+    private static volatile int delayPercentile = DEFAULT_DELAY_PERCENTILE;
+    private static volatile long minDelay = DEFAULT_MIN_DELAY;
+    private static volatile double budgetRatio = DEFAULT_BUDGET_PERCENT / 100.0;
+
+    private RequestHedger() {
+        LOG.info("RequestHedger created.");
+    }
+
+    /** Handles setting of hedging parameters (on data change) - turns
+     *  hedging on.
+     * @param newDelayPercentile percentile of the recent response times
+     *          after which a request is hedged; null for default
+     * @param newMinDelay min hedge delay in milliseconds; null for default
+     * @param newBudgetPercent max hedges, in percent of the hedged requests;
+     *          null for default
+     */
+    public static void handleHedgingParmsChange(final Integer newDelayPercentile, final Integer newMinDelay,
+            final Integer newBudgetPercent) {
+        delayPercentile = newDelayPercentile != null ? newDelayPercentile : DEFAULT_DELAY_PERCENTILE;
+        minDelay = newMinDelay != null ? newMinDelay : DEFAULT_MIN_DELAY;
+        budgetRatio = (newBudgetPercent != null ? newBudgetPercent : DEFAULT_BUDGET_PERCENT) / 100.0;
+        enabled = true;
+        LOG.info("RequestHedger: delayPercentile {}, minDelay {}, budgetRatio {}",
+                delayPercentile, minDelay, budgetRatio);
+    }
+
+    /** Handles the deletion of hedging parameters from the MD-SAL data
+     *  store - turns hedging off.
+     */
+    public static void handleHedgingParmsDelete() {
+        enabled = false;
+        LOG.info("RequestHedger: hedging off");
+    }
+
+    /** Checks whether hedging is on.
+     * @return true if requests are hedged
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Gets the number of requests made through the hedger.
+     * @return the number of requests
+     */
+    public static long getRequestCount() {
+        return REQUESTS.sum();
+    }
+
+    /** Gets the number of hedges sent.
+     * @return the number of hedges
+     */
+    public static long getHedgeCount() {
+        return HEDGES.sum();
+    }
+
+    /** Gets the number of hedges that returned before the original request.
+     * @return the number of hedges that won
+     */
+    public static long getHedgeWinCount() {
+        return HEDGE_WINS.sum();
+    }
+
+    /** Makes an idempotent request, hedging it if hedging is on. The
+     *  request must be safe to send twice.
+     * @param endpoint the endpoint (path) being called
+     * @param request the blocking request
+     * @return the result of the first request to succeed
+     */
+    public static <R> R call(final String endpoint, final Supplier<R> request) {
+        if (!enabled) {
+            return request.get();
+        }
+        REQUESTS.increment();
+        final EndpointLatency latency = ENDPOINTS.computeIfAbsent(endpoint, ep -> new EndpointLatency());
+        final long delay = latency.getHedgeDelay();
+        if (delay < 0) {
+            return latency.measure(request);
+        }
+        return new HedgedCall<>(endpoint, request, latency).call(delay);
+    }
+
+    /** A request that may be hedged. The original request runs on the
+     *  caller's thread; a timer starts the hedge on the hedge pool if the
+     *  original request is still running after the hedge delay. The request
+     *  that succeeds first cancels the other one.
+     */
+    private static final class HedgedCall<R> {
+        private final String endpoint;
+        private final Supplier<R> request;
+        private final EndpointLatency latency;
+        private final TrackingContext context = TrackingContext.current();
+        private final Cancellation primary = Cancellation.create();
+        private final SettableFuture<R> hedgeResult = SettableFuture.create();
+        private boolean primaryDone;
+        private Cancellation hedge;
+
+        private HedgedCall(final String endpoint, final Supplier<R> request, final EndpointLatency latency) {
+            this.endpoint = endpoint;
+            this.request = request;
+            this.latency = latency;
+        }
+
+        private R call(final long delay) {
+            final ScheduledFuture<?> timer = HEDGE_TIMER.schedule(this::startHedge, delay, TimeUnit.MICROSECONDS);
+            final R value;
+            try (Cancellation.Scope scope = primary.attach()) {
+                value = latency.measure(request);
+            } catch (RuntimeException e) {
+                timer.cancel(false);
+                if (finishPrimary() == null) {
+                    throw e;
+                }
+                // The hedge is still running, or it won and cancelled this request
+                return awaitHedge(e);
+            }
+            timer.cancel(false);
+            final Cancellation startedHedge = finishPrimary();
+            if (startedHedge != null) {
+                startedHedge.cancel();
+            }
+            return value;
+        }
+
+        private synchronized Cancellation finishPrimary() {
+            primaryDone = true;
+            return hedge;
+        }
+
+        /** Starts the hedge, unless the original request is done, the hedge
+         *  budget is exhausted or the hedge pool is busy. Runs on the timer
+         *  thread.
+         */
+        private void startHedge() {
+            synchronized (this) {
+                if (primaryDone) {
+                    return;
+                }
+                if (!latency.takeHedge()) {
+                    LOG.debug("call: hedge budget for endpoint {} exhausted", endpoint);
+                    return;
+                }
+                hedge = Cancellation.create();
+                if (context != null) {
+                    // The caller is still waiting, so its context is still open
+                    context.retain();
+                }
+            }
+            try {
+                HEDGE_POOL.execute(this::runHedge);
+                HEDGES.increment();
+                LOG.debug("call: no response from endpoint {} after hedge delay, hedging", endpoint);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("call: hedge pool busy, endpoint {} not hedged", endpoint);
+                if (context != null) {
+                    context.release();
+                }
+                hedgeResult.setException(e);
+            }
+        }
+
+        private void runHedge() {
+            final TrackingContext.Scope contextScope = context != null ? context.attach() : null;
+            try (Cancellation.Scope scope = hedge.attach()) {
+                hedgeResult.set(latency.measure(request));
+                primary.cancel();
+            } catch (RuntimeException e) {
+                hedgeResult.setException(e);
+            } finally {
+                if (contextScope != null) {
+                    contextScope.close();
+                    context.release();
+                }
+            }
+        }
+
+        private R awaitHedge(final RuntimeException primaryFailure) {
+            final R value;
+            try {
+                value = hedgeResult.get();
+            } catch (ExecutionException e) {
+                throw primaryFailure;
+            } catch (InterruptedException e) {
+                hedge.cancel();
+                Thread.currentThread().interrupt();
+                throw new SparkException("Interrupted waiting for endpoint '" + endpoint + "'", e);
+            }
+            HEDGE_WINS.increment();
+            return value;
+        }
+    }
+
+    /** The recent response times of an endpoint and its hedge budget.
+     */
+    private static final class EndpointLatency {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int sampleCount;
+        private int next;
+        private long hedgeDelay = -1;
+        private double budget;
+
+        private <R> R measure(final Supplier<R> request) {
+            final long start = System.nanoTime();
+            final R result = request.get();
+            record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            return result;
+        }
+
+        private synchronized void record(final long micros) {
+            samples[next] = micros;
+            next = (next + 1) % LATENCY_SAMPLES;
+            sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLES);
+            // The percentile is recomputed every few samples
+            if (sampleCount >= MIN_LATENCY_SAMPLES && (next & 0xf) == 0) {
+                final long[] sorted = Arrays.copyOf(samples, sampleCount);
+                Arrays.sort(sorted);
+                final int rank = (int) Math.ceil(delayPercentile / 100.0 * sorted.length);
+                hedgeDelay = Math.max(TimeUnit.MILLISECONDS.toMicros(minDelay), sorted[Math.max(0, rank - 1)]);
+            }
+        }
+
+        /** Gets the hedge delay and credits the endpoint's hedge budget
+         *  for a new request.
+         * @return the delay in microseconds; -1 if not enough response
+         *          times are known yet
+         */
+        private synchronized long getHedgeDelay() {
+            budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+            return hedgeDelay;
+        }
+
+        private synchronized boolean takeHedge() {
+            if (budget < 1) {
+                return false;
+            }
+            budget -= 1;
+            return true;
+        }
+    }
+}
@@ -7,6 +7,9 @@
  */
 package com.cisco.ctao.sparkbot.core;
 
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+
+import java.time.Duration;
 import java.util.List;
 
 /** A generic Java interface providing an object-oriented facade to the
@@ -61,4 +64,29 @@ public interface SparkApi<T> {
      * @param elementId the spark id of the element to be deleted
      */
     void delete(final String elementId);
+
+    /** Gets a view of this API that makes all requests on behalf of the
+     *  specified bot identity.
+     * @param identity name of the identity; null for the default identity
+     * @return the API bound to the identity
+     */
+    SparkApi<T> forIdentity(final String identity);
+
+    /** Gets a view of this API that schedules all requests in the
+     *  specified priority lane. Requests are in the NORMAL lane by default.
+     * @param lane the lane
+     * @return the API bound to the lane
+     */
+    SparkApi<T> forLane(final Lane lane);
+
+    /** Gets a view of this API whose requests must complete within the
+     *  specified time, counted from now. The deadline bounds the waits for
+     *  the lane, the identity's request budget, the endpoint's permits and
+     *  the SDK's concurrency limit as well as connecting to Spark and
+     *  reading the response; requests that miss it fail with a
+     *  SparkException.
+     * @param timeout the time within which requests must complete
+     * @return the API bound to the deadline
+     */
+    SparkApi<T> withDeadline(final Duration timeout);
 }
@@ -9,11 +9,16 @@ package com.cisco.ctao.sparkbot.core;
 
 import com.ciscospark.NotAuthenticatedException;
 import com.ciscospark.RequestBuilder;
+import com.ciscospark.Spark;
 import com.ciscospark.SparkException;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
 import com.google.common.base.Preconditions;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,31 +30,80 @@ public class SparkApiImpl<T> implements SparkApi<T> {
     private static final String AUTHENTICATION_ERR_MSG = "Request authentication failure";
     private final String path;
     private final Class<T> apiType;
-
+    private final String identity;
+    private final Lane lane;
+    private final Long deadline;
 
     SparkApiImpl(final String path, final Class<T> apiType) {
+        this(path, apiType, null, Lane.NORMAL, null);
+    }
+
+    private SparkApiImpl(final String path, final Class<T> apiType, final String identity, final Lane lane,
+            final Long deadline) {
         this.path = path;
         this.apiType = apiType;
+        this.identity = identity;
+        this.lane = lane;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public SparkApi<T> forIdentity(final String newIdentity) {
+        return Objects.equals(identity, newIdentity) ? this
+                : new SparkApiImpl<>(path, apiType, newIdentity, lane, deadline);
+    }
+
+    @Override
+    public SparkApi<T> forLane(final Lane newLane) {
+        return lane == newLane ? this : new SparkApiImpl<>(path, apiType, identity, newLane, deadline);
+    }
+
+    @Override
+    public SparkApi<T> withDeadline(final Duration timeout) {
+        return new SparkApiImpl<>(path, apiType, identity, lane, System.nanoTime() + timeout.toNanos());
+    }
+
+    /** Makes a request to the Spark endpoint on behalf of this API's
+     *  identity, scheduled in this API's lane and, once admitted by the
+     *  lane, within the identity's and the endpoint's concurrency limits.
+     *  Each of these waits ends when this API's deadline passes.
+     * @param request the request, made with the identity's Spark client
+     * @return the result of the request
+     */
+    private <R> R call(final Function<Spark, R> request) {
+        final SparkIdentity sparkIdentity = SparkClient.getIdentity(identity);
+        return OutboundScheduler.call(lane, deadline, () -> sparkIdentity.call(deadline,
+            () -> SparkExecution.callEndpoint(path, deadline, () -> request.apply(sparkIdentity.getSpark()))));
+    }
+
+    /** Gets a request builder for this API's endpoint, with the remaining
+     *  time to this API's deadline.
+     * @param spark the identity's Spark client
+     * @return the request builder
+     */
+    private RequestBuilder<T> requestBuilder(final Spark spark) {
+        final RequestBuilder<T> builder = spark.getRequestBuilder(apiType, path);
+        return deadline != null ? builder.withDeadline(Duration.ofNanos(deadline - System.nanoTime())) : builder;
     }
 
     @Override
     public List<T> list(final SparkQueryParams queryParams) {
         LOG.info("list: queryParams {}", queryParams);
-        final RequestBuilder<T> builder = SparkClient
-                .getSpark()
-                .getRequestBuilder(apiType, path);
-
-        if (queryParams != null) {
-            for (String[] kv : queryParams.getParams()) {
-                builder.queryParam(kv[0], kv[1]);
-            }
-        }
         final List<T> elements = new ArrayList<>();
         try {
-            builder.iterate()
-                .forEachRemaining(elem -> {
-                    elements.add(elem);
-                });
+            call(spark -> {
+                final RequestBuilder<T> builder = requestBuilder(spark);
+                if (queryParams != null) {
+                    for (String[] kv : queryParams.getParams()) {
+                        builder.queryParam(kv[0], kv[1]);
+                    }
+                }
+                builder.iterate()
+                    .forEachRemaining(elem -> {
+                        elements.add(elem);
+                    });
+                return elements;
+            });
             LOG.info("Elements retrieved: {}", elements.size());
         } catch (NotAuthenticatedException e) {
             throw new SparkException(AUTHENTICATION_ERR_MSG, e.getCause());
@@ -62,11 +116,9 @@ public class SparkApiImpl<T> implements SparkApi<T> {
         LOG.info("getDetails<{}>: elementId {}", apiType, elementId);
         Preconditions.checkArgument(elementId != null, MISSING_ELEMENT_ID);
         try {
-            return SparkClient
-                    .getSpark()
-                    .getRequestBuilder(apiType, path)
+            return RequestHedger.call(path, () -> call(spark -> requestBuilder(spark)
                     .path("/" + elementId)
-                    .get();
+                    .get()));
         } catch (NotAuthenticatedException e) {
             throw new SparkException(AUTHENTICATION_ERR_MSG, e.getCause());
         }
@@ -78,11 +130,9 @@ public class SparkApiImpl<T> implements SparkApi<T> {
         Preconditions.checkArgument(elementId != null, MISSING_ELEMENT_ID);
         Preconditions.checkArgument(element != null, MISSING_ELEMENT);
         try {
-            return SparkClient
-                    .getSpark()
-                    .getRequestBuilder(apiType, path)
+            return call(spark -> requestBuilder(spark)
                     .path("/" + elementId)
-                    .put(element);
+                    .put(element));
         } catch (NotAuthenticatedException e) {
             throw new SparkException(AUTHENTICATION_ERR_MSG, e.getCause());
         }
@@ -94,11 +144,12 @@ public class SparkApiImpl<T> implements SparkApi<T> {
         LOG.info("delete<{}>: elementId {}", apiType, elementId);
         Preconditions.checkArgument(elementId != null, MISSING_ELEMENT_ID);
         try {
-            SparkClient
-                    .getSpark()
-                    .getRequestBuilder(apiType, path)
-                    .path("/" + elementId)
-                    .delete();
+            call(spark -> {
+                requestBuilder(spark)
+                        .path("/" + elementId)
+                        .delete();
+                return null;
+            });
         } catch (NotAuthenticatedException e) {
             throw new SparkException(AUTHENTICATION_ERR_MSG, e.getCause());
         }
@@ -109,10 +160,8 @@ public class SparkApiImpl<T> implements SparkApi<T> {
         LOG.info("create<{}>: element {}", apiType, element);
         Preconditions.checkArgument(element != null, MISSING_ELEMENT);
         try {
-            return SparkClient
-                    .getSpark()
-                    .getRequestBuilder(apiType, path)
-                    .post(element);
+            return call(spark -> requestBuilder(spark)
+                    .post(element));
         } catch (NotAuthenticatedException e) {
             throw new SparkException(AUTHENTICATION_ERR_MSG, e.getCause());
         }
@@ -9,35 +9,124 @@
 package com.cisco.ctao.sparkbot.core;
 
 import com.ciscospark.Spark;
+import com.ciscospark.SparkException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Holds authentication data (access token) to access the Spark service.
+/** Holds the bot identities (access tokens and request budgets) used to
+ *  access the Spark service. Requests that do not select an identity
+ *  explicitly use the default identity: the identity marked as the
+ *  default (the one with the lowest name if several are marked), else the
+ *  identity named DEFAULT_IDENTITY, else the identity with the lowest
+ *  name. The default is recomputed whenever an identity is configured or
+ *  deleted, so it does not depend on the order of the changes.
  * @author jmedved
  *
  */
 public final class SparkClient {
     private static final Logger LOG = LoggerFactory.getLogger(SparkClient.class);
-    private static final String BEARER_TOKEN = "Bearer ";
-    private static Spark spark = Spark.builder().accessToken(BEARER_TOKEN).build();
-    private static String lastAccessToken;
+    /** Name of the identity set through the single-token methods. */
+    public static final String DEFAULT_IDENTITY = "default";
+    private static final ConcurrentMap<String, SparkIdentity> IDENTITIES = new ConcurrentHashMap<>();
+    private static final SparkIdentity UNCONFIGURED = new SparkIdentity(null);
+    private static final SortedSet<String> MARKED_DEFAULTS = new TreeSet<>();
+    private static volatile SparkIdentity defaultIdentity = UNCONFIGURED;
 
     private SparkClient() {
         LOG.info("SparkClient created");
     }
 
+    /** Handles setting of an identity's configuration parameters (on data
+     *  change). The identity is not marked as the default.
+     * @param identity name of the identity (its spark email address)
+     * @param accessToken new access token for the identity
+     * @param maxConcurrentRequests max number of concurrent requests made on
+     *          behalf of the identity; null if not limited
+     */
+    public static void handleIdentityChange(final String identity, final String accessToken,
+            final Integer maxConcurrentRequests) {
+        handleIdentityChange(identity, accessToken, maxConcurrentRequests, null);
+    }
+
+    /** Handles setting of an identity's configuration parameters (on data
+     *  change). The identity is not marked as the default.
+     * @param identity name of the identity (its spark email address)
+     * @param accessToken new access token for the identity
+     * @param maxConcurrentRequests max number of concurrent requests made on
+     *          behalf of the identity; null if not limited
+     * @param baseUrl base URL of the Spark API used by the identity, e.g. a
+     *          stand-in for testing; null for the Spark service
+     */
+    public static void handleIdentityChange(final String identity, final String accessToken,
+            final Integer maxConcurrentRequests, final String baseUrl) {
+        handleIdentityChange(identity, accessToken, maxConcurrentRequests, baseUrl, false);
+    }
+
+    /** Handles setting of an identity's configuration parameters (on data
+     *  change).
+     * @param identity name of the identity (its spark email address)
+     * @param accessToken new access token for the identity
+     * @param maxConcurrentRequests max number of concurrent requests made on
+     *          behalf of the identity; null if not limited
+     * @param baseUrl base URL of the Spark API used by the identity, e.g. a
+     *          stand-in for testing; null for the Spark service
+     * @param markedDefault true if the identity is marked as the default
+     */
+    public static synchronized void handleIdentityChange(final String identity, final String accessToken,
+            final Integer maxConcurrentRequests, final String baseUrl, final boolean markedDefault) {
+        final SparkIdentity sparkIdentity = IDENTITIES.computeIfAbsent(identity, SparkIdentity::new);
+        sparkIdentity.configure(accessToken, maxConcurrentRequests, baseUrl);
+        if (markedDefault) {
+            MARKED_DEFAULTS.add(identity);
+        } else {
+            MARKED_DEFAULTS.remove(identity);
+        }
+        updateDefaultIdentity();
+        LOG.info("SparkClient: identity '{}' configured", identity);
+    }
+
+    /** Handles the deletion of an identity from the MD-SAL data store. If
+     *  the identity was the default identity, the default is chosen again
+     *  from the remaining identities.
+     * @param identity name of the identity
+     */
+    public static synchronized void handleIdentityDelete(final String identity) {
+        IDENTITIES.remove(identity);
+        MARKED_DEFAULTS.remove(identity);
+        updateDefaultIdentity();
+        LOG.info("SparkClient: identity '{}' deleted", identity);
+    }
+
+    private static void updateDefaultIdentity() {
+        final String name;
+        if (!MARKED_DEFAULTS.isEmpty()) {
+            name = MARKED_DEFAULTS.first();
+        } else if (IDENTITIES.containsKey(DEFAULT_IDENTITY)) {
+            name = DEFAULT_IDENTITY;
+        } else {
+            name = IDENTITIES.isEmpty() ? null : new TreeSet<>(IDENTITIES.keySet()).first();
+        }
+        final SparkIdentity newDefault = name != null ? IDENTITIES.get(name) : UNCONFIGURED;
+        if (newDefault != defaultIdentity) {
+            LOG.info("SparkClient: default identity is now '{}'", name);
+            defaultIdentity = newDefault;
+        }
+    }
+
     /** Handles setting of configuration parameters (on data change).
-     * @param accessToken: new access token for the Spark client
+     * @param accessToken: new access token for the default Spark client
      */
     public static void handleAccessTokenChange(final String accessToken) {
-        lastAccessToken = accessToken;
         if (accessToken != null) {
-            spark = Spark
-                    .builder()
-                    .accessToken(BEARER_TOKEN + accessToken)
-                    .build();
-            LOG.info("SparkClient: accessToken set to '{}'",accessToken);
+            handleIdentityChange(DEFAULT_IDENTITY, accessToken, null);
         } else {
             handleConfigParmsDelete();
         }
@@ -47,22 +136,40 @@ public final class SparkClient {
      *
      */
     public static void handleConfigParmsDelete() {
-        lastAccessToken = null;
-        spark = Spark
-                .builder()
-                .accessToken(BEARER_TOKEN)
-                .build();
-        LOG.info("SparkClient: accessToken deleted");
+        handleIdentityDelete(DEFAULT_IDENTITY);
+    }
+
+    /** Gets an identity.
+     * @param identity name of the identity; null for the default identity
+     * @return the identity
+     * @throws SparkException if the identity is not configured
+     */
+    public static SparkIdentity getIdentity(final String identity) {
+        if (identity == null) {
+            return defaultIdentity;
+        }
+        final SparkIdentity sparkIdentity = IDENTITIES.get(identity);
+        if (sparkIdentity == null) {
+            throw new SparkException("Unknown Spark identity '" + identity + "'");
+        }
+        return sparkIdentity;
+    }
+
+    /** Gets the names of all configured identities.
+     * @return the identity names
+     */
+    public static Collection<String> getIdentityNames() {
+        return new ArrayList<>(IDENTITIES.keySet());
     }
 
-    /** Gets the spark client.
+    /** Gets the spark client of the default identity.
      * @return: the Spark client
      */
     public static Spark getSpark() {
-        return spark;
+        return defaultIdentity.getSpark();
     }
 
     public static String getLastAccessToken() {
-        return lastAccessToken;
+        return defaultIdentity.getAccessToken();
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.cisco.ctao.sparkbot.core;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.ciscospark.SparkException;
+import com.ciscospark.TrackingContext;
+import com.google.common.util.concurrent.AbstractListeningExecutorService;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Holds the execution mode for webhook handlers and blocking Spark calls.
+ *  By default, handlers run on the Jetty thread that received the webhook
+ *  callout, and asynchronous Spark requests run on a bounded request thread
+ *  pool; requests waiting for a pool thread are queued by their outbound
+ *  lane, so that interactive work is not stuck behind bulk work. The
+ *  queue is bounded: when it is full, requests are rejected right away
+ *  rather than piling up behind requests that will time out. In the
+ *  opt-in virtual thread mode, available on Java 21 and
+ *  later runtimes, each handler invocation runs on its own virtual thread.
+ *  Concurrent calls to each Spark endpoint can be limited with a
+ *  semaphore, so that thousands of slow handlers do not flood Spark.
+ * @author jmedved
+ *
+ */
+public final class SparkExecution {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkExecution.class);
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+    private static final int MAX_REQUEST_THREADS = 64;
+    private static final int MAX_QUEUED_REQUESTS = 1024;
+    private static final ThreadPoolExecutor REQUEST_POOL = createRequestPool();
+    private static final AtomicLong REQUEST_SEQUENCE = new AtomicLong();
+    private static final Semaphore REQUEST_QUEUE_SLOTS = new Semaphore(MAX_QUEUED_REQUESTS);
+    private static final Map<Lane, ListeningExecutorService> LANE_EXECUTORS = createLaneExecutors();
+    private static volatile ExecutorService handlerExecutor;
+    private static volatile ListeningExecutorService virtualRequestExecutor;
+    private static volatile ConcurrentMap<String, Semaphore> endpointPermits;
+    private static volatile int endpointConcurrency;
+
+    private SparkExecution() {
+        LOG.info("SparkExecution created");
+    }
+
+    /** Handles setting of execution parameters (on data change).
+     * @param virtualThreads true to run handlers on virtual threads
+     * @param maxEndpointConcurrency max number of concurrent calls to each
+     *          Spark endpoint; null or 0 if not limited
+     * @param maxOutboundConcurrency max number of concurrent outbound calls,
+     *          shared by the priority lanes; null for default, 0 if not
+     *          limited
+     */
+    public static synchronized void handleExecutionParmsChange(final Boolean virtualThreads,
+            final Integer maxEndpointConcurrency, final Integer maxOutboundConcurrency) {
+        setVirtualThreads(Boolean.TRUE.equals(virtualThreads));
+        setEndpointConcurrency(maxEndpointConcurrency != null ? maxEndpointConcurrency : 0);
+        OutboundScheduler.setMaxConcurrency(maxOutboundConcurrency);
+    }
+
+    /** Handles the deletion of execution parameters from the MD-SAL data
+     *  store - reverts to the default (Jetty thread) execution mode.
+     */
+    public static synchronized void handleExecutionParmsDelete() {
+        setVirtualThreads(false);
+        setEndpointConcurrency(0);
+        OutboundScheduler.setMaxConcurrency(null);
+    }
+
+    /** Checks whether handlers are running on virtual threads.
+     * @return true if virtual thread mode is active
+     */
+    public static boolean isVirtualThreadMode() {
+        return handlerExecutor != null;
+    }
+
+    /** Gets the executor on which asynchronous Spark requests of a lane
+     *  are run: a virtual thread per request in virtual thread mode, the
+     *  bounded request thread pool otherwise. Requests waiting for a pool
+     *  thread are started in lane order, interactive first, and in
+     *  submission order within a lane. When the pool's queue is full, the
+     *  executor throws a RejectedExecutionException.
+     * @param lane the outbound lane of the requests
+     * @return the request executor
+     */
+    public static ListeningExecutorService requestExecutor(final Lane lane) {
+        final ListeningExecutorService executor = virtualRequestExecutor;
+        return executor != null ? executor : LANE_EXECUTORS.get(lane);
+    }
+
+    /** Runs a handler invocation. In virtual thread mode the invocation is
+     *  started on a new virtual thread, with the caller's tracking context,
+     *  and this method returns immediately; otherwise the invocation runs in
+     *  the calling thread.
+     * @param handlerTask the handler invocation
+     */
+    public static void dispatch(final Runnable handlerTask) {
+        final ExecutorService executor = handlerExecutor;
+        final Runnable task = executor != null ? TrackingContext.wrap(handlerTask) : handlerTask;
+        if (executor != null) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.error("dispatch: handler failed", e);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                LOG.debug("dispatch: executor shut down, running handler inline", e);
+            }
+        }
+        task.run();
+    }
+
+    /** Calls a Spark endpoint, waiting for a permit if the number of
+     *  concurrent calls to the endpoint is limited.
+     * @param endpoint the endpoint (path) being called
+     * @param call the blocking call
+     * @return the result of the call
+     */
+    public static <R> R callEndpoint(final String endpoint, final Supplier<R> call) {
+        return callEndpoint(endpoint, null, call);
+    }
+
+    /** Calls a Spark endpoint, waiting for a permit at most until a deadline
+     *  if the number of concurrent calls to the endpoint is limited.
+     * @param endpoint the endpoint (path) being called
+     * @param deadline the deadline, in System.nanoTime() terms; null if none
+     * @param call the blocking call
+     * @return the result of the call
+     * @throws SparkException if the deadline passes before a permit is free
+     */
+    public static <R> R callEndpoint(final String endpoint, final Long deadline, final Supplier<R> call) {
+        final ConcurrentMap<String, Semaphore> permits = endpointPermits;
+        if (permits == null) {
+            return call.get();
+        }
+        final Semaphore permit = permits.computeIfAbsent(endpoint, ep -> new Semaphore(endpointConcurrency));
+        try {
+            if (deadline == null) {
+                permit.acquire();
+            } else if (!permit.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new SparkException("Deadline exceeded waiting for endpoint '" + endpoint + "'");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SparkException("Interrupted waiting for endpoint '" + endpoint + "'", e);
+        }
+        try {
+            return call.get();
+        } finally {
+            permit.release();
+        }
+    }
+
+    private static void setVirtualThreads(final boolean virtualThreads) {
+        if (virtualThreads == isVirtualThreadMode()) {
+            return;
+        }
+        final ExecutorService oldExecutor = handlerExecutor;
+        handlerExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+        virtualRequestExecutor = (handlerExecutor != null)
+                ? MoreExecutors.listeningDecorator(handlerExecutor) : null;
+        if (oldExecutor != null) {
+            // Handlers already running are allowed to complete
+            oldExecutor.shutdown();
+        }
+        LOG.info("SparkExecution: virtual thread mode {}", isVirtualThreadMode());
+    }
+
+    private static void setEndpointConcurrency(final int maxEndpointConcurrency) {
+        if (maxEndpointConcurrency == endpointConcurrency) {
+            return;
+        }
+        // Calls in progress release the permits to the semaphores they were
+        // acquired from; new calls use the new limit
+        endpointConcurrency = maxEndpointConcurrency;
+        endpointPermits = maxEndpointConcurrency > 0 ? new ConcurrentHashMap<>() : null;
+        LOG.info("SparkExecution: max endpoint concurrency {}", maxEndpointConcurrency);
+    }
+
+    private static ThreadPoolExecutor createRequestPool() {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_REQUEST_THREADS, MAX_REQUEST_THREADS,
+                60, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("sparkbot-request-%d").setDaemon(true).build());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static Map<Lane, ListeningExecutorService> createLaneExecutors() {
+        final Map<Lane, ListeningExecutorService> executors = new EnumMap<>(Lane.class);
+        for (final Lane lane : Lane.values()) {
+            executors.put(lane, new LaneExecutor(lane));
+        }
+        return Collections.unmodifiableMap(executors);
+    }
+
+    /** Creates a virtual thread per task executor. The factory method is
+     *  looked up reflectively, because the code must still run on Java 8.
+     * @return the executor, or null if virtual threads are not supported
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY).invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("SparkExecution: virtual threads not supported by Java {}, handlers run on Jetty threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    /** Submits the requests of a lane to the shared request pool. The pool
+     *  is shared by all lanes and lives as long as the bundle; lanes do not
+     *  own the pool, so shutting down a lane's executor does nothing.
+     */
+    private static final class LaneExecutor extends AbstractListeningExecutorService {
+        private final Lane lane;
+
+        private LaneExecutor(final Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (!REQUEST_QUEUE_SLOTS.tryAcquire()) {
+                throw new RejectedExecutionException("Request queue full, " + MAX_QUEUED_REQUESTS
+                        + " requests waiting");
+            }
+            try {
+                REQUEST_POOL.execute(new LaneTask(lane, REQUEST_SEQUENCE.getAndIncrement(), command));
+            } catch (RejectedExecutionException e) {
+                REQUEST_QUEUE_SLOTS.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            // Lanes do not own the pool
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            // Lanes do not own the pool
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return REQUEST_POOL.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return REQUEST_POOL.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return REQUEST_POOL.awaitTermination(timeout, unit);
+        }
+    }
+
+    /** A request queued for the request pool, ordered by lane and then by
+     *  submission. The request frees its queue slot when it starts.
+     */
+    private static final class LaneTask implements Runnable, Comparable<LaneTask> {
+        private final Lane lane;
+        private final long sequence;
+        private final Runnable task;
+
+        private LaneTask(final Lane lane, final long sequence, final Runnable task) {
+            this.lane = lane;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            REQUEST_QUEUE_SLOTS.release();
+            task.run();
+        }
+
+        @Override
+        public int compareTo(final LaneTask other) {
+            final int byLane = lane.compareTo(other.lane);
+            return byLane != 0 ? byLane : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.cisco.ctao.sparkbot.core;
+
+import com.ciscospark.Spark;
+import com.ciscospark.SparkException;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A bot identity: the Spark client authenticated with the identity's
+ *  access token, and the identity's request budget. The client is reused
+ *  by all requests made on behalf of the identity and is only rebuilt when
+ *  the access token changes. The budget limits the number of concurrent
+ *  requests, so that a busy identity can not starve the others.
+ * @author jmedved
+ *
+ */
+public final class SparkIdentity {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkIdentity.class);
+    private static final String BEARER_TOKEN = "Bearer ";
+    private final String name;
+    private volatile String accessToken;
+    private String baseUrl;
+    private volatile Spark spark;
+    private volatile Semaphore budget;
+    private Integer maxConcurrentRequests;
+
+    SparkIdentity(final String name) {
+        this.name = name;
+        this.spark = Spark.builder().identity(name).accessToken(BEARER_TOKEN).build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    /** Gets the identity's Spark client.
+     * @return the Spark client
+     */
+    public Spark getSpark() {
+        return spark;
+    }
+
+    /** Sets the access token, the Spark API base URL and the request budget
+     *  of the identity.
+     * @param newAccessToken the access token; null if not configured
+     * @param newMaxConcurrentRequests max number of concurrent requests;
+     *          null or 0 if not limited
+     * @param newBaseUrl base URL of the Spark API; null for the Spark service
+     */
+    synchronized void configure(final String newAccessToken, final Integer newMaxConcurrentRequests,
+            final String newBaseUrl) {
+        if (!Objects.equals(accessToken, newAccessToken) || !Objects.equals(baseUrl, newBaseUrl)) {
+            final Spark.Builder builder = Spark
+                    .builder()
+                    .identity(name)
+                    .accessToken(BEARER_TOKEN + (newAccessToken != null ? newAccessToken : ""));
+            if (newBaseUrl != null) {
+                try {
+                    builder.baseUrl(URI.create(newBaseUrl));
+                } catch (IllegalArgumentException e) {
+                    LOG.error("SparkIdentity '{}': invalid baseUrl '{}', using the Spark service", name,
+                            newBaseUrl, e);
+                }
+            }
+            spark = builder.build();
+            accessToken = newAccessToken;
+            baseUrl = newBaseUrl;
+            LOG.info("SparkIdentity '{}': accessToken set to '{}', baseUrl {}", name, newAccessToken, newBaseUrl);
+        }
+        if (!Objects.equals(maxConcurrentRequests, newMaxConcurrentRequests)) {
+            maxConcurrentRequests = newMaxConcurrentRequests;
+            // Requests in progress release their permits to the old budget
+            budget = (newMaxConcurrentRequests != null && newMaxConcurrentRequests > 0)
+                    ? new Semaphore(newMaxConcurrentRequests) : null;
+            LOG.info("SparkIdentity '{}': maxConcurrentRequests set to {}", name, newMaxConcurrentRequests);
+        }
+    }
+
+    /** Makes a request on behalf of the identity, waiting for the identity's
+     *  budget to allow it.
+     * @param request the blocking request
+     * @return the result of the request
+     */
+    public <R> R call(final Supplier<R> request) {
+        return call(null, request);
+    }
+
+    /** Makes a request on behalf of the identity, waiting for the identity's
+     *  budget to allow it at most until a deadline.
+     * @param deadline the deadline, in System.nanoTime() terms; null if none
+     * @param request the blocking request
+     * @return the result of the request
+     * @throws SparkException if the deadline passes before the budget allows
+     *          the request
+     */
+    public <R> R call(final Long deadline, final Supplier<R> request) {
+        final Semaphore permits = budget;
+        if (permits == null) {
+            return request.get();
+        }
+        try {
+            if (deadline == null) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new SparkException("Deadline exceeded waiting for identity '" + name + "'");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SparkException("Interrupted waiting for identity '" + name + "'", e);
+        }
+        try {
+            return request.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SparkIdentity [name=" + name + ", maxConcurrentRequests=" + maxConcurrentRequests + "]";
+    }
+}
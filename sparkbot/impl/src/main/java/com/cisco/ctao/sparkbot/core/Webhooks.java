@@ -50,13 +50,22 @@ public final class Webhooks {
      * @return List of user's webooks
      */
     public static List<Webhook> listWebhooks(final Integer max) {
-        LOG.info("listWebhooks: max {}", max);
+        return listWebhooks(null, max);
+    }
+
+    /** Get a list of webhooks for a bot identity.
+     * @param identity the bot identity; null for the default identity
+     * @param max Limit the maximum number of webhooks in the response; null if not specified
+     * @return List of the identity's webooks
+     */
+    public static List<Webhook> listWebhooks(final String identity, final Integer max) {
+        LOG.info("listWebhooks: identity {}, max {}", identity, max);
 
         SparkQueryParams queryParams = new SparkQueryParams();
         if (max != null) {
             queryParams.add(SparkApi.MAX_KEY, max.toString());
         }
-        return WEBHOOK_API.list(queryParams);
+        return WEBHOOK_API.forIdentity(identity).list(queryParams);
     }
 
     /** Shows details for a webhook, by ID.
@@ -83,9 +92,27 @@ public final class Webhooks {
      */
     public static Webhook createWebhook(String name, URI targetURL, String resource,
             String event, String filter, String secret) {
-        LOG.info("createWebhook: name {}, targetURL: {}, resource: {}, event: {}, "
+        return createWebhook(null, name, targetURL, resource, event, filter, secret);
+    }
+
+    /** Creates a webhook on behalf of a bot identity.
+     * @param identity the bot identity; null for the default identity
+     * @param name A user-friendly name for this webhook; mandatory
+     * @param targetURL The URL that receives POST requests for each event;
+     *          mandatory
+     * @param resource The resource type for the webhook; mandatory
+     * @param event The event type for the webhook; mandatory
+     * @param filter The filter that defines the webhook scope; null if not
+     *          specified
+     * @param secret secret used to generate payload signature; null if not
+     *          specified
+     * @return the newly created webhook
+     */
+    public static Webhook createWebhook(String identity, String name, URI targetURL, String resource,
+            String event, String filter, String secret) {
+        LOG.info("createWebhook: identity {}, name {}, targetURL: {}, resource: {}, event: {}, "
                 + "filter: {}, secret: {}",
-                name, targetURL, resource, event, filter, secret);
+                identity, name, targetURL, resource, event, filter, secret);
         final Webhook webhook = new Webhook();
 
         // Do not check whether mandatory arguments are present - let the
@@ -96,7 +123,7 @@ public final class Webhooks {
         webhook.setEvent(event);
         webhook.setTargetUrl(targetURL);
         webhook.setFilter(filter);
-        return WEBHOOK_API.create(webhook);
+        return WEBHOOK_API.forIdentity(identity).create(webhook);
     }
 
     /** Updates a webhook, by ID.
@@ -107,19 +134,39 @@ public final class Webhooks {
      * @return the updated webhook
      */
     public static Webhook updateWebhook(String webhookId, String name, URI targetUrl) {
-        LOG.info("updateWebhook: webhookId {}", webhookId);
+        return updateWebhook(null, webhookId, name, targetUrl);
+    }
+
+    /** Updates a webhook of a bot identity, by ID.
+     * @param identity the bot identity; null for the default identity
+     * @param webhookId The Id of the Webhook to be updated
+     * @param name A user-friendly name for this webhook; mandatory
+     * @param targetUrl The URL that receives POST requests for each event;
+     *          mandatory
+     * @return the updated webhook
+     */
+    public static Webhook updateWebhook(String identity, String webhookId, String name, URI targetUrl) {
+        LOG.info("updateWebhook: identity {}, webhookId {}", identity, webhookId);
 
         final Webhook webhook = new Webhook();
         webhook.setName(name);
         webhook.setTargetUrl(targetUrl);
-        return WEBHOOK_API.update(webhookId, webhook);
+        return WEBHOOK_API.forIdentity(identity).update(webhookId, webhook);
     }
 
     /** Deletes a webhook, by ID.
      * @param webhookId The Id of the Webhook to be updated
      */
     public static void deleteWebhook(String webhookId) {
-        LOG.info("deleteWebhook: webhookId {}", webhookId);
-        WEBHOOK_API.delete(webhookId);
+        deleteWebhook(null, webhookId);
+    }
+
+    /** Deletes a webhook of a bot identity, by ID.
+     * @param identity the bot identity; null for the default identity
+     * @param webhookId The Id of the Webhook to be deleted
+     */
+    public static void deleteWebhook(String identity, String webhookId) {
+        LOG.info("deleteWebhook: identity {}, webhookId {}", identity, webhookId);
+        WEBHOOK_API.forIdentity(identity).delete(webhookId);
     }
 }
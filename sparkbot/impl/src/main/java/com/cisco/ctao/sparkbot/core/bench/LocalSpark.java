@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.bench;
+
+import com.ciscospark.Spark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** An in-process stand-in for the Spark REST API, bound to the loopback
+ *  interface. It answers every request immediately with a canned
+ *  response, so that a benchmark against it measures the overhead of the
+ *  SDK and the bot rather than the latency of Spark:
+ *  <ul>
+ *  <li>GET people/me returns the bot's own person</li>
+ *  <li>GET &lt;resource&gt; returns a page of 'max' (default 10, at most
+ *      100) objects with an id</li>
+ *  <li>GET &lt;resource&gt;/&lt;id&gt; returns an object with that id</li>
+ *  <li>POST and PUT echo the request body, with a new id for POST</li>
+ *  <li>DELETE returns 204</li>
+ *  </ul>
+ * @author jmedved
+ *
+ */
+public final class LocalSpark implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalSpark.class);
+    private static final String CONTEXT_PATH = "/v1";
+    private static final String LOOPBACK = "127.0.0.1";
+
+    private final Server server;
+    private final SelectChannelConnector connector;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private LocalSpark(final int port) {
+        connector = new SelectChannelConnector();
+        connector.setHost(LOOPBACK);
+        connector.setPort(port);
+        final ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath(CONTEXT_PATH);
+        context.addServlet(new ServletHolder(new StandInServlet(requestCount)), "/*");
+        server = new Server();
+        server.addConnector(connector);
+        server.setHandler(context);
+    }
+
+    /** Starts a stand-in.
+     * @param port the port to listen on; 0 for an ephemeral port
+     * @return the running stand-in
+     * @throws IOException if the stand-in could not be started
+     */
+    public static LocalSpark start(final int port) throws IOException {
+        final LocalSpark localSpark = new LocalSpark(port);
+        try {
+            localSpark.server.start();
+        } catch (Exception e) {
+            localSpark.close();
+            throw new IOException("Failed to start the local Spark stand-in", e);
+        }
+        LOG.info("LocalSpark: listening on {}", localSpark.getBaseUrl());
+        return localSpark;
+    }
+
+    /** Gets the stand-in's base URL, for Spark.Builder.baseUrl().
+     * @return the base URL
+     */
+    public URI getBaseUrl() {
+        return URI.create("http://" + LOOPBACK + ":" + connector.getLocalPort() + CONTEXT_PATH);
+    }
+
+    /** Creates a Spark client for the stand-in.
+     * @return the client
+     */
+    public Spark newClient() {
+        return Spark.builder().baseUrl(getBaseUrl()).accessToken("Bearer local").build();
+    }
+
+    /** Gets the number of requests the stand-in has answered.
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            LOG.warn("LocalSpark: failed to stop", e);
+        }
+        server.destroy();
+    }
+
+    /** Answers the requests made to the stand-in.
+     */
+    private static final class StandInServlet extends HttpServlet {
+        private static final long serialVersionUID = 2309744137262218561L;
+        private static final int DEFAULT_PAGE_SIZE = 10;
+        private static final int MAX_PAGE_SIZE = 100;
+        private static final String ME =
+                "{\"id\":\"local-bot\",\"displayName\":\"Local Spark\",\"emails\":[\"bot@localhost\"]}";
+
+        private final transient AtomicLong requestCount;
+        private final transient AtomicLong nextId = new AtomicLong();
+
+        StandInServlet(final AtomicLong requestCount) {
+            this.requestCount = requestCount;
+        }
+
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws ServletException, IOException {
+            final String[] path = split(request);
+            if (path.length == 2 && "people".equals(path[0]) && "me".equals(path[1])) {
+                respond(response, HttpServletResponse.SC_OK, ME);
+            } else if (path.length == 1) {
+                final StringBuilder body = new StringBuilder("{\"items\":[");
+                final int size = pageSize(request.getParameter("max"));
+                for (int i = 0; i < size; i++) {
+                    body.append(i == 0 ? "" : ",").append(object(path[0] + "-" + i));
+                }
+                respond(response, HttpServletResponse.SC_OK, body.append("]}").toString());
+            } else if (path.length == 2) {
+                respond(response, HttpServletResponse.SC_OK, object(path[1]));
+            } else {
+                respond(response, HttpServletResponse.SC_NOT_FOUND, "{\"message\":\"Not found\"}");
+            }
+        }
+
+        @Override
+        protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
+                throws ServletException, IOException {
+            final String body = IOUtils.toString(request.getInputStream(), StandardCharsets.UTF_8).trim();
+            final String id = "\"id\":\"local-" + nextId.incrementAndGet() + "\"";
+            if (body.startsWith("{") && body.length() > 2) {
+                respond(response, HttpServletResponse.SC_OK, "{" + id + "," + body.substring(1));
+            } else {
+                respond(response, HttpServletResponse.SC_OK, "{" + id + "}");
+            }
+        }
+
+        @Override
+        protected void doPut(final HttpServletRequest request, final HttpServletResponse response)
+                throws ServletException, IOException {
+            respond(response, HttpServletResponse.SC_OK,
+                    IOUtils.toString(request.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        protected void doDelete(final HttpServletRequest request, final HttpServletResponse response)
+                throws ServletException, IOException {
+            requestCount.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        }
+
+        private void respond(final HttpServletResponse response, final int status, final String body)
+                throws IOException {
+            requestCount.incrementAndGet();
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            response.setStatus(status);
+            response.setContentType("application/json;charset=UTF-8");
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+        }
+
+        private static String[] split(final HttpServletRequest request) {
+            final String pathInfo = request.getPathInfo();
+            if (pathInfo == null || pathInfo.length() <= 1) {
+                return new String[0];
+            }
+            return pathInfo.substring(1).split("/");
+        }
+
+        private static int pageSize(final String max) {
+            if (max == null) {
+                return DEFAULT_PAGE_SIZE;
+            }
+            try {
+                return Math.max(0, Math.min(Integer.parseInt(max), MAX_PAGE_SIZE));
+            } catch (NumberFormatException e) {
+                return DEFAULT_PAGE_SIZE;
+            }
+        }
+
+        private static String object(final String id) {
+            return "{\"id\":\"" + id + "\"}";
+        }
+    }
+}
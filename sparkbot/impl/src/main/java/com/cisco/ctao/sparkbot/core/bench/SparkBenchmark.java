@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.bench;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.cisco.ctao.sparkbot.core.SparkClient;
+import com.cisco.ctao.sparkbot.core.SparkIdentity;
+import com.ciscospark.LatencyHistogram;
+import com.ciscospark.Spark;
+import com.ciscospark.SparkException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A built-in load generator that measures the throughput and latency of
+ *  read-only Spark requests made through the SDK, either against Spark
+ *  with a configured identity or against an in-process stand-in
+ *  (LocalSpark). A fixed number of workers make the requests back to back
+ *  until the requested number has been made. Requests to Spark go
+ *  through the identity's request budget and the bulk lane of the
+ *  outbound scheduler, so that a benchmark does not starve the bot's own
+ *  traffic. One benchmark runs at a time.
+ * @author jmedved
+ *
+ */
+public final class SparkBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkBenchmark.class);
+    private static final String LIST_PAGE_SIZE = "100";
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    /** Where the requests are sent. */
+    public enum Target {
+        /** An in-process stand-in for the Spark API. */
+        LOCAL,
+        /** The Spark service. */
+        SPARK
+    }
+
+    /** The request that is benchmarked. */
+    public enum Operation {
+        /** Get the details of the identity (people/me). */
+        GET,
+        /** List the first page of rooms. */
+        LIST
+    }
+
+    private SparkBenchmark() {
+    }
+
+    /** Starts a benchmark.
+     * @param target where the requests are sent
+     * @param operation the request that is benchmarked
+     * @param requests the number of requests to make
+     * @param concurrency the number of requests in flight
+     * @param identity the identity used with the SPARK target; null for the
+     *          default identity
+     * @return future for the result; fails if another benchmark is running
+     *          or the target cannot be reached
+     */
+    public static ListenableFuture<Result> run(final Target target, final Operation operation, final int requests,
+            final int concurrency, final String identity) {
+        if (!RUNNING.compareAndSet(false, true)) {
+            return Futures.immediateFailedFuture(new IllegalStateException("A benchmark is already running"));
+        }
+        LOG.info("SparkBenchmark: target {}, operation {}, requests {}, concurrency {}, identity {}", target,
+                operation, requests, concurrency, identity);
+
+        LocalSpark localSpark = null;
+        final Supplier<Object> request;
+        try {
+            if (target == Target.LOCAL) {
+                localSpark = LocalSpark.start(0);
+                request = newRequest(localSpark.newClient(), operation);
+            } else {
+                final SparkIdentity sparkIdentity = SparkClient.getIdentity(identity);
+                if (sparkIdentity.getAccessToken() == null) {
+                    throw new SparkException("Spark identity '" + sparkIdentity.getName()
+                            + "' has no access token");
+                }
+                final Supplier<Object> call = newRequest(sparkIdentity.getSpark(), operation);
+                request = () -> OutboundScheduler.call(Lane.BULK, () -> sparkIdentity.call(call));
+            }
+        } catch (IOException | SparkException e) {
+            RUNNING.set(false);
+            return Futures.immediateFailedFuture(e);
+        }
+
+        final ListeningExecutorService pool = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(
+                concurrency, new ThreadFactoryBuilder().setNameFormat("sparkbot-benchmark-%d").setDaemon(true)
+                    .build()));
+        final Run run = new Run(request, requests);
+        final List<ListenableFuture<?>> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(pool.submit(run::work));
+        }
+        pool.shutdown();
+
+        final LocalSpark startedSpark = localSpark;
+        final ListenableFuture<Result> result = Futures.transform(Futures.allAsList(workers),
+            (List<Object> input) -> run.result(), MoreExecutors.directExecutor());
+        result.addListener(() -> {
+            if (startedSpark != null) {
+                startedSpark.close();
+            }
+            RUNNING.set(false);
+            LOG.info("SparkBenchmark: done");
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /** Checks whether a benchmark is running.
+     * @return true if a benchmark is running
+     */
+    public static boolean isRunning() {
+        return RUNNING.get();
+    }
+
+    private static Supplier<Object> newRequest(final Spark spark, final Operation operation) {
+        if (operation == Operation.LIST) {
+            return () -> spark.rooms().queryParam("max", LIST_PAGE_SIZE).paginate().consumeBody();
+        }
+        return () -> spark.people().path("/me").get();
+    }
+
+    /** The state of a running benchmark, shared by its workers.
+     */
+    private static final class Run {
+        private final Supplier<Object> request;
+        private final AtomicInteger remaining;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicReference<String> firstError = new AtomicReference<>();
+        private final long start = System.nanoTime();
+
+        Run(final Supplier<Object> request, final int requests) {
+            this.request = request;
+            this.remaining = new AtomicInteger(requests);
+        }
+
+        void work() {
+            while (remaining.getAndDecrement() > 0) {
+                final long begin = System.nanoTime();
+                try {
+                    request.get();
+                } catch (RuntimeException e) {
+                    errors.increment();
+                    if (firstError.compareAndSet(null, e.toString())) {
+                        LOG.warn("SparkBenchmark: request failed", e);
+                    }
+                }
+                latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+            }
+        }
+
+        Result result() {
+            return new Result(latency.getCount(), errors.sum(), System.nanoTime() - start, latency,
+                    firstError.get());
+        }
+    }
+
+    /** The result of a benchmark.
+     */
+    public static final class Result {
+        private final long requests;
+        private final long errors;
+        private final long durationNanos;
+        private final LatencyHistogram latency;
+        private final String firstError;
+
+        Result(final long requests, final long errors, final long durationNanos, final LatencyHistogram latency,
+                final String firstError) {
+            this.requests = requests;
+            this.errors = errors;
+            this.durationNanos = durationNanos;
+            this.latency = latency;
+            this.firstError = firstError;
+        }
+
+        /** Gets the number of requests made, including the failed ones.
+         * @return the request count
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /** Gets the throughput of the benchmark.
+         * @return requests per second
+         */
+        public double getThroughput() {
+            return durationNanos > 0 ? requests * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+        }
+
+        /** Gets the latencies of the requests.
+         * @return the latencies, in microseconds
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /** Gets the error of the first request that failed.
+         * @return the error, null if no request failed
+         */
+        public String getFirstError() {
+            return firstError;
+        }
+
+        @Override
+        public String toString() {
+            return "Result [requests=" + requests + ", errors=" + errors + ", durationMs="
+                    + TimeUnit.NANOSECONDS.toMillis(durationNanos) + ", throughput=" + Math.round(getThroughput())
+                    + ", p50=" + latency.getPercentileMicros(50) + "us, p99=" + latency.getPercentileMicros(99)
+                    + "us, max=" + latency.getMaxMicros() + "us]";
+        }
+    }
+}
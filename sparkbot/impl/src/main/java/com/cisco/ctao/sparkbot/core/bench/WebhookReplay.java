@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.bench;
+
+import com.cisco.ctao.sparkbot.core.webhooksvr.CaptureFile;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookCapture;
+import com.ciscospark.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/** A standalone load generator that replays a webhook capture (see
+ *  WebhookCapture) against a webhook server. The callouts are POSTed with
+ *  their recorded paths, headers and payloads, either with their recorded
+ *  timing (optionally sped up N times) or at a fixed rate, by a fixed
+ *  number of concurrent senders. At the end, the tool reports the
+ *  server-side latency of the callouts (from the Server-Timing header of
+ *  the responses), their round-trip latency, and how far the senders fell
+ *  behind the schedule.
+ *
+ *  <p>The tool runs outside the controller:
+ *  <pre>
+ *  java -cp sparkbot-impl.jar:ciscospark-client.jar \
+ *      com.cisco.ctao.sparkbot.core.bench.WebhookReplay \
+ *      --file webhooks.capture --target http://10.0.0.1:8182 --speed 10
+ *  </pre>
+ * @author jmedved
+ *
+ */
+public final class WebhookReplay {
+    private static final String USAGE = "Usage: WebhookReplay --file <capture file> --target <webhook server URL>"
+            + " [--speed <N> | --rate <callouts per second>] [--concurrency <senders>] [--limit <callouts>]"
+            + " [--timeout <ms>]";
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private static final String SERVER_TIMING_DURATION = "dur=";
+
+    private final String file;
+    private final String target;
+    private final double speed;
+    private final double rate;
+    private final int concurrency;
+    private final long limit;
+    private final int timeout;
+
+    private final LatencyHistogram serverLatency = new LatencyHistogram();
+    private final LatencyHistogram roundTripLatency = new LatencyHistogram();
+    private final LatencyHistogram scheduleLag = new LatencyHistogram();
+    private final ConcurrentMap<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder ioErrors = new LongAdder();
+    private volatile String firstError;
+
+    private WebhookReplay(final String file, final String target, final double speed, final double rate,
+            final int concurrency, final long limit, final int timeout) {
+        this.file = file;
+        this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+        this.speed = speed;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.limit = limit;
+        this.timeout = timeout;
+    }
+
+    /** Runs the tool.
+     * @param args the command line arguments, see USAGE
+     * @throws Exception if the capture could not be replayed
+     */
+    public static void main(final String[] args) throws Exception {
+        String file = null;
+        String target = null;
+        double speed = 1;
+        double rate = 0;
+        int concurrency = 16;
+        long limit = Long.MAX_VALUE;
+        int timeout = 10000;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--file":
+                        file = value;
+                        break;
+                    case "--target":
+                        target = value;
+                        break;
+                    case "--speed":
+                        speed = Double.parseDouble(value);
+                        break;
+                    case "--rate":
+                        rate = Double.parseDouble(value);
+                        break;
+                    case "--concurrency":
+                        concurrency = Integer.parseInt(value);
+                        break;
+                    case "--limit":
+                        limit = Long.parseLong(value);
+                        break;
+                    case "--timeout":
+                        timeout = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+                i++;
+            }
+        } catch (IllegalArgumentException | NullPointerException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+            file = null;
+        }
+        if (file == null || target == null || speed <= 0 || rate < 0 || concurrency < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        new WebhookReplay(file, target, speed, rate, concurrency, limit, timeout).replay();
+    }
+
+    private void replay() throws IOException, InterruptedException {
+        final ExecutorService senders = Executors.newFixedThreadPool(concurrency);
+        final Semaphore permits = new Semaphore(concurrency);
+        final long periodNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        long count = 0;
+        final long start = System.nanoTime();
+        try (CaptureFile.Reader reader = new CaptureFile.Reader(file)) {
+            long firstTimestamp = -1;
+            CaptureFile.Record record;
+            while (count < limit && (record = reader.next()) != null) {
+                if (firstTimestamp < 0) {
+                    firstTimestamp = record.getTimestampMicros();
+                }
+                final long due = start + (periodNanos > 0 ? count * periodNanos
+                        : (long) (TimeUnit.MICROSECONDS.toNanos(record.getTimestampMicros() - firstTimestamp)
+                                / speed));
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                permits.acquire();
+                scheduleLag.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+                final CaptureFile.Record callout = record;
+                senders.execute(() -> {
+                    try {
+                        send(callout);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                count++;
+            }
+        } finally {
+            senders.shutdown();
+            senders.awaitTermination(2L * timeout + 1000, TimeUnit.MILLISECONDS);
+        }
+        report(count, System.nanoTime() - start);
+    }
+
+    private void send(final CaptureFile.Record record) {
+        final long begin = System.nanoTime();
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(target + record.getUri())
+                    .openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            for (Map.Entry<String, String> header : record.getHeaders().entrySet()) {
+                if (!"Host".equalsIgnoreCase(header.getKey())
+                        && !"Content-Length".equalsIgnoreCase(header.getKey())
+                        && !"Connection".equalsIgnoreCase(header.getKey())
+                        && !"Transfer-Encoding".equalsIgnoreCase(header.getKey())) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            connection.setRequestProperty(WebhookCapture.REPLAY_HEADER, "true");
+            connection.setFixedLengthStreamingMode(record.getPayload().length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(record.getPayload());
+            }
+            final int status = connection.getResponseCode();
+            drain(connection, status);
+            roundTripLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+            statusCounts.computeIfAbsent(status, key -> new LongAdder()).increment();
+            final long serverMicros = parseServerTiming(connection.getHeaderField(SERVER_TIMING_HEADER));
+            if (serverMicros >= 0) {
+                serverLatency.record(serverMicros);
+            }
+        } catch (IOException e) {
+            ioErrors.increment();
+            if (firstError == null) {
+                firstError = record.getUri() + ": " + e;
+            }
+        }
+    }
+
+    /** Reads the rest of the response, so that the connection can be reused.
+     */
+    private static void drain(final HttpURLConnection connection, final int status) throws IOException {
+        final InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream()
+                : connection.getErrorStream();
+        if (in != null) {
+            final byte[] buf = new byte[1024];
+            while (in.read(buf) >= 0) {
+                continue;
+            }
+            in.close();
+        }
+    }
+
+    /** Gets the ingest duration from a Server-Timing header, e.g.
+     *  'ingest;dur=0.153'.
+     * @param header the header value; null if the response has none
+     * @return the duration in microseconds; -1 if the header has none
+     */
+    private static long parseServerTiming(final String header) {
+        if (header == null) {
+            return -1;
+        }
+        final int index = header.indexOf(SERVER_TIMING_DURATION);
+        if (index < 0) {
+            return -1;
+        }
+        int end = index + SERVER_TIMING_DURATION.length();
+        while (end < header.length() && (Character.isDigit(header.charAt(end)) || header.charAt(end) == '.')) {
+            end++;
+        }
+        try {
+            return Math.round(Double.parseDouble(header.substring(index + SERVER_TIMING_DURATION.length(), end))
+                    * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void report(final long count, final long durationNanos) {
+        final double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.println(String.format(Locale.ROOT, "Replayed %d callouts from %s to %s in %.1f s (%.1f/s), %s,"
+                + " concurrency %d", count, file, target, seconds, count / seconds,
+                rate > 0 ? "rate " + rate + "/s" : "speed " + speed + "x", concurrency));
+        final Map<Integer, Long> statuses = new TreeMap<>();
+        statusCounts.forEach((status, adder) -> statuses.put(status, adder.sum()));
+        System.out.println("Responses by status: " + statuses + ", I/O errors: " + ioErrors.sum());
+        if (firstError != null) {
+            System.out.println("First I/O error: " + firstError);
+        }
+        System.out.println("Server-side latency (ms): " + format(serverLatency));
+        System.out.println("Round-trip latency (ms):  " + format(roundTripLatency));
+        System.out.println("Schedule lag (ms):        " + format(scheduleLag));
+    }
+
+    private static String format(final LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "count %d, p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f",
+                histogram.getCount(), histogram.getPercentileMicros(50) / 1000.0,
+                histogram.getPercentileMicros(90) / 1000.0, histogram.getPercentileMicros(99) / 1000.0,
+                histogram.getPercentileMicros(99.9) / 1000.0, histogram.getMaxMicros() / 1000.0);
+    }
+}
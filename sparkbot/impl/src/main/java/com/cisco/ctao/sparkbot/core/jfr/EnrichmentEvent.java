@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for the enrichment of a webhook event: the lookup of the
+ *  details of the Spark object that the event refers to.
+ * @author jmedved
+ *
+ */
+@Name("com.cisco.ctao.sparkbot.Enrichment")
+@Label("Event Enrichment")
+@Category({"Sparkbot", "Webhooks"})
+@Description("The lookup of the Spark object that a webhook event refers to")
+@StackTrace(false)
+public final class EnrichmentEvent extends Event {
+    @Label("Resource")
+    String resource;
+
+    @Label("Object ID")
+    String objectId;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for the invocation of an application's webhook handler, raw
+ *  or typed.
+ * @author jmedved
+ *
+ */
+@Name("com.cisco.ctao.sparkbot.HandlerInvocation")
+@Label("Handler Invocation")
+@Category({"Sparkbot", "Webhooks"})
+@Description("The invocation of an application's webhook handler")
+@StackTrace(false)
+public final class HandlerInvocationEvent extends Event {
+    @Label("Handler")
+    String handler;
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Event")
+    String event;
+
+    @Label("Object ID")
+    String objectId;
+
+    @Label("Failed")
+    boolean failed;
+}
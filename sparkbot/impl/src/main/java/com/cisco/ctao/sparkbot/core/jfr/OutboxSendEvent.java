@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for the post of a message from the outbox.
+ * @author jmedved
+ *
+ */
+@Name("com.cisco.ctao.sparkbot.OutboxSend")
+@Label("Outbox Send")
+@Category({"Sparkbot", "Outbox"})
+@Description("The post of a message from the outbox")
+@StackTrace(false)
+public final class OutboxSendEvent extends Event {
+    @Label("Sequence Number")
+    long seq;
+
+    @Label("Idempotency Key")
+    String key;
+
+    @Label("Identity")
+    String identity;
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Delivered")
+    boolean delivered;
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.jfr;
+
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookEvent;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookEventData;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Creates and commits Sparkbot's JDK Flight Recorder events: webhook
+ *  receipt, enrichment, handler invocation and outbox send (the Spark SDK
+ *  adds its own request, page fetch and JSON decode events). An event that
+ *  is not enabled in a running recording costs a timestamp and is never
+ *  committed, so the events can stay on in production; their fields are
+ *  only filled in when the event is committed.
+ *
+ *  <p>The event classes are only loaded when the jdk.jfr package is
+ *  visible to the bundle, i.e. on a Java 8u262 or later runtime with
+ *  jdk.jfr added to org.osgi.framework.system.packages.extra; otherwise the
+ *  begin methods return null and the end methods do nothing.
+ * @author jmedved
+ *
+ */
+public final class SparkbotEvents {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkbotEvents.class);
+    private static final String TRACKING_ID_HEADER = "TrackingID";
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private SparkbotEvents() {
+    }
+
+    /** Checks whether flight recorder events are created.
+     * @return true if JFR is available to the bundle
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static WebhookReceiveEvent beginWebhookReceive() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final WebhookReceiveEvent event = new WebhookReceiveEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endWebhookReceive(final WebhookReceiveEvent event, final String servlet,
+            final HttpServletRequest request, final int statusCode) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.servlet = servlet;
+            event.path = request.getPathInfo();
+            event.trackingId = request.getHeader(TRACKING_ID_HEADER);
+            event.contentLength = request.getContentLength();
+            event.statusCode = statusCode;
+            event.commit();
+        }
+    }
+
+    public static EnrichmentEvent beginEnrichment() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final EnrichmentEvent event = new EnrichmentEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endEnrichment(final EnrichmentEvent event, final String resource, final String objectId,
+            final boolean success) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.resource = resource;
+            event.objectId = objectId;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    public static HandlerInvocationEvent beginHandlerInvocation() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final HandlerInvocationEvent event = new HandlerInvocationEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Ends the invocation of a raw handler.
+     */
+    public static void endHandlerInvocation(final HandlerInvocationEvent event, final String handler,
+            final WebhookEvent msg, final boolean failed) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            final WebhookEventData data = msg != null ? msg.getData() : null;
+            commit(event, handler, msg != null ? msg.getResource() : null, msg != null ? msg.getEvent() : null,
+                    data != null ? data.getId() : null, failed);
+        }
+    }
+
+    /** Ends the invocation of a typed handler.
+     */
+    public static void endHandlerInvocation(final HandlerInvocationEvent event, final String handler,
+            final String resource, final String eventType, final String objectId, final boolean failed) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            commit(event, handler, resource, eventType, objectId, failed);
+        }
+    }
+
+    public static OutboxSendEvent beginOutboxSend() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final OutboxSendEvent event = new OutboxSendEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endOutboxSend(final OutboxSendEvent event, final long seq, final String key,
+            final String identity, final String destination, final boolean delivered) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.seq = seq;
+            event.key = key;
+            event.identity = identity;
+            event.destination = destination;
+            event.delivered = delivered;
+            event.commit();
+        }
+    }
+
+    private static void commit(final HandlerInvocationEvent event, final String handler, final String resource,
+            final String eventType, final String objectId, final boolean failed) {
+        event.handler = handler;
+        event.resource = resource;
+        event.event = eventType;
+        event.objectId = objectId;
+        event.failed = failed;
+        event.commit();
+    }
+
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, SparkbotEvents.class.getClassLoader());
+            LOG.info("SparkbotEvents: flight recorder events available");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.info("SparkbotEvents: jdk.jfr not visible, flight recorder events off");
+            return false;
+        }
+    }
+}
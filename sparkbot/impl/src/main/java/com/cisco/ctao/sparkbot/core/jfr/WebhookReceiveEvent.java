@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for a webhook callout received from Spark, from the time the
+ *  request reaches the servlet until it is answered; handlers that run on
+ *  the Jetty thread are included.
+ * @author jmedved
+ *
+ */
+@Name("com.cisco.ctao.sparkbot.WebhookReceive")
+@Label("Webhook Receive")
+@Category({"Sparkbot", "Webhooks"})
+@Description("A webhook callout received from Spark")
+@StackTrace(false)
+public final class WebhookReceiveEvent extends Event {
+    @Label("Servlet")
+    String servlet;
+
+    @Label("Path")
+    String path;
+
+    @Label("Tracking ID")
+    String trackingId;
+
+    @Label("Content Length")
+    int contentLength;
+
+    @Label("Status Code")
+    int statusCode;
+}
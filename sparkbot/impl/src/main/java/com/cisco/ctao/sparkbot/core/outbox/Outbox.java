@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.outbox;
+
+import com.ciscospark.Message;
+import com.ciscospark.SparkException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** The durable outbox for outbound messages. A message posted through the
+ *  outbox is appended to a memory-mapped journal and the caller gets a
+ *  future that completes when Spark has accepted the message, so bursty
+ *  producers do not wait for Spark. Pending messages survive controller
+ *  restarts and Spark outages: the journal is replayed when the outbox is
+ *  opened, and messages are retried until they are delivered (at least
+ *  once). A message's idempotency key prevents duplicate posts when a
+ *  producer re-submits the message, for example after a restart.
+ *
+ *  <p>The outbox is opened when its parameters are configured and closed
+ *  when they are deleted.
+ *
+ * @author jmedved
+ *
+ */
+public final class Outbox {
+    private static final Logger LOG = LoggerFactory.getLogger(Outbox.class);
+    private static final String DEFAULT_DIRECTORY = "sparkbot/outbox";
+    private static final int DEFAULT_JOURNAL_SIZE = 16 * 1024 * 1024;
+    private static OutboxSender sender;
+
+    private Outbox() {
+        LOG.info("Outbox created.");
+    }
+
+    /** Handles setting of outbox parameters (on data change). Opens the
+     *  outbox, or re-opens it if the journal parameters changed.
+     * @param journalDirectory directory of the journal; null for the
+     *          default directory in the controller's data directory
+     * @param journalSize size of the journal, in bytes; null for default
+     */
+    public static synchronized void handleOutboxParmsChange(final String journalDirectory,
+            final Integer journalSize) {
+        final Path directory = journalDirectory != null ? Paths.get(journalDirectory)
+                : Paths.get(System.getProperty("karaf.data", "data"), DEFAULT_DIRECTORY);
+        final int size = journalSize != null ? journalSize : DEFAULT_JOURNAL_SIZE;
+        if (sender != null && sender.hasParms(directory, size)) {
+            return;
+        }
+        handleOutboxParmsDelete();
+        try {
+            sender = new OutboxSender(directory, size);
+            sender.start();
+            LOG.info("Outbox opened, journal {}, size {}", directory, size);
+        } catch (IOException e) {
+            LOG.error("Outbox: can not open journal {}", directory, e);
+        }
+    }
+
+    /** Handles the deletion of outbox parameters from the MD-SAL data
+     *  store - closes the outbox. Pending messages are kept in the journal.
+     */
+    public static synchronized void handleOutboxParmsDelete() {
+        if (sender != null) {
+            sender.close();
+            sender = null;
+        }
+    }
+
+    /** Checks whether the outbox is open.
+     * @return true if messages can be posted through the outbox
+     */
+    public static synchronized boolean isOpen() {
+        return sender != null;
+    }
+
+    /** Gets the number of messages that have not yet been delivered.
+     * @return the number of pending messages; 0 if the outbox is closed
+     */
+    public static synchronized int getPendingCount() {
+        return sender != null ? sender.getPendingCount() : 0;
+    }
+
+    /** Posts a plain text message to a room through the outbox.
+     * @param roomId Room to which to post the message
+     * @param text Text of the message
+     * @return the future message, as created by Spark
+     */
+    public static ListenableFuture<Message> enqueue(final String roomId, final String text) {
+        final Message message = new Message();
+        message.setRoomId(roomId);
+        message.setText(text);
+        return enqueue(null, null, message);
+    }
+
+    /** Posts a message through the outbox. The message is in the journal
+     *  when this method returns.
+     * @param idempotencyKey the message's idempotency key; null to generate
+     *          a unique key
+     * @param identity name of the identity on whose behalf the message is
+     *          posted; null for the default identity
+     * @param message the message
+     * @return the future message, as created by Spark; completes with null
+     *          if a message with the same key was already delivered
+     * @throws SparkException if the outbox is closed or full
+     */
+    public static ListenableFuture<Message> enqueue(final String idempotencyKey, final String identity,
+            final Message message) {
+        Preconditions.checkArgument(message != null, "Missing message");
+        final OutboxSender currentSender;
+        synchronized (Outbox.class) {
+            currentSender = sender;
+        }
+        if (currentSender == null) {
+            throw new SparkException("Outbox not configured");
+        }
+        return currentSender.enqueue(idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString(),
+                identity, message);
+    }
+}
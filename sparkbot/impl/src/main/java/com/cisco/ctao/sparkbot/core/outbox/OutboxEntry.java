@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.outbox;
+
+import com.ciscospark.Message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+
+/** A message that is pending in the outbox, together with its journal
+ *  sequence number, its idempotency key and the identity on whose behalf
+ *  it is posted.
+ * @author jmedved
+ *
+ */
+final class OutboxEntry {
+    private final long seq;
+    private final String key;
+    private final String identity;
+    private final String roomId;
+    private final String toPersonId;
+    private final String toPersonEmail;
+    private final String text;
+    private final String markdown;
+    private final URI[] files;
+
+    OutboxEntry(final long seq, final String key, final String identity, final Message message) {
+        this(seq, key, identity, message.getRoomId(), message.getPersonId(), message.getPersonEmail(),
+                message.getText(), message.getMarkdown(), message.getFiles());
+    }
+
+    private OutboxEntry(final long seq, final String key, final String identity, final String roomId,
+            final String toPersonId, final String toPersonEmail, final String text, final String markdown,
+            final URI[] files) {
+        this.seq = seq;
+        this.key = key;
+        this.identity = identity;
+        this.roomId = roomId;
+        this.toPersonId = toPersonId;
+        this.toPersonEmail = toPersonEmail;
+        this.text = text;
+        this.markdown = markdown;
+        this.files = files;
+    }
+
+    long getSeq() {
+        return seq;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getIdentity() {
+        return identity;
+    }
+
+    /** Gets the destination of the message (its room or its recipient).
+     *  Messages to the same destination are posted in outbox order.
+     * @return the destination
+     */
+    String getDestination() {
+        return roomId != null ? roomId : (toPersonId != null ? toPersonId : toPersonEmail);
+    }
+
+    /** Builds the Spark message to be posted.
+     * @return a new Spark message
+     */
+    Message toMessage() {
+        final Message message = new Message();
+        message.setRoomId(roomId);
+        message.setPersonId(toPersonId);
+        message.setPersonEmail(toPersonEmail);
+        message.setText(text);
+        message.setMarkdown(markdown);
+        if (files != null) {
+            message.setFiles(files);
+        }
+        return message;
+    }
+
+    /** Writes the entry's fields (except for the sequence number and the
+     *  key, which are part of every journal record).
+     * @param out the journal record
+     * @throws IOException if the entry can not be written
+     */
+    void write(final DataOutput out) throws IOException {
+        writeString(out, identity);
+        writeString(out, roomId);
+        writeString(out, toPersonId);
+        writeString(out, toPersonEmail);
+        writeString(out, text);
+        writeString(out, markdown);
+        out.writeInt(files != null ? files.length : -1);
+        if (files != null) {
+            for (final URI file : files) {
+                out.writeUTF(file.toString());
+            }
+        }
+    }
+
+    /** Reads an entry written by write().
+     * @param seq the entry's sequence number
+     * @param key the entry's idempotency key
+     * @param in the journal record
+     * @return the entry
+     * @throws IOException if the entry can not be read
+     */
+    static OutboxEntry read(final long seq, final String key, final DataInput in) throws IOException {
+        final String identity = readString(in);
+        final String roomId = readString(in);
+        final String toPersonId = readString(in);
+        final String toPersonEmail = readString(in);
+        final String text = readString(in);
+        final String markdown = readString(in);
+        final int fileCount = in.readInt();
+        URI[] files = null;
+        if (fileCount >= 0) {
+            files = new URI[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                files[i] = URI.create(in.readUTF());
+            }
+        }
+        return new OutboxEntry(seq, key, identity, roomId, toPersonId, toPersonEmail, text, markdown, files);
+    }
+
+    static void writeString(final DataOutput out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxEntry [seq=" + seq + ", key=" + key + ", identity=" + identity
+                + ", destination=" + getDestination() + "]";
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.outbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** The outbox journal: an append-only, memory-mapped file of journal
+ *  records. An ENQUEUE record holds a pending message; an ACK record marks
+ *  a message as delivered (or given up) and remembers its idempotency key.
+ *  Each record is [length][crc32][type][seq][key][entry]; the length is
+ *  written last and a zero length marks the end of the journal, so a
+ *  record torn by a crash is discarded on replay. The journal is compacted
+ *  by writing the pending messages and the remembered keys to a new file
+ *  that atomically replaces the journal.
+ * @author jmedved
+ *
+ */
+final class OutboxJournal implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxJournal.class);
+    private static final String JOURNAL_FILE = "outbox.journal";
+    private static final String COMPACTED_FILE = "outbox.journal.compacted";
+    private static final byte ENQUEUE = 1;
+    private static final byte ACK = 2;
+    private static final int RECORD_HEADER = 8;
+
+    private final Path journalPath;
+    private final Path compactedPath;
+    private final int capacity;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long nextSeq = 1;
+
+    /** Opens the journal, creating it if it does not exist, and replays it.
+     * @param directory directory of the journal file
+     * @param capacity size of the journal file, in bytes
+     * @param pending filled with the pending messages, by sequence number
+     * @param deliveredKeys filled with the keys of delivered messages
+     * @throws IOException if the journal can not be opened
+     */
+    OutboxJournal(final Path directory, final int capacity, final Map<Long, OutboxEntry> pending,
+            final Collection<String> deliveredKeys) throws IOException {
+        Files.createDirectories(directory);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.compactedPath = directory.resolve(COMPACTED_FILE);
+        this.capacity = capacity;
+        map();
+        replay(pending, deliveredKeys);
+    }
+
+    long nextSeq() {
+        return nextSeq++;
+    }
+
+    /** Appends an ENQUEUE record for a message.
+     * @param entry the message
+     * @return false if the journal is full
+     * @throws IOException if the record can not be encoded
+     */
+    boolean append(final OutboxEntry entry) throws IOException {
+        return put(buffer, encode(ENQUEUE, entry.getSeq(), entry.getKey(), entry));
+    }
+
+    /** Appends an ACK record for a message.
+     * @param entry the delivered message
+     * @return false if the journal is full
+     * @throws IOException if the record can not be encoded
+     */
+    boolean appendAck(final OutboxEntry entry) throws IOException {
+        return put(buffer, encode(ACK, entry.getSeq(), entry.getKey(), null));
+    }
+
+    /** Forces the appended records to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /** Checks whether more than half of the journal is used.
+     * @return true if the journal should be compacted
+     */
+    boolean needsCompaction() {
+        return buffer.position() > capacity / 2;
+    }
+
+    /** Replaces the journal with a journal that only holds the pending
+     *  messages and the keys of the delivered messages.
+     * @param pending the pending messages
+     * @param deliveredKeys the keys of the delivered messages
+     * @throws IOException if the journal can not be compacted or the
+     *          pending messages do not fit into it
+     */
+    void compact(final Collection<OutboxEntry> pending, final Collection<String> deliveredKeys)
+            throws IOException {
+        Files.deleteIfExists(compactedPath);
+        try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer compactedBuffer = compacted.map(MapMode.READ_WRITE, 0, capacity);
+            for (final String key : deliveredKeys) {
+                put(compactedBuffer, encode(ACK, 0, key, null));
+            }
+            for (final OutboxEntry entry : pending) {
+                if (!put(compactedBuffer, encode(ENQUEUE, entry.getSeq(), entry.getKey(), entry))) {
+                    throw new IOException("Outbox journal full, " + pending.size() + " messages pending");
+                }
+            }
+            compactedBuffer.force();
+        } catch (IOException e) {
+            Files.deleteIfExists(compactedPath);
+            throw e;
+        }
+        final int oldPosition = buffer.position();
+        close();
+        Files.move(compactedPath, journalPath, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        map();
+        skipRecords();
+        LOG.info("compact: journal compacted from {} to {} bytes", oldPosition, buffer.position());
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void replay(final Map<Long, OutboxEntry> pending, final Collection<String> deliveredKeys)
+            throws IOException {
+        byte[] body;
+        while ((body = next(buffer)) != null) {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            final byte type = in.readByte();
+            final long seq = in.readLong();
+            final String key = in.readUTF();
+            if (type == ENQUEUE) {
+                pending.put(seq, OutboxEntry.read(seq, key, in));
+            } else {
+                pending.remove(seq);
+                deliveredKeys.add(key);
+            }
+            nextSeq = Math.max(nextSeq, seq + 1);
+        }
+        truncateTornRecord();
+        LOG.info("replay: {} pending messages, {} delivered keys, {} bytes used",
+                pending.size(), deliveredKeys.size(), buffer.position());
+    }
+
+    private void skipRecords() {
+        while (next(buffer) != null) {
+            // Positions the buffer after the last record
+        }
+        truncateTornRecord();
+    }
+
+    /** Zeroes the rest of the journal if replay stopped at a torn record,
+     *  so that the remains of the record are not mistaken for records
+     *  appended later.
+     */
+    private void truncateTornRecord() {
+        final int end = buffer.position();
+        if (buffer.remaining() >= Integer.BYTES && buffer.getInt(end) != 0) {
+            LOG.warn("replay: discarding torn journal record at {}", end);
+            for (int i = end; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private static byte[] encode(final byte type, final long seq, final String key, final OutboxEntry entry)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeLong(seq);
+        out.writeUTF(key);
+        if (entry != null) {
+            entry.write(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static boolean put(final MappedByteBuffer buf, final byte[] body) {
+        final int pos = buf.position();
+        // Leave room for the zero length that terminates the journal
+        if (buf.remaining() < RECORD_HEADER + body.length + Integer.BYTES) {
+            return false;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        buf.position(pos + RECORD_HEADER);
+        buf.put(body);
+        buf.putInt(pos + Integer.BYTES, (int) crc.getValue());
+        buf.putInt(pos, body.length);
+        return true;
+    }
+
+    /** Reads the record at the buffer's position and advances the
+     *  position past it.
+     * @param buf the journal buffer
+     * @return the record's body; null at the end of the journal or at a
+     *          torn record
+     */
+    private static byte[] next(final MappedByteBuffer buf) {
+        final int pos = buf.position();
+        if (buf.remaining() < RECORD_HEADER) {
+            return null;
+        }
+        final int length = buf.getInt(pos);
+        if (length <= 0 || length > buf.remaining() - RECORD_HEADER) {
+            return null;
+        }
+        final byte[] body = new byte[length];
+        buf.position(pos + RECORD_HEADER);
+        buf.get(body);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buf.getInt(pos + Integer.BYTES)) {
+            buf.position(pos);
+            return null;
+        }
+        return body;
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.outbox;
+
+import com.cisco.ctao.sparkbot.core.Messages;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.cisco.ctao.sparkbot.core.SparkExecution;
+import com.cisco.ctao.sparkbot.core.jfr.OutboxSendEvent;
+import com.cisco.ctao.sparkbot.core.jfr.SparkbotEvents;
+import com.ciscospark.Message;
+import com.ciscospark.SparkException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Drains the outbox journal. The sender thread takes the oldest pending
+ *  messages in batches, forces them to the journal (so that one msync
+ *  covers all messages enqueued since the last batch) and posts them;
+ *  messages to different destinations are posted concurrently, messages
+ *  to the same destination in order. Delivered messages are acknowledged
+ *  in the journal and to the caller. Messages that fail with a transient
+ *  error (I/O errors, 429 or 5xx responses, missing credentials) are
+ *  retried with an exponential backoff of their destination; while a
+ *  destination backs off, batches are made of the messages to other
+ *  destinations. A message is given up (acknowledged, and failed to the
+ *  caller) when it is rejected by Spark or still fails after MAX_ATTEMPTS
+ *  attempts; the attempts are counted from the time the journal was
+ *  opened.
+ * @author jmedved
+ *
+ */
+final class OutboxSender implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxSender.class);
+    private static final int BATCH_SIZE = 32;
+    private static final int MAX_DELIVERED_KEYS = 4096;
+    private static final long MIN_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 60000;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long CLOSE_TIMEOUT = 5000;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final Path directory;
+    private final int journalSize;
+    private final OutboxJournal journal;
+    private final Map<Long, OutboxEntry> pending = new LinkedHashMap<>();
+    private final Map<String, Long> pendingKeys = new HashMap<>();
+    private final Set<String> deliveredKeys = new LinkedHashSet<>();
+    private final Map<Long, SettableFuture<Message>> futures = new HashMap<>();
+    private final Map<Long, Integer> attempts = new HashMap<>();
+    private final Map<String, Backoff> backoffs = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean closed;
+
+    /** Constructor. Opens and replays the journal.
+     * @param directory directory of the journal
+     * @param journalSize size of the journal, in bytes
+     * @throws IOException if the journal can not be opened
+     */
+    OutboxSender(final Path directory, final int journalSize) throws IOException {
+        this.directory = directory;
+        this.journalSize = journalSize;
+        this.journal = new OutboxJournal(directory, journalSize, pending, deliveredKeys);
+        for (final OutboxEntry entry : pending.values()) {
+            pendingKeys.put(entry.getKey(), entry.getSeq());
+        }
+        trimDeliveredKeys();
+        this.thread = new Thread(this::run, "sparkbot-outbox");
+        this.thread.setDaemon(true);
+    }
+
+    boolean hasParms(final Path otherDirectory, final int otherJournalSize) {
+        return directory.equals(otherDirectory) && journalSize == otherJournalSize;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Adds a message to the outbox.
+     * @param key the message's idempotency key
+     * @param identity the identity on whose behalf the message is posted
+     * @param message the message
+     * @return the future posted message; null if a message with the same
+     *          key was already delivered
+     */
+    synchronized ListenableFuture<Message> enqueue(final String key, final String identity,
+            final Message message) {
+        if (!running) {
+            throw new SparkException("Outbox closed");
+        }
+        final Long pendingSeq = pendingKeys.get(key);
+        if (pendingSeq != null) {
+            LOG.debug("enqueue: message '{}' already pending", key);
+            return futures.computeIfAbsent(pendingSeq, seq -> SettableFuture.create());
+        }
+        if (deliveredKeys.contains(key)) {
+            LOG.info("enqueue: message '{}' already delivered", key);
+            return Futures.immediateFuture(null);
+        }
+        final OutboxEntry entry = new OutboxEntry(journal.nextSeq(), key, identity, message);
+        try {
+            if (!journal.append(entry)) {
+                compact();
+                if (!journal.append(entry)) {
+                    throw new SparkException("Outbox journal full");
+                }
+            }
+        } catch (IOException e) {
+            throw new SparkException("Outbox journal write failed", e);
+        }
+        pending.put(entry.getSeq(), entry);
+        pendingKeys.put(key, entry.getSeq());
+        final SettableFuture<Message> future = SettableFuture.create();
+        futures.put(entry.getSeq(), future);
+        notifyAll();
+        return future;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            // Posts in progress are completed; their messages are not
+            // acknowledged if the sender does not stop in time, and are
+            // posted again when the journal is replayed
+            thread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+            for (final SettableFuture<Message> future : futures.values()) {
+                future.setException(new SparkException("Outbox closed, message kept in the journal"));
+            }
+            futures.clear();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.error("close: failed to close the outbox journal", e);
+            }
+        }
+        LOG.info("close: outbox closed, {} messages pending", pending.size());
+    }
+
+    private void run() {
+        LOG.info("run: outbox sender started, {} messages pending", getPendingCount());
+        while (running) {
+            final List<OutboxEntry> batch = new ArrayList<>();
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                try {
+                    long sendTime;
+                    while (running && (sendTime = nextSendTime(now)) > now) {
+                        wait(sendTime == Long.MAX_VALUE ? 0 : sendTime - now);
+                        now = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (!running) {
+                    return;
+                }
+                for (final OutboxEntry entry : pending.values()) {
+                    if (!isBackingOff(entry.getDestination(), now)) {
+                        batch.add(entry);
+                        if (batch.size() == BATCH_SIZE) {
+                            break;
+                        }
+                    }
+                }
+                journal.force();
+            }
+            final List<Outcome> outcomes = post(batch);
+            synchronized (this) {
+                complete(outcomes);
+            }
+        }
+    }
+
+    /** Gets the time at which the next message can be posted: now if a
+     *  pending message's destination is not backing off, otherwise the end
+     *  of the shortest backoff.
+     * @param now the current time
+     * @return the time; Long.MAX_VALUE if no message is pending
+     */
+    private long nextSendTime(final long now) {
+        long sendTime = Long.MAX_VALUE;
+        for (final OutboxEntry entry : pending.values()) {
+            final Backoff destinationBackoff = backoffs.get(entry.getDestination());
+            if (destinationBackoff == null || destinationBackoff.retryTime <= now) {
+                return now;
+            }
+            sendTime = Math.min(sendTime, destinationBackoff.retryTime);
+        }
+        return sendTime;
+    }
+
+    private boolean isBackingOff(final String destination, final long now) {
+        final Backoff destinationBackoff = backoffs.get(destination);
+        return destinationBackoff != null && destinationBackoff.retryTime > now;
+    }
+
+    /** Posts a batch of messages, one task per destination.
+     * @param batch the messages
+     * @return the outcomes of the messages for which a post was attempted
+     */
+    private List<Outcome> post(final List<OutboxEntry> batch) {
+        final Map<String, List<OutboxEntry>> byDestination = new LinkedHashMap<>();
+        for (final OutboxEntry entry : batch) {
+            byDestination.computeIfAbsent(entry.getDestination(), dest -> new ArrayList<>()).add(entry);
+        }
+        final List<ListenableFuture<List<Outcome>>> tasks = new ArrayList<>();
+        final List<Outcome> outcomes = new ArrayList<>();
+        for (final List<OutboxEntry> entries : byDestination.values()) {
+            try {
+                tasks.add(SparkExecution.requestExecutor(Lane.NORMAL).submit(() -> postInOrder(entries)));
+            } catch (RejectedExecutionException e) {
+                outcomes.add(new Outcome(entries.get(0), null, new SparkException("Request rejected", e)));
+            }
+        }
+        try {
+            for (final List<Outcome> taskOutcomes : Futures.allAsList(tasks).get()) {
+                outcomes.addAll(taskOutcomes);
+            }
+        } catch (ExecutionException e) {
+            LOG.error("post: unexpected failure", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return outcomes;
+    }
+
+    /** Posts messages to one destination in order, stopping at the first
+     *  message that should be retried.
+     * @param entries the messages
+     * @return the outcomes of the attempted posts
+     */
+    private List<Outcome> postInOrder(final List<OutboxEntry> entries) {
+        final List<Outcome> outcomes = new ArrayList<>();
+        for (final OutboxEntry entry : entries) {
+            final OutboxSendEvent event = SparkbotEvents.beginOutboxSend();
+            boolean delivered = false;
+            try {
+                final Message posted = Messages.api().forIdentity(entry.getIdentity()).create(entry.toMessage());
+                outcomes.add(new Outcome(entry, posted, null));
+                delivered = true;
+            } catch (RuntimeException e) {
+                final Outcome outcome = new Outcome(entry, null, e);
+                outcomes.add(outcome);
+                if (outcome.isRetryable()) {
+                    break;
+                }
+            } finally {
+                SparkbotEvents.endOutboxSend(event, entry.getSeq(), entry.getKey(), entry.getIdentity(),
+                        entry.getDestination(), delivered);
+            }
+        }
+        return outcomes;
+    }
+
+    private void complete(final List<Outcome> outcomes) {
+        if (closed) {
+            LOG.warn("complete: outbox closed, {} posts not acknowledged", outcomes.size());
+            return;
+        }
+        final Set<String> delivered = new HashSet<>();
+        final Set<String> failed = new HashSet<>();
+        try {
+            for (final Outcome outcome : outcomes) {
+                final OutboxEntry entry = outcome.entry;
+                boolean givenUp = false;
+                if (outcome.error != null && outcome.isRetryable()) {
+                    failed.add(entry.getDestination());
+                    final int attempt = attempts.merge(entry.getSeq(), 1, Integer::sum);
+                    if (attempt < MAX_ATTEMPTS) {
+                        LOG.warn("complete: message {} not delivered, will retry (attempt {} of {}): {}", entry,
+                                attempt, MAX_ATTEMPTS, outcome.error.getMessage());
+                        continue;
+                    }
+                    givenUp = true;
+                } else if (outcome.error == null) {
+                    delivered.add(entry.getDestination());
+                }
+                attempts.remove(entry.getSeq());
+                pending.remove(entry.getSeq());
+                pendingKeys.remove(entry.getKey());
+                deliveredKeys.add(entry.getKey());
+                if (!journal.appendAck(entry)) {
+                    compact();
+                }
+                final SettableFuture<Message> future = futures.remove(entry.getSeq());
+                if (outcome.error != null) {
+                    if (givenUp) {
+                        LOG.error("complete: message {} given up after {} attempts", entry, MAX_ATTEMPTS,
+                                outcome.error);
+                    } else {
+                        LOG.error("complete: message {} rejected by Spark", entry, outcome.error);
+                    }
+                    if (future != null) {
+                        future.setException(outcome.error);
+                    }
+                } else if (future != null) {
+                    future.set(outcome.posted);
+                }
+            }
+            trimDeliveredKeys();
+            if (journal.needsCompaction()) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.error("complete: outbox journal update failed, messages may be posted again", e);
+        }
+        updateBackoffs(delivered, failed);
+    }
+
+    /** Backs off the destinations whose posts failed, doubling their
+     *  backoff on every failure, and ends the backoff of the destinations
+     *  that were posted to.
+     * @param delivered the destinations of the delivered messages
+     * @param failed the destinations of the messages that failed with a
+     *          transient error
+     */
+    private void updateBackoffs(final Set<String> delivered, final Set<String> failed) {
+        final long now = System.currentTimeMillis();
+        for (final String destination : failed) {
+            final Backoff destinationBackoff = backoffs.computeIfAbsent(destination, dest -> new Backoff());
+            destinationBackoff.delay = Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, destinationBackoff.delay * 2));
+            destinationBackoff.retryTime = now + destinationBackoff.delay;
+        }
+        for (final String destination : delivered) {
+            if (!failed.contains(destination)) {
+                backoffs.remove(destination);
+            }
+        }
+        if (!backoffs.isEmpty()) {
+            // Forget the backoffs of destinations that have nothing left to post
+            final Set<String> destinations = new HashSet<>();
+            for (final OutboxEntry entry : pending.values()) {
+                destinations.add(entry.getDestination());
+            }
+            backoffs.keySet().retainAll(destinations);
+        }
+    }
+
+    private void compact() throws IOException {
+        journal.compact(pending.values(), deliveredKeys);
+    }
+
+    private void trimDeliveredKeys() {
+        final Iterator<String> it = deliveredKeys.iterator();
+        for (int excess = deliveredKeys.size() - MAX_DELIVERED_KEYS; excess > 0; excess--) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /** The backoff of a destination whose posts failed.
+     */
+    private static final class Backoff {
+        private long delay;
+        private long retryTime;
+    }
+
+    /** The outcome of a post.
+     */
+    private static final class Outcome {
+        private final OutboxEntry entry;
+        private final Message posted;
+        private final RuntimeException error;
+
+        private Outcome(final OutboxEntry entry, final Message posted, final RuntimeException error) {
+            this.entry = entry;
+            this.posted = posted;
+            this.error = error;
+        }
+
+        /** Checks whether a failed post should be retried: all failures
+         *  except for requests rejected by Spark (4xx other than 429) and
+         *  invalid messages are transient.
+         * @return true if the post should be retried
+         */
+        private boolean isRetryable() {
+            if (!(error instanceof SparkException)) {
+                return false;
+            }
+            final int code = ((SparkException) error).getResponseCode();
+            return code == 0 || code == TOO_MANY_REQUESTS || code >= 500;
+        }
+    }
+}
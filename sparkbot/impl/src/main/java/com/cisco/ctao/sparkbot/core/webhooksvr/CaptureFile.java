@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** The format of webhook capture files. A capture file starts with a
+ *  magic number and the format version, followed by one frame per
+ *  captured callout. A frame is the length of the compressed record and
+ *  the record, deflated on its own: the time at which the callout was
+ *  received, its request URI, its headers and its raw payload.
+ *
+ *  <p>Because every frame can be decoded on its own, a capture file can be
+ *  appended to by later capture sessions. A frame that was cut short,
+ *  e.g. because the controller crashed, is removed when the file is
+ *  opened for capture, and the reader stops at it.
+ * @author jmedved
+ *
+ */
+public final class CaptureFile {
+    static final byte[] MAGIC = { 'S', 'B', 'W', 'C', 1 };
+    private static final int FRAME_HEADER_SIZE = 4;
+
+    private CaptureFile() {
+    }
+
+    /** Prepares a capture file for appending: writes the file header to an
+     *  empty file, or removes a frame that was cut short from the end of
+     *  an existing file.
+     * @param channel the capture file, opened for reading and writing
+     * @throws IOException if the file could not be read or written, or is
+     *          not a capture file
+     */
+    static void prepareForAppend(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size == 0) {
+            channel.write(ByteBuffer.wrap(MAGIC), 0);
+            channel.position(MAGIC.length);
+            return;
+        }
+        final ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        channel.read(magic, 0);
+        if (!Arrays.equals(magic.array(), MAGIC)) {
+            throw new IOException("Not a capture file or an unsupported version");
+        }
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        long position = MAGIC.length;
+        while (position + FRAME_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            final int length = header.getInt(0);
+            final long next = position + FRAME_HEADER_SIZE + length;
+            if (length < 0 || next > size) {
+                break;
+            }
+            position = next;
+        }
+        channel.truncate(position);
+        channel.position(position);
+    }
+
+    /** Encodes a record as a frame.
+     * @param record the record
+     * @param deflater the deflater used to compress the record; reset before use
+     * @return the frame
+     * @throws UTFDataFormatException if the URI or a header name or value is
+     *          longer than 65535 bytes when encoded
+     * @throws IOException if the record could not be encoded
+     */
+    static ByteBuffer encode(final Record record, final Deflater deflater) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.payload.length + 256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(record.timestampMicros);
+        out.writeUTF(record.uri);
+        out.writeShort(record.headers.size());
+        for (Map.Entry<String, String> header : record.headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        out.writeInt(record.payload.length);
+        out.write(record.payload);
+
+        final byte[] input = bytes.toByteArray();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 2 + 64);
+        final byte[] buf = new byte[4096];
+        while (!deflater.finished()) {
+            compressed.write(buf, 0, deflater.deflate(buf));
+        }
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + compressed.size());
+        frame.putInt(compressed.size()).put(compressed.toByteArray()).flip();
+        return frame;
+    }
+
+    /** A captured webhook callout.
+     */
+    public static final class Record {
+        private final long timestampMicros;
+        private final String uri;
+        private final Map<String, String> headers;
+        private final byte[] payload;
+
+        Record(final long timestampMicros, final String uri, final Map<String, String> headers,
+                final byte[] payload) {
+            this.timestampMicros = timestampMicros;
+            this.uri = uri;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.payload = payload;
+        }
+
+        /** Gets the time at which the callout was received.
+         * @return the time, in microseconds since the epoch
+         */
+        public long getTimestampMicros() {
+            return timestampMicros;
+        }
+
+        /** Gets the URI of the callout, relative to the webhook server.
+         * @return the request URI, including the query string if any
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /** Gets the callout's HTTP headers.
+         * @return the headers, in the order received
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /** Reads the records of a capture file, in the order captured.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+
+        /** Opens a capture file.
+         * @param path the path of the capture file
+         * @throws IOException if the file could not be opened or is not a capture file
+         */
+        public Reader(final String path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+            final byte[] magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+            } catch (EOFException e) {
+                close();
+                throw new IOException("Not a capture file: " + path, e);
+            }
+            if (!Arrays.equals(magic, MAGIC)) {
+                close();
+                throw new IOException("Not a capture file or an unsupported version: " + path);
+            }
+        }
+
+        /** Reads the next record.
+         * @return the record; null at the end of the file
+         * @throws IOException if the file could not be read or is corrupt
+         */
+        public Record next() throws IOException {
+            final byte[] compressed;
+            try {
+                final int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Corrupt capture file, frame length " + length);
+                }
+                compressed = new byte[length];
+                in.readFully(compressed);
+            } catch (EOFException e) {
+                // The end of the file, or a frame that was cut short
+                return null;
+            }
+            return decode(compressed);
+        }
+
+        private Record decode(final byte[] compressed) throws IOException {
+            inflater.reset();
+            inflater.setInput(compressed);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.length * 3);
+            final byte[] buf = new byte[4096];
+            try {
+                while (!inflater.finished()) {
+                    final int count = inflater.inflate(buf);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Corrupt capture file, truncated record");
+                    }
+                    bytes.write(buf, 0, count);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt capture file", e);
+            }
+
+            final DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            final long timestampMicros = record.readLong();
+            final String uri = record.readUTF();
+            final int headerCount = record.readUnsignedShort();
+            final Map<String, String> headers = new LinkedHashMap<>();
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(record.readUTF(), record.readUTF());
+            }
+            final byte[] payload = new byte[record.readInt()];
+            record.readFully(payload);
+            return new Record(timestampMicros, uri, headers, payload);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+}
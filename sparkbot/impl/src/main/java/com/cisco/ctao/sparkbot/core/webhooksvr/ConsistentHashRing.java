@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/** Immutable consistent hash ring that maps keys (room ids) to cluster
+ *  members. Each member is placed on the ring at several points, so that
+ *  when a member joins or leaves only the keys in its ring segments move to
+ *  other members.
+ * @author jmedved
+ *
+ */
+final class ConsistentHashRing {
+    private static final int POINTS_PER_MEMBER = 128;
+    @SuppressWarnings("deprecation")
+    private static final HashFunction HASH = Hashing.murmur3_32();
+    private final NavigableMap<Integer, String> ring = new TreeMap<>();
+
+    /** Constructor.
+     * @param members the members to be placed on the ring
+     */
+    ConsistentHashRing(final Collection<String> members) {
+        for (String member : members) {
+            for (int i = 0; i < POINTS_PER_MEMBER; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /** Finds the member that owns a key.
+     * @param key the key
+     * @return the owner member, or null if the ring is empty
+     */
+    String getOwner(final String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        final Entry<Integer, String> entry = ring.ceilingEntry(hash(key));
+        return (entry != null) ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static int hash(final String value) {
+        return HASH.hashString(value, StandardCharsets.UTF_8).asInt();
+    }
+}
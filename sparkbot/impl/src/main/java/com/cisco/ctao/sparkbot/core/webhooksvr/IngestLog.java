@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Controls the per-event logging of the webhook pipeline. By default
+ *  every event is logged. In sampled mode each category of per-event
+ *  messages is limited to a number of messages per second, so that the
+ *  cost of logging stays constant under load; the number of suppressed
+ *  messages is logged once per second and category.
+ *  Independently of the mode, the events of selected handlers can be
+ *  logged in full.
+ *
+ *  <p>Callers check the logger's level and shouldLog() before they build
+ *  any message arguments, so a suppressed message costs neither string
+ *  building nor an allocation.
+ * @author jmedved
+ *
+ */
+public final class IngestLog {
+    private static final Logger LOG = LoggerFactory.getLogger(IngestLog.class);
+    private static final long DEFAULT_MAX_EVENTS_PER_SECOND = 10;
+
+    private static volatile Limiter[] limiters;
+    private static volatile Set<String> debugHandlers = Collections.emptySet();
+
+    /** The categories of per-event messages. */
+    public enum Category {
+        /** Receipt of a webhook callout and its payload. */
+        RECEIVE,
+        /** The callout's HTTP headers. */
+        HEADER,
+        /** Dispatch of an event to the handlers. */
+        DISPATCH,
+        /** Fetching the details of an event's object. */
+        ENRICHMENT,
+        /** Events that are rejected or cannot be processed. */
+        ERROR
+    }
+
+    private IngestLog() {
+    }
+
+    /** Handles the creation or update of the logging parameters in the
+     *  MD-SAL data store.
+     * @param sampling true or null to turn sampled logging on, false to log every event
+     * @param newMaxEventsPerSecond max messages per second in each category that has no limit of its own,
+     *          null for the default
+     * @param categoryLimits max messages per second of individual categories
+     * @param newDebugHandlers names of the handlers whose events are logged in full
+     */
+    public static void handleLoggingParmsChange(final Boolean sampling, final Long newMaxEventsPerSecond,
+            final Map<Category, Long> categoryLimits, final Set<String> newDebugHandlers) {
+        final long defaultLimit = newMaxEventsPerSecond != null ? newMaxEventsPerSecond
+                : DEFAULT_MAX_EVENTS_PER_SECOND;
+        final Map<Category, Long> limits = new EnumMap<>(Category.class);
+        final Limiter[] newLimiters = new Limiter[Category.values().length];
+        for (Category category : Category.values()) {
+            final Long limit = categoryLimits.get(category);
+            limits.put(category, limit != null ? limit : defaultLimit);
+            newLimiters[category.ordinal()] = new Limiter(category, limits.get(category));
+        }
+        debugHandlers = Collections.unmodifiableSet(new HashSet<>(newDebugHandlers));
+        if (sampling == null || sampling) {
+            limiters = newLimiters;
+            LOG.info("IngestLog: sampled logging, max events per second {}, debug handlers {}",
+                    limits, debugHandlers);
+        } else {
+            limiters = null;
+            LOG.info("IngestLog: sampling off, debug handlers {}", debugHandlers);
+        }
+    }
+
+    /** Handles the deletion of the logging parameters from the MD-SAL data
+     *  store - every event is logged, no handler is debugged.
+     */
+    public static void handleLoggingParmsDelete() {
+        limiters = null;
+        debugHandlers = Collections.emptySet();
+        LOG.info("IngestLog: sampling off");
+    }
+
+    /** Checks whether sampled logging is on.
+     * @return true if per-event messages are rate limited
+     */
+    public static boolean isSampled() {
+        return limiters != null;
+    }
+
+    /** Checks whether a per-event message may be logged now. Must only be
+     *  called when the message's level is enabled, so that messages that
+     *  would not be logged anyway do not use up the category's budget.
+     * @param category the message's category
+     * @return true if the message should be logged
+     */
+    static boolean shouldLog(final Category category) {
+        final Limiter[] current = limiters;
+        return current == null || current[category.ordinal()].tryAcquire();
+    }
+
+    /** Checks whether the events of a handler are logged in full.
+     * @param handler the handler name (see RawEventHandler.getName()) or,
+     *          for a typed handler, its class name
+     * @return true if the handler's events are logged
+     */
+    static boolean isDebugHandler(final String handler) {
+        final Set<String> current = debugHandlers;
+        return !current.isEmpty() && current.contains(handler);
+    }
+
+    /** Limits the messages of one category to a number per second.
+     */
+    private static final class Limiter {
+        private final Category category;
+        private final long maxPerSecond;
+        private final AtomicLong second = new AtomicLong(-1);
+        private final AtomicLong count = new AtomicLong();
+        private final LongAdder suppressed = new LongAdder();
+
+        Limiter(final Category category, final long maxPerSecond) {
+            this.category = category;
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        boolean tryAcquire() {
+            final long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            final long current = second.get();
+            if (current != now && second.compareAndSet(current, now)) {
+                count.set(0);
+                final long dropped = suppressed.sumThenReset();
+                if (dropped > 0) {
+                    LOG.info("IngestLog: suppressed {} {} message(s)", dropped, category);
+                }
+            }
+            if (count.incrementAndGet() <= maxPerSecond) {
+                return true;
+            }
+            suppressed.increment();
+            return false;
+        }
+    }
+}
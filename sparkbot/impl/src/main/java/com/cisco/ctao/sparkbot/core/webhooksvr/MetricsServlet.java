@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import com.cisco.ctao.sparkbot.core.MessageCoalescer;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.cisco.ctao.sparkbot.core.RequestHedger;
+import com.cisco.ctao.sparkbot.core.outbox.Outbox;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookStats.Counters;
+import com.ciscospark.ConcurrencyLimiter;
+import com.ciscospark.EndpointMetrics;
+import com.ciscospark.LatencyHistogram;
+import com.ciscospark.SparkMetrics;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Operational endpoints of the webhook HTTP server. The metrics path
+ *  serves the Spark SDK call metrics, the webhook ingest and dispatch
+ *  statistics, the state of the concurrency limiters and the priority
+ *  lanes and a few JVM basics in the Prometheus text format; the health
+ *  path reports the Webhook Server's readiness. Metrics are rendered into
+ *  a snapshot at most once per second and scrapes are served from the
+ *  snapshot, so that frequent or concurrent scrapes never contend with
+ *  event processing.
+ * @author jmedved
+ *
+ */
+class MetricsServlet extends HttpServlet {
+    static final String METRICS_PATH = "/metrics";
+    static final String HEALTH_PATH = "/health";
+    private static final long serialVersionUID = -2879421558123457703L;
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsServlet.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final long SNAPSHOT_TTL = TimeUnit.SECONDS.toNanos(1);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final transient WebhookServer server;
+    private final transient AtomicBoolean rendering = new AtomicBoolean();
+    private transient volatile String snapshot;
+    private transient volatile long snapshotTime;
+
+    MetricsServlet(final WebhookServer server) {
+        this.server = server;
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        if (HEALTH_PATH.equals(request.getServletPath())) {
+            final WebhookServerStatus status = server.getStatus();
+            final boolean ready = status != null && status.getState() == WebhookServerStatus.State.READY;
+            response.setContentType("text/plain");
+            response.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().println(status != null ? status.getState() : WebhookServerStatus.State.STOPPED);
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().write(getSnapshot());
+    }
+
+    /** Gets the current metrics snapshot, rendering a new one if it is
+     *  older than the snapshot TTL. Only one scrape renders at a time;
+     *  concurrent scrapes get the previous snapshot.
+     * @return the metrics in Prometheus text format
+     */
+    private String getSnapshot() {
+        final String current = snapshot;
+        if (current != null && System.nanoTime() - snapshotTime < SNAPSHOT_TTL) {
+            return current;
+        }
+        if (!rendering.compareAndSet(false, true)) {
+            return current != null ? current : render();
+        }
+        try {
+            final String text = render();
+            snapshot = text;
+            snapshotTime = System.nanoTime();
+            return text;
+        } finally {
+            rendering.set(false);
+        }
+    }
+
+    private String render() {
+        final StringBuilder out = new StringBuilder(8192);
+        try {
+            renderSdkMetrics(out);
+            renderWebhookMetrics(out);
+            renderSchedulerMetrics(out);
+            renderJvmMetrics(out);
+        } catch (RuntimeException e) {
+            LOG.error("render: failed to collect metrics", e);
+        }
+        return out.toString();
+    }
+
+    private static void renderSdkMetrics(final StringBuilder out) {
+        final Collection<EndpointMetrics> endpoints = SparkMetrics.getEndpointMetrics();
+        header(out, "sparkbot_sdk_requests_total", "counter", "Requests made to Spark");
+        for (EndpointMetrics ep : endpoints) {
+            sample(out, "sparkbot_sdk_requests_total", labels(ep), ep.getRequestCount());
+        }
+        header(out, "sparkbot_sdk_responses_total", "counter", "Spark responses by status class");
+        for (EndpointMetrics ep : endpoints) {
+            sample(out, "sparkbot_sdk_responses_total", labels(ep) + ",class=\"2xx\"", ep.getSuccessCount());
+            sample(out, "sparkbot_sdk_responses_total", labels(ep) + ",class=\"3xx\"", ep.getRedirectCount());
+            sample(out, "sparkbot_sdk_responses_total", labels(ep) + ",class=\"4xx\"", ep.getClientErrorCount());
+            sample(out, "sparkbot_sdk_responses_total", labels(ep) + ",class=\"5xx\"", ep.getServerErrorCount());
+            sample(out, "sparkbot_sdk_responses_total", labels(ep) + ",class=\"io_error\"", ep.getIoErrorCount());
+        }
+        header(out, "sparkbot_sdk_retries_total", "counter", "Requests retried after re-authentication");
+        for (EndpointMetrics ep : endpoints) {
+            sample(out, "sparkbot_sdk_retries_total", labels(ep), ep.getRetryCount());
+        }
+        header(out, "sparkbot_sdk_sent_bytes_total", "counter", "Request body bytes sent to Spark");
+        for (EndpointMetrics ep : endpoints) {
+            sample(out, "sparkbot_sdk_sent_bytes_total", labels(ep), ep.getBytesOut());
+        }
+        header(out, "sparkbot_sdk_received_bytes_total", "counter", "Response body bytes received from Spark");
+        for (EndpointMetrics ep : endpoints) {
+            sample(out, "sparkbot_sdk_received_bytes_total", labels(ep), ep.getBytesIn());
+        }
+        header(out, "sparkbot_sdk_request_seconds", "summary", "Spark request latency");
+        for (EndpointMetrics ep : endpoints) {
+            summary(out, "sparkbot_sdk_request_seconds", labels(ep), ep.getLatency());
+        }
+
+        header(out, "sparkbot_sdk_concurrency_limit", "gauge",
+                "Adaptive concurrency limit of an identity's endpoint family");
+        for (String identity : ConcurrencyLimiter.getIdentities()) {
+            for (String family : ConcurrencyLimiter.getFamilies(identity)) {
+                sample(out, "sparkbot_sdk_concurrency_limit", limiterLabels(identity, family),
+                        ConcurrencyLimiter.getLimit(identity, family));
+            }
+        }
+        header(out, "sparkbot_sdk_in_flight", "gauge", "Requests of an identity's endpoint family in flight");
+        for (String identity : ConcurrencyLimiter.getIdentities()) {
+            for (String family : ConcurrencyLimiter.getFamilies(identity)) {
+                sample(out, "sparkbot_sdk_in_flight", limiterLabels(identity, family),
+                        ConcurrencyLimiter.getInFlight(identity, family));
+            }
+        }
+        header(out, "sparkbot_sdk_queued", "gauge",
+                "Requests of an identity's endpoint family waiting for the limit");
+        for (String identity : ConcurrencyLimiter.getIdentities()) {
+            for (String family : ConcurrencyLimiter.getFamilies(identity)) {
+                sample(out, "sparkbot_sdk_queued", limiterLabels(identity, family),
+                        ConcurrencyLimiter.getQueued(identity, family));
+            }
+        }
+        header(out, "sparkbot_sdk_limit_drops_total", "counter", "Requests that cut the concurrency limit");
+        for (String identity : ConcurrencyLimiter.getIdentities()) {
+            for (String family : ConcurrencyLimiter.getFamilies(identity)) {
+                sample(out, "sparkbot_sdk_limit_drops_total", limiterLabels(identity, family),
+                        ConcurrencyLimiter.getDropCount(identity, family));
+            }
+        }
+    }
+
+    private static void renderWebhookMetrics(final StringBuilder out) {
+        counters(out, "sparkbot_servlet_events_total", "Webhook events by servlet and outcome", "servlet",
+                WebhookStats.getServletStats());
+        counters(out, "sparkbot_handler_events_total", "Webhook events by handler and outcome", "handler",
+                WebhookStats.getHandlerStats());
+        header(out, "sparkbot_handlers_in_flight", "gauge", "Handler invocations in progress");
+        sample(out, "sparkbot_handlers_in_flight", null, WebhookStats.getInFlight());
+        header(out, "sparkbot_enrichment_seconds", "summary", "Time to fetch the details of an event's object");
+        summary(out, "sparkbot_enrichment_seconds", null, WebhookStats.getEnrichmentLatency());
+    }
+
+    private static void renderSchedulerMetrics(final StringBuilder out) {
+        header(out, "sparkbot_lane_queue_depth", "gauge", "Outbound calls waiting in a priority lane");
+        for (Lane lane : Lane.values()) {
+            sample(out, "sparkbot_lane_queue_depth", label("lane", lane.name()), OutboundScheduler.getQueueDepth(lane));
+        }
+        header(out, "sparkbot_lane_admitted_total", "counter", "Outbound calls admitted from a priority lane");
+        for (Lane lane : Lane.values()) {
+            sample(out, "sparkbot_lane_admitted_total", label("lane", lane.name()),
+                    OutboundScheduler.getAdmittedCount(lane));
+        }
+        header(out, "sparkbot_lane_wait_seconds_max", "gauge", "Longest wait of a call in a priority lane");
+        for (Lane lane : Lane.values()) {
+            sample(out, "sparkbot_lane_wait_seconds_max", label("lane", lane.name()),
+                    OutboundScheduler.getMaxWaitMillis(lane) / 1e3);
+        }
+        header(out, "sparkbot_outbound_calls_in_progress", "gauge", "Outbound calls holding a call slot");
+        sample(out, "sparkbot_outbound_calls_in_progress", null, OutboundScheduler.getCallsInProgress());
+        header(out, "sparkbot_hedged_requests_total", "counter", "Requests made through the hedger");
+        sample(out, "sparkbot_hedged_requests_total", null, RequestHedger.getRequestCount());
+        header(out, "sparkbot_hedges_total", "counter", "Hedges sent");
+        sample(out, "sparkbot_hedges_total", null, RequestHedger.getHedgeCount());
+        header(out, "sparkbot_hedge_wins_total", "counter", "Hedges that returned before the original request");
+        sample(out, "sparkbot_hedge_wins_total", null, RequestHedger.getHedgeWinCount());
+        header(out, "sparkbot_coalescer_messages_total", "counter", "Messages posted through the coalescer");
+        sample(out, "sparkbot_coalescer_messages_total", null, MessageCoalescer.getMessageCount());
+        header(out, "sparkbot_coalescer_posts_total", "counter", "Posts made to Spark by the coalescer");
+        sample(out, "sparkbot_coalescer_posts_total", null, MessageCoalescer.getPostCount());
+        header(out, "sparkbot_outbox_pending", "gauge", "Messages waiting in the outbox");
+        sample(out, "sparkbot_outbox_pending", null, Outbox.getPendingCount());
+    }
+
+    private static void renderJvmMetrics(final StringBuilder out) {
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(out, "jvm_memory_heap_bytes", "gauge", "JVM heap memory");
+        sample(out, "jvm_memory_heap_bytes", label("area", "used"), heap.getUsed());
+        sample(out, "jvm_memory_heap_bytes", label("area", "committed"), heap.getCommitted());
+        sample(out, "jvm_memory_heap_bytes", label("area", "max"), heap.getMax());
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        header(out, "jvm_threads", "gauge", "JVM live threads");
+        sample(out, "jvm_threads", null, threads.getThreadCount());
+        header(out, "jvm_gc_collections_total", "counter", "JVM garbage collections");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collections_total", label("gc", gc.getName()), gc.getCollectionCount());
+        }
+        header(out, "jvm_gc_collection_seconds_total", "counter", "JVM time spent in garbage collection");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collection_seconds_total", label("gc", gc.getName()), gc.getCollectionTime() / 1e3);
+        }
+        header(out, "jvm_uptime_seconds", "gauge", "JVM uptime");
+        sample(out, "jvm_uptime_seconds", null, ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    private static void counters(final StringBuilder out, final String name, final String help,
+            final String labelName, final Map<String, Counters> stats) {
+        header(out, name, "counter", help);
+        for (Map.Entry<String, Counters> entry : stats.entrySet()) {
+            final String labels = label(labelName, entry.getKey());
+            final Counters counters = entry.getValue();
+            sample(out, name, labels + ",outcome=\"received\"", counters.getReceivedCount());
+            sample(out, name, labels + ",outcome=\"dispatched\"", counters.getDispatchedCount());
+            sample(out, name, labels + ",outcome=\"dropped\"", counters.getDroppedCount());
+            sample(out, name, labels + ",outcome=\"failed\"", counters.getFailedCount());
+        }
+    }
+
+    private static void summary(final StringBuilder out, final String name, final String labels,
+            final LatencyHistogram latency) {
+        final String prefix = labels != null ? labels + "," : "";
+        for (double quantile : QUANTILES) {
+            sample(out, name, prefix + "quantile=\"" + quantile + "\"",
+                    latency.getPercentileMicros(quantile * 100) / 1e6);
+        }
+        final long count = latency.getCount();
+        sample(out, name + "_sum", labels, latency.getMeanMicros() * count / 1e6);
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static void header(final StringBuilder out, final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(final StringBuilder out, final String name, final String labels,
+            final double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String labels(final EndpointMetrics ep) {
+        return label("family", ep.getFamily()) + "," + label("method", ep.getMethod());
+    }
+
+    private static String limiterLabels(final String identity, final String family) {
+        return label("identity", identity) + "," + label("family", family);
+    }
+
+    private static String label(final String name, final String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
@@ -8,27 +8,22 @@
 package com.cisco.ctao.sparkbot.core.webhooksvr;
 
 import com.cisco.ctao.sparkbot.core.RawEventHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
 
 
 public class RawEventHandlerReg {
     private final String handlerWebhookId;
     private final RawEventHandler handler;
-    private final ServletHolder servletHolder;
     private final WebhookFilter filter;
 
-    RawEventHandlerReg(String handlerSparkId, RawEventHandler handler, ServletHolder servletHolder,
-            WebhookFilter filter) {
+    RawEventHandlerReg(String handlerSparkId, RawEventHandler handler, WebhookFilter filter) {
         this.handlerWebhookId = handlerSparkId;
         this.filter = filter;
-        this.servletHolder = servletHolder;
         this.handler = handler;
     }
 
     RawEventHandlerReg(RawEventHandlerReg src) {
         this.handlerWebhookId = src.handlerWebhookId;
         this.filter = src.filter;
-        this.servletHolder = src.servletHolder;
         this.handler = src.handler;
     }
 
@@ -40,10 +35,6 @@ public class RawEventHandlerReg {
         return handler;
     }
 
-    public ServletHolder getServletHolder() {
-        return servletHolder;
-    }
-
     public WebhookFilter getFilter() {
         return filter;
     }
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.util.List;
+
+/** Immutable DTO that carries a snapshot of a route in the Webhook Server
+ *  and the handlers registered on it.
+ * @author jmedved
+ *
+ */
+public final class RouteInfo {
+    private final String name;
+    private final String webhookId;
+    private final WebhookFilter filter;
+    private final List<String> handlers;
+    private final List<String> typedHandlers;
+
+    RouteInfo(final String name, final String webhookId, final WebhookFilter filter, final List<String> handlers,
+            final List<String> typedHandlers) {
+        this.name = name;
+        this.webhookId = webhookId;
+        this.filter = filter;
+        this.handlers = handlers;
+        this.typedHandlers = typedHandlers;
+    }
+
+    /** Gets the route's name, which is also its path in the webhook server.
+     * @return the route name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /** Gets the id of the route's webhook in Spark.
+     * @return the webhook id; null for the default route or if this node
+     *          does not own the webhooks
+     */
+    public String getWebhookId() {
+        return webhookId;
+    }
+
+    /** Gets the parameters of the route's webhook.
+     * @return the webhook filter; null for the default route
+     */
+    public WebhookFilter getFilter() {
+        return filter;
+    }
+
+    /** Gets the names of the 'raw' handlers registered on the route.
+     * @return the handler names, in dispatch order
+     */
+    public List<String> getHandlers() {
+        return handlers;
+    }
+
+    /** Gets the class names of the typed handlers that receive the route's
+     *  events through its event processor.
+     * @return the typed handler class names
+     */
+    public List<String> getTypedHandlers() {
+        return typedHandlers;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteInfo [name=" + name + ", webhookId=" + webhookId + ", filter=" + filter + ", handlers="
+                + handlers + ", typedHandlers=" + typedHandlers + "]";
+    }
+}
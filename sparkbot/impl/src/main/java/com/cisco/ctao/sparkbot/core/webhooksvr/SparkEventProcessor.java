@@ -8,49 +8,102 @@
 package com.cisco.ctao.sparkbot.core.webhooksvr;
 
 import com.cisco.ctao.sparkbot.core.SparkApi;
+import com.cisco.ctao.sparkbot.core.SparkExecution;
 import com.cisco.ctao.sparkbot.core.TypedEventHandler;
 import com.cisco.ctao.sparkbot.core.TypedEventHandler.EventType;
 import com.cisco.ctao.sparkbot.core.RawEventHandler;
+import com.cisco.ctao.sparkbot.core.jfr.EnrichmentEvent;
+import com.cisco.ctao.sparkbot.core.jfr.HandlerInvocationEvent;
+import com.cisco.ctao.sparkbot.core.jfr.SparkbotEvents;
+import com.cisco.ctao.sparkbot.core.webhooksvr.IngestLog.Category;
 import com.ciscospark.SparkException;
+import com.ciscospark.TrackingContext;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SparkEventProcessor<T> implements RawEventHandler {
     private static final Logger LOG = LoggerFactory.getLogger(SparkEventProcessor.class);
+    // The event's details are fetched before the webhook callout is
+    // answered; a slow lookup must not hold the callout much longer than
+    // Spark waits for it
+    private static final Duration ENRICHMENT_DEADLINE = Duration.ofSeconds(10);
     private final SparkApi<T> sparkApi;
     private final String resource;
     private final List<TypedEventHandler<T>> handlers =
             Collections.synchronizedList(new ArrayList<>());
 
     private void handleCreatedUpdatedEvent(final String elementId, EventType eventType) {
-        LOG.debug("{}: handleCreatedUpdatedEvent id {}, resource '{}', registered handlers {}",
-                this.getClass().getName(), elementId, resource, handlers.size());
+        if (LOG.isDebugEnabled() && IngestLog.shouldLog(Category.DISPATCH)) {
+            LOG.debug("webhook event: processor={} event={} id={} handlers={}", getName(), eventType, elementId,
+                    handlers.size());
+        }
 
         if (!handlers.isEmpty()) {
-            T element;
-            try {
-                element = sparkApi.getDetails(elementId);
-            } catch (SparkException e) {
-                element = null;
-                LOG.error("handleCreatedUpdatedEvent: Can't retrieve element {}, exception:", elementId, e);
-            }
+            final T element = getDetails(elementId);
             for (TypedEventHandler<T> handler : handlers) {
-                handler.handleSparkEvent(elementId, element, eventType);
+                SparkExecution.dispatch(() -> invoke(handler, elementId, element, eventType));
+            }
+
+        } else {
+            WebhookStats.handler(getName()).dropped();
+        }
+    }
+
+    private T getDetails(final String elementId) {
+        final long start = System.nanoTime();
+        final EnrichmentEvent event = SparkbotEvents.beginEnrichment();
+        boolean success = false;
+        try {
+            final T element = sparkApi.withDeadline(ENRICHMENT_DEADLINE).getDetails(elementId);
+            success = true;
+            return element;
+        } catch (SparkException e) {
+            if (LOG.isErrorEnabled() && IngestLog.shouldLog(Category.ENRICHMENT)) {
+                LOG.error("webhook enrichment failed: processor={} id={}", getName(), elementId, e);
             }
+            return null;
+        } finally {
+            WebhookStats.recordEnrichmentLatency(System.nanoTime() - start);
+            SparkbotEvents.endEnrichment(event, resource, elementId, success);
+            TrackingContext.recordCurrent("enrich " + resource, success ? elementId : elementId + " failed", start);
+        }
+    }
 
+    private void invoke(final TypedEventHandler<T> handler, final String elementId, final T element,
+            final EventType eventType) {
+        final long start = System.nanoTime();
+        final HandlerInvocationEvent event = SparkbotEvents.beginHandlerInvocation();
+        boolean failed = true;
+        try {
+            handler.handleSparkEvent(elementId, element, eventType);
+            failed = false;
+        } finally {
+            SparkbotEvents.endHandlerInvocation(event, handler.getClass().getName(), resource,
+                    eventType.name(), elementId, failed);
+            TrackingContext.recordCurrent("handler " + handler.getClass().getName(),
+                    failed ? "failed" : null, start);
+            if (IngestLog.isDebugHandler(handler.getClass().getName())) {
+                LOG.info("webhook handled: handler={} event={} id={} failed={} durationUs={} element={}",
+                        handler.getClass().getName(), eventType, elementId, failed,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), element);
+            }
         }
     }
 
     private void handleDeletedEvent(final String elementId) {
-        LOG.debug("{}: handleDeletedEvent id {}, resource '{}', registered handlers {}",
-                this.getClass().getName(), elementId, resource, handlers.size());
+        if (LOG.isDebugEnabled() && IngestLog.shouldLog(Category.DISPATCH)) {
+            LOG.debug("webhook event: processor={} event={} id={} handlers={}", getName(), EventType.DELETED,
+                    elementId, handlers.size());
+        }
         for (TypedEventHandler<T> handler : handlers) {
-            handler.handleSparkEvent(elementId, null, EventType.DELETED);
+            SparkExecution.dispatch(() -> invoke(handler, elementId, null, EventType.DELETED));
         }
     }
 
@@ -60,7 +113,11 @@ public class SparkEventProcessor<T> implements RawEventHandler {
     }
 
     public void handleWebhookEvent(final WebhookEvent webhookMsg, final RequestHeaderData requestData) {
-        LOG.debug("handleWebhookEvent, Event: {}", webhookMsg.toString());
+        if (IngestLog.isDebugHandler(getName())) {
+            LOG.info("webhook event: processor={} event={}", getName(), webhookMsg);
+        } else if (LOG.isDebugEnabled() && IngestLog.shouldLog(Category.DISPATCH)) {
+            LOG.debug("webhook event: processor={} event={}", getName(), webhookMsg);
+        }
         final String elementId;
         final WebhookEventData msgData;
         if (resource.equals(webhookMsg.getResource())
@@ -77,11 +134,21 @@ public class SparkEventProcessor<T> implements RawEventHandler {
                     handleDeletedEvent(elementId);
                     break;
                 default:
-                    LOG.error("handleWebhookEvent: Unknown event {}", webhookMsg.getEvent());
+                    if (LOG.isErrorEnabled() && IngestLog.shouldLog(Category.ERROR)) {
+                        LOG.error("webhook event unknown: processor={} event={}", getName(), webhookMsg.getEvent());
+                    }
+                    WebhookStats.handler(getName()).dropped();
             }
+        } else {
+            WebhookStats.handler(getName()).dropped();
         }
     }
 
+    @Override
+    public String getName() {
+        return "SparkEventProcessor/" + resource;
+    }
+
     /** Register an application spark object handler.
      * @param handler: the handler to be registered
      * @return the number of registered handlers *before* this registration
@@ -93,6 +160,19 @@ public class SparkEventProcessor<T> implements RawEventHandler {
         return size;
     }
 
+    /** Gets the class names of the registered handlers.
+     * @return the class names, in registration order
+     */
+    List<String> getHandlerClassNames() {
+        final List<String> names = new ArrayList<>();
+        synchronized (handlers) {
+            for (TypedEventHandler<T> handler : handlers) {
+                names.add(handler.getClass().getName());
+            }
+        }
+        return names;
+    }
+
     /** Unregister an application spark object handler.
      * @param handler: the handler to be unregistered
      * @return the number of registered handlers *after* this registration
@@ -8,16 +8,28 @@
 package com.cisco.ctao.sparkbot.core.webhooksvr;
 
 import com.cisco.ctao.sparkbot.core.RawEventHandler;
+import com.cisco.ctao.sparkbot.core.RecentActivity;
+import com.cisco.ctao.sparkbot.core.jfr.SparkbotEvents;
+import com.cisco.ctao.sparkbot.core.jfr.WebhookReceiveEvent;
+import com.cisco.ctao.sparkbot.core.webhooksvr.IngestLog.Category;
 import com.cisco.ctao.sparkbot.core.webhooksvr.RequestHeaderData.RequestHeaderDataBuilder;
+import com.ciscospark.TrackingContext;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -28,42 +40,124 @@ import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** HTTP Handler for the Sparkbot app.
+/** HTTP Handler for the Sparkbot app. A single instance of the servlet
+ *  receives all webhook callouts and routes each of them to the handlers
+ *  registered for the request's path. Requests for paths that do not have
+ *  a route are handled by the default route.
  * @author johnburn, jmedved
  *
  */
 class SparkServlet extends HttpServlet {
     private static final long serialVersionUID = 5221908472085737227L;
     private static final Logger LOG = LoggerFactory.getLogger(SparkServlet.class);
-    private final transient List<RawEventHandler> webhookHandlers = Collections.synchronizedList(new ArrayList<>());
+    private static final String TRACKING_ID_HEADER = "TrackingID";
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private final transient ConcurrentMap<String, WebhookRoute> routes = new ConcurrentHashMap<>();
+    private final transient WebhookRoute defaultRoute;
     private final transient Gson gson = new Gson();
+    private final transient WebhookEventSharder sharder = new WebhookEventSharder();
+    private final transient WebhookStats.Counters stats;
     private final String name;
+    private volatile int maxRequestBodySize = -1;
 
-    /** Constructor - registers a "default" logging webhook handler.
+    /** Constructor - creates the default route.
      *
      */
     SparkServlet(String name) {
         this.name = name;
-        registerRawEventHandler(new LoggingWebHookHandler());
+        this.defaultRoute = new WebhookRoute(name);
+        this.stats = WebhookStats.servlet(name);
     }
 
-    /** Register an application webhook 'raw' handler.
+    /** Register an application webhook 'raw' handler with the default route.
      * @param handler the handler to be registered
-     * @param filter if specified, create a webhook in Spark with parameters
-     *           as specified in the filter
      */
     public void registerRawEventHandler(RawEventHandler handler) {
-        LOG.info("registerWebhookHandler '{}': handler {}, filter {}", name, handler);
-        webhookHandlers.add(handler);
+        LOG.info("registerWebhookHandler '{}': handler {}", name, handler);
+        defaultRoute.registerRawEventHandler(handler);
     }
 
-    /** Unregister an application webhook 'raw' handler.
+    /** Unregister an application webhook 'raw' handler from the default route.
      * @param handler the handler to be unregistered
      * @return true if a handler had been registered, false otherwise
      */
     public boolean unregisterRawEventHandler(RawEventHandler handler) {
         LOG.info("unregisterWebhookHandler '{}, handler {}", name, handler);
-        return webhookHandlers.remove(handler);
+        return defaultRoute.unregisterRawEventHandler(handler);
+    }
+
+    /** Create a route for the specified path and register an application
+     *  webhook 'raw' handler with it.
+     * @param path the path (relative to the servlet) for the route
+     * @param handler the handler to be registered
+     * @return true if the route was created, false if a route for the path
+     *          already exists
+     */
+    public boolean addRoute(final String path, final RawEventHandler handler) {
+        LOG.info("addRoute '{}': path {}, handler {}", name, path, handler);
+        final WebhookRoute route = new WebhookRoute(path);
+        route.registerRawEventHandler(handler);
+        return routes.putIfAbsent(path, route) == null;
+    }
+
+    /** Remove the route for the specified path.
+     * @param path the path (relative to the servlet) for the route
+     * @return true if the route existed, false otherwise
+     */
+    public boolean removeRoute(final String path) {
+        LOG.info("removeRoute '{}': path {}", name, path);
+        return routes.remove(path) != null;
+    }
+
+    /** Describe the default route and every route created for a handler.
+     * @param registrations the registrations of the handlers that have
+     *          their own route, by route path
+     * @return the routes, the default route first, the others sorted by
+     *          path
+     */
+    List<RouteInfo> describeRoutes(final Map<String, RawEventHandlerReg> registrations) {
+        final List<RouteInfo> list = new ArrayList<>();
+        list.add(defaultRoute.describe(null, null));
+        for (WebhookRoute route : new TreeMap<>(routes).values()) {
+            final RawEventHandlerReg reg = registrations.get(route.getName());
+            list.add(reg != null ? route.describe(reg.getHandlerWebhookId(), reg.getFilter())
+                    : route.describe(null, null));
+        }
+        return list;
+    }
+
+    /** Set the maximum size of a webhook request payload. Requests with
+     *  larger payloads are rejected.
+     * @param maxRequestBodySize the max size in bytes; null or negative if
+     *          the payload size is not limited
+     */
+    public void setMaxRequestBodySize(final Integer maxRequestBodySize) {
+        this.maxRequestBodySize = (maxRequestBodySize != null) ? maxRequestBodySize : -1;
+    }
+
+    /** Set the cluster members across which webhook events are sharded.
+     * @param localMember this member's address
+     * @param members addresses of all live members; null to process all
+     *          events locally
+     */
+    public void setClusterMembers(final String localMember, final Collection<String> members) {
+        sharder.setMembers(localMember, members);
+    }
+
+    /** Find the route for a request's path.
+     * @param request the incoming request
+     * @return the route registered for the request's path or the default
+     *          route if there is none
+     */
+    private WebhookRoute findRoute(final HttpServletRequest request) {
+        final String pathInfo = request.getPathInfo();
+        if (pathInfo != null && pathInfo.length() > 1) {
+            final WebhookRoute route = routes.get(pathInfo.substring(1));
+            if (route != null) {
+                return route;
+            }
+        }
+        return defaultRoute;
     }
 
     private void methodNotAllowed(HttpServletRequest request, HttpServletResponse response) {
@@ -99,15 +193,51 @@ class SparkServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        LOG.info("Handler '{}' doPost: request {}", name, request);
+        if (LOG.isInfoEnabled() && IngestLog.shouldLog(Category.RECEIVE)) {
+            LOG.info("webhook received: servlet={} method={} uri={} trackingId={} contentLength={}", name,
+                    request.getMethod(), request.getRequestURI(), request.getHeader(TRACKING_ID_HEADER),
+                    request.getContentLength());
+        }
 
         final String method = request.getMethod();
         final String uri = request.getRequestURI().trim();
         try {
             if (method.compareToIgnoreCase("POST") == 0 || method.compareToIgnoreCase("PUT") == 0) {
-                final String payload = IOUtils.toString(request.getInputStream()).trim();
-                processHttpMessage(request, uri, payload);
-                response.setStatus(HttpServletResponse.SC_OK);
+                stats.received();
+                final long start = System.nanoTime();
+                final WebhookReceiveEvent event = SparkbotEvents.beginWebhookReceive();
+                // Outbound calls made while handling the event carry Spark's TrackingID
+                final TrackingContext context = TrackingContext.start(request.getHeader(TRACKING_ID_HEADER),
+                        "webhook " + name);
+                final TrackingContext.Scope scope = context.attach();
+                int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                WebhookEvent msg = null;
+                try {
+                    final String payload = readPayload(request);
+                    if (payload != null) {
+                        WebhookCapture.capture(request, payload);
+                        msg = processHttpMessage(request, uri, payload.trim(), start);
+                        status = HttpServletResponse.SC_OK;
+                        if (request.getHeader(WebhookCapture.REPLAY_HEADER) != null) {
+                            // Lets the replay tool measure the server-side latency
+                            response.setHeader(SERVER_TIMING_HEADER, "ingest;dur="
+                                    + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / 1000.0);
+                        }
+                    } else {
+                        if (LOG.isErrorEnabled() && IngestLog.shouldLog(Category.ERROR)) {
+                            LOG.error("webhook rejected: servlet={} reason=payload-too-large maxSize={} "
+                                    + "trackingId={}", name, maxRequestBodySize, context.getTrackingId());
+                        }
+                        stats.dropped();
+                        status = HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+                    }
+                    response.setStatus(status);
+                } finally {
+                    SparkbotEvents.endWebhookReceive(event, name, request, status);
+                    recordIngest(context, msg, status, start);
+                    scope.close();
+                    context.release();
+                }
             } else {
                 response.setContentType("text/html");
                 response.getWriter().println("<h1> Method '" + method + "' not allowed. </h1>");
@@ -116,33 +246,86 @@ class SparkServlet extends HttpServlet {
             }
         } catch (IOException e) {
             LOG.error("Hanlder '{}' doPost: Could not create a response, request {}", name, request, e);
+            stats.failed();
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
 
+    /** Reads the payload of the incoming HTTP request, up to the max
+     *  request body size.
+     * @param request the incoming request
+     * @return the payload, or null if the payload is larger than the max
+     *          request body size
+     * @throws IOException if the payload could not be read
+     */
+    private String readPayload(final HttpServletRequest request) throws IOException {
+        final int maxSize = maxRequestBodySize;
+        if (maxSize < 0) {
+            return IOUtils.toString(request.getInputStream());
+        }
+        if (request.getContentLength() > maxSize) {
+            return null;
+        }
+        final InputStream input = request.getInputStream();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int count;
+        while ((count = input.read(buf)) != -1) {
+            if (output.size() + count > maxSize) {
+                return null;
+            }
+            output.write(buf, 0, count);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
     /** Parses the incoming HTTP request and calls all registered handlers with
      *  the parsed data.
      * @param request the incoming request
      * @param uri UIR for the request
      * @param payload payload from the request
-     * @return true if ALL OK, return false and use the setErrorResponse routine
+     * @param start time at which the request was received, from System.nanoTime()
+     * @return the parsed event, null if the payload is not valid JSON
      */
-    private boolean processHttpMessage(final HttpServletRequest request, final String uri, final String payload) {
+    private WebhookEvent processHttpMessage(final HttpServletRequest request, final String uri, final String payload,
+            final long start) {
         final RequestHeaderData headers = getRequestHeaderData(request);
-        LOG.debug("Handler '{}' processHttpMessage: payload {}, uri {}", name, payload, uri);
+        if (LOG.isDebugEnabled() && IngestLog.shouldLog(Category.RECEIVE)) {
+            LOG.debug("webhook payload: servlet={} uri={} payload={}", name, uri, payload);
+        }
 
         try {
             final WebhookEvent msg = gson.fromJson(payload, WebhookEvent.class);
-            LOG.debug("processHttpMessage handling request for {} registered handler(s)",
-                    webhookHandlers.size());
-            for (RawEventHandler handler : webhookHandlers) {
-                handler.handleWebhookEvent(msg, headers);
+            TrackingContext.recordCurrent("receive", uri, start);
+            if (!sharder.forwardToOwner(request, payload, msg)) {
+                findRoute(request).dispatch(msg, headers);
             }
+            stats.dispatched();
+            return msg;
         } catch (JsonSyntaxException e) {
-            LOG.error("Handler '{}' processHttpMessage: Invalid json syntax", name, e);
-            return false;
+            if (LOG.isErrorEnabled() && IngestLog.shouldLog(Category.ERROR)) {
+                LOG.error("webhook rejected: servlet={} reason=invalid-json", name, e);
+            }
+            stats.dropped();
+            return null;
+        } catch (RuntimeException e) {
+            stats.failed();
+            throw e;
         }
-        return true;
+    }
+
+    /** Records a received event in the recent activity ring.
+     * @param context the event's tracking context
+     * @param msg the parsed event, null if the payload was not parsed
+     * @param status the HTTP status code returned to Spark
+     * @param start time at which the request was received, from System.nanoTime()
+     */
+    private void recordIngest(final TrackingContext context, final WebhookEvent msg, final int status,
+            final long start) {
+        final WebhookEventData data = msg != null ? msg.getData() : null;
+        RecentActivity.recordIngest(name, context.getTrackingId(), msg != null ? msg.getResource() : null,
+                msg != null ? msg.getEvent() : null, data != null ? data.getId() : null, status,
+                System.nanoTime() - start);
     }
 
     /** Creates the RequestHeaderData DTO.
@@ -151,10 +334,13 @@ class SparkServlet extends HttpServlet {
      */
     private RequestHeaderData getRequestHeaderData(final HttpServletRequest request) {
         final RequestHeaderDataBuilder rdb = new RequestHeaderDataBuilder();
+        final boolean logHeaders = LOG.isDebugEnabled() && IngestLog.shouldLog(Category.HEADER);
         for (Enumeration<String> e = request.getHeaderNames(); e.hasMoreElements(); ) {
             String header = e.nextElement();
             String value = request.getHeader(header);
-            LOG.debug("Header: {}, Value: {}", header, value);
+            if (logHeaders) {
+                LOG.debug("webhook header: servlet={} name={} value={}", name, header, value);
+            }
             switch (header) {
                 case "x-scheduler-task-id":
                     rdb.setSchedulerTaskId(value);
@@ -183,30 +369,19 @@ class SparkServlet extends HttpServlet {
                 case "Host":
                     rdb.setHost(value);
                     break;
+                case WebhookEventSharder.FORWARDED_BY_HEADER:
+                    if (logHeaders) {
+                        LOG.debug("webhook forwarded: servlet={} by={}", name, value);
+                    }
+                    break;
                 default:
-                    LOG.error("Hanlder '{}' Unknown Header: {}, Value: {}", name, header, value);
+                    // Spark adds headers over time; they are not an error
+                    if (LOG.isWarnEnabled() && IngestLog.shouldLog(Category.HEADER)) {
+                        LOG.warn("webhook header unknown: servlet={} name={} value={}", name, header, value);
+                    }
                     break;
             }
         }
         return rdb.build();
     }
-
-    /** WebHookHandler that logs all incoming requests. Registered by default
-     *  when the HTTP handler is constructed.
-     * @author jmedved
-     *
-     */
-    private class LoggingWebHookHandler implements RawEventHandler {
-        private final AtomicInteger eventCnt = new AtomicInteger(0);
-
-        @Override
-        public void handleWebhookEvent(final WebhookEvent msg, final RequestHeaderData requestData) {
-            if (msg != null) {
-                LOG.info("Handler '{}' LoggingWebHookHandler - webook event #{}: {}",
-                        name, eventCnt.incrementAndGet(), msg.toString());
-            } else {
-                LOG.info("Handler '{}' LoggingWebHookHandler - webook event: null", name);
-            }
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Captures the webhook callouts received from Spark into a capture file
+ *  (see CaptureFile), so that real traffic can later be replayed against a
+ *  node with the WebhookReplay tool. Capture is on while its parameters
+ *  are configured.
+ *
+ *  <p>The servlet only copies a callout into a bounded queue; a writer
+ *  thread compresses the callouts and appends them to the file. If the
+ *  writer falls behind, callouts are dropped from the capture rather than
+ *  slowing down ingest. A callout whose URI or a header exceeds the 64 KB
+ *  limit of the capture format is dropped as well. Callouts forwarded by
+ *  another cluster member (captured by that member) and replayed callouts
+ *  are not captured.
+ * @author jmedved
+ *
+ */
+public final class WebhookCapture {
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookCapture.class);
+    private static final String DEFAULT_FILE = "sparkbot/webhooks.capture";
+    private static final long DEFAULT_MAX_FILE_SIZE = 1024;
+    private static final int QUEUE_SIZE = 10000;
+    private static final long CLOSE_TIMEOUT = 5;
+
+    /** Header that marks a callout as replayed. The servlet answers a
+     *  replayed callout with its processing time in a Server-Timing header.
+     */
+    public static final String REPLAY_HEADER = "X-Sparkbot-Replay";
+
+    private static volatile Session session;
+
+    private WebhookCapture() {
+    }
+
+    /** Handles setting of capture parameters (on data change). Starts
+     *  capturing, or restarts capture if the parameters changed.
+     * @param captureFile path of the capture file; null for the default
+     *          file in the controller's data directory
+     * @param maxFileSize max size of the capture file, in megabytes; null
+     *          for the default
+     */
+    public static synchronized void handleCaptureParmsChange(final String captureFile, final Long maxFileSize) {
+        final Path file = captureFile != null ? Paths.get(captureFile)
+                : Paths.get(System.getProperty("karaf.data", "data"), DEFAULT_FILE);
+        final long maxBytes = (maxFileSize != null ? maxFileSize : DEFAULT_MAX_FILE_SIZE) * 1024 * 1024;
+        if (session != null && session.file.equals(file) && session.maxBytes == maxBytes) {
+            return;
+        }
+        handleCaptureParmsDelete();
+        try {
+            session = new Session(file, maxBytes);
+            LOG.info("WebhookCapture: capturing to {}, max size {} bytes", file, maxBytes);
+        } catch (IOException e) {
+            LOG.error("WebhookCapture: can not open capture file {}", file, e);
+        }
+    }
+
+    /** Handles the deletion of capture parameters from the MD-SAL data
+     *  store - stops capturing. The callouts that are already queued are
+     *  written to the file.
+     */
+    public static synchronized void handleCaptureParmsDelete() {
+        final Session current = session;
+        if (current != null) {
+            session = null;
+            current.close();
+        }
+    }
+
+    /** Checks whether callouts are being captured.
+     * @return true if capture is on
+     */
+    public static boolean isCapturing() {
+        final Session current = session;
+        return current != null && current.open.get();
+    }
+
+    /** Captures a callout, if capture is on.
+     * @param request the callout
+     * @param payload the callout's payload
+     */
+    static void capture(final HttpServletRequest request, final String payload) {
+        final Session current = session;
+        if (current == null || !current.open.get() || request.getHeader(REPLAY_HEADER) != null
+                || request.getHeader(WebhookEventSharder.FORWARDED_BY_HEADER) != null) {
+            return;
+        }
+        final Map<String, String> headers = new LinkedHashMap<>();
+        for (Enumeration<String> e = request.getHeaderNames(); e.hasMoreElements(); ) {
+            final String header = e.nextElement();
+            headers.put(header, request.getHeader(header));
+        }
+        final String query = request.getQueryString();
+        current.offer(new CaptureFile.Record(current.now(),
+                query != null ? request.getRequestURI() + "?" + query : request.getRequestURI(), headers,
+                payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** An open capture file and the thread that writes to it.
+     */
+    private static final class Session implements Runnable {
+        private final Path file;
+        private final long maxBytes;
+        private final FileChannel channel;
+        private final BlockingQueue<CaptureFile.Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final AtomicBoolean open = new AtomicBoolean(true);
+        private final LongAdder captured = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final long startMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        private final long startNanos = System.nanoTime();
+        private final Thread writer;
+
+        Session(final Path file, final long maxBytes) throws IOException {
+            this.file = file;
+            this.maxBytes = maxBytes;
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                CaptureFile.prepareForAppend(channel);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            writer = new Thread(this, "sparkbot-webhook-capture");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        long now() {
+            return startMicros + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        }
+
+        void offer(final CaptureFile.Record record) {
+            if (!queue.offer(record)) {
+                dropped.increment();
+            }
+        }
+
+        @Override
+        public void run() {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                while (open.get() || !queue.isEmpty()) {
+                    final CaptureFile.Record record = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (record == null) {
+                        continue;
+                    }
+                    final ByteBuffer frame;
+                    try {
+                        frame = CaptureFile.encode(record, deflater);
+                    } catch (UTFDataFormatException e) {
+                        // The record can not be stored, but the file is intact
+                        LOG.warn("WebhookCapture: callout {} has a URI or header longer than 64 KB, not captured",
+                                record.getUri().length() > 200 ? record.getUri().substring(0, 200) : record.getUri());
+                        dropped.increment();
+                        continue;
+                    }
+                    if (channel.position() + frame.remaining() > maxBytes) {
+                        LOG.warn("WebhookCapture: capture file {} reached its max size, capture stopped", file);
+                        break;
+                    }
+                    while (frame.hasRemaining()) {
+                        channel.write(frame);
+                    }
+                    captured.increment();
+                }
+            } catch (IOException e) {
+                LOG.error("WebhookCapture: failed to write to capture file {}, capture stopped", file, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                open.set(false);
+                deflater.end();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOG.warn("WebhookCapture: failed to close capture file {}", file, e);
+                }
+                LOG.info("WebhookCapture: capture to {} ended, captured {}, dropped {}", file, captured.sum(),
+                        dropped.sum() + queue.size());
+            }
+        }
+
+        void close() {
+            open.set(false);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Shards webhook events across the members of a cluster. Events are
+ *  assigned to members by consistent hashing on their room id; an event
+ *  received by a member that does not own its room is forwarded to the
+ *  owner's webhook server. If the owner can not be reached, the event is
+ *  processed locally. When no cluster membership is set, all events are
+ *  processed locally.
+ *
+ *  <p>Forwarding runs on the Jetty thread that received the event, so it
+ *  uses short timeouts. The owner responds only after it has run the
+ *  event's handlers, which unless handlers run on virtual threads may take
+ *  longer than the read timeout; an event that was sent in full is
+ *  therefore treated as delivered when the owner does not respond in
+ *  time, rather than processed a second time. A member that can not be
+ *  connected to, or that fails while the event is sent, is not forwarded
+ *  to for a while, so that a dead member does not hold every request for
+ *  its share of the rooms.
+ * @author jmedved
+ *
+ */
+final class WebhookEventSharder {
+    static final String FORWARDED_BY_HEADER = "X-Sparkbot-Forwarded-By";
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookEventSharder.class);
+    private static final int FORWARD_CONNECT_TIMEOUT = 200;
+    private static final int FORWARD_READ_TIMEOUT = 1000;
+    private static final long UNREACHABLE_HOLDOFF = TimeUnit.SECONDS.toNanos(10);
+
+    private volatile String localMember;
+    private volatile ConsistentHashRing ring;
+    private final ConcurrentMap<String, Long> unreachableUntil = new ConcurrentHashMap<>();
+
+    /** Sets the cluster membership.
+     * @param local this member's address
+     * @param members addresses of all live members, including this member;
+     *          null if clustering is not active
+     */
+    void setMembers(final String local, final Collection<String> members) {
+        LOG.info("setMembers: local {}, members {}", local, members);
+        this.localMember = local;
+        this.ring = (members != null && members.size() > 1) ? new ConsistentHashRing(members) : null;
+        unreachableUntil.clear();
+    }
+
+    /** Forwards an event to the member that owns its room, if that member
+     *  is not this member.
+     * @param request the incoming request
+     * @param payload payload of the request
+     * @param msg the parsed event
+     * @return true if the event was forwarded, false if it should be
+     *          processed locally
+     */
+    boolean forwardToOwner(final HttpServletRequest request, final String payload, final WebhookEvent msg) {
+        final ConsistentHashRing currentRing = ring;
+        final Long port = WebhookServer.getWebhookServerPort();
+        if (currentRing == null || port == null || msg == null || msg.getData() == null
+                || msg.getData().getRoomId() == null || request.getHeader(FORWARDED_BY_HEADER) != null) {
+            return false;
+        }
+        final String owner = currentRing.getOwner(msg.getData().getRoomId());
+        if (owner == null || owner.equals(localMember) || isHeldOff(owner)) {
+            return false;
+        }
+        try {
+            final Integer status = forward(new URL("http", owner, port.intValue(), request.getRequestURI()),
+                    request, payload);
+            if (status == null) {
+                LOG.debug("forwardToOwner: event {} sent to {}, no response within {} ms", msg.getId(), owner,
+                        FORWARD_READ_TIMEOUT);
+                return true;
+            }
+            if (status / 100 == 2) {
+                LOG.debug("forwardToOwner: event {} forwarded to {}", msg.getId(), owner);
+                return true;
+            }
+            LOG.warn("forwardToOwner: member {} returned status {}, processing event locally", owner, status);
+        } catch (IOException e) {
+            LOG.warn("forwardToOwner: member {} not reachable, processing its events locally for {} s", owner,
+                    TimeUnit.NANOSECONDS.toSeconds(UNREACHABLE_HOLDOFF), e);
+            unreachableUntil.put(owner, System.nanoTime() + UNREACHABLE_HOLDOFF);
+        }
+        return false;
+    }
+
+    private boolean isHeldOff(final String member) {
+        final Long until = unreachableUntil.get(member);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        unreachableUntil.remove(member, until);
+        return false;
+    }
+
+    /** Sends an event to another member.
+     * @param url URL of the member's webhook route
+     * @param request the incoming request
+     * @param payload payload of the request
+     * @return the member's response status, null if the event was sent but
+     *          the member did not respond within the read timeout
+     * @throws IOException if the member could not be connected to, failed
+     *          while the event was sent or closed the connection without a
+     *          response
+     */
+    private Integer forward(final URL url, final HttpServletRequest request, final String payload)
+            throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            conn.setConnectTimeout(FORWARD_CONNECT_TIMEOUT);
+            conn.setReadTimeout(FORWARD_READ_TIMEOUT);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            for (Enumeration<String> e = request.getHeaderNames(); e.hasMoreElements(); ) {
+                final String header = e.nextElement();
+                if (!"Host".equalsIgnoreCase(header) && !"Content-Length".equalsIgnoreCase(header)
+                        && !"Connection".equalsIgnoreCase(header)) {
+                    conn.setRequestProperty(header, request.getHeader(header));
+                }
+            }
+            conn.setRequestProperty(FORWARDED_BY_HEADER, localMember);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(payload.getBytes(StandardCharsets.UTF_8));
+            }
+            try {
+                return conn.getResponseCode();
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
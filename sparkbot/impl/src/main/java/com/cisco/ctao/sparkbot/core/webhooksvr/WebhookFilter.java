@@ -14,6 +14,7 @@ public class WebhookFilter {
     private final String filter;
     private final String secret;
     private final String name;
+    private final String identity;
 
     public enum Resources {
         MESSAGES(0), ROOMS(1), MEMBERSHIPS(2), ALL(3);
@@ -47,6 +48,18 @@ public class WebhookFilter {
 
 
     public WebhookFilter(Events event, Resources resource, String filter, String secret, String name) {
+        this(event, resource, filter, secret, name, null);
+    }
+
+    /** Constructor for a filter whose webhook belongs to a specific bot
+     *  identity.
+     * @param identity the bot identity on whose behalf the webhook is
+     *          created and events are processed; null for the default
+     *          identity
+     */
+    public WebhookFilter(Events event, Resources resource, String filter, String secret, String name,
+            String identity) {
+        this.identity = identity;
         this.event = event;
         this.resource = resource;
         this.filter = filter;
@@ -78,9 +91,14 @@ public class WebhookFilter {
         return name;
     }
 
+
+    public String getIdentity() {
+        return identity;
+    }
+
     @Override
     public String toString() {
         return "WebhookFilter [event=" + event + ", resource=" + resource + ", filter=" + filter + ", secret=" + secret
-                + ", name=" + name + "]";
+                + ", name=" + name + ", identity=" + identity + "]";
     }
 }
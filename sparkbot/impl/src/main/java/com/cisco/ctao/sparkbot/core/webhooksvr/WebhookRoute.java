@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import com.cisco.ctao.sparkbot.core.RawEventHandler;
+import com.cisco.ctao.sparkbot.core.SparkExecution;
+import com.cisco.ctao.sparkbot.core.jfr.HandlerInvocationEvent;
+import com.cisco.ctao.sparkbot.core.jfr.SparkbotEvents;
+import com.ciscospark.TrackingContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** An entry in the SparkServlet routing table. A route binds a path in the
+ *  webhook server to the 'raw' handlers that receive events posted to that
+ *  path. Handlers can be added and removed while events are being
+ *  dispatched on the route.
+ * @author jmedved
+ *
+ */
+final class WebhookRoute {
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookRoute.class);
+    private final List<RawEventHandler> handlers = new CopyOnWriteArrayList<>();
+    private final String name;
+
+    /** Constructor - registers a "default" logging webhook handler.
+     * @param name name of the route; also the path under which the route is
+     *          reachable in the webhook server
+     */
+    WebhookRoute(final String name) {
+        this.name = name;
+        handlers.add(new LoggingWebHookHandler());
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /** Describes the route for the handler registry.
+     * @param webhookId the id of the route's webhook in Spark, null if none
+     * @param filter the parameters of the route's webhook, null if none
+     * @return a snapshot of the route and its handlers
+     */
+    RouteInfo describe(final String webhookId, final WebhookFilter filter) {
+        final List<String> names = new ArrayList<>();
+        final List<String> typedNames = new ArrayList<>();
+        for (RawEventHandler handler : handlers) {
+            names.add(handler.getName());
+            if (handler instanceof SparkEventProcessor) {
+                typedNames.addAll(((SparkEventProcessor<?>) handler).getHandlerClassNames());
+            }
+        }
+        return new RouteInfo(name, webhookId, filter, Collections.unmodifiableList(names),
+                Collections.unmodifiableList(typedNames));
+    }
+
+    /** Register an application webhook 'raw' handler on this route.
+     * @param handler the handler to be registered
+     */
+    void registerRawEventHandler(final RawEventHandler handler) {
+        LOG.info("registerRawEventHandler '{}': handler {}", name, handler);
+        handlers.add(handler);
+    }
+
+    /** Unregister an application webhook 'raw' handler from this route.
+     * @param handler the handler to be unregistered
+     * @return true if a handler had been registered, false otherwise
+     */
+    boolean unregisterRawEventHandler(final RawEventHandler handler) {
+        LOG.info("unregisterRawEventHandler '{}': handler {}", name, handler);
+        return handlers.remove(handler);
+    }
+
+    /** Calls all handlers registered on this route with the event data. In
+     *  virtual thread mode each handler is called on its own virtual thread,
+     *  so a slow handler does not hold up the Jetty thread or the other
+     *  handlers.
+     * @param msg the event received from Spark
+     * @param headers values of various headers present in the request
+     */
+    void dispatch(final WebhookEvent msg, final RequestHeaderData headers) {
+        if (LOG.isDebugEnabled() && IngestLog.shouldLog(IngestLog.Category.DISPATCH)) {
+            LOG.debug("webhook dispatch: route={} handlers={}", name, handlers.size());
+        }
+        for (RawEventHandler handler : handlers) {
+            final WebhookStats.Counters stats = WebhookStats.handler(handler.getName());
+            stats.received();
+            SparkExecution.dispatch(() -> invoke(handler, stats, msg, headers));
+        }
+    }
+
+    private static void invoke(final RawEventHandler handler, final WebhookStats.Counters stats,
+            final WebhookEvent msg, final RequestHeaderData headers) {
+        WebhookStats.enterHandler();
+        final long start = System.nanoTime();
+        final HandlerInvocationEvent event = SparkbotEvents.beginHandlerInvocation();
+        boolean failed = true;
+        try {
+            handler.handleWebhookEvent(msg, headers);
+            stats.dispatched();
+            failed = false;
+        } catch (RuntimeException e) {
+            stats.failed();
+            throw e;
+        } finally {
+            SparkbotEvents.endHandlerInvocation(event, handler.getName(), msg, failed);
+            TrackingContext.recordCurrent("handler " + handler.getName(), failed ? "failed" : null, start);
+            WebhookStats.exitHandler();
+            if (IngestLog.isDebugHandler(handler.getName())) {
+                LOG.info("webhook handled: handler={} failed={} durationUs={} event={}", handler.getName(),
+                        failed, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), msg);
+            }
+        }
+    }
+
+    /** WebHookHandler that logs all incoming requests. Registered by default
+     *  when the route is constructed.
+     * @author jmedved
+     *
+     */
+    private class LoggingWebHookHandler implements RawEventHandler {
+        private final AtomicInteger eventCnt = new AtomicInteger(0);
+
+        @Override
+        public void handleWebhookEvent(final WebhookEvent msg, final RequestHeaderData requestData) {
+            final int count = eventCnt.incrementAndGet();
+            // The event is formatted only if the message is logged
+            if (LOG.isInfoEnabled() && IngestLog.shouldLog(IngestLog.Category.DISPATCH)) {
+                LOG.info("webhook event: route={} count={} event={}", name, count, msg);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "LoggingWebHookHandler/" + name;
+        }
+    }
+}
@@ -9,29 +9,43 @@ package com.cisco.ctao.sparkbot.core.webhooksvr;
 
 import com.cisco.ctao.sparkbot.core.Memberships;
 import com.cisco.ctao.sparkbot.core.Messages;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
 import com.cisco.ctao.sparkbot.core.RawEventHandler;
 import com.cisco.ctao.sparkbot.core.Rooms;
+import com.cisco.ctao.sparkbot.core.SparkClient;
 import com.cisco.ctao.sparkbot.core.TypedEventHandler;
 import com.cisco.ctao.sparkbot.core.Webhooks;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServerConfig.WebhookServerConfigBuilder;
 import com.ciscospark.Membership;
 import com.ciscospark.Message;
 import com.ciscospark.Room;
 import com.ciscospark.SparkException;
+import com.ciscospark.TrackingContext;
 import com.ciscospark.Webhook;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,20 +56,43 @@ import org.slf4j.LoggerFactory;
 public final class WebhookServer {
     private static final Logger LOG = LoggerFactory.getLogger(WebhookServer.class);
     private static final String EVT_HANDLER_METHOD_NAME = "handleSparkEvent";
-    private static final Map<RawEventHandler, RawEventHandlerReg> RAW_HANDLER_REGISTRATIONS = new HashMap<>();
-    private static final Map<TypedEventHandler<?>, RawEventHandler> TYPED_HANDLER_REGISTRATIONS = new HashMap<>();
+    private static final Map<RawEventHandler, RawEventHandlerReg> RAW_HANDLER_REGISTRATIONS =
+            new ConcurrentHashMap<>();
+    private static final Map<TypedEventHandler<?>, RawEventHandler> TYPED_HANDLER_REGISTRATIONS =
+            new ConcurrentHashMap<>();
 
     private static WebhookServer instance;
 
     private final SparkServlet sparkServlet = new SparkServlet("Default");
 
-    private Server httpServer;
-    private Integer httpPort;
-    private URI urlPrefix;
-    private ServletContextHandler context;
+    private static final long CONNECTOR_DRAIN_TIME = 30000;
+    private static final SelectChannelConnector JETTY_DEFAULTS = new SelectChannelConnector();
+
+    private final ScheduledExecutorService reconfigExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-webhook-reconfig-%d").setDaemon(true).build());
+
+    private volatile WebhookServerConfig ingressConfig = new WebhookServerConfigBuilder().build();
+    private QueuedThreadPool threadPool;
+    private volatile Server httpServer;
+    private volatile Integer httpPort;
+    private volatile URI urlPrefix;
+    private volatile WebhookServerStatusListener statusListener;
+    private volatile WebhookServerStatus lastStatus;
+    private volatile boolean webhookOwner = true;
 
     private WebhookServer() {
         httpServer = null;
+        TrackingContext.addListener(WebhookServer::logTrace);
+    }
+
+    /** Logs the phase breakdown (receive, enrichment, handlers and the Spark
+     *  requests they made) of a completed webhook event.
+     * @param context the event's tracking context
+     */
+    private static void logTrace(final TrackingContext context) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Webhook event trace: {}", context);
+        }
     }
 
     public static Long getWebhookServerPort() {
@@ -74,13 +111,25 @@ public final class WebhookServer {
         }
     }
 
-    public static WebhookServer getInstance() {
+    public static synchronized WebhookServer getInstance() {
         if (instance == null) {
             instance = new WebhookServer();
         }
         return instance;
     }
 
+    /** Gets the handler registry: the routes of the webhook server and the
+     *  handlers registered on them.
+     * @return the routes, the default route first
+     */
+    public static List<RouteInfo> getRoutes() {
+        final Map<String, RawEventHandlerReg> registrations = new HashMap<>();
+        for (RawEventHandlerReg reg : RAW_HANDLER_REGISTRATIONS.values()) {
+            registrations.put(reg.getFilter().getName(), reg);
+        }
+        return getInstance().sparkServlet.describeRoutes(registrations);
+    }
+
     /** Registers a 'raw' webhook handler.
      * @param handler the handler to be registered
      */
@@ -89,42 +138,53 @@ public final class WebhookServer {
     }
 
     /** Registers a 'raw' webhook handler. IF a filter is specified,
-     *  the registration creates a separate servlet in the sparkbot Jetty
-     *  server and a webhook in Spark. The webhook's 'event' and 'resource'
-     *  parameters are set to the values specified in the filter.
+     *  the registration creates a separate route in the sparkbot webhook
+     *  servlet and a webhook in Spark. The webhook's 'event' and 'resource'
+     *  parameters are set to the values specified in the filter. The
+     *  webhook is created in the background; the handler's route accepts
+     *  events right away.
      * @param handler the handler to be registered
      * @param filter if specified, create a webhook in Spark with parameters
      *           as specified in the filter. The filter specifies webhook
      *           parameters and a path in the local server that will be used
-     *           for this handler only (in the handler's servlet).
+     *           for this handler only (in the handler's route).
      */
     public static void registerRawEventHandler(final RawEventHandler handler, final WebhookFilter filter) {
         LOG.info("registerRawEventHandler: handler {}, filter {}", handler, filter);
         if (filter != null) {
-            // Create a new servlet for the handler
-            if (RAW_HANDLER_REGISTRATIONS.get(handler) == null) {
-                Webhook webhook = createWebhook(filter);
-
-                final SparkServlet servlet = new SparkServlet(filter.getName());
-                servlet.registerRawEventHandler(handler);
-                final ServletHolder sh = new ServletHolder(servlet);
-                getInstance().context.addServlet(sh, "/" + filter.getName());
-                try {
-                    sh.start();
-                    final String webhookId = (webhook != null) ? webhook.getId() : null;
-                    RAW_HANDLER_REGISTRATIONS.put(handler, new RawEventHandlerReg(webhookId, handler, sh, filter));
-                } catch (Exception e) {
-                    LOG.error("registerRawEventHandler: failed to start servlet {}, ", filter.getName(), e);
-                }
+            // Create a new route for the handler
+            if (RAW_HANDLER_REGISTRATIONS.get(handler) == null
+                    && getInstance().sparkServlet.addRoute(filter.getName(), handler)) {
+                final RawEventHandlerReg reg = new RawEventHandlerReg(null, handler, filter);
+                RAW_HANDLER_REGISTRATIONS.put(handler, reg);
+                getInstance().reconfigExecutor.execute(() -> getInstance().createHandlerWebhook(reg));
             } else {
                 LOG.error("Handler '{}' already registered", filter.getName());
             }
         } else {
-            // Register the handler with the default servlet
+            // Register the handler with the default route
             getInstance().sparkServlet.registerRawEventHandler(handler);
         }
     }
 
+    /** Creates the Spark webhook of a new registration. Runs on the
+     *  reconfiguration thread, so that registering a handler does not wait
+     *  for Spark and webhook changes are applied in order. If the handler
+     *  was unregistered in the meantime, no webhook is created, or the one
+     *  just created is deleted.
+     * @param reg the registration, as put into the registry
+     */
+    private void createHandlerWebhook(final RawEventHandlerReg reg) {
+        if (!webhookOwner || RAW_HANDLER_REGISTRATIONS.get(reg.getHandler()) != reg) {
+            return;
+        }
+        final Webhook webhook = createWebhook(reg.getFilter());
+        if (webhook != null && !RAW_HANDLER_REGISTRATIONS.replace(reg.getHandler(), reg,
+                new RawEventHandlerReg(webhook.getId(), reg.getHandler(), reg.getFilter()))) {
+            deleteWebhook(reg.getFilter().getIdentity(), webhook.getId());
+        }
+    }
+
     /** Unregisters a 'raw' webhook handler.
      * @param handler: the handler to be registered
      */
@@ -132,20 +192,11 @@ public final class WebhookServer {
         LOG.info("unregisterRawEventHandler: handler {}", handler);
 
         if (!getInstance().sparkServlet.unregisterRawEventHandler(handler)) {
-            RawEventHandlerReg reg = RAW_HANDLER_REGISTRATIONS.get(handler);
+            final RawEventHandlerReg reg = RAW_HANDLER_REGISTRATIONS.remove(handler);
             if (reg != null) {
-                RawEventHandlerReg reg1 = new RawEventHandlerReg(reg);
-                RAW_HANDLER_REGISTRATIONS.remove(handler);
-                try {
-                    reg1.getServletHolder().stop();
-                    reg1.getServletHolder().getServlet().destroy();
-                    Webhooks.deleteWebhook(reg1.getHandlerWebhookId());
-                } catch (Exception e) {
-                    LOG.error("Could not stop and/or destroy servlet for handler {}", handler, e);
-                    LOG.error("Restarting the Webhook HTTP Server.");
-                    getInstance().stopHttpServer();
-                    getInstance().startHttpServer(getInstance().httpPort);
-                }
+                getInstance().sparkServlet.removeRoute(reg.getFilter().getName());
+                getInstance().reconfigExecutor.execute(
+                        () -> deleteWebhook(reg.getFilter().getIdentity(), reg.getHandlerWebhookId()));
             } else {
                 LOG.info("unregisterRawEventHandler: handler '{}' not found", handler);
             }
@@ -171,37 +222,59 @@ public final class WebhookServer {
      * @param secret secret string to be passed to the spark webhook created
      *          for this handler
      * @param name name for this handler; will also be used as the path for
-     *          the servlet created for this handler
+     *          the route created for this handler
      */
-    @SuppressWarnings("unchecked")
     public static <T> void registerTypedEventHandler(final TypedEventHandler<T> handler,
             final WebhookFilter.Events event, final String filter, final String secret, final String name ) {
+        registerTypedEventHandler(handler, event, filter, secret, name, null);
+    }
+
+    /** Register a handler to process Spark webhook events.
+     * @param handler reference to the handler to be registered. A handler
+     *          can be parameterized to a Message, Room, or Membership.
+     * @param event event type for which this handler applies ('created',
+     *          'updated', or 'deleted')
+     * @param filter filter string to be passed to the spark webhook created
+     *          for this handler
+     * @param secret secret string to be passed to the spark webhook created
+     *          for this handler
+     * @param name name for this handler; will also be used as the path for
+     *          the route created for this handler
+     * @param identity the bot identity that owns the spark webhook created
+     *          for this handler and that is used to retrieve event
+     *          details; null for the default identity
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void registerTypedEventHandler(final TypedEventHandler<T> handler,
+            final WebhookFilter.Events event, final String filter, final String secret, final String name,
+            final String identity) {
         LOG.info("registerTypedEventHandler: handler {}", handler);
 
         Class<?> clazz = findEventHandlerClass(handler);
         if (clazz != null) {
             if (Message.class.isAssignableFrom(clazz)) {
                 final WebhookFilter wf = new WebhookFilter(event, WebhookFilter.Resources.MESSAGES,
-                        filter, secret, name);
-                final SparkEventProcessor<Message> evtProc = new SparkEventProcessor<>(Messages.api(),
-                        "messages");
+                        filter, secret, name, identity);
+                final SparkEventProcessor<Message> evtProc = new SparkEventProcessor<>(
+                        Messages.api().forIdentity(identity).forLane(Lane.INTERACTIVE), "messages");
                 evtProc.registerHandler((TypedEventHandler<Message>) handler);
                 registerRawEventHandler(evtProc, wf);
                 TYPED_HANDLER_REGISTRATIONS.put(handler, evtProc);
 
             } else if (Room.class.isAssignableFrom(clazz)) {
                 final WebhookFilter wf = new WebhookFilter(event, WebhookFilter.Resources.ROOMS,
-                        filter, secret, name);
-                SparkEventProcessor<Room> evtProc = new SparkEventProcessor<>(Rooms.api(), "rooms");
+                        filter, secret, name, identity);
+                SparkEventProcessor<Room> evtProc = new SparkEventProcessor<>(
+                        Rooms.api().forIdentity(identity).forLane(Lane.INTERACTIVE), "rooms");
                 evtProc.registerHandler((TypedEventHandler<Room>) handler);
                 registerRawEventHandler(evtProc, wf);
                 TYPED_HANDLER_REGISTRATIONS.put(handler, evtProc);
 
             } else if (Membership.class.isAssignableFrom(clazz)) {
                 final WebhookFilter wf = new WebhookFilter(event, WebhookFilter.Resources.MEMBERSHIPS,
-                        filter, secret, name);
-                SparkEventProcessor<Membership> evtProc = new SparkEventProcessor<>(Memberships.api(),
-                        "memberships");
+                        filter, secret, name, identity);
+                SparkEventProcessor<Membership> evtProc = new SparkEventProcessor<>(
+                        Memberships.api().forIdentity(identity).forLane(Lane.INTERACTIVE), "memberships");
                 evtProc.registerHandler((TypedEventHandler<Membership>) handler);
                 registerRawEventHandler(evtProc, wf);
                 TYPED_HANDLER_REGISTRATIONS.put(handler, evtProc);
@@ -244,33 +317,83 @@ public final class WebhookServer {
         }
     }
 
-    /** Handles addition or change of Webhook Server's HTTP Port.
+    /** Gets the Webhook Server's current startup/reconfiguration stage.
+     * @return the last reported status; null if none has been reported yet
+     */
+    public WebhookServerStatus getStatus() {
+        return lastStatus;
+    }
+
+    /** Sets the listener that is notified when the Webhook Server moves
+     *  through its startup/reconfiguration stages.
+     * @param listener the listener; null to remove the current listener
+     */
+    public void setStatusListener(final WebhookServerStatusListener listener) {
+        this.statusListener = listener;
+    }
+
+    /** Sets whether this instance owns the bot's webhooks in Spark. In a
+     *  cluster, only one member (the owner) creates, updates and deletes
+     *  webhooks in Spark; the other members only serve the webhook
+     *  callouts. A standalone instance is always the owner. When ownership
+     *  is gained, webhooks are reconciled with Spark in the background.
+     * @param owner true if this instance owns the webhooks
+     */
+    public void setWebhookOwner(final boolean owner) {
+        LOG.info("setWebhookOwner: owner {}", owner);
+        reconfigExecutor.execute(() -> changeWebhookOwner(owner));
+    }
+
+    /** Sets the cluster members across which webhook events are sharded
+     *  by room id.
+     * @param localMember this member's address
+     * @param members addresses of all live members, including this member;
+     *          null to process all events locally
+     */
+    public void setClusterMembers(final String localMember, final Collection<String> members) {
+        sparkServlet.setClusterMembers(localMember, members);
+    }
+
+    /** Handles addition or change of Webhook Server's HTTP Port. The change
+     *  is applied asynchronously: the HTTP server is first bound to the new
+     *  port, then webhooks are reconciled with Spark in the background. The
+     *  progress is reported to the status listener.
      * @param port the port on which to listen to requests
      */
     public void handleHttpPortChange(final Long port) {
-        LOG.info("handleHttpPortChange: port {}, httpPort {}", port, httpPort);
+        LOG.info("handleHttpPortChange: port {}", port);
         if (port != null) {
-            Integer tmpPort = port.intValue();
-            if ((httpPort != null && (!httpPort.equals(tmpPort))) || (httpPort == null)) {
-                httpPort = tmpPort;
-                stopHttpServer();
-                startHttpServer(tmpPort);
-            }
+            final Integer tmpPort = port.intValue();
+            reconfigExecutor.execute(() -> changeHttpPort(tmpPort));
         }
     }
 
+    /** Handles addition or change of the HTTP ingress tuning parameters.
+     *  Thread pool sizes and the request body limit are applied to the
+     *  running server. Connector parameters are applied by swapping in a new
+     *  connector; connections accepted by the old connector are drained
+     *  rather than dropped.
+     * @param config the new ingress configuration
+     */
+    public void handleIngressConfigChange(final WebhookServerConfig config) {
+        LOG.info("handleIngressConfigChange: config {}", config);
+        reconfigExecutor.execute(() -> applyIngressConfig(config));
+    }
+
     /** Handles addition or change of the schema/host/port prefix used in
      *  targetURLs for the webhooks created by default when a Spark Event
-     *  handler is being registered.
+     *  handler is being registered. Webhooks already registered in Spark
+     *  are updated asynchronously.
      * @param urlPfxString the prefix string for the target URLs
      */
     public void handleUrlPrefixChange(String urlPfxString) {
         LOG.info("handleUrlPrefixChange: urlPfxString: {}", urlPfxString);
         if (urlPfxString != null) {
             try {
-                URI tmpPrefix = new URI(urlPfxString);
-                if (urlPrefix != null && (!urlPrefix.equals(tmpPrefix))) {
-                    updateWebhookTargetUrls(urlPrefix, tmpPrefix);
+                final URI tmpPrefix = new URI(urlPfxString);
+                final URI oldPrefix = urlPrefix;
+                if (oldPrefix != null && (!oldPrefix.equals(tmpPrefix)) && webhookOwner) {
+                    reconfigExecutor.execute(() -> updateWebhookTargetUrls(oldPrefix, tmpPrefix));
                 }
                 urlPrefix = tmpPrefix;
             } catch (URISyntaxException e) {
@@ -279,12 +402,13 @@ public final class WebhookServer {
         }
     }
 
-    /** Handles the deletion of the HTTP port configuration.
+    /** Handles the deletion of the HTTP port configuration. The server is
+     *  stopped asynchronously.
      *
      */
     public void handleHttpPortDelete() {
         LOG.info("handleHttpPortDelete");
-        stopHttpServer();
+        reconfigExecutor.execute(this::stopHttpServer);
     }
 
     /** Handles the deletion of the URL prefix configuration.
@@ -304,7 +428,8 @@ public final class WebhookServer {
      */
     private static <T> Class<?> findEventHandlerClass(final TypedEventHandler<T> handler) {
         for (Method m : handler.getClass().getMethods()) {
-            if (EVT_HANDLER_METHOD_NAME.equals(m.getName())) {
+            // Skip the bridge method that the compiler generates for a generic handler
+            if (EVT_HANDLER_METHOD_NAME.equals(m.getName()) && !m.isBridge()) {
                 Class<?>[] handlerParams = m.getParameterTypes();
                 if (handlerParams.length == 3) {
                     return m.getParameterTypes()[1];
@@ -322,14 +447,16 @@ public final class WebhookServer {
         LOG.info("updateWebhookTargetUrls: oldTargetPrefix {}, newTargetPrefix {}",
                 oldTargetPrefix, newTargetPrefix);
         try {
-            List<Webhook> webhooks = Webhooks.listWebhooks(null);
-            for (Webhook wh : webhooks) {
-                URI targetUrl = wh.getTargetUrl();
-
-                if (targetUrl.getScheme().equals(oldTargetPrefix.getScheme())
-                        && targetUrl.getHost().equals(oldTargetPrefix.getHost())
-                        && targetUrl.getPort() == oldTargetPrefix.getPort()) {
-                    updateWebhookTargetUrl(wh, targetUrl, newTargetPrefix);
+            for (String identity : getWebhookIdentities()) {
+                List<Webhook> webhooks = Webhooks.listWebhooks(identity, null);
+                for (Webhook wh : webhooks) {
+                    URI targetUrl = wh.getTargetUrl();
+
+                    if (targetUrl.getScheme().equals(oldTargetPrefix.getScheme())
+                            && targetUrl.getHost().equals(oldTargetPrefix.getHost())
+                            && targetUrl.getPort() == oldTargetPrefix.getPort()) {
+                        updateWebhookTargetUrl(identity, wh, targetUrl, newTargetPrefix);
+                    }
                 }
             }
         } catch (SparkException e) {
@@ -337,96 +464,405 @@ public final class WebhookServer {
         }
     }
 
-    private void updateWebhookTargetUrl(Webhook wh, URI oldTargetPrefix, URI newTargetPrefix) {
+    private void updateWebhookTargetUrl(String identity, Webhook wh, URI oldTargetPrefix, URI newTargetPrefix) {
         LOG.info("updateWebhookTargetUrl: wh {}, oldTargetPrefix {}, oldTargetPrefix {}",
                 wh, oldTargetPrefix, newTargetPrefix);
         try {
             URI newUrl = new URI(newTargetPrefix.getScheme(), newTargetPrefix.getUserInfo(),
                     newTargetPrefix.getHost(), newTargetPrefix.getPort(), oldTargetPrefix.getPath(),
                     null, null);
-            Webhooks.updateWebhook(wh.getId(), wh.getName(), newUrl);
+            Webhooks.updateWebhook(identity, wh.getId(), wh.getName(), newUrl);
         } catch (URISyntaxException e) {
             LOG.error("updateWebhookTargetUrl: Could not create new URL , oldTargetPrefix {}, newTargetPrefix {}",
                     oldTargetPrefix.toASCIIString(), newTargetPrefix.toASCIIString(), e);
         }
     }
 
-    private void startHttpServer(final Integer port) {
-        LOG.info("startHttpServer {}", port);
-        if (port < 1 && port > 65535) {
-            LOG.error("SparkViewBotWebHook: http port out of range: {}", port);
+    private void changeHttpPort(final Integer port) {
+        LOG.info("changeHttpPort: port {}, httpPort {}", port, httpPort);
+        if (!port.equals(httpPort) && bindHttpServer(port)) {
+            if (webhookOwner) {
+                reconcileHandlersWithWebhooks();
+            } else {
+                reportStatus(WebhookServerStatus.State.READY, null);
+            }
+        }
+    }
+
+    private void changeWebhookOwner(final boolean owner) {
+        if (owner == webhookOwner) {
             return;
         }
+        webhookOwner = owner;
+        if (owner) {
+            if (httpServer != null) {
+                reconcileHandlersWithWebhooks();
+            }
+        } else {
+            // The new owner recreates the webhooks; forget the ids of ours
+            for (RawEventHandlerReg reg : cloneRegistrationValues()) {
+                RAW_HANDLER_REGISTRATIONS.replace(reg.getHandler(),
+                        new RawEventHandlerReg(null, reg.getHandler(), reg.getFilter()));
+            }
+            if (httpServer != null) {
+                reportStatus(WebhookServerStatus.State.READY, null);
+            }
+        }
+    }
+
+    /** Starts a new HTTP server on the specified port and, once it is
+     *  accepting requests, shuts down the server previously in use. Does not
+     *  make any calls to Spark.
+     * @param port the port on which to listen to requests
+     * @return true if the new server was started, false otherwise
+     */
+    private boolean bindHttpServer(final Integer port) {
+        LOG.info("bindHttpServer {}", port);
+        if (port < 1 || port > 65535) {
+            LOG.error("SparkViewBotWebHook: http port out of range: {}", port);
+            reportStatus(WebhookServerStatus.State.FAILED, "HTTP port out of range: " + port);
+            return false;
+        }
+
+        final QueuedThreadPool newThreadPool = new QueuedThreadPool();
+        newThreadPool.setName("sparkbot-webhook");
+        configureThreadPool(newThreadPool, ingressConfig);
+        final Server newServer = new Server();
+        newServer.setThreadPool(newThreadPool);
+        newServer.addConnector(createConnector(port, ingressConfig));
+        newServer.setHandler(createContext());
+        try {
+            newServer.start();
+        } catch (Exception e) {
+            LOG.error("bindHttpServer: failed to start the server, ", e);
+            shutdownHttpServer(newServer);
+            reportStatus(WebhookServerStatus.State.FAILED, "Failed to start HTTP server: " + e.getMessage());
+            return false;
+        }
 
+        final Server oldServer = this.httpServer;
+        this.threadPool = newThreadPool;
+        this.httpServer = newServer;
         this.httpPort = port;
-        this.httpServer = new Server(port);
+        reportStatus(WebhookServerStatus.State.LISTENING, null);
+        if (oldServer != null) {
+            shutdownHttpServer(oldServer);
+        }
+        return true;
+    }
 
-        reconcileHandlersWithWebhooks();
+    private void applyIngressConfig(final WebhookServerConfig config) {
+        LOG.info("applyIngressConfig: config {}", config);
+        final WebhookServerConfig oldConfig = ingressConfig;
+        ingressConfig = config;
+        sparkServlet.setMaxRequestBodySize(config.getMaxRequestBodySize());
+
+        final Server server = httpServer;
+        if (server != null) {
+            configureThreadPool(threadPool, config);
+            if (!config.hasSameConnectorParms(oldConfig)) {
+                swapConnector(server, httpPort, config);
+            } else {
+                for (Connector connector : server.getConnectors()) {
+                    configureConnector(connector, config);
+                }
+            }
+        }
+    }
 
+    /** Replaces the connector(s) of a running server with a new connector
+     *  created from the specified configuration. The old connectors stop
+     *  accepting new connections immediately and are stopped after the
+     *  connections that they accepted have had time to complete.
+     *
+     *  <p>The old connectors must release the listening socket before the
+     *  new connector can bind to the same port (Java 8 has no SO_REUSEPORT),
+     *  so there is a short window, the time it takes to bind, in which new
+     *  connections are refused. Spark retries a refused callout. The swap
+     *  is therefore only used for the parameters that can not be changed
+     *  on a listening socket; see configureConnector().
+     * @param server the running server
+     * @param port the port on which the server is listening
+     * @param config the configuration for the new connector
+     */
+    private void swapConnector(final Server server, final Integer port, final WebhookServerConfig config) {
+        LOG.info("swapConnector: port {}, config {}", port, config);
+        final Connector[] oldConnectors = server.getConnectors();
+        final Connector newConnector = createConnector(port, config);
         try {
-            this.httpServer.start();
+            // Release the listening socket so that the new connector can
+            // bind to it
+            for (Connector connector : oldConnectors) {
+                connector.close();
+            }
+            server.addConnector(newConnector);
+            newConnector.start();
         } catch (Exception e) {
-            LOG.error("startHttpServer: failed to start the server, ", e);
-            this.httpServer = null;
-            this.httpPort = null;
+            LOG.error("swapConnector: failed to start new connector, restarting the old one", e);
+            server.removeConnector(newConnector);
+            for (Connector connector : oldConnectors) {
+                restartConnector(connector);
+            }
+            reportStatus(WebhookServerStatus.State.FAILED,
+                    "Failed to apply ingress configuration: " + e.getMessage());
             return;
         }
-        ServletHolder sh = new ServletHolder(new HelloServlet("What a World"));
-        context.addServlet(sh,"/wow");
+        reconfigExecutor.schedule(() -> drainConnectors(server, oldConnectors),
+                CONNECTOR_DRAIN_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    private static void restartConnector(final Connector connector) {
         try {
-            sh.start();
+            connector.stop();
+            connector.start();
         } catch (Exception e) {
-            LOG.error("startHttpServer: failed to dynamically start the wow servlet, ", e);
+            LOG.error("restartConnector: failed to restart connector {}", connector, e);
         }
     }
 
-    private void reconcileHandlersWithWebhooks() {
-        LOG.info("reconcileHandlersWithWebhooks");
+    private static void drainConnectors(final Server server, final Connector[] connectors) {
+        for (Connector connector : connectors) {
+            try {
+                connector.stop();
+            } catch (Exception e) {
+                LOG.info("drainConnectors: Exception: ", e);
+            }
+            server.removeConnector(connector);
+        }
+    }
 
-        // Delete all existing webhooks from Spark
-        cleanupWebhooks();
-        // Create new context for the Webhook HTTP Server
-        context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+    private static Connector createConnector(final Integer port, final WebhookServerConfig config) {
+        final SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setPort(port);
+        if (config.getAcceptors() != null) {
+            connector.setAcceptors(config.getAcceptors());
+        }
+        if (config.getAcceptQueueSize() != null) {
+            connector.setAcceptQueueSize(config.getAcceptQueueSize());
+        }
+        configureConnector(connector, config);
+        return connector;
+    }
+
+    /** Applies the connector parameters that can be changed while the
+     *  connector is running: the idle timeout and the request header size.
+     *  They apply to the connections accepted from then on. A parameter
+     *  that is not configured is set back to the Jetty default.
+     * @param connector the connector
+     * @param config the configuration to apply
+     */
+    private static void configureConnector(final Connector connector, final WebhookServerConfig config) {
+        if (!(connector instanceof SelectChannelConnector)) {
+            return;
+        }
+        final SelectChannelConnector selectConnector = (SelectChannelConnector) connector;
+        selectConnector.setMaxIdleTime(config.getIdleTimeout() != null ? config.getIdleTimeout()
+                : JETTY_DEFAULTS.getMaxIdleTime());
+        selectConnector.setRequestHeaderSize(config.getRequestHeaderSize() != null ? config.getRequestHeaderSize()
+                : JETTY_DEFAULTS.getRequestHeaderSize());
+    }
+
+    /** Applies the thread pool sizes from the configuration to a thread
+     *  pool. Sizes that are not specified are left unchanged.
+     * @param pool the thread pool
+     * @param config the ingress configuration
+     */
+    private static void configureThreadPool(final QueuedThreadPool pool, final WebhookServerConfig config) {
+        final Integer minThreads = config.getMinThreads();
+        final Integer maxThreads = config.getMaxThreads();
+        if (minThreads != null && maxThreads != null && minThreads > maxThreads) {
+            LOG.error("configureThreadPool: minThreads {} greater than maxThreads {}", minThreads, maxThreads);
+            return;
+        }
+        if (maxThreads != null) {
+            pool.setMaxThreads(maxThreads);
+        }
+        if (minThreads != null) {
+            pool.setMinThreads(minThreads);
+        }
+    }
+
+    private ServletContextHandler createContext() {
+        final ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
         context.setContextPath("/");
-        httpServer.setHandler(context);
 
         // Add the default RAW handler
         context.addServlet(new ServletHolder(sparkServlet),"/*");
 
-        // Temporary, just for testing
-        context.addServlet(new ServletHolder(new HelloServlet("Buongiorno Mondo")),"/it/*");
-        context.addServlet(new ServletHolder(new HelloServlet("Bonjour le Monde")),"/fr/*");
-        context.addServlet(new ServletHolder(new HelloServlet("Guten Morgen Welt")),"/de");
+        // Operational endpoints; exact paths take precedence over the RAW handler
+        final ServletHolder metrics = new ServletHolder(new MetricsServlet(this));
+        context.addServlet(metrics, MetricsServlet.METRICS_PATH);
+        context.addServlet(metrics, MetricsServlet.HEALTH_PATH);
+        return context;
+    }
 
-        // Recreate registrations for all our registered handlers
-        final Collection<RawEventHandlerReg> regValues = cloneRegistrationValues();
-        RAW_HANDLER_REGISTRATIONS.clear();
-        for (RawEventHandlerReg reg : regValues) {
-            registerRawEventHandler(reg.getHandler(), reg.getFilter());
+    /** Brings the Spark webhooks of all identities in line with the
+     *  registered handlers. Webhooks that match a registration (by name,
+     *  target URL, resource, event and filter) are kept, the others are
+     *  deleted, and webhooks are created only for the registrations that
+     *  have no match. If the webhooks of an identity can not be listed, its
+     *  webhooks are left alone and its registrations are not recreated.
+     */
+    private void reconcileHandlersWithWebhooks() {
+        LOG.info("reconcileHandlersWithWebhooks");
+        reportStatus(WebhookServerStatus.State.RECONCILING, null);
+
+        final Map<String, List<RawEventHandlerReg>> unmatched = new HashMap<>();
+        for (RawEventHandlerReg reg : cloneRegistrationValues()) {
+            unmatched.computeIfAbsent(getWebhookIdentity(reg.getFilter()), key -> new ArrayList<>()).add(reg);
+        }
+
+        boolean inSync = true;
+        for (String identity : getWebhookIdentities()) {
+            final List<RawEventHandlerReg> regs = unmatched.getOrDefault(identity, new ArrayList<>());
+            final List<Webhook> webhooks;
+            try {
+                webhooks = Webhooks.listWebhooks(identity, null);
+            } catch (SparkException e) {
+                LOG.error("reconcileHandlersWithWebhooks: could not list the webhooks of identity '{}'"
+                        + " - sync required at a later time", identity, e);
+                unmatched.remove(identity);
+                inSync = false;
+                continue;
+            }
+            for (Webhook wh : webhooks) {
+                final RawEventHandlerReg reg = findMatchingRegistration(regs, wh);
+                if (reg != null) {
+                    regs.remove(reg);
+                    RAW_HANDLER_REGISTRATIONS.replace(reg.getHandler(),
+                            new RawEventHandlerReg(wh.getId(), reg.getHandler(), reg.getFilter()));
+                } else {
+                    LOG.info("reconcileHandlersWithWebhooks: deleting stale webhook {}", wh);
+                    try {
+                        Webhooks.deleteWebhook(identity, wh.getId());
+                    } catch (SparkException e) {
+                        LOG.error("reconcileHandlersWithWebhooks: failed to delete webhook {}", wh.getId(), e);
+                        inSync = false;
+                    }
+                }
+            }
+        }
+
+        // Create Spark webhooks for the registered handlers that have none;
+        // their routes in the webhook servlet are not affected
+        for (List<RawEventHandlerReg> regs : unmatched.values()) {
+            for (RawEventHandlerReg reg : regs) {
+                final Webhook webhook = createWebhook(reg.getFilter());
+                final String webhookId = (webhook != null) ? webhook.getId() : null;
+                RAW_HANDLER_REGISTRATIONS.replace(reg.getHandler(),
+                        new RawEventHandlerReg(webhookId, reg.getHandler(), reg.getFilter()));
+                inSync &= webhookId != null;
+            }
+        }
+
+        if (inSync) {
+            reportStatus(WebhookServerStatus.State.READY, null);
+        } else {
+            reportStatus(WebhookServerStatus.State.FAILED, "Webhooks not in sync with Spark");
         }
     }
 
+    /** Gets the identity under which the webhook of a registration is
+     *  listed by getWebhookIdentities().
+     * @param filter the registration's filter
+     * @return the filter's identity, or the name of the default identity
+     *          if the filter does not select one
+     */
+    private static String getWebhookIdentity(final WebhookFilter filter) {
+        return filter.getIdentity() != null ? filter.getIdentity() : SparkClient.getIdentity(null).getName();
+    }
+
+    private static RawEventHandlerReg findMatchingRegistration(final Collection<RawEventHandlerReg> regs,
+            final Webhook webhook) {
+        for (RawEventHandlerReg reg : regs) {
+            final WebhookFilter filter = reg.getFilter();
+            final URI webhookUrl = getWebhookUrl(filter);
+            if (webhookUrl != null && webhookUrl.equals(webhook.getTargetUrl())
+                    && Objects.equals(filter.getName(), webhook.getName())
+                    && Objects.equals(filter.getResource(), webhook.getResource())
+                    && Objects.equals(filter.getEvent(), webhook.getEvent())
+                    && Objects.equals(filter.getFilter(), webhook.getFilter())) {
+                return reg;
+            }
+        }
+        return null;
+    }
+
     private void stopHttpServer() {
         if (this.httpServer != null) {
-            try {
-                this.httpServer.stop();
-            } catch (Exception e) {
-                LOG.info("stopHttpServer: Exception: ", e);
-            }
-            httpServer.destroy();
+            shutdownHttpServer(this.httpServer);
             this.httpServer = null;
+            this.threadPool = null;
             this.httpPort = null;
-            cleanupWebhooks();
+            if (webhookOwner) {
+                cleanupWebhooks();
+            }
+        }
+        reportStatus(WebhookServerStatus.State.STOPPED, null);
+    }
+
+    private static void shutdownHttpServer(final Server server) {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            LOG.info("shutdownHttpServer: Exception: ", e);
         }
+        server.destroy();
     }
 
-    private static void cleanupWebhooks() {
+    private void reportStatus(final WebhookServerStatus.State state, final String errorMessage) {
+        int webhookCount = 0;
+        for (RawEventHandlerReg reg : RAW_HANDLER_REGISTRATIONS.values()) {
+            if (reg.getHandlerWebhookId() != null) {
+                webhookCount++;
+            }
+        }
+        final Integer port = httpPort;
+        final WebhookServerStatus status = new WebhookServerStatus(state,
+                (port != null) ? port.longValue() : null, webhookCount, errorMessage);
+        LOG.info("reportStatus: {}", status);
+        lastStatus = status;
+
+        final WebhookServerStatusListener listener = statusListener;
+        if (listener != null) {
+            try {
+                listener.onStatusChange(status);
+            } catch (RuntimeException e) {
+                LOG.error("reportStatus: status listener failed", e);
+            }
+        }
+    }
+
+    private static boolean cleanupWebhooks() {
         try {
-            for (Webhook wh : Webhooks.listWebhooks(null)) {
-                Webhooks.deleteWebhook(wh.getId());
+            for (String identity : getWebhookIdentities()) {
+                for (Webhook wh : Webhooks.listWebhooks(identity, null)) {
+                    Webhooks.deleteWebhook(identity, wh.getId());
+                }
             }
+            return true;
         } catch (SparkException e) {
             LOG.error("Error cleaning up existing sparkbot webhooks in Spark - sync required at a later time", e);
+            return false;
+        }
+    }
+
+    /** Gets the bot identities whose webhooks are managed by the server.
+     * @return names of all configured identities, or only the default
+     *          identity (null) if no identity is configured
+     */
+    private static Collection<String> getWebhookIdentities() {
+        final Collection<String> identities = SparkClient.getIdentityNames();
+        return identities.isEmpty() ? Collections.singletonList(null) : identities;
+    }
+
+    private static void deleteWebhook(final String identity, final String webhookId) {
+        if (webhookId != null) {
+            try {
+                Webhooks.deleteWebhook(identity, webhookId);
+            } catch (SparkException e) {
+                LOG.error("deleteWebhook: Failed to delete webhook {}", webhookId, e);
+            }
         }
     }
 
@@ -439,20 +875,13 @@ public final class WebhookServer {
     }
 
     private static Webhook createWebhook(final WebhookFilter filter) {
-        if (WebhookServer.getWebhookUrlPrefix() == null) {
-            LOG.error("createWebhook: URL prefix not specified");
-            return null;
-        }
-        URI webhookUrl;
-        try {
-            webhookUrl = new URI(getWebhookUrlPrefix() + "/" + filter.getName());
-        } catch (URISyntaxException e) {
-            LOG.error("createWebhook: Invalid URL syntax", e);
+        final URI webhookUrl = getWebhookUrl(filter);
+        if (webhookUrl == null) {
             return null;
         }
         LOG.info("webhookUrl {}", webhookUrl);
         try {
-            final Webhook webhook = Webhooks.createWebhook(filter.getName(), webhookUrl,
+            final Webhook webhook = Webhooks.createWebhook(filter.getIdentity(), filter.getName(), webhookUrl,
                     filter.getResource(), filter.getEvent(), filter.getFilter(), filter.getSecret());
             LOG.info("createWebhook: webhook created {}", webhook);
             return webhook;
@@ -462,4 +891,22 @@ public final class WebhookServer {
         }
 
     }
+
+    /** Gets the URL of the webhook of a registration.
+     * @param filter the registration's filter
+     * @return the URL; null if the URL prefix is not known yet or the URL
+     *          is not valid
+     */
+    private static URI getWebhookUrl(final WebhookFilter filter) {
+        if (WebhookServer.getWebhookUrlPrefix() == null) {
+            LOG.error("getWebhookUrl: URL prefix not specified");
+            return null;
+        }
+        try {
+            return new URI(getWebhookUrlPrefix() + "/" + filter.getName());
+        } catch (URISyntaxException e) {
+            LOG.error("getWebhookUrl: Invalid URL syntax", e);
+            return null;
+        }
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.util.Objects;
+
+/** Immutable DTO that carries the tuning parameters for the Webhook
+ *  Server's HTTP ingress. A parameter that is not specified (null) keeps
+ *  the Jetty default.
+ * @author jmedved
+ *
+ */
+public final class WebhookServerConfig {
+    private final Integer minThreads;
+    private final Integer maxThreads;
+    private final Integer acceptors;
+    private final Integer acceptQueueSize;
+    private final Integer idleTimeout;
+    private final Integer requestHeaderSize;
+    private final Integer maxRequestBodySize;
+
+    /** Constructor for the immutable WebhookServerConfig DTO.
+     * @param builder: a builder for the WebhookServerConfig DTO
+     */
+    private WebhookServerConfig(final WebhookServerConfigBuilder builder) {
+        this.minThreads = builder.minThreads;
+        this.maxThreads = builder.maxThreads;
+        this.acceptors = builder.acceptors;
+        this.acceptQueueSize = builder.acceptQueueSize;
+        this.idleTimeout = builder.idleTimeout;
+        this.requestHeaderSize = builder.requestHeaderSize;
+        this.maxRequestBodySize = builder.maxRequestBodySize;
+    }
+
+    public Integer getMinThreads() {
+        return minThreads;
+    }
+
+    public Integer getMaxThreads() {
+        return maxThreads;
+    }
+
+    public Integer getAcceptors() {
+        return acceptors;
+    }
+
+    public Integer getAcceptQueueSize() {
+        return acceptQueueSize;
+    }
+
+    public Integer getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public Integer getRequestHeaderSize() {
+        return requestHeaderSize;
+    }
+
+    public Integer getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /** Checks whether the parameters that can only be applied by creating
+     *  a new HTTP connector (the acceptors and the accept queue size) are
+     *  the same in this and another configuration. The idle timeout and
+     *  the request header size are applied to the running connector.
+     * @param other the configuration to compare with
+     * @return true if the connector parameters are the same
+     */
+    boolean hasSameConnectorParms(final WebhookServerConfig other) {
+        return Objects.equals(acceptors, other.acceptors)
+                && Objects.equals(acceptQueueSize, other.acceptQueueSize);
+    }
+
+    @Override
+    public String toString() {
+        return "WebhookServerConfig [minThreads=" + minThreads + ", maxThreads=" + maxThreads
+                + ", acceptors=" + acceptors + ", acceptQueueSize=" + acceptQueueSize
+                + ", idleTimeout=" + idleTimeout + ", requestHeaderSize=" + requestHeaderSize
+                + ", maxRequestBodySize=" + maxRequestBodySize + "]";
+    }
+
+    /** Builder class for the WebhookServerConfig DTO.
+     * @author jmedved
+     */
+    public static class WebhookServerConfigBuilder {
+        private Integer minThreads;         // min # of threads in the request thread pool
+        private Integer maxThreads;         // max # of threads in the request thread pool
+        private Integer acceptors;          // # of acceptor threads (and selector sets)
+        private Integer acceptQueueSize;    // backlog of the listening socket
+        private Integer idleTimeout;        // connection idle timeout, in ms
+        private Integer requestHeaderSize;  // max size of request headers, in bytes
+        private Integer maxRequestBodySize; // max size of a webhook payload, in bytes
+
+        /** This method builds the WebhookServerConfig DTO using its constructor.
+         * @return: WebhookServerConfig DTO
+         */
+        public WebhookServerConfig build() {
+            return new WebhookServerConfig(this);
+        }
+
+        public WebhookServerConfigBuilder setMinThreads(Integer minThreads) {
+            this.minThreads = minThreads;
+            return this;
+        }
+
+        public WebhookServerConfigBuilder setMaxThreads(Integer maxThreads) {
+            this.maxThreads = maxThreads;
+            return this;
+        }
+
+        public WebhookServerConfigBuilder setAcceptors(Integer acceptors) {
+            this.acceptors = acceptors;
+            return this;
+        }
+
+        public WebhookServerConfigBuilder setAcceptQueueSize(Integer acceptQueueSize) {
+            this.acceptQueueSize = acceptQueueSize;
+            return this;
+        }
+
+        public WebhookServerConfigBuilder setIdleTimeout(Integer idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public WebhookServerConfigBuilder setRequestHeaderSize(Integer requestHeaderSize) {
+            this.requestHeaderSize = requestHeaderSize;
+            return this;
+        }
+
+        public WebhookServerConfigBuilder setMaxRequestBodySize(Integer maxRequestBodySize) {
+            this.maxRequestBodySize = maxRequestBodySize;
+            return this;
+        }
+    }
+}
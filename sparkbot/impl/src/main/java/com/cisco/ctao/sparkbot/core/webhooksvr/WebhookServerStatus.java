@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+/** Immutable DTO that carries a snapshot of the Webhook Server's readiness.
+ * @author jmedved
+ *
+ */
+public final class WebhookServerStatus {
+    private final State state;
+    private final Long httpPort;
+    private final int webhookCount;
+    private final String errorMessage;
+
+    /** Defines the Webhook Server's startup/reconfiguration stages.
+     * @author jmedved
+     *
+     */
+    public enum State {
+        /** The HTTP server is not running. */
+        STOPPED,
+        /** The HTTP server is bound and accepting events. */
+        LISTENING,
+        /** Webhooks are being reconciled with Spark. */
+        RECONCILING,
+        /** The HTTP server is running and all webhooks are in sync with Spark. */
+        READY,
+        /** The last reconfiguration step failed. */
+        FAILED
+    }
+
+    WebhookServerStatus(final State state, final Long httpPort, final int webhookCount,
+            final String errorMessage) {
+        this.state = state;
+        this.httpPort = httpPort;
+        this.webhookCount = webhookCount;
+        this.errorMessage = errorMessage;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Long getHttpPort() {
+        return httpPort;
+    }
+
+    public int getWebhookCount() {
+        return webhookCount;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "WebhookServerStatus [state=" + state + ", httpPort=" + httpPort + ", webhookCount="
+                + webhookCount + ", errorMessage=" + errorMessage + "]";
+    }
+}
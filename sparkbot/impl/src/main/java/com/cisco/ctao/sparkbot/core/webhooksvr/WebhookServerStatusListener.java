@@ -0,0 +1,21 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+/** Interface through which the Webhook Server reports its readiness.
+ * @author jmedved
+ *
+ */
+@FunctionalInterface
+public interface WebhookServerStatusListener {
+    /** Called from the Webhook Server's reconfiguration thread each time the
+     *  server moves to a new stage. Implementations must not block.
+     * @param status the new status of the Webhook Server
+     */
+    void onStatusChange(WebhookServerStatus status);
+}
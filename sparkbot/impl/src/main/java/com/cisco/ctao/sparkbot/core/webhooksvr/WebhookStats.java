@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler;
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.ciscospark.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Event processing statistics of the Webhook Server: counts of the events
+ *  received, dispatched, dropped and failed by each servlet and each
+ *  handler, the latency of event enrichment (fetching the details of the
+ *  object an event refers to) and the number of handler invocations in
+ *  flight. All counters are lock-free, so that they can be updated on the
+ *  event path; they are read periodically and published to the
+ *  operational data store.
+ * @author jmedved
+ *
+ */
+public final class WebhookStats {
+    private static final ConcurrentMap<String, Counters> SERVLETS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Counters> HANDLERS = new ConcurrentHashMap<>();
+    private static final LongAdder IN_FLIGHT = new LongAdder();
+    private static final LatencyHistogram TOTAL_ENRICHMENT_LATENCY = new LatencyHistogram();
+    private static final AtomicReference<LatencyHistogram> ENRICHMENT_LATENCY =
+            new AtomicReference<>(new LatencyHistogram());
+
+    private WebhookStats() {
+    }
+
+    /** Gets the counters of a servlet, creating them on first use.
+     * @param name the servlet name
+     * @return the servlet's counters
+     */
+    public static Counters servlet(final String name) {
+        return SERVLETS.computeIfAbsent(name, key -> new Counters());
+    }
+
+    /** Gets the counters of a handler, creating them on first use.
+     * @param name the handler name (see RawEventHandler.getName())
+     * @return the handler's counters
+     */
+    public static Counters handler(final String name) {
+        return HANDLERS.computeIfAbsent(name, key -> new Counters());
+    }
+
+    /** Gets the counters of all servlets that have seen events.
+     * @return the counters, sorted by servlet name
+     */
+    public static Map<String, Counters> getServletStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(SERVLETS));
+    }
+
+    /** Gets the counters of all handlers that have seen events.
+     * @return the counters, sorted by handler name
+     */
+    public static Map<String, Counters> getHandlerStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(HANDLERS));
+    }
+
+    /** Records the time it took to fetch the details of an event's object.
+     * @param nanos the enrichment latency in nanoseconds
+     */
+    public static void recordEnrichmentLatency(final long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        TOTAL_ENRICHMENT_LATENCY.record(micros);
+        ENRICHMENT_LATENCY.get().record(micros);
+    }
+
+    /** Gets the enrichment latencies recorded since startup.
+     * @return the latencies
+     */
+    public static LatencyHistogram getEnrichmentLatency() {
+        return TOTAL_ENRICHMENT_LATENCY;
+    }
+
+    /** Gets the enrichment latencies recorded since the previous call and
+     *  starts a new interval, so that the published percentiles reflect
+     *  the recent latency rather than the latency since startup.
+     * @return the latencies of the interval that ended
+     */
+    public static LatencyHistogram takeEnrichmentLatency() {
+        return ENRICHMENT_LATENCY.getAndSet(new LatencyHistogram());
+    }
+
+    /** Gets the number of handler invocations in progress.
+     * @return the number of invocations
+     */
+    public static long getInFlight() {
+        return IN_FLIGHT.sum();
+    }
+
+    /** Gets the number of outbound Spark calls waiting for a call slot,
+     *  across all priority lanes.
+     * @return the queue depth
+     */
+    public static long getQueueDepth() {
+        long depth = 0;
+        for (final Lane lane : Lane.values()) {
+            depth += OutboundScheduler.getQueueDepth(lane);
+        }
+        return depth;
+    }
+
+    static void enterHandler() {
+        IN_FLIGHT.increment();
+    }
+
+    static void exitHandler() {
+        IN_FLIGHT.decrement();
+    }
+
+    /** Event counters of a servlet or a handler.
+     */
+    public static final class Counters {
+        private final LongAdder received = new LongAdder();
+        private final LongAdder dispatched = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        private Counters() {
+        }
+
+        /** Counts an event handed to the servlet or handler. */
+        public void received() {
+            received.increment();
+        }
+
+        /** Counts an event passed on to the handlers or to the owning
+         *  cluster member (servlet), or handled without an exception
+         *  (handler). */
+        public void dispatched() {
+            dispatched.increment();
+        }
+
+        /** Counts an event that was rejected (servlet) or ignored
+         *  (handler). */
+        public void dropped() {
+            dropped.increment();
+        }
+
+        /** Counts an event whose processing failed. */
+        public void failed() {
+            failed.increment();
+        }
+
+        public long getReceivedCount() {
+            return received.sum();
+        }
+
+        public long getDispatchedCount() {
+            return dispatched.sum();
+        }
+
+        public long getDroppedCount() {
+            return dropped.sum();
+        }
+
+        public long getFailedCount() {
+            return failed.sum();
+        }
+    }
+}
@@ -102,16 +102,16 @@ public class HandlerServiceImpl implements SparkbotHandlersService {
             if (odlFilter != null) {
                 switch (input.getHandlerType()) {
                     case RAW:
-                        registerRawTestHandler(input.getFilter());
+                        registerRawTestHandler(input.getFilter(), input.getSparkIdentity());
                         break;
                     case MESSAGES:
-                        registerMessageTestHandler(input.getFilter());
+                        registerMessageTestHandler(input.getFilter(), input.getSparkIdentity());
                         break;
                     case ROOMS:
-                        registerRoomTestHandler(input.getFilter());
+                        registerRoomTestHandler(input.getFilter(), input.getSparkIdentity());
                         break;
                     case MEMBERSHIPS:
-                        registerMembershipTestHandler(input.getFilter());
+                        registerMembershipTestHandler(input.getFilter(), input.getSparkIdentity());
                         break;
                     default:
                         LOG.error("unsupported handler type {}", input.getHandlerType());
@@ -125,57 +125,57 @@ public class HandlerServiceImpl implements SparkbotHandlersService {
         return RpcResultBuilder.success(ob.build()).buildFuture();
     }
 
-    private void registerMembershipTestHandler(Filter odlFilter) {
+    private void registerMembershipTestHandler(Filter odlFilter, String identity) {
         LOG.info("registerMembershipTestHandler, odlFilter {}", odlFilter);
         if (membershipTestHandler == null) {
             membershipTestHandler = new WebhookMembershipTestHandler();
             WebhookServer.registerTypedEventHandler(membershipTestHandler,
                     getEventType(odlFilter.getEvent()),
-                    odlFilter.getFilter(), odlFilter.getSecret(), odlFilter.getName());
+                    odlFilter.getFilter(), odlFilter.getSecret(), odlFilter.getName(), identity);
         } else {
             LOG.error(HANDLER_CREATED_ERR);
         }
     }
 
-    private void registerRoomTestHandler(Filter odlFilter) {
+    private void registerRoomTestHandler(Filter odlFilter, String identity) {
         LOG.info("registerRoomTestHandler, odlFilter {}", odlFilter);
         if (roomTestHandler == null) {
             roomTestHandler = new WebhookRoomTestHandler();
             WebhookServer.registerTypedEventHandler(roomTestHandler,
                     getEventType(odlFilter.getEvent()),
-                    odlFilter.getFilter(), odlFilter.getSecret(), odlFilter.getName());
+                    odlFilter.getFilter(), odlFilter.getSecret(), odlFilter.getName(), identity);
         } else {
             LOG.error(HANDLER_CREATED_ERR);
         }
     }
 
-    private void registerMessageTestHandler(Filter odlFilter) {
+    private void registerMessageTestHandler(Filter odlFilter, String identity) {
         LOG.info("registerMessageTestHandler, odlFilter {}", odlFilter);
         if (msgTestHandler == null) {
             msgTestHandler = new WebhookMessageTestHandler();
             WebhookServer.registerTypedEventHandler(msgTestHandler,
                     getEventType(odlFilter.getEvent()),
-                    odlFilter.getFilter(), odlFilter.getSecret(), odlFilter.getName());
+                    odlFilter.getFilter(), odlFilter.getSecret(), odlFilter.getName(), identity);
         } else {
             LOG.error(HANDLER_CREATED_ERR);
         }
     }
 
-    private void registerRawTestHandler(Filter odlFilter) {
+    private void registerRawTestHandler(Filter odlFilter, String identity) {
         LOG.info("registerRawTestHandler, odlFilter {}", odlFilter);
         if (testHandler == null) {
             testHandler = new WebhookRawTestHandler();
-            WebhookServer.registerRawEventHandler(testHandler, createFilter(odlFilter));
+            WebhookServer.registerRawEventHandler(testHandler, createFilter(odlFilter, identity));
         } else {
             LOG.error(HANDLER_CREATED_ERR);
         }
     }
 
-    private WebhookFilter createFilter(Filter filter) {
+    private WebhookFilter createFilter(Filter filter, String identity) {
         LOG.info("createFilter: filter {}", filter);
         if (filter != null) {
             return new WebhookFilter(getEventType(filter.getEvent()), getResourceType(filter.getResource()),
-                    filter.getFilter(), filter.getSecret(), filter.getName());
+                    filter.getFilter(), filter.getSecret(), filter.getName(), identity);
         } else {
             return null;
         }
@@ -13,14 +13,22 @@ import com.cisco.ctao.sparkbot.core.SparkQueryParams;
 import com.ciscospark.Membership;
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.CreateMembershipInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.CreateMembershipOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.CreateMembershipOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.CreateMembershipsInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.CreateMembershipsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.CreateMembershipsOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.DeleteMembershipInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.DeleteMembershipOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.DeleteMembershipOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.DeleteMembershipsInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.DeleteMembershipsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.DeleteMembershipsOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.GetMembershipDetailsInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.GetMembershipDetailsOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.GetMembershipDetailsOutputBuilder;
@@ -31,13 +39,17 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.UpdateMembershipInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.UpdateMembershipOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.UpdateMembershipOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.create.memberships.input.NewMemberships;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.create.memberships.output.MembershipResults;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.create.memberships.output.MembershipResultsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.delete.memberships.output.DeletionResults;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.delete.memberships.output.DeletionResultsBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.list.memberships.input.QueryParameters;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.list.memberships.output.SparkbotMemberships;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.list.memberships.output.SparkbotMembershipsBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.membership.SparkbotMembership;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.membership.SparkbotMembershipBuilder;
 import org.opendaylight.yangtools.yang.common.RpcResult;
-import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,6 +92,15 @@ public class MembershipsServiceImpl
                 .build();
     }
 
+    private static Membership toMembership(final NewMemberships item) {
+        final Membership membership = new Membership();
+        membership.setRoomId(item.getRoomId());
+        membership.setPersonId(item.getPersonId());
+        membership.setPersonEmail(item.getPersonEmail());
+        membership.setIsModerator(Boolean.TRUE.equals(item.isIsModerator()));
+        return membership;
+    }
+
     @Override
     protected SparkbotMemberships buildListElement(Membership membership) {
         return new SparkbotMembershipsBuilder()
@@ -95,12 +116,11 @@ public class MembershipsServiceImpl
     public Future<RpcResult<ListMembershipsOutput>> listMemberships(final ListMembershipsInput input) {
         LOG.info("listMemberships input: {}", input);
 
-        SparkProxyService<SparkbotMembership, Membership, SparkbotMemberships>.ReturnValue result =
-                list(getQueryParameters(input));
-        return RpcResultBuilder.success(new ListMembershipsOutputBuilder()
-                .setSparkbotMemberships(result.getList())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(list(input, getQueryParameters(input)),
+            result -> new ListMembershipsOutputBuilder()
+                    .setSparkbotMemberships(result.getList())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -108,12 +128,11 @@ public class MembershipsServiceImpl
         LOG.info("getMembershipDetails input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_MEMBERSHIP_ID);
 
-        SparkProxyService<SparkbotMembership, Membership, SparkbotMemberships>.ReturnValue result =
-                getDetails(input.getMembershipId());
-        return RpcResultBuilder.success(new GetMembershipDetailsOutputBuilder()
-                .setSparkbotMembership(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(getDetails(input, input.getMembershipId()),
+            result -> new GetMembershipDetailsOutputBuilder()
+                    .setSparkbotMembership(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -127,12 +146,11 @@ public class MembershipsServiceImpl
         membership.setPersonEmail(input.getPersonEmail());
         membership.setIsModerator(input.isIsModerator());
 
-        final SparkProxyService<SparkbotMembership, Membership, SparkbotMemberships>.ReturnValue result =
-                create(membership);
-        return RpcResultBuilder.success(new CreateMembershipOutputBuilder()
-                .setSparkbotMembership(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(create(input, membership),
+            result -> new CreateMembershipOutputBuilder()
+                    .setSparkbotMembership(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -143,12 +161,11 @@ public class MembershipsServiceImpl
         Membership membership = new Membership();
         membership.setIsModerator(input.isIsModerator());
 
-        SparkProxyService<SparkbotMembership, Membership, SparkbotMemberships>.ReturnValue result =
-                update(input.getMembershipId(), membership);
-        return RpcResultBuilder.success(new UpdateMembershipOutputBuilder()
-                .setSparkbotMembership(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(update(input, input.getMembershipId(), membership),
+            result -> new UpdateMembershipOutputBuilder()
+                    .setSparkbotMembership(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -156,10 +173,56 @@ public class MembershipsServiceImpl
         LOG.info("deleteMembership input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_MEMBERSHIP_ID);
 
-        SparkProxyService<SparkbotMembership, Membership, SparkbotMemberships>.ReturnValue result =
-                delete(input.getMembershipId());
-        return RpcResultBuilder.success(new DeleteMembershipOutputBuilder()
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(delete(input, input.getMembershipId()),
+            result -> new DeleteMembershipOutputBuilder()
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
+    }
+
+    @Override
+    public Future<RpcResult<CreateMembershipsOutput>> createMemberships(final CreateMembershipsInput input) {
+        LOG.info("createMemberships input: {}", input);
+        Preconditions.checkArgument(input != null, MISSING_MEMBERSHIP_DATA);
+
+        return rpcResult(batch(input, input.getNewMemberships(), item -> create(input, toMembership(item))),
+            results -> {
+                final List<MembershipResults> membershipResults = new ArrayList<>();
+                for (int i = 0; i < results.size(); i++) {
+                    membershipResults.add(new MembershipResultsBuilder()
+                            .setIndex((long) i)
+                            .setSparkbotMembership(results.get(i).getElement())
+                            .setReturnStatus(results.get(i).getRetCode())
+                            .setErrorMessage(results.get(i).getErrorMessage()).build());
+                }
+                final ReturnValue status = batchStatus(results);
+                return new CreateMembershipsOutputBuilder()
+                        .setMembershipResults(membershipResults)
+                        .setReturnStatus(status.getRetCode())
+                        .setErrorMessage(status.getErrorMessage()).build();
+            });
+    }
+
+    @Override
+    public Future<RpcResult<DeleteMembershipsOutput>> deleteMemberships(final DeleteMembershipsInput input) {
+        LOG.info("deleteMemberships input: {}", input);
+        Preconditions.checkArgument(input != null, MISSING_MEMBERSHIP_ID);
+
+        final List<String> membershipIds = input.getMembershipIds();
+        return rpcResult(batch(input, membershipIds, membershipId -> delete(input, membershipId)),
+            results -> {
+                final List<DeletionResults> deletionResults = new ArrayList<>();
+                for (int i = 0; i < results.size(); i++) {
+                    deletionResults.add(new DeletionResultsBuilder()
+                            .setIndex((long) i)
+                            .setMembershipId(membershipIds.get(i))
+                            .setReturnStatus(results.get(i).getRetCode())
+                            .setErrorMessage(results.get(i).getErrorMessage()).build());
+                }
+                final ReturnValue status = batchStatus(results);
+                return new DeleteMembershipsOutputBuilder()
+                        .setDeletionResults(deletionResults)
+                        .setReturnStatus(status.getRetCode())
+                        .setErrorMessage(status.getErrorMessage()).build();
+            });
     }
 }
@@ -13,14 +13,22 @@ import com.cisco.ctao.sparkbot.core.SparkQueryParams;
 import com.ciscospark.Message;
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.CreateMessageInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.CreateMessageOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.CreateMessageOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.CreateMessagesInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.CreateMessagesOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.CreateMessagesOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.DeleteMessageInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.DeleteMessageOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.DeleteMessageOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.DeleteMessagesInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.DeleteMessagesOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.DeleteMessagesOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.GetMessageDetailsInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.GetMessageDetailsOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.GetMessageDetailsOutputBuilder;
@@ -28,13 +36,17 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.ListMessagesOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.ListMessagesOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.SparkbotMesagesService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.create.messages.input.NewMessages;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.create.messages.output.MessageResults;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.create.messages.output.MessageResultsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.delete.messages.output.DeletionResults;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.delete.messages.output.DeletionResultsBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.list.messages.input.QueryParameters;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.list.messages.output.SparkbotMessages;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.list.messages.output.SparkbotMessagesBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.message.SparkbotMessage;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.message.SparkbotMessageBuilder;
 import org.opendaylight.yangtools.yang.common.RpcResult;
-import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -90,6 +102,16 @@ public class MessagesServiceImpl
                 .build();
     }
 
+    private static Message toMessage(final NewMessages item) {
+        final Message message = new Message();
+        message.setRoomId(item.getRoomId());
+        message.setPersonId(item.getToPersonId());
+        message.setPersonEmail(item.getToPersonEmail());
+        message.setText(item.getText());
+        message.setMarkdown(item.getMarkdown());
+        return message;
+    }
+
     @Override
     protected SparkbotMessages buildListElement(final Message msg) {
         return new SparkbotMessagesBuilder()
@@ -105,12 +127,11 @@ public class MessagesServiceImpl
     public Future<RpcResult<ListMessagesOutput>> listMessages(final ListMessagesInput input) {
         LOG.info("listMessages input: {}", input);
 
-        final SparkProxyService<SparkbotMessage, Message, SparkbotMessages>.ReturnValue result =
-                list(getQueryParameters(input));
-        return RpcResultBuilder.success(new ListMessagesOutputBuilder()
-                .setSparkbotMessages(result.getList())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(list(input, getQueryParameters(input)),
+            result -> new ListMessagesOutputBuilder()
+                    .setSparkbotMessages(result.getList())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -118,12 +139,11 @@ public class MessagesServiceImpl
         LOG.info("getMessageDetails input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_MESSAGE_ID);
 
-        final SparkProxyService<SparkbotMessage, Message, SparkbotMessages>.ReturnValue result =
-                getDetails(input.getMessageId());
-        return RpcResultBuilder.success(new GetMessageDetailsOutputBuilder()
-                .setSparkbotMessage(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(getDetails(input, input.getMessageId()),
+            result -> new GetMessageDetailsOutputBuilder()
+                    .setSparkbotMessage(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -138,12 +158,11 @@ public class MessagesServiceImpl
         message.setText(input.getText());
         message.setMarkdown(input.getMarkdown());
 
-        final SparkProxyService<SparkbotMessage, Message, SparkbotMessages>.ReturnValue result =
-                create(message);
-        return RpcResultBuilder.success(new CreateMessageOutputBuilder()
-                .setSparkbotMessage(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(create(input, message),
+            result -> new CreateMessageOutputBuilder()
+                    .setSparkbotMessage(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -151,10 +170,56 @@ public class MessagesServiceImpl
         LOG.info("deleteMessage input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_MESSAGE_ID);
 
-        final SparkProxyService<SparkbotMessage, Message, SparkbotMessages>.ReturnValue result =
-                delete(input.getMessageId());
-        return RpcResultBuilder.success(new DeleteMessageOutputBuilder()
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(delete(input, input.getMessageId()),
+            result -> new DeleteMessageOutputBuilder()
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
+    }
+
+    @Override
+    public Future<RpcResult<CreateMessagesOutput>> createMessages(final CreateMessagesInput input) {
+        LOG.info("createMessages input: {}", input);
+        Preconditions.checkArgument(input != null, MISSING_MESSAGE_DATA);
+
+        return rpcResult(batch(input, input.getNewMessages(), item -> create(input, toMessage(item))),
+            results -> {
+                final List<MessageResults> messageResults = new ArrayList<>();
+                for (int i = 0; i < results.size(); i++) {
+                    messageResults.add(new MessageResultsBuilder()
+                            .setIndex((long) i)
+                            .setSparkbotMessage(results.get(i).getElement())
+                            .setReturnStatus(results.get(i).getRetCode())
+                            .setErrorMessage(results.get(i).getErrorMessage()).build());
+                }
+                final ReturnValue status = batchStatus(results);
+                return new CreateMessagesOutputBuilder()
+                        .setMessageResults(messageResults)
+                        .setReturnStatus(status.getRetCode())
+                        .setErrorMessage(status.getErrorMessage()).build();
+            });
+    }
+
+    @Override
+    public Future<RpcResult<DeleteMessagesOutput>> deleteMessages(final DeleteMessagesInput input) {
+        LOG.info("deleteMessages input: {}", input);
+        Preconditions.checkArgument(input != null, MISSING_MESSAGE_ID);
+
+        final List<String> messageIds = input.getMessageIds();
+        return rpcResult(batch(input, messageIds, messageId -> delete(input, messageId)),
+            results -> {
+                final List<DeletionResults> deletionResults = new ArrayList<>();
+                for (int i = 0; i < results.size(); i++) {
+                    deletionResults.add(new DeletionResultsBuilder()
+                            .setIndex((long) i)
+                            .setMessageId(messageIds.get(i))
+                            .setReturnStatus(results.get(i).getRetCode())
+                            .setErrorMessage(results.get(i).getErrorMessage()).build());
+                }
+                final ReturnValue status = batchStatus(results);
+                return new DeleteMessagesOutputBuilder()
+                        .setDeletionResults(deletionResults)
+                        .setReturnStatus(status.getRetCode())
+                        .setErrorMessage(status.getErrorMessage()).build();
+            });
     }
 }
@@ -37,7 +37,6 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rooms.rev161110.room.SparkbotRoom;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rooms.rev161110.room.SparkbotRoomBuilder;
 import org.opendaylight.yangtools.yang.common.RpcResult;
-import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -97,12 +96,11 @@ public class RoomsServiceImpl
     public Future<RpcResult<ListRoomsOutput>> listRooms(final ListRoomsInput input) {
         LOG.info("getRooms input: {}", input);
 
-        final SparkProxyService<SparkbotRoom, Room, SparkbotRooms>.ReturnValue result =
-                list(getQueryParameters(input));
-        return RpcResultBuilder.success(new ListRoomsOutputBuilder()
-                .setSparkbotRooms(result.getList())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(list(input, getQueryParameters(input)),
+            result -> new ListRoomsOutputBuilder()
+                    .setSparkbotRooms(result.getList())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -110,12 +108,11 @@ public class RoomsServiceImpl
         LOG.info("getRoomDetails input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_ROOM_ID);
 
-        final SparkProxyService<SparkbotRoom, Room, SparkbotRooms>.ReturnValue result =
-                getDetails(input.getRoomId());
-        return RpcResultBuilder.success(new GetRoomDetailsOutputBuilder()
-                .setSparkbotRoom(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(getDetails(input, input.getRoomId()),
+            result -> new GetRoomDetailsOutputBuilder()
+                    .setSparkbotRoom(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -127,12 +124,11 @@ public class RoomsServiceImpl
         room.setTitle(input.getTitle());
         room.setTeamId(input.getTeamId());
 
-        final SparkProxyService<SparkbotRoom, Room, SparkbotRooms>.ReturnValue result =
-                create(room);
-        return RpcResultBuilder.success(new CreateRoomOutputBuilder()
-                .setSparkbotRoom(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(create(input, room),
+            result -> new CreateRoomOutputBuilder()
+                    .setSparkbotRoom(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -143,12 +139,11 @@ public class RoomsServiceImpl
         final Room room = new Room();
         room.setTitle(input.getTitle());
 
-        final SparkProxyService<SparkbotRoom, Room, SparkbotRooms>.ReturnValue result =
-                update(input.getRoomId(), room);
-        return RpcResultBuilder.success(new UpdateRoomOutputBuilder()
-                .setSparkbotRoom(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(update(input, input.getRoomId(), room),
+            result -> new UpdateRoomOutputBuilder()
+                    .setSparkbotRoom(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -156,10 +151,9 @@ public class RoomsServiceImpl
         LOG.info("deleteRoom input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_ROOM_ID);
 
-        final SparkProxyService<SparkbotRoom, Room, SparkbotRooms>.ReturnValue result =
-                delete(input.getRoomId());
-        return RpcResultBuilder.success(new DeleteRoomOutputBuilder()
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(delete(input, input.getRoomId()),
+            result -> new DeleteRoomOutputBuilder()
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 }
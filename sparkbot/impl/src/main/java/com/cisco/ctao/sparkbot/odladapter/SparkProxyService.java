@@ -7,79 +7,354 @@
  */
 package com.cisco.ctao.sparkbot.odladapter;
 
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
 import com.cisco.ctao.sparkbot.core.SparkApi;
+import com.cisco.ctao.sparkbot.core.SparkExecution;
 import com.cisco.ctao.sparkbot.core.SparkQueryParams;
 import com.ciscospark.SparkException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.commons.rev161110.BatchParallelism;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.commons.rev161110.IdentitySelector;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.commons.rev161110.ReturnCode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.commons.rev161110.RpcTimeout;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/** Base class for the ODL proxies to the Spark services. Requests to Spark
+ *  are made asynchronously on the core request executor, so that RPC
+ *  threads are not blocked for the duration of the Spark round-trip. Each
+ *  request is cancelled if it does not complete within the RPC's timeout,
+ *  or if the caller cancels the RPC's future; the timeout is also the
+ *  deadline of the Spark requests, so that their connections are closed.
+ *  Batch RPCs run one request per item, with a bounded number of requests
+ *  in flight.
+ * @author jmedved
+ *
+ * @param <T> the ODL (YANG-modeled) element type
+ * @param <S> the Spark element type
+ * @param <L> the ODL list element type
+ */
 public abstract class SparkProxyService<T, S, L> {
     private static final Logger LOG = LoggerFactory.getLogger(SparkProxyService.class);
+    private static final long DEFAULT_RPC_TIMEOUT = 30000;
+    private static final int DEFAULT_BATCH_PARALLELISM = 8;
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-rpc-timeout-%d").setDaemon(true).build());
     private final SparkApi<S> sparkApi;
 
     SparkProxyService(SparkApi<S> sparkApi) {
         this.sparkApi = sparkApi;
     }
 
+    /** Gets the bot identity selected in an RPC input.
+     * @param input the RPC input; may be null
+     * @return the selected identity; null for the default identity
+     */
+    protected static String getIdentity(final IdentitySelector input) {
+        return (input != null) ? input.getSparkIdentity() : null;
+    }
+
+    /** Gets the timeout for the Spark request(s) of an RPC.
+     * @param input the RPC input; may be null
+     * @return the timeout in milliseconds
+     */
+    protected static long getTimeout(final RpcTimeout input) {
+        return (input != null && input.getTimeout() != null) ? input.getTimeout() : DEFAULT_RPC_TIMEOUT;
+    }
+
+    /** Gets the deadline for the Spark request(s) of an RPC, so that
+     *  requests that time out do not keep blocking request threads.
+     * @param input the RPC input; may be null
+     * @return the time within which the requests must complete
+     */
+    protected static Duration getDeadline(final RpcTimeout input) {
+        return Duration.ofMillis(getTimeout(input));
+    }
+
+    /** Gets the max number of in-flight Spark requests of a batch RPC.
+     * @param input the RPC input; may be null
+     * @return the batch parallelism
+     */
+    protected static int getParallelism(final BatchParallelism input) {
+        return (input != null && input.getMaxParallelism() != null)
+                ? input.getMaxParallelism().intValue() : DEFAULT_BATCH_PARALLELISM;
+    }
+
     protected abstract T translate(final S sparkElement);
 
     protected abstract L buildListElement(final S sparkElement);
 
-    public SparkProxyService<T, S, L>.ReturnValue list(final SparkQueryParams queryParams) {
-        final List<L> elemList = new ArrayList<>();
-        try {
-            for (final S element : sparkApi.list(queryParams)) {
+    public <I extends IdentitySelector & RpcTimeout> ListenableFuture<ReturnValue> list(final I input,
+            final SparkQueryParams queryParams) {
+        // Listings can be large, they must not delay interactive requests
+        final SparkApi<S> api = sparkApi.forIdentity(getIdentity(input)).withDeadline(getDeadline(input))
+                .forLane(Lane.BULK);
+        return submit(Lane.BULK, getTimeout(input), () -> {
+            final List<L> elemList = new ArrayList<>();
+            for (final S element : api.list(queryParams)) {
                 elemList.add(buildListElement(element));
             }
             return new ReturnValue(elemList, null, ReturnCode.OK, null);
-        } catch (SparkException e) {
-            LOG.error("{}", e);
-            return new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, e.getMessage());
-        }
+        });
     }
 
-    public SparkProxyService<T, S, L>.ReturnValue getDetails(final String elementId) {
-        try {
-            final S element = sparkApi.getDetails(elementId);
-            return new ReturnValue(null, translate(element), ReturnCode.OK, null);
-        } catch (SparkException e) {
-            LOG.error("{}", e);
-            return new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, e.getMessage());
+    public <I extends IdentitySelector & RpcTimeout> ListenableFuture<ReturnValue> getDetails(final I input,
+            final String elementId) {
+        final SparkApi<S> api = sparkApi.forIdentity(getIdentity(input)).withDeadline(getDeadline(input));
+        return submit(Lane.NORMAL, getTimeout(input),
+            () -> new ReturnValue(null, translate(api.getDetails(elementId)), ReturnCode.OK, null));
+    }
+
+    public <I extends IdentitySelector & RpcTimeout> ListenableFuture<ReturnValue> create(final I input,
+            final S elementIn) {
+        final SparkApi<S> api = sparkApi.forIdentity(getIdentity(input)).withDeadline(getDeadline(input));
+        return submit(Lane.NORMAL, getTimeout(input),
+            () -> new ReturnValue(null, translate(api.create(elementIn)), ReturnCode.OK, null));
+    }
+
+    public <I extends IdentitySelector & RpcTimeout> ListenableFuture<ReturnValue> update(final I input,
+            final String elementId, final S elementIn) {
+        final SparkApi<S> api = sparkApi.forIdentity(getIdentity(input)).withDeadline(getDeadline(input));
+        return submit(Lane.NORMAL, getTimeout(input),
+            () -> new ReturnValue(null, translate(api.update(elementId, elementIn)), ReturnCode.OK, null));
+    }
+
+    public <I extends IdentitySelector & RpcTimeout> ListenableFuture<ReturnValue> delete(final I input,
+            final String elementId) {
+        final SparkApi<S> api = sparkApi.forIdentity(getIdentity(input)).withDeadline(getDeadline(input));
+        return submit(Lane.NORMAL, getTimeout(input), () -> {
+            api.delete(elementId);
+            return new ReturnValue(null, null, ReturnCode.OK, null);
+        });
+    }
+
+    /** Runs a Spark request for each item of a batch. At most
+     *  max-parallelism requests are in flight at the same time; the next
+     *  item's request is started when a request completes. Each request is
+     *  still subject to the identity's request budget and to the endpoint's
+     *  concurrency limit, and has the RPC's timeout. A failed request does
+     *  not stop the batch. Cancelling the returned future cancels the
+     *  requests in flight and stops the batch.
+     * @param input the batch RPC input
+     * @param items the batch items; may be null
+     * @param request starts the request for an item
+     * @return the future results of the items' requests, in item order
+     */
+    protected <I extends BatchParallelism, E> ListenableFuture<List<ReturnValue>> batch(final I input,
+            final List<E> items, final Function<E, ListenableFuture<ReturnValue>> request) {
+        if (items == null || items.isEmpty()) {
+            return Futures.immediateFuture(Collections.emptyList());
         }
+        return new Batch<>(items, request).start(getParallelism(input));
     }
 
-    public SparkProxyService<T, S, L>.ReturnValue create(final S elementIn) {
-        try {
-            final S elementOut = sparkApi.create(elementIn);
-            return new ReturnValue(null, translate(elementOut), ReturnCode.OK, null);
-        } catch (SparkException e) {
-            LOG.error("{}", e);
-            return new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, e.getMessage());
+    /** Gets the overall status of a batch RPC: OK if the requests for all
+     *  items succeeded, the error code of the first failed item otherwise.
+     * @param results results of the items' requests
+     * @return the overall status (without element or list)
+     */
+    protected ReturnValue batchStatus(final List<ReturnValue> results) {
+        ReturnCode retCode = ReturnCode.OK;
+        int failed = 0;
+        for (final ReturnValue result : results) {
+            if (result.getRetCode() != ReturnCode.OK) {
+                retCode = (failed == 0) ? result.getRetCode() : retCode;
+                failed++;
+            }
         }
+        return new ReturnValue(null, null, retCode,
+                failed > 0 ? failed + " of " + results.size() + " items failed" : null);
+    }
+
+    /** Builds an RPC result from the result of one or more Spark requests,
+     *  once the requests complete.
+     * @param result the future result of the Spark request(s)
+     * @param buildOutput builds the RPC output from the requests' result
+     * @return the future RPC result
+     */
+    protected <V, O> ListenableFuture<RpcResult<O>> rpcResult(final ListenableFuture<V> result,
+            final Function<V, O> buildOutput) {
+        final SettableFuture<RpcResult<O>> rpcResult = SettableFuture.create();
+        Futures.addCallback(result, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(final V value) {
+                rpcResult.set(RpcResultBuilder.success(buildOutput.apply(value)).build());
+            }
+
+            @Override
+            public void onFailure(final Throwable cause) {
+                rpcResult.setException(cause);
+            }
+        }, MoreExecutors.directExecutor());
+        rpcResult.addListener(() -> {
+            if (rpcResult.isCancelled()) {
+                result.cancel(true);
+            }
+        }, MoreExecutors.directExecutor());
+        return rpcResult;
     }
 
-    public SparkProxyService<T, S, L>.ReturnValue update(final String elementId, final S elementIn) {
+    /** Runs a Spark request on the request executor. The returned future
+     *  always completes with a ReturnValue; Spark errors and timeouts are
+     *  reported as SPARKOPERERROR. Cancelling the returned future cancels
+     *  the request.
+     * @param lane the outbound lane of the request
+     * @param timeout the request timeout in milliseconds
+     * @param request the blocking request
+     * @return the future result of the request
+     */
+    private ListenableFuture<ReturnValue> submit(final Lane lane, final long timeout,
+            final Callable<ReturnValue> request) {
+        final SettableFuture<ReturnValue> result = SettableFuture.create();
+        final ListenableFuture<ReturnValue> future;
         try {
-            final S elementOut = sparkApi.update(elementId, elementIn);
-            return new ReturnValue(null, translate(elementOut), ReturnCode.OK, null);
-        } catch (SparkException e) {
-            LOG.error("{}", e);
-            return new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, e.getMessage());
+            future = SparkExecution.requestExecutor(lane).submit(request);
+        } catch (RejectedExecutionException e) {
+            LOG.error("submit: request rejected", e);
+            result.set(new ReturnValue(null, null, ReturnCode.SPARKOPERERROR,
+                    "Request rejected: " + e.getMessage()));
+            return result;
         }
+        final ScheduledFuture<?> timer = TIMEOUT_SCHEDULER.schedule(() -> {
+            if (future.cancel(true)) {
+                LOG.error("submit: request timed out after {} ms", timeout);
+                result.set(new ReturnValue(null, null, ReturnCode.SPARKOPERERROR,
+                        "Request timed out after " + timeout + " ms"));
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+
+        Futures.addCallback(future, new FutureCallback<ReturnValue>() {
+            @Override
+            public void onSuccess(final ReturnValue value) {
+                timer.cancel(false);
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(final Throwable cause) {
+                timer.cancel(false);
+                if (cause instanceof SparkException || cause instanceof IllegalArgumentException) {
+                    LOG.error("{}", cause);
+                    result.set(new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, cause.getMessage()));
+                } else if (!(cause instanceof CancellationException)) {
+                    result.setException(cause);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        result.addListener(() -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
     }
 
-    public SparkProxyService<T, S, L>.ReturnValue delete(final String elementId) {
-        try {
-            sparkApi.delete(elementId);
-            return new ReturnValue(null, null, ReturnCode.OK, null);
-        } catch (SparkException e) {
-            LOG.error("{}", e);
-            return new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, e.getMessage());
+    /** The execution of a batch of requests.
+     * @param <E> the batch item type
+     */
+    private final class Batch<E> {
+        private final List<E> items;
+        private final Function<E, ListenableFuture<ReturnValue>> request;
+        private final AtomicReferenceArray<ReturnValue> results;
+        private final AtomicInteger nextItem = new AtomicInteger();
+        private final AtomicInteger pendingItems;
+        private final Set<ListenableFuture<ReturnValue>> inFlight = ConcurrentHashMap.newKeySet();
+        private final SettableFuture<List<ReturnValue>> result = SettableFuture.create();
+
+        private Batch(final List<E> items, final Function<E, ListenableFuture<ReturnValue>> request) {
+            this.items = items;
+            this.request = request;
+            this.results = new AtomicReferenceArray<>(items.size());
+            this.pendingItems = new AtomicInteger(items.size());
+        }
+
+        private ListenableFuture<List<ReturnValue>> start(final int parallelism) {
+            result.addListener(() -> {
+                if (result.isCancelled()) {
+                    for (final ListenableFuture<ReturnValue> future : inFlight) {
+                        future.cancel(true);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            for (int i = 0; i < Math.min(parallelism, items.size()); i++) {
+                startNext();
+            }
+            return result;
+        }
+
+        private void startNext() {
+            final int index = nextItem.getAndIncrement();
+            if (index >= items.size() || result.isDone()) {
+                return;
+            }
+            ListenableFuture<ReturnValue> future;
+            try {
+                future = request.apply(items.get(index));
+            } catch (IllegalArgumentException e) {
+                LOG.error("batch: invalid item {}", index, e);
+                future = Futures.immediateFuture(
+                        new ReturnValue(null, null, ReturnCode.INVALIDPARAMETER, e.getMessage()));
+            } catch (RuntimeException e) {
+                // The item fails on its own; the exception must not unwind into the
+                // callback of the item whose completion started this one
+                LOG.error("batch: failed to start item {}", index, e);
+                future = Futures.immediateFuture(
+                        new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, String.valueOf(e)));
+            }
+            inFlight.add(future);
+            final ListenableFuture<ReturnValue> itemFuture = future;
+            Futures.addCallback(itemFuture, new FutureCallback<ReturnValue>() {
+                @Override
+                public void onSuccess(final ReturnValue value) {
+                    complete(index, itemFuture, value);
+                }
+
+                @Override
+                public void onFailure(final Throwable cause) {
+                    complete(index, itemFuture,
+                            new ReturnValue(null, null, ReturnCode.SPARKOPERERROR, String.valueOf(cause)));
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void complete(final int index, final ListenableFuture<ReturnValue> future,
+                final ReturnValue value) {
+            inFlight.remove(future);
+            results.set(index, value);
+            if (pendingItems.decrementAndGet() == 0) {
+                final List<ReturnValue> values = new ArrayList<>(results.length());
+                for (int i = 0; i < results.length(); i++) {
+                    values.add(results.get(i));
+                }
+                result.set(values);
+            } else {
+                startNext();
+            }
         }
     }
 
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.cisco.ctao.sparkbot.odladapter;
+
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import akka.cluster.Cluster;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opendaylight.controller.cluster.ActorSystemProvider;
+import org.opendaylight.mdsal.eos.binding.api.Entity;
+import org.opendaylight.mdsal.eos.binding.api.EntityOwnershipCandidateRegistration;
+import org.opendaylight.mdsal.eos.binding.api.EntityOwnershipChange;
+import org.opendaylight.mdsal.eos.binding.api.EntityOwnershipListener;
+import org.opendaylight.mdsal.eos.binding.api.EntityOwnershipListenerRegistration;
+import org.opendaylight.mdsal.eos.binding.api.EntityOwnershipService;
+import org.opendaylight.mdsal.eos.common.api.CandidateAlreadyRegisteredException;
+import org.opendaylight.mdsal.singleton.common.api.ClusterSingletonService;
+import org.opendaylight.mdsal.singleton.common.api.ClusterSingletonServiceProvider;
+import org.opendaylight.mdsal.singleton.common.api.ClusterSingletonServiceRegistration;
+import org.opendaylight.mdsal.singleton.common.api.ServiceGroupIdentifier;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.mdsal.core.general.entity.rev150930.EntityKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.Option;
+
+/** Coordinates the Webhook Servers running on the members of an ODL
+ *  cluster. Ownership of the bot's webhooks in Spark is a cluster
+ *  singleton service, so that only one member creates and deletes
+ *  webhooks. Webhook events are sharded across the live members; each
+ *  member registers itself as the only candidate for an entity named by
+ *  its address, so a member's entity loses its owner when the member
+ *  fails and the member's rooms are rebalanced to the remaining members.
+ *  A member's address is the host name of its akka cluster member, the
+ *  address that the other members already use to reach it.
+ * @author jmedved
+ *
+ */
+public class SparkbotClusterCoordinator implements ClusterSingletonService, EntityOwnershipListener,
+        AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkbotClusterCoordinator.class);
+    private static final ServiceGroupIdentifier WEBHOOK_OWNER =
+            ServiceGroupIdentifier.create("sparkbot-webhook-owner");
+    private static final String INGRESS_ENTITY_TYPE = "sparkbot-webhook-ingress";
+
+    private final ClusterSingletonServiceProvider singletonProvider;
+    private final EntityOwnershipService ownershipService;
+    private final ActorSystemProvider actorSystemProvider;
+    private final Set<String> liveMembers = ConcurrentHashMap.newKeySet();
+    private volatile String localMember;
+    private ClusterSingletonServiceRegistration singletonReg;
+    private EntityOwnershipListenerRegistration listenerReg;
+    private EntityOwnershipCandidateRegistration candidateReg;
+
+    /** Constructor.
+     * @param singletonProvider reference to the cluster singleton service
+     *          provider
+     * @param ownershipService reference to the entity ownership service
+     * @param actorSystemProvider reference to the provider of the cluster's
+     *          actor system
+     */
+    public SparkbotClusterCoordinator(final ClusterSingletonServiceProvider singletonProvider,
+            final EntityOwnershipService ownershipService, final ActorSystemProvider actorSystemProvider) {
+        this.singletonProvider = singletonProvider;
+        this.ownershipService = ownershipService;
+        this.actorSystemProvider = actorSystemProvider;
+    }
+
+    /** Gets this member's address.
+     * @return the host name of this member's akka cluster member, null if
+     *          it is not known
+     */
+    public String getLocalMember() {
+        return localMember;
+    }
+
+    /** Registers for webhook ownership and event sharding. Until the
+     *  singleton service is instantiated on this member, the local Webhook
+     *  Server does not touch the webhooks in Spark.
+     */
+    public void init() {
+        WebhookServer.getInstance().setWebhookOwner(false);
+        singletonReg = singletonProvider.registerClusterSingletonService(this);
+
+        final Option<String> host = Cluster.get(actorSystemProvider.getActorSystem()).selfAddress().host();
+        if (!host.isDefined()) {
+            LOG.error("init: cluster member has no host address, events will not be sharded");
+            return;
+        }
+        localMember = host.get();
+        listenerReg = ownershipService.registerListener(INGRESS_ENTITY_TYPE, this);
+        try {
+            candidateReg = ownershipService.registerCandidate(new Entity(INGRESS_ENTITY_TYPE, localMember));
+        } catch (CandidateAlreadyRegisteredException e) {
+            LOG.error("init: member {} already registered", localMember, e);
+        }
+    }
+
+    @Override
+    public void instantiateServiceInstance() {
+        LOG.info("instantiateServiceInstance: member {} owns the webhooks", localMember);
+        WebhookServer.getInstance().setWebhookOwner(true);
+    }
+
+    @Override
+    public ListenableFuture<Void> closeServiceInstance() {
+        LOG.info("closeServiceInstance: member {} no longer owns the webhooks", localMember);
+        WebhookServer.getInstance().setWebhookOwner(false);
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public ServiceGroupIdentifier getIdentifier() {
+        return WEBHOOK_OWNER;
+    }
+
+    @Override
+    public void ownershipChanged(final EntityOwnershipChange change) {
+        final EntityKey key = change.getEntity().getIdentifier()
+                .firstKeyOf(org.opendaylight.yang.gen.v1.urn.opendaylight.mdsal.core.general.entity.rev150930
+                        .Entity.class);
+        if (key == null) {
+            return;
+        }
+        if (change.getState().hasOwner()) {
+            liveMembers.add(key.getName());
+        } else {
+            liveMembers.remove(key.getName());
+        }
+        LOG.info("ownershipChanged: member {}, state {}, live members {}",
+                key.getName(), change.getState(), liveMembers);
+        WebhookServer.getInstance().setClusterMembers(localMember, new ArrayList<>(liveMembers));
+    }
+
+    @Override
+    public void close() {
+        if (candidateReg != null) {
+            candidateReg.close();
+            candidateReg = null;
+        }
+        if (listenerReg != null) {
+            listenerReg.close();
+            listenerReg = null;
+        }
+        if (singletonReg != null) {
+            try {
+                singletonReg.close();
+            } catch (Exception e) {
+                LOG.error("close: failed to unregister cluster singleton service", e);
+            }
+            singletonReg = null;
+        }
+        WebhookServer.getInstance().setClusterMembers(localMember, null);
+    }
+}
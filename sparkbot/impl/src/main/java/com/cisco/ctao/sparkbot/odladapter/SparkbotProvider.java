@@ -7,10 +7,24 @@
  */
 package com.cisco.ctao.sparkbot.odladapter;
 
+import com.cisco.ctao.sparkbot.core.MessageCoalescer;
+import com.cisco.ctao.sparkbot.core.RecentActivity;
+import com.cisco.ctao.sparkbot.core.RequestHedger;
 import com.cisco.ctao.sparkbot.core.SparkClient;
+import com.cisco.ctao.sparkbot.core.SparkExecution;
+import com.cisco.ctao.sparkbot.core.outbox.Outbox;
+import com.cisco.ctao.sparkbot.core.webhooksvr.IngestLog;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookCapture;
 import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServer;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServerConfig;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServerConfig.WebhookServerConfigBuilder;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.opendaylight.controller.cluster.ActorSystemProvider;
 import org.opendaylight.controller.md.sal.binding.api.ClusteredDataTreeChangeListener;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
 import org.opendaylight.controller.md.sal.binding.api.DataTreeIdentifier;
@@ -18,11 +32,21 @@ import org.opendaylight.controller.md.sal.binding.api.DataTreeModification;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.controller.sal.binding.api.BindingAwareBroker.RpcRegistration;
 import org.opendaylight.controller.sal.binding.api.RpcProviderRegistry;
+import org.opendaylight.mdsal.eos.binding.api.EntityOwnershipService;
+import org.opendaylight.mdsal.singleton.common.api.ClusterSingletonServiceProvider;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.handlers.rev161118.SparkbotHandlersService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.memberships.rev161110.SparkbotMembershipsService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.messages.rev161117.SparkbotMesagesService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotCaptureParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotCoalescingParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotHedgingParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotExecutionParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotLoggingParms;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotMasterConfigParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotOutboxParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotWebhookParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.logging.parms.CategoryLimit;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.master.config.parms.SparkbotMasterSessionDesc;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rooms.rev161110.SparkbotRoomsService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.team.memberships.rev161110.SparkbotTeamMembershipsService;
@@ -43,12 +67,24 @@ import org.slf4j.LoggerFactory;
 public class SparkbotProvider {
 
     private static final Logger LOG = LoggerFactory.getLogger(SparkbotProvider.class);
+    private static final String UNKNOWN_MEMBER = "local";
 
     private final DataBroker dataBroker;
     private final RpcProviderRegistry rpcProviderRegistry;
+    private final ClusterSingletonServiceProvider singletonProvider;
+    private final EntityOwnershipService ownershipService;
+    private final ActorSystemProvider actorSystemProvider;
 
     private SparkbotMasterSessionDescChangeHandler sparkBotMasterSessionDescChangeHandler;
     private SparkBotWebHookParmsChangeHandler sparkBotWebHookParmsChangeHandler;
+    private SparkbotClusterCoordinator clusterCoordinator;
+    private SparkbotStatsWriter statsWriter;
+    private SparkbotExecutionParmsChangeHandler sparkbotExecutionParmsChangeHandler;
+    private SparkbotOutboxParmsChangeHandler sparkbotOutboxParmsChangeHandler;
+    private SparkbotCaptureParmsChangeHandler sparkbotCaptureParmsChangeHandler;
+    private SparkbotCoalescingParmsChangeHandler sparkbotCoalescingParmsChangeHandler;
+    private SparkbotHedgingParmsChangeHandler sparkbotHedgingParmsChangeHandler;
+    private SparkbotLoggingParmsChangeHandler sparkbotLoggingParmsChangeHandler;
     private RpcRegistration<SparkbotRoomsService> roomServiceReg;
     private RpcRegistration<SparkbotMesagesService> messageServiceReg;
     private RpcRegistration<SparkbotHandlersService> handlerServiceReg;
@@ -56,22 +92,49 @@ public class SparkbotProvider {
     private RpcRegistration<SparkbotTeamsService> teamServiceReg;
     private RpcRegistration<SparkbotMembershipsService> membershipsSvcReg;
     private RpcRegistration<SparkbotTeamMembershipsService> teamMemberSvcReg;
+    private RpcRegistration<SparkbotService> sparkbotServiceReg;
 
     /** Constructor.
      * @param dataBroker: reference to the MD-SAL Data Broker.
      * @param rpcProviderRegistry: reference to the MD-SAL RPC registry.
+     * @param singletonProvider: reference to the cluster singleton service provider.
+     * @param ownershipService: reference to the entity ownership service.
+     * @param actorSystemProvider: reference to the provider of the cluster's actor system.
      */
-    public SparkbotProvider(final DataBroker dataBroker, final RpcProviderRegistry rpcProviderRegistry) {
+    public SparkbotProvider(final DataBroker dataBroker, final RpcProviderRegistry rpcProviderRegistry,
+            final ClusterSingletonServiceProvider singletonProvider, final EntityOwnershipService ownershipService,
+            final ActorSystemProvider actorSystemProvider) {
         this.dataBroker = dataBroker;
         this.rpcProviderRegistry = rpcProviderRegistry;
+        this.singletonProvider = singletonProvider;
+        this.ownershipService = ownershipService;
+        this.actorSystemProvider = actorSystemProvider;
     }
 
     /**
      * Method called when the blueprint container is created.
      */
     public void init() {
+        this.clusterCoordinator = new SparkbotClusterCoordinator(singletonProvider, ownershipService,
+                actorSystemProvider);
+        this.clusterCoordinator.init();
+        WebhookServer.getInstance().setStatusListener(new WebhookServerStatusWriter(dataBroker, getLocalMember()));
+        this.statsWriter = new SparkbotStatsWriter(dataBroker, getLocalMember());
+        RecentActivity.start();
         this.sparkBotMasterSessionDescChangeHandler =
                 new SparkbotMasterSessionDescChangeHandler(dataBroker);
+        this.sparkbotExecutionParmsChangeHandler =
+                new SparkbotExecutionParmsChangeHandler(dataBroker);
+        this.sparkbotOutboxParmsChangeHandler =
+                new SparkbotOutboxParmsChangeHandler(dataBroker);
+        this.sparkbotCaptureParmsChangeHandler =
+                new SparkbotCaptureParmsChangeHandler(dataBroker);
+        this.sparkbotCoalescingParmsChangeHandler =
+                new SparkbotCoalescingParmsChangeHandler(dataBroker);
+        this.sparkbotHedgingParmsChangeHandler =
+                new SparkbotHedgingParmsChangeHandler(dataBroker);
+        this.sparkbotLoggingParmsChangeHandler =
+                new SparkbotLoggingParmsChangeHandler(dataBroker);
         this.sparkBotWebHookParmsChangeHandler =
                 new SparkBotWebHookParmsChangeHandler(dataBroker);
 
@@ -89,6 +152,8 @@ public class SparkbotProvider {
                 SparkbotMembershipsService.class, new MembershipsServiceImpl());
         teamMemberSvcReg = rpcProviderRegistry.addRpcImplementation(
                 SparkbotTeamMembershipsService.class, new TeamMembershipsServiceImpl());
+        sparkbotServiceReg = rpcProviderRegistry.addRpcImplementation(
+                SparkbotService.class, new SparkbotServiceImpl());
 
         LOG.info("SparkBotProvider Session Initiated");
     }
@@ -97,6 +162,16 @@ public class SparkbotProvider {
      * Method called when the blueprint container is destroyed.
      */
     public void close() {
+        WebhookServer.getInstance().setStatusListener(null);
+        if (statsWriter != null) {
+            statsWriter.close();
+            statsWriter = null;
+        }
+        RecentActivity.stop();
+        if (clusterCoordinator != null) {
+            clusterCoordinator.close();
+            clusterCoordinator = null;
+        }
         if (sparkBotMasterSessionDescChangeHandler != null) {
             sparkBotMasterSessionDescChangeHandler.close();
             sparkBotMasterSessionDescChangeHandler = null;
@@ -105,6 +180,35 @@ public class SparkbotProvider {
             sparkBotWebHookParmsChangeHandler.close();
             sparkBotWebHookParmsChangeHandler = null;
         }
+        if (sparkbotExecutionParmsChangeHandler != null) {
+            sparkbotExecutionParmsChangeHandler.close();
+            sparkbotExecutionParmsChangeHandler = null;
+        }
+        if (sparkbotCoalescingParmsChangeHandler != null) {
+            sparkbotCoalescingParmsChangeHandler.close();
+            sparkbotCoalescingParmsChangeHandler = null;
+        }
+        MessageCoalescer.handleCoalescingParmsDelete();
+        if (sparkbotHedgingParmsChangeHandler != null) {
+            sparkbotHedgingParmsChangeHandler.close();
+            sparkbotHedgingParmsChangeHandler = null;
+        }
+        RequestHedger.handleHedgingParmsDelete();
+        if (sparkbotLoggingParmsChangeHandler != null) {
+            sparkbotLoggingParmsChangeHandler.close();
+            sparkbotLoggingParmsChangeHandler = null;
+        }
+        IngestLog.handleLoggingParmsDelete();
+        if (sparkbotOutboxParmsChangeHandler != null) {
+            sparkbotOutboxParmsChangeHandler.close();
+            sparkbotOutboxParmsChangeHandler = null;
+        }
+        Outbox.handleOutboxParmsDelete();
+        if (sparkbotCaptureParmsChangeHandler != null) {
+            sparkbotCaptureParmsChangeHandler.close();
+            sparkbotCaptureParmsChangeHandler = null;
+        }
+        WebhookCapture.handleCaptureParmsDelete();
         if (roomServiceReg != null) {
             roomServiceReg.close();
             roomServiceReg = null;
@@ -133,9 +237,26 @@ public class SparkbotProvider {
             teamMemberSvcReg.close();
             teamMemberSvcReg = null;
         }
+        if (sparkbotServiceReg != null) {
+            sparkbotServiceReg.close();
+            sparkbotServiceReg = null;
+        }
         LOG.info("SparkBotProvider Closed");
     }
 
+    /** Gets the address under which this member publishes its operational
+     *  state.
+     * @return this member's cluster address, or "local" if it is not known
+     */
+    private String getLocalMember() {
+        final String member = clusterCoordinator.getLocalMember();
+        return member != null ? member : UNKNOWN_MEMBER;
+    }
+
+    private static Integer toInteger(final Long value) {
+        return value == null ? null : Integer.valueOf((int) Math.min(value, Integer.MAX_VALUE));
+    }
+
     private class SparkbotMasterSessionDescChangeHandler implements
             ClusteredDataTreeChangeListener<SparkbotMasterSessionDesc>, AutoCloseable {
 
@@ -160,10 +281,15 @@ public class SparkbotProvider {
                 switch (change.getRootNode().getModificationType()) {
                     case WRITE:
                     case SUBTREE_MODIFIED:
-                        SparkClient.handleAccessTokenChange(change.getRootNode().getDataAfter().getAccessToken());
+                        final SparkbotMasterSessionDesc dataAfter = change.getRootNode().getDataAfter();
+                        final Long maxRequests = dataAfter.getMaxConcurrentRequests();
+                        SparkClient.handleIdentityChange(dataAfter.getSparkEmailAddress(),
+                                dataAfter.getAccessToken(), maxRequests == null ? null : maxRequests.intValue(),
+                                dataAfter.getBaseUrl(), Boolean.TRUE.equals(dataAfter.isDefaultIdentity()));
                         break;
                     case DELETE:
-                        SparkClient.handleConfigParmsDelete();
+                        SparkClient.handleIdentityDelete(
+                                change.getRootNode().getDataBefore().getSparkEmailAddress());
                         break;
                     default:
                         log.error("SparkBotMasterSessionDescChangeHandler: "
@@ -203,12 +329,15 @@ public class SparkbotProvider {
                     case WRITE:
                     case SUBTREE_MODIFIED:
                         SparkbotWebhookParms dataAfter = change.getRootNode().getDataAfter();
+                        WebhookServer.getInstance().handleIngressConfigChange(getIngressConfig(dataAfter));
                         WebhookServer.getInstance().handleUrlPrefixChange(dataAfter.getWebhookUrlPrefix());
                         WebhookServer.getInstance().handleHttpPortChange(dataAfter.getWebhookHttpPort());
                         break;
                     case DELETE:
                         WebhookServer.getInstance().handleHttpPortDelete();
                         WebhookServer.getInstance().handleUrlPrefixDelete();
+                        WebhookServer.getInstance().handleIngressConfigChange(
+                                new WebhookServerConfigBuilder().build());
                         break;
                     default:
                         log.error("SparkBotWebHookParmsChangeHandler: "
@@ -219,9 +348,290 @@ public class SparkbotProvider {
             }
         }
 
+        private WebhookServerConfig getIngressConfig(final SparkbotWebhookParms parms) {
+            return new WebhookServerConfigBuilder()
+                    .setMinThreads(toInteger(parms.getIngressMinThreads()))
+                    .setMaxThreads(toInteger(parms.getIngressMaxThreads()))
+                    .setAcceptors(toInteger(parms.getIngressAcceptors()))
+                    .setAcceptQueueSize(toInteger(parms.getIngressAcceptQueueSize()))
+                    .setIdleTimeout(toInteger(parms.getIngressIdleTimeout()))
+                    .setRequestHeaderSize(toInteger(parms.getIngressRequestHeaderSize()))
+                    .setMaxRequestBodySize(toInteger(parms.getIngressMaxRequestBodySize()))
+                    .build();
+        }
+
+        @Override
+        public void close() {
+            dcReg.close();
+        }
+    }
+
+    private class SparkbotExecutionParmsChangeHandler implements
+            ClusteredDataTreeChangeListener<SparkbotExecutionParms>, AutoCloseable {
+
+        private final Logger log = LoggerFactory.getLogger(SparkbotExecutionParmsChangeHandler.class);
+
+        private final InstanceIdentifier<SparkbotExecutionParms> parmsIid =
+                InstanceIdentifier.builder(SparkbotExecutionParms.class)
+                        .build();
+        private ListenerRegistration<SparkbotExecutionParmsChangeHandler> dcReg;
+
+        SparkbotExecutionParmsChangeHandler(final DataBroker dataBroker) {
+            dcReg = dataBroker.registerDataTreeChangeListener(
+                    new DataTreeIdentifier<>(LogicalDatastoreType.CONFIGURATION, parmsIid), this);
+        }
+
+        @Override
+        public void onDataTreeChanged(final Collection<DataTreeModification<SparkbotExecutionParms>> changes) {
+            for (DataTreeModification<SparkbotExecutionParms> change : changes) {
+                switch (change.getRootNode().getModificationType()) {
+                    case WRITE:
+                    case SUBTREE_MODIFIED:
+                        SparkbotExecutionParms dataAfter = change.getRootNode().getDataAfter();
+                        SparkExecution.handleExecutionParmsChange(dataAfter.isVirtualThreads(),
+                                toInteger(dataAfter.getMaxEndpointConcurrency()),
+                                toInteger(dataAfter.getMaxOutboundConcurrency()));
+                        break;
+                    case DELETE:
+                        SparkExecution.handleExecutionParmsDelete();
+                        break;
+                    default:
+                        log.error("SparkbotExecutionParmsChangeHandler: "
+                                        + "onDataTreeChanged(SparkbotExecutionParms) non handled modification {}",
+                                change.getRootNode().getModificationType());
+                        break;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            dcReg.close();
+        }
+    }
+
+    private class SparkbotOutboxParmsChangeHandler implements
+            ClusteredDataTreeChangeListener<SparkbotOutboxParms>, AutoCloseable {
+
+        private final Logger log = LoggerFactory.getLogger(SparkbotOutboxParmsChangeHandler.class);
+
+        private final InstanceIdentifier<SparkbotOutboxParms> parmsIid =
+                InstanceIdentifier.builder(SparkbotOutboxParms.class)
+                        .build();
+        private ListenerRegistration<SparkbotOutboxParmsChangeHandler> dcReg;
+
+        SparkbotOutboxParmsChangeHandler(final DataBroker dataBroker) {
+            dcReg = dataBroker.registerDataTreeChangeListener(
+                    new DataTreeIdentifier<>(LogicalDatastoreType.CONFIGURATION, parmsIid), this);
+        }
+
+        @Override
+        public void onDataTreeChanged(final Collection<DataTreeModification<SparkbotOutboxParms>> changes) {
+            for (DataTreeModification<SparkbotOutboxParms> change : changes) {
+                switch (change.getRootNode().getModificationType()) {
+                    case WRITE:
+                    case SUBTREE_MODIFIED:
+                        SparkbotOutboxParms dataAfter = change.getRootNode().getDataAfter();
+                        final Long journalSize = dataAfter.getJournalSize();
+                        Outbox.handleOutboxParmsChange(dataAfter.getJournalDirectory(),
+                                journalSize == null ? null : journalSize.intValue());
+                        break;
+                    case DELETE:
+                        Outbox.handleOutboxParmsDelete();
+                        break;
+                    default:
+                        log.error("SparkbotOutboxParmsChangeHandler: "
+                                        + "onDataTreeChanged(SparkbotOutboxParms) non handled modification {}",
+                                change.getRootNode().getModificationType());
+                        break;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            dcReg.close();
+        }
+    }
+
+    private class SparkbotCaptureParmsChangeHandler implements
+            ClusteredDataTreeChangeListener<SparkbotCaptureParms>, AutoCloseable {
+
+        private final Logger log = LoggerFactory.getLogger(SparkbotCaptureParmsChangeHandler.class);
+
+        private final InstanceIdentifier<SparkbotCaptureParms> parmsIid =
+                InstanceIdentifier.builder(SparkbotCaptureParms.class)
+                        .build();
+        private ListenerRegistration<SparkbotCaptureParmsChangeHandler> dcReg;
+
+        SparkbotCaptureParmsChangeHandler(final DataBroker dataBroker) {
+            dcReg = dataBroker.registerDataTreeChangeListener(
+                    new DataTreeIdentifier<>(LogicalDatastoreType.CONFIGURATION, parmsIid), this);
+        }
+
+        @Override
+        public void onDataTreeChanged(final Collection<DataTreeModification<SparkbotCaptureParms>> changes) {
+            for (DataTreeModification<SparkbotCaptureParms> change : changes) {
+                switch (change.getRootNode().getModificationType()) {
+                    case WRITE:
+                    case SUBTREE_MODIFIED:
+                        SparkbotCaptureParms dataAfter = change.getRootNode().getDataAfter();
+                        WebhookCapture.handleCaptureParmsChange(dataAfter.getCaptureFile(),
+                                dataAfter.getMaxFileSize());
+                        break;
+                    case DELETE:
+                        WebhookCapture.handleCaptureParmsDelete();
+                        break;
+                    default:
+                        log.error("SparkbotCaptureParmsChangeHandler: "
+                                        + "onDataTreeChanged(SparkbotCaptureParms) non handled modification {}",
+                                change.getRootNode().getModificationType());
+                        break;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            dcReg.close();
+        }
+    }
+
+    private class SparkbotCoalescingParmsChangeHandler implements
+            ClusteredDataTreeChangeListener<SparkbotCoalescingParms>, AutoCloseable {
+
+        private final Logger log = LoggerFactory.getLogger(SparkbotCoalescingParmsChangeHandler.class);
+
+        private final InstanceIdentifier<SparkbotCoalescingParms> parmsIid =
+                InstanceIdentifier.builder(SparkbotCoalescingParms.class)
+                        .build();
+        private ListenerRegistration<SparkbotCoalescingParmsChangeHandler> dcReg;
+
+        SparkbotCoalescingParmsChangeHandler(final DataBroker dataBroker) {
+            dcReg = dataBroker.registerDataTreeChangeListener(
+                    new DataTreeIdentifier<>(LogicalDatastoreType.CONFIGURATION, parmsIid), this);
+        }
+
+        @Override
+        public void onDataTreeChanged(final Collection<DataTreeModification<SparkbotCoalescingParms>> changes) {
+            for (DataTreeModification<SparkbotCoalescingParms> change : changes) {
+                switch (change.getRootNode().getModificationType()) {
+                    case WRITE:
+                    case SUBTREE_MODIFIED:
+                        SparkbotCoalescingParms dataAfter = change.getRootNode().getDataAfter();
+                        MessageCoalescer.handleCoalescingParmsChange(toInteger(dataAfter.getLingerTime()),
+                                toInteger(dataAfter.getMaxMessages()), toInteger(dataAfter.getMaxDigestSize()));
+                        break;
+                    case DELETE:
+                        MessageCoalescer.handleCoalescingParmsDelete();
+                        break;
+                    default:
+                        log.error("SparkbotCoalescingParmsChangeHandler: "
+                                        + "onDataTreeChanged(SparkbotCoalescingParms) non handled modification {}",
+                                change.getRootNode().getModificationType());
+                        break;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            dcReg.close();
+        }
+    }
+
+    private class SparkbotHedgingParmsChangeHandler implements
+            ClusteredDataTreeChangeListener<SparkbotHedgingParms>, AutoCloseable {
+
+        private final Logger log = LoggerFactory.getLogger(SparkbotHedgingParmsChangeHandler.class);
+
+        private final InstanceIdentifier<SparkbotHedgingParms> parmsIid =
+                InstanceIdentifier.builder(SparkbotHedgingParms.class)
+                        .build();
+        private ListenerRegistration<SparkbotHedgingParmsChangeHandler> dcReg;
+
+        SparkbotHedgingParmsChangeHandler(final DataBroker dataBroker) {
+            dcReg = dataBroker.registerDataTreeChangeListener(
+                    new DataTreeIdentifier<>(LogicalDatastoreType.CONFIGURATION, parmsIid), this);
+        }
+
+        @Override
+        public void onDataTreeChanged(final Collection<DataTreeModification<SparkbotHedgingParms>> changes) {
+            for (DataTreeModification<SparkbotHedgingParms> change : changes) {
+                switch (change.getRootNode().getModificationType()) {
+                    case WRITE:
+                    case SUBTREE_MODIFIED:
+                        SparkbotHedgingParms dataAfter = change.getRootNode().getDataAfter();
+                        RequestHedger.handleHedgingParmsChange(toInteger(dataAfter.getDelayPercentile()),
+                                toInteger(dataAfter.getMinDelay()), toInteger(dataAfter.getHedgeBudget()));
+                        break;
+                    case DELETE:
+                        RequestHedger.handleHedgingParmsDelete();
+                        break;
+                    default:
+                        log.error("SparkbotHedgingParmsChangeHandler: "
+                                        + "onDataTreeChanged(SparkbotHedgingParms) non handled modification {}",
+                                change.getRootNode().getModificationType());
+                        break;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            dcReg.close();
+        }
+    }
+
+    private class SparkbotLoggingParmsChangeHandler implements
+            ClusteredDataTreeChangeListener<SparkbotLoggingParms>, AutoCloseable {
+
+        private final Logger log = LoggerFactory.getLogger(SparkbotLoggingParmsChangeHandler.class);
+
+        private final InstanceIdentifier<SparkbotLoggingParms> parmsIid =
+                InstanceIdentifier.builder(SparkbotLoggingParms.class)
+                        .build();
+        private ListenerRegistration<SparkbotLoggingParmsChangeHandler> dcReg;
+
+        SparkbotLoggingParmsChangeHandler(final DataBroker dataBroker) {
+            dcReg = dataBroker.registerDataTreeChangeListener(
+                    new DataTreeIdentifier<>(LogicalDatastoreType.CONFIGURATION, parmsIid), this);
+        }
+
+        @Override
+        public void onDataTreeChanged(final Collection<DataTreeModification<SparkbotLoggingParms>> changes) {
+            for (DataTreeModification<SparkbotLoggingParms> change : changes) {
+                switch (change.getRootNode().getModificationType()) {
+                    case WRITE:
+                    case SUBTREE_MODIFIED:
+                        SparkbotLoggingParms dataAfter = change.getRootNode().getDataAfter();
+                        final Map<IngestLog.Category, Long> limits = new EnumMap<>(IngestLog.Category.class);
+                        if (dataAfter.getCategoryLimit() != null) {
+                            for (CategoryLimit limit : dataAfter.getCategoryLimit()) {
+                                limits.put(IngestLog.Category.valueOf(limit.getCategory().name()),
+                                        limit.getMaxEventsPerSecond());
+                            }
+                        }
+                        IngestLog.handleLoggingParmsChange(dataAfter.isSampling(),
+                                dataAfter.getMaxEventsPerSecond(), limits,
+                                dataAfter.getDebugHandler() != null ? new HashSet<>(dataAfter.getDebugHandler())
+                                        : Collections.emptySet());
+                        break;
+                    case DELETE:
+                        IngestLog.handleLoggingParmsDelete();
+                        break;
+                    default:
+                        log.error("SparkbotLoggingParmsChangeHandler: "
+                                        + "onDataTreeChanged(SparkbotLoggingParms) non handled modification {}",
+                                change.getRootNode().getModificationType());
+                        break;
+                }
+            }
+        }
+
         @Override
         public void close() {
             dcReg.close();
         }
     }
-}
\ No newline at end of file
+}
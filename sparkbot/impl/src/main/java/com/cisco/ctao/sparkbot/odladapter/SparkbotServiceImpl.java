@@ -0,0 +1,281 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.odladapter;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler;
+import com.cisco.ctao.sparkbot.core.RecentActivity;
+import com.cisco.ctao.sparkbot.core.RecentActivity.IngestRecord;
+import com.cisco.ctao.sparkbot.core.RecentActivity.OutboundRecord;
+import com.cisco.ctao.sparkbot.core.bench.SparkBenchmark;
+import com.cisco.ctao.sparkbot.core.webhooksvr.RouteInfo;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServer;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookStats;
+import com.ciscospark.ConcurrencyLimiter;
+import com.ciscospark.EndpointMetrics;
+import com.ciscospark.LatencyHistogram;
+import com.ciscospark.SparkMetrics;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkOperation;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.BenchmarkTarget;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetHandlerRegistryOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetHandlerRegistryOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetRecentActivityOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetStatisticsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.GetStatisticsOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.RunBenchmarkOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.handler.registry.output.Route;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.handler.registry.output.RouteBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.recent.activity.output.IngestEvent;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.recent.activity.output.IngestEventBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.recent.activity.output.OutboundCall;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.recent.activity.output.OutboundCallBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.EndpointLimit;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.EndpointLimitBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.EndpointStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.EndpointStatsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.Lane;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.LaneBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.endpoint.stats.Latency;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.get.statistics.output.endpoint.stats.LatencyBuilder;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Implements the sparkbot diagnostics RPCs: reading the recent activity,
+ *  the live statistics and the handler registry of this node, and running
+ *  benchmarks.
+ * @author jmedved
+ *
+ */
+public class SparkbotServiceImpl implements SparkbotService {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkbotServiceImpl.class);
+    private static final int DEFAULT_BENCHMARK_REQUESTS = 1000;
+    private static final int DEFAULT_BENCHMARK_CONCURRENCY = 8;
+
+    @Override
+    public Future<RpcResult<GetRecentActivityOutput>> getRecentActivity(final GetRecentActivityInput input) {
+        LOG.debug("getRecentActivity, input {}", input);
+        int max = RecentActivity.CAPACITY;
+        String trackingId = null;
+        if (input != null) {
+            if (input.getMaxRecords() != null) {
+                max = (int) Math.min(input.getMaxRecords(), RecentActivity.CAPACITY);
+            }
+            trackingId = input.getTrackingId();
+        }
+
+        final GetRecentActivityOutput output = new GetRecentActivityOutputBuilder()
+                .setIngestEvent(toIngestEvents(RecentActivity.getIngestEvents(max, trackingId)))
+                .setOutboundCall(toOutboundCalls(RecentActivity.getOutboundCalls(max, trackingId)))
+                .build();
+        return RpcResultBuilder.success(output).buildFuture();
+    }
+
+    @Override
+    public Future<RpcResult<GetStatisticsOutput>> getStatistics() {
+        LOG.debug("getStatistics");
+        final GetStatisticsOutput output = new GetStatisticsOutputBuilder()
+                .setServletStats(SparkbotStatsWriter.toServletStats(WebhookStats.getServletStats()))
+                .setHandlerStats(SparkbotStatsWriter.toHandlerStats(WebhookStats.getHandlerStats()))
+                .setEnrichmentLatency(SparkbotStatsWriter.toEnrichmentLatency(WebhookStats.getEnrichmentLatency()))
+                .setHandlersInFlight(WebhookStats.getInFlight())
+                .setEndpointStats(toEndpointStats())
+                .setEndpointLimit(toEndpointLimits())
+                .setLane(toLanes())
+                .setOutboundInProgress((long) OutboundScheduler.getCallsInProgress())
+                .build();
+        return RpcResultBuilder.success(output).buildFuture();
+    }
+
+    @Override
+    public Future<RpcResult<GetHandlerRegistryOutput>> getHandlerRegistry() {
+        LOG.debug("getHandlerRegistry");
+        final List<Route> routes = new ArrayList<>();
+        for (RouteInfo info : WebhookServer.getRoutes()) {
+            final RouteBuilder route = new RouteBuilder()
+                    .setName(info.getName())
+                    .setWebhookId(info.getWebhookId())
+                    .setHandler(info.getHandlers())
+                    .setTypedHandler(info.getTypedHandlers());
+            if (info.getFilter() != null) {
+                route.setResource(info.getFilter().getResource())
+                    .setEvent(info.getFilter().getEvent())
+                    .setFilter(info.getFilter().getFilter())
+                    .setSparkIdentity(info.getFilter().getIdentity());
+            }
+            routes.add(route.build());
+        }
+        return RpcResultBuilder.success(new GetHandlerRegistryOutputBuilder().setRoute(routes).build())
+                .buildFuture();
+    }
+
+    @Override
+    public Future<RpcResult<RunBenchmarkOutput>> runBenchmark(final RunBenchmarkInput input) {
+        LOG.info("runBenchmark, input {}", input);
+        final SparkBenchmark.Target target = input != null && input.getTarget() == BenchmarkTarget.SPARK
+                ? SparkBenchmark.Target.SPARK : SparkBenchmark.Target.LOCAL;
+        final SparkBenchmark.Operation operation = input != null && input.getOperation() == BenchmarkOperation.LIST
+                ? SparkBenchmark.Operation.LIST : SparkBenchmark.Operation.GET;
+        final int requests = input != null && input.getRequests() != null
+                ? input.getRequests().intValue() : DEFAULT_BENCHMARK_REQUESTS;
+        final int concurrency = input != null && input.getConcurrency() != null
+                ? input.getConcurrency().intValue() : DEFAULT_BENCHMARK_CONCURRENCY;
+        final String identity = input != null ? input.getSparkIdentity() : null;
+
+        final SettableFuture<RpcResult<RunBenchmarkOutput>> rpcResult = SettableFuture.create();
+        Futures.addCallback(SparkBenchmark.run(target, operation, requests, concurrency, identity),
+            new FutureCallback<SparkBenchmark.Result>() {
+                @Override
+                public void onSuccess(final SparkBenchmark.Result result) {
+                    LOG.info("runBenchmark: {}", result);
+                    final RunBenchmarkOutput output = new RunBenchmarkOutputBuilder()
+                            .setRequests(BigInteger.valueOf(result.getRequests()))
+                            .setErrors(BigInteger.valueOf(result.getErrors()))
+                            .setDuration(BigInteger.valueOf(TimeUnit.NANOSECONDS.toMillis(result.getDurationNanos())))
+                            .setThroughput(BigInteger.valueOf(Math.round(result.getThroughput())))
+                            .setLatency(toBenchmarkLatency(result.getLatency()))
+                            .setErrorMessage(result.getFirstError())
+                            .build();
+                    rpcResult.set(RpcResultBuilder.success(output).build());
+                }
+
+                @Override
+                public void onFailure(final Throwable cause) {
+                    LOG.warn("runBenchmark failed", cause);
+                    rpcResult.set(RpcResultBuilder.success(new RunBenchmarkOutputBuilder()
+                            .setErrorMessage(cause.getMessage()).build()).build());
+                }
+            }, MoreExecutors.directExecutor());
+        return rpcResult;
+    }
+
+    private static Latency toLatency(final LatencyHistogram latency) {
+        return new LatencyBuilder()
+                .setCount(BigInteger.valueOf(latency.getCount()))
+                .setP50(BigInteger.valueOf(latency.getPercentileMicros(50)))
+                .setP99(BigInteger.valueOf(latency.getPercentileMicros(99)))
+                .setP999(BigInteger.valueOf(latency.getPercentileMicros(99.9)))
+                .setMax(BigInteger.valueOf(latency.getMaxMicros()))
+                .build();
+    }
+
+    private static org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.run
+            .benchmark.output.Latency toBenchmarkLatency(final LatencyHistogram latency) {
+        return new org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.run
+                .benchmark.output.LatencyBuilder()
+                .setCount(BigInteger.valueOf(latency.getCount()))
+                .setP50(BigInteger.valueOf(latency.getPercentileMicros(50)))
+                .setP99(BigInteger.valueOf(latency.getPercentileMicros(99)))
+                .setP999(BigInteger.valueOf(latency.getPercentileMicros(99.9)))
+                .setMax(BigInteger.valueOf(latency.getMaxMicros()))
+                .build();
+    }
+
+    private static List<EndpointStats> toEndpointStats() {
+        final List<EndpointStats> list = new ArrayList<>();
+        for (EndpointMetrics endpoint : SparkMetrics.getEndpointMetrics()) {
+            list.add(new EndpointStatsBuilder()
+                    .setFamily(endpoint.getFamily())
+                    .setMethod(endpoint.getMethod())
+                    .setRequests(BigInteger.valueOf(endpoint.getRequestCount()))
+                    .setSuccesses(BigInteger.valueOf(endpoint.getSuccessCount()))
+                    .setClientErrors(BigInteger.valueOf(endpoint.getClientErrorCount()))
+                    .setServerErrors(BigInteger.valueOf(endpoint.getServerErrorCount()))
+                    .setIoErrors(BigInteger.valueOf(endpoint.getIoErrorCount()))
+                    .setRetries(BigInteger.valueOf(endpoint.getRetryCount()))
+                    .setLatency(toLatency(endpoint.getLatency()))
+                    .build());
+        }
+        return list;
+    }
+
+    private static List<EndpointLimit> toEndpointLimits() {
+        final List<EndpointLimit> list = new ArrayList<>();
+        for (String identity : ConcurrencyLimiter.getIdentities()) {
+            for (String family : ConcurrencyLimiter.getFamilies(identity)) {
+                list.add(new EndpointLimitBuilder()
+                        .setIdentity(identity)
+                        .setFamily(family)
+                        .setLimit((long) ConcurrencyLimiter.getLimit(identity, family))
+                        .setInFlight((long) ConcurrencyLimiter.getInFlight(identity, family))
+                        .setQueued((long) ConcurrencyLimiter.getQueued(identity, family))
+                        .setDrops(BigInteger.valueOf(ConcurrencyLimiter.getDropCount(identity, family)))
+                        .setAverageRtt(BigInteger.valueOf(Math.round(
+                                ConcurrencyLimiter.getAverageRttMillis(identity, family)
+                                * TimeUnit.MILLISECONDS.toMicros(1))))
+                        .build());
+            }
+        }
+        return list;
+    }
+
+    private static List<Lane> toLanes() {
+        final List<Lane> list = new ArrayList<>();
+        for (OutboundScheduler.Lane lane : OutboundScheduler.Lane.values()) {
+            list.add(new LaneBuilder()
+                    .setName(lane.name())
+                    .setWeight((long) lane.getWeight())
+                    .setQueueDepth((long) OutboundScheduler.getQueueDepth(lane))
+                    .setAdmitted(BigInteger.valueOf(OutboundScheduler.getAdmittedCount(lane)))
+                    .setMaxWait(BigInteger.valueOf(OutboundScheduler.getMaxWaitMillis(lane)))
+                    .build());
+        }
+        return list;
+    }
+
+    private static List<IngestEvent> toIngestEvents(final List<IngestRecord> records) {
+        final List<IngestEvent> list = new ArrayList<>(records.size());
+        for (IngestRecord record : records) {
+            list.add(new IngestEventBuilder()
+                    .setSeq(BigInteger.valueOf(record.getSeq()))
+                    .setTimestamp(BigInteger.valueOf(record.getTimestamp()))
+                    .setTrackingId(record.getTrackingId())
+                    .setStatusCode(record.getStatusCode())
+                    .setDuration(BigInteger.valueOf(record.getDurationMicros()))
+                    .setServlet(record.getServlet())
+                    .setResource(record.getResource())
+                    .setEvent(record.getEvent())
+                    .setObjectId(record.getObjectId())
+                    .build());
+        }
+        return list;
+    }
+
+    private static List<OutboundCall> toOutboundCalls(final List<OutboundRecord> records) {
+        final List<OutboundCall> list = new ArrayList<>(records.size());
+        for (OutboundRecord record : records) {
+            list.add(new OutboundCallBuilder()
+                    .setSeq(BigInteger.valueOf(record.getSeq()))
+                    .setTimestamp(BigInteger.valueOf(record.getTimestamp()))
+                    .setTrackingId(record.getTrackingId())
+                    .setStatusCode(record.getStatusCode())
+                    .setDuration(BigInteger.valueOf(record.getDurationMicros()))
+                    .setMethod(record.getMethod())
+                    .setEndpoint(record.getEndpoint())
+                    .setRetry(record.isRetry())
+                    .build());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.odladapter;
+
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookStats;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookStats.Counters;
+import com.ciscospark.LatencyHistogram;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.stats.MemberStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.stats.MemberStatsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.stats.MemberStatsKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.EnrichmentLatency;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.EnrichmentLatencyBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.HandlerStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.HandlerStatsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.ServletStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.webhook.event.stats.ServletStatsBuilder;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Periodically publishes the Webhook Server's event processing statistics
+ *  into the operational data store, where operators can read throughput
+ *  and lag over RESTCONF. The counters themselves are maintained lock-free
+ *  on the event path; this writer only reads them. Each cluster member
+ *  writes its statistics into its own entry, keyed by the member's
+ *  address, and removes the entry when it is closed.
+ * @author jmedved
+ *
+ */
+public class SparkbotStatsWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkbotStatsWriter.class);
+    private static final long REFRESH_PERIOD = 5;
+
+    private final DataBroker dataBroker;
+    private final String member;
+    private final InstanceIdentifier<MemberStats> statsIid;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("sparkbot-stats-%d").setDaemon(true).build());
+
+    /** Constructor - starts the periodic refresh.
+     * @param dataBroker: reference to the MD-SAL Data Broker.
+     * @param member: address of this cluster member.
+     */
+    public SparkbotStatsWriter(final DataBroker dataBroker, final String member) {
+        this.dataBroker = dataBroker;
+        this.member = member;
+        this.statsIid = InstanceIdentifier.builder(SparkbotStats.class)
+                .child(MemberStats.class, new MemberStatsKey(member)).build();
+        timer.scheduleAtFixedRate(this::writeStats, REFRESH_PERIOD, REFRESH_PERIOD, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        final WriteTransaction tx = dataBroker.newWriteOnlyTransaction();
+        tx.delete(LogicalDatastoreType.OPERATIONAL, statsIid);
+        Futures.addCallback(tx.submit(), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(final Void result) {
+                LOG.trace("Sparkbot stats of member {} removed", member);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                LOG.error("Failed to remove sparkbot stats of member {}", member, throwable);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void writeStats() {
+        try {
+            final LatencyHistogram latency = WebhookStats.takeEnrichmentLatency();
+            final MemberStats data = new MemberStatsBuilder()
+                    .setMember(member)
+                    .setServletStats(toServletStats(WebhookStats.getServletStats()))
+                    .setHandlerStats(toHandlerStats(WebhookStats.getHandlerStats()))
+                    .setEnrichmentLatency(toEnrichmentLatency(latency))
+                    .setInFlight(WebhookStats.getInFlight())
+                    .setQueueDepth(WebhookStats.getQueueDepth())
+                    .build();
+
+            final WriteTransaction tx = dataBroker.newWriteOnlyTransaction();
+            tx.put(LogicalDatastoreType.OPERATIONAL, statsIid, data, true);
+            Futures.addCallback(tx.submit(), new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(final Void result) {
+                    LOG.trace("Sparkbot stats written");
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    LOG.error("Failed to write sparkbot stats", throwable);
+                }
+            }, MoreExecutors.directExecutor());
+        } catch (RuntimeException e) {
+            // An exception would cancel the periodic refresh
+            LOG.error("Failed to collect sparkbot stats", e);
+        }
+    }
+
+    /** Converts the servlet counters; also used by the get-statistics RPC.
+     * @param stats the counters of each servlet, by servlet name
+     * @return the servlet statistics
+     */
+    static List<ServletStats> toServletStats(final Map<String, Counters> stats) {
+        final List<ServletStats> list = new ArrayList<>(stats.size());
+        for (Map.Entry<String, Counters> entry : stats.entrySet()) {
+            final Counters counters = entry.getValue();
+            list.add(new ServletStatsBuilder()
+                    .setName(entry.getKey())
+                    .setReceived(BigInteger.valueOf(counters.getReceivedCount()))
+                    .setDispatched(BigInteger.valueOf(counters.getDispatchedCount()))
+                    .setDropped(BigInteger.valueOf(counters.getDroppedCount()))
+                    .setFailed(BigInteger.valueOf(counters.getFailedCount()))
+                    .build());
+        }
+        return list;
+    }
+
+    /** Converts the handler counters; also used by the get-statistics RPC.
+     * @param stats the counters of each handler, by handler name
+     * @return the handler statistics
+     */
+    static List<HandlerStats> toHandlerStats(final Map<String, Counters> stats) {
+        final List<HandlerStats> list = new ArrayList<>(stats.size());
+        for (Map.Entry<String, Counters> entry : stats.entrySet()) {
+            final Counters counters = entry.getValue();
+            list.add(new HandlerStatsBuilder()
+                    .setName(entry.getKey())
+                    .setReceived(BigInteger.valueOf(counters.getReceivedCount()))
+                    .setDispatched(BigInteger.valueOf(counters.getDispatchedCount()))
+                    .setDropped(BigInteger.valueOf(counters.getDroppedCount()))
+                    .setFailed(BigInteger.valueOf(counters.getFailedCount()))
+                    .build());
+        }
+        return list;
+    }
+
+    /** Converts the enrichment latencies; also used by the get-statistics
+     *  RPC.
+     * @param latency the enrichment latency histogram
+     * @return the enrichment latency summary
+     */
+    static EnrichmentLatency toEnrichmentLatency(final LatencyHistogram latency) {
+        return new EnrichmentLatencyBuilder()
+                .setCount(BigInteger.valueOf(latency.getCount()))
+                .setP50(BigInteger.valueOf(latency.getPercentileMicros(50)))
+                .setP99(BigInteger.valueOf(latency.getPercentileMicros(99)))
+                .setP999(BigInteger.valueOf(latency.getPercentileMicros(99.9)))
+                .setMax(BigInteger.valueOf(latency.getMaxMicros()))
+                .build();
+    }
+}
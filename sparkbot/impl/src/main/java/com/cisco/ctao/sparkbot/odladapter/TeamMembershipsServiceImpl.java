@@ -37,7 +37,6 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.team.memberships.rev161110.team.membership.SparkbotTeamMembership;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.team.memberships.rev161110.team.membership.SparkbotTeamMembershipBuilder;
 import org.opendaylight.yangtools.yang.common.RpcResult;
-import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,12 +91,11 @@ public class TeamMembershipsServiceImpl
     public Future<RpcResult<ListTeamMembershipsOutput>> listTeamMemberships(final ListTeamMembershipsInput input) {
         LOG.info("listTeamMemberships input: {}", input);
 
-        final SparkProxyService<SparkbotTeamMembership, TeamMembership, TeamMembershipList>.ReturnValue result =
-                list(getQueryParameters(input));
-        return RpcResultBuilder.success(new ListTeamMembershipsOutputBuilder()
-                .setTeamMembershipList(result.getList())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(list(input, getQueryParameters(input)),
+            result -> new ListTeamMembershipsOutputBuilder()
+                    .setTeamMembershipList(result.getList())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -106,12 +104,11 @@ public class TeamMembershipsServiceImpl
         LOG.info("getTeamMembershipDetails input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_TEAM_MEMBERSHIP_ID);
 
-        final SparkProxyService<SparkbotTeamMembership, TeamMembership, TeamMembershipList>.ReturnValue result =
-                getDetails(input.getTeamMembershipId());
-        return RpcResultBuilder.success(new GetTeamMembershipDetailsOutputBuilder()
-                .setSparkbotTeamMembership(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(getDetails(input, input.getTeamMembershipId()),
+            result -> new GetTeamMembershipDetailsOutputBuilder()
+                    .setSparkbotTeamMembership(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -125,12 +122,11 @@ public class TeamMembershipsServiceImpl
         elementIn.setPersonEmail(input.getPersonEmail());
         elementIn.setIsModerator(input.isIsModerator());
 
-        final SparkProxyService<SparkbotTeamMembership, TeamMembership, TeamMembershipList>.ReturnValue result =
-                create(elementIn);
-        return RpcResultBuilder.success(new CreateTeamMembershipOutputBuilder()
-                .setSparkbotTeamMembership(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(create(input, elementIn),
+            result -> new CreateTeamMembershipOutputBuilder()
+                    .setSparkbotTeamMembership(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -141,12 +137,11 @@ public class TeamMembershipsServiceImpl
         final TeamMembership elementIn = new TeamMembership();
         elementIn.setIsModerator(input.isIsModerator());
 
-        final SparkProxyService<SparkbotTeamMembership, TeamMembership, TeamMembershipList>.ReturnValue result =
-                update(input.getTeamMembershipId(), elementIn);
-        return RpcResultBuilder.success(new UpdateTeamMembershipOutputBuilder()
-                .setSparkbotTeamMembership(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(update(input, input.getTeamMembershipId(), elementIn),
+            result -> new UpdateTeamMembershipOutputBuilder()
+                    .setSparkbotTeamMembership(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -154,10 +149,9 @@ public class TeamMembershipsServiceImpl
         LOG.info("deleteTeamMembership input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_TEAM_MEMBERSHIP_ID);
 
-        final SparkProxyService<SparkbotTeamMembership, TeamMembership, TeamMembershipList>.ReturnValue result =
-                delete(input.getTeamMembershipId());
-        return RpcResultBuilder.success(new DeleteTeamMembershipOutputBuilder()
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(delete(input, input.getTeamMembershipId()),
+            result -> new DeleteTeamMembershipOutputBuilder()
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 }
@@ -37,7 +37,6 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.teams.rev161110.team.SparkbotTeam;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.teams.rev161110.team.SparkbotTeamBuilder;
 import org.opendaylight.yangtools.yang.common.RpcResult;
-import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -90,12 +89,11 @@ public class TeamsServiceImpl
     public Future<RpcResult<ListTeamsOutput>> listTeams(final ListTeamsInput input) {
         LOG.info("listTeams input: {}", input);
 
-        SparkProxyService<SparkbotTeam, Team, SparkbotTeams>.ReturnValue result =
-                list(getQueryParameters(input));
-        return RpcResultBuilder.success(new ListTeamsOutputBuilder()
-                .setSparkbotTeams(result.getList())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(list(input, getQueryParameters(input)),
+            result -> new ListTeamsOutputBuilder()
+                    .setSparkbotTeams(result.getList())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -103,12 +101,11 @@ public class TeamsServiceImpl
         LOG.info("getTeamDetails input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_TEAM_ID);
 
-        SparkProxyService<SparkbotTeam, Team, SparkbotTeams>.ReturnValue result =
-                getDetails(input.getTeamId());
-        return RpcResultBuilder.success(new GetTeamDetailsOutputBuilder()
-                .setSparkbotTeam(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(getDetails(input, input.getTeamId()),
+            result -> new GetTeamDetailsOutputBuilder()
+                    .setSparkbotTeam(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -119,11 +116,11 @@ public class TeamsServiceImpl
         Team team = new Team();
         team.setName(input.getName());
 
-        SparkProxyService<SparkbotTeam, Team, SparkbotTeams>.ReturnValue result = create(team);
-        return RpcResultBuilder.success(new CreateTeamOutputBuilder()
-                .setSparkbotTeam(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(create(input, team),
+            result -> new CreateTeamOutputBuilder()
+                    .setSparkbotTeam(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -134,12 +131,11 @@ public class TeamsServiceImpl
         Team team = new Team();
         team.setName(input.getName());
 
-        SparkProxyService<SparkbotTeam, Team, SparkbotTeams>.ReturnValue result =
-                update(input.getTeamId(), team);
-        return RpcResultBuilder.success(new UpdateTeamOutputBuilder()
-                .setSparkbotTeam(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(update(input, input.getTeamId(), team),
+            result -> new UpdateTeamOutputBuilder()
+                    .setSparkbotTeam(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -147,10 +143,9 @@ public class TeamsServiceImpl
         LOG.info("deleteTeam input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_TEAM_ID);
 
-        SparkProxyService<SparkbotTeam, Team, SparkbotTeams>.ReturnValue result =
-                delete(input.getTeamId());
-        return RpcResultBuilder.success(new DeleteTeamOutputBuilder()
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(delete(input, input.getTeamId()),
+            result -> new DeleteTeamOutputBuilder()
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.odladapter;
+
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServerStatus;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServerStatusListener;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotWebhookStatus;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.WebhookServerState;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.webhook.status.MemberStatus;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.webhook.status.MemberStatusBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.webhook.status.MemberStatusKey;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Publishes the Webhook Server's readiness into the operational data
+ *  store. The write is submitted asynchronously so that the Webhook
+ *  Server's reconfiguration thread is never blocked on MD-SAL. Each
+ *  cluster member writes its status into its own entry, keyed by the
+ *  member's address.
+ * @author jmedved
+ *
+ */
+public class WebhookServerStatusWriter implements WebhookServerStatusListener {
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookServerStatusWriter.class);
+
+    private final DataBroker dataBroker;
+    private final String member;
+    private final InstanceIdentifier<MemberStatus> statusIid;
+
+    /** Constructor.
+     * @param dataBroker: reference to the MD-SAL Data Broker.
+     * @param member: address of this cluster member.
+     */
+    public WebhookServerStatusWriter(final DataBroker dataBroker, final String member) {
+        this.dataBroker = dataBroker;
+        this.member = member;
+        this.statusIid = InstanceIdentifier.builder(SparkbotWebhookStatus.class)
+                .child(MemberStatus.class, new MemberStatusKey(member)).build();
+    }
+
+    @Override
+    public void onStatusChange(final WebhookServerStatus status) {
+        final MemberStatus data = new MemberStatusBuilder()
+                .setMember(member)
+                .setHttpPort(status.getHttpPort())
+                .setServerState(WebhookServerState.valueOf(status.getState().name()))
+                .setRegisteredWebhooks((long) status.getWebhookCount())
+                .setErrorMessage(status.getErrorMessage())
+                .build();
+
+        final WriteTransaction tx = dataBroker.newWriteOnlyTransaction();
+        tx.put(LogicalDatastoreType.OPERATIONAL, statusIid, data, true);
+        Futures.addCallback(tx.submit(), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(final Void result) {
+                LOG.debug("Webhook server status {} written", status.getState());
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                LOG.error("Failed to write webhook server status {}", status, throwable);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+}
@@ -94,12 +94,11 @@ public class WebhooksServiceImpl
     public Future<RpcResult<ListWebhooksOutput>> listWebhooks(final ListWebhooksInput input) {
         LOG.info("listWebhooks input: {}", input);
 
-        final SparkProxyService<SparkbotWebhook, Webhook, SparkbotWebhooks>.ReturnValue result =
-                list(getQueryParameters(input));
-        return RpcResultBuilder.success(new ListWebhooksOutputBuilder()
-                .setSparkbotWebhooks(result.getList())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(list(input, getQueryParameters(input)),
+            result -> new ListWebhooksOutputBuilder()
+                    .setSparkbotWebhooks(result.getList())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -107,12 +106,11 @@ public class WebhooksServiceImpl
         LOG.info("getWebhookDetails input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_WEBHOOK_ID);
 
-        final SparkProxyService<SparkbotWebhook, Webhook, SparkbotWebhooks>.ReturnValue result =
-                getDetails(input.getWebhookId());
-        return RpcResultBuilder.success(new GetWebhookDetailsOutputBuilder()
-                .setSparkbotWebhook(result.getElement())
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(getDetails(input, input.getWebhookId()),
+            result -> new GetWebhookDetailsOutputBuilder()
+                    .setSparkbotWebhook(result.getElement())
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 
     @Override
@@ -128,12 +126,11 @@ public class WebhooksServiceImpl
             webhook.setFilter(input.getFilter());
             webhook.setEvent(input.getEvent());
 
-            final SparkProxyService<SparkbotWebhook, Webhook, SparkbotWebhooks>.ReturnValue result =
-                    create(webhook);
-            return RpcResultBuilder.success(new CreateWebhookOutputBuilder()
-                    .setSparkbotWebhook(result.getElement())
-                    .setReturnStatus(result.getRetCode())
-                    .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+            return rpcResult(create(input, webhook),
+                result -> new CreateWebhookOutputBuilder()
+                        .setSparkbotWebhook(result.getElement())
+                        .setReturnStatus(result.getRetCode())
+                        .setErrorMessage(result.getErrorMessage()).build());
         } catch (URISyntaxException e) {
             LOG.error("createWebhook: Invalid target URI '{}m exception '", input.getTargetURL(), e);
             return RpcResultBuilder.success(new CreateWebhookOutputBuilder()
@@ -153,12 +150,11 @@ public class WebhooksServiceImpl
             webhook.setName(input.getName());
             webhook.setTargetUrl(new URI(input.getTargetURL()));
 
-            final SparkProxyService<SparkbotWebhook, Webhook, SparkbotWebhooks>.ReturnValue result =
-                    update(input.getWebhookId(), webhook);
-            return RpcResultBuilder.success(new UpdateWebhookOutputBuilder()
-                    .setSparkbotWebhook(result.getElement())
-                    .setReturnStatus(result.getRetCode())
-                    .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+            return rpcResult(update(input, input.getWebhookId(), webhook),
+                result -> new UpdateWebhookOutputBuilder()
+                        .setSparkbotWebhook(result.getElement())
+                        .setReturnStatus(result.getRetCode())
+                        .setErrorMessage(result.getErrorMessage()).build());
         } catch (URISyntaxException e) {
             LOG.error("createWebhook: Invalid target URI '{}, exception'", input.getTargetURL(), e);
             return RpcResultBuilder.success(new UpdateWebhookOutputBuilder()
@@ -172,10 +168,9 @@ public class WebhooksServiceImpl
         LOG.info("deleteWebhook input: {}", input);
         Preconditions.checkArgument(input != null, MISSING_WEBHOOK_ID);
 
-        final SparkProxyService<SparkbotWebhook, Webhook, SparkbotWebhooks>.ReturnValue result =
-                delete(input.getWebhookId());
-        return RpcResultBuilder.success(new DeleteWebhookOutputBuilder()
-                .setReturnStatus(result.getRetCode())
-                .setErrorMessage(result.getErrorMessage()).build()).buildFuture();
+        return rpcResult(delete(input, input.getWebhookId()),
+            result -> new DeleteWebhookOutputBuilder()
+                    .setReturnStatus(result.getRetCode())
+                    .setErrorMessage(result.getErrorMessage()).build());
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core;
+
+import com.cisco.ctao.sparkbot.core.OutboundScheduler.Lane;
+import com.ciscospark.SparkException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests the outbound scheduler: freed call slots are shared between the
+ *  lanes with waiting calls by the lanes' weights (8:4:1), and a call
+ *  waits for a slot at most until its deadline.
+ * @author jmedved
+ *
+ */
+public class OutboundSchedulerTest {
+    private static final long TIMEOUT = 10;
+
+    @After
+    public void tearDown() {
+        OutboundScheduler.setMaxConcurrency(null);
+    }
+
+    @Test
+    public void testAdmissionByLaneWeight() throws InterruptedException {
+        OutboundScheduler.setMaxConcurrency(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Thread blocker = start(() -> OutboundScheduler.call(Lane.BULK, () -> {
+            blocked.countDown();
+            await(unblock);
+            return null;
+        }));
+        Assert.assertTrue(blocked.await(TIMEOUT, TimeUnit.SECONDS));
+
+        // Queue enough calls in every lane that no lane runs dry during the
+        // first rounds, while the only call slot is taken
+        final Map<Lane, Integer> queued = new EnumMap<>(Lane.class);
+        queued.put(Lane.INTERACTIVE, 80);
+        queued.put(Lane.NORMAL, 40);
+        queued.put(Lane.BULK, 20);
+        final List<Lane> admitted = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> callers = new ArrayList<>();
+        for (Map.Entry<Lane, Integer> lane : queued.entrySet()) {
+            for (int i = 0; i < lane.getValue(); i++) {
+                callers.add(start(() -> OutboundScheduler.call(lane.getKey(), () -> admitted.add(lane.getKey()))));
+            }
+        }
+        for (Map.Entry<Lane, Integer> lane : queued.entrySet()) {
+            awaitQueueDepth(lane.getKey(), lane.getValue());
+        }
+
+        // With a single slot, the calls are admitted one at a time
+        unblock.countDown();
+        blocker.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        }
+        Assert.assertEquals(140, admitted.size());
+
+        final Map<Lane, Integer> counts = new EnumMap<>(Lane.class);
+        for (Lane lane : admitted.subList(0, 5 * 13)) {
+            counts.merge(lane, 1, Integer::sum);
+        }
+        assertAbout(40, counts.get(Lane.INTERACTIVE));
+        assertAbout(20, counts.get(Lane.NORMAL));
+        assertAbout(5, counts.get(Lane.BULK));
+        Assert.assertEquals(0, OutboundScheduler.getCallsInProgress());
+    }
+
+    @Test
+    public void testIdleLaneGetsNoCredit() throws InterruptedException {
+        OutboundScheduler.setMaxConcurrency(1);
+        // Let the interactive lane run alone for a while
+        for (int i = 0; i < 50; i++) {
+            OutboundScheduler.call(Lane.INTERACTIVE, () -> null);
+        }
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Thread blocker = start(() -> OutboundScheduler.call(Lane.INTERACTIVE, () -> {
+            blocked.countDown();
+            await(unblock);
+            return null;
+        }));
+        Assert.assertTrue(blocked.await(TIMEOUT, TimeUnit.SECONDS));
+
+        final List<Lane> admitted = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            callers.add(start(() -> OutboundScheduler.call(Lane.INTERACTIVE, () -> admitted.add(Lane.INTERACTIVE))));
+        }
+        for (int i = 0; i < 4; i++) {
+            callers.add(start(() -> OutboundScheduler.call(Lane.BULK, () -> admitted.add(Lane.BULK))));
+        }
+        awaitQueueDepth(Lane.INTERACTIVE, 16);
+        awaitQueueDepth(Lane.BULK, 4);
+        unblock.countDown();
+        blocker.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        }
+
+        // The bulk lane, idle until now, does not jump ahead of the
+        // interactive calls for the time it was idle
+        Assert.assertTrue("bulk calls admitted first: " + admitted,
+                admitted.subList(0, 9).stream().filter(lane -> lane == Lane.BULK).count() <= 2);
+    }
+
+    @Test
+    public void testDeadlineWhileWaitingInLane() throws InterruptedException {
+        OutboundScheduler.setMaxConcurrency(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Thread blocker = start(() -> OutboundScheduler.call(Lane.NORMAL, () -> {
+            blocked.countDown();
+            await(unblock);
+            return null;
+        }));
+        Assert.assertTrue(blocked.await(TIMEOUT, TimeUnit.SECONDS));
+
+        final long start = System.nanoTime();
+        try {
+            OutboundScheduler.call(Lane.INTERACTIVE, start + TimeUnit.MILLISECONDS.toNanos(50), () -> "called");
+            Assert.fail("call admitted while the only slot was taken");
+        } catch (SparkException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Deadline exceeded"));
+        }
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertEquals(0, OutboundScheduler.getQueueDepth(Lane.INTERACTIVE));
+
+        unblock.countDown();
+        blocker.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        Assert.assertEquals("called", OutboundScheduler.call(Lane.INTERACTIVE,
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT), () -> "called"));
+    }
+
+    private static void assertAbout(final int expected, final Integer actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertTrue("expected about " + expected + " admissions, got " + actual,
+                Math.abs(expected - actual) <= 2);
+    }
+
+    private static Thread start(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQueueDepth(final Lane lane, final int depth) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (OutboundScheduler.getQueueDepth(lane) < depth) {
+            Assert.assertTrue("calls not queued in lane " + lane, System.nanoTime() < end);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.outbox;
+
+import com.ciscospark.Message;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the outbox journal: replay of pending and delivered messages,
+ *  discarding of torn records, compaction and the idempotency keys kept
+ *  across reopens.
+ * @author jmedved
+ *
+ */
+public class OutboxJournalTest {
+    private static final int CAPACITY = 64 * 1024;
+    private static final String JOURNAL_FILE = "outbox.journal";
+
+    private Path dir;
+    private final Map<Long, OutboxEntry> pending = new TreeMap<>();
+    private final Set<String> deliveredKeys = new HashSet<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("outbox-journal-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testReplayPendingAndDelivered() throws IOException {
+        try (OutboxJournal journal = open()) {
+            final OutboxEntry first = append(journal, "key-1", "first");
+            append(journal, "key-2", "second");
+            append(journal, "key-3", "third");
+            Assert.assertTrue(journal.appendAck(first));
+            journal.force();
+        }
+
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals(Arrays.asList(2L, 3L), new ArrayList<>(pending.keySet()));
+            Assert.assertEquals("second", pending.get(2L).toMessage().getMarkdown());
+            Assert.assertEquals("key-3", pending.get(3L).getKey());
+            Assert.assertEquals(new HashSet<>(Arrays.asList("key-1")), deliveredKeys);
+            Assert.assertEquals("sequence numbers continue after the replayed ones", 4L, journal.nextSeq());
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        try (OutboxJournal journal = open()) {
+            append(journal, "key-1", "first");
+            append(journal, "key-2", "second");
+        }
+        // Corrupt the body of the second record, as if the crash happened
+        // before it was fully written
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(JOURNAL_FILE).toFile(), "rw")) {
+            final int second = 8 + file.readInt();
+            file.seek(second + 12);
+            final int value = file.read();
+            file.seek(second + 12);
+            file.write(value ^ 0xff);
+        }
+
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals(Arrays.asList(1L), new ArrayList<>(pending.keySet()));
+            Assert.assertTrue(deliveredKeys.isEmpty());
+            // The record appended after the torn one must not be mixed up
+            // with the torn record's remains
+            append(journal, "key-3", "third");
+        }
+
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals(Arrays.asList(1L, 2L), new ArrayList<>(pending.keySet()));
+            Assert.assertEquals("key-3", pending.get(2L).getKey());
+            Assert.assertEquals("third", pending.get(2L).toMessage().getMarkdown());
+        }
+    }
+
+    @Test
+    public void testTruncatedTailIsDiscarded() throws IOException {
+        try (OutboxJournal journal = open()) {
+            append(journal, "key-1", "first");
+            append(journal, "key-2", "second");
+        }
+        // Write a length without its record, as if the crash happened after
+        // the length of the next record was written
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(JOURNAL_FILE).toFile(), "rw")) {
+            final int second = 8 + file.readInt();
+            file.seek(second);
+            final int third = second + 8 + file.readInt();
+            file.seek(third);
+            file.writeInt(CAPACITY);
+        }
+
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals(Arrays.asList(1L, 2L), new ArrayList<>(pending.keySet()));
+            append(journal, "key-3", "third");
+        }
+
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals(Arrays.asList(1L, 2L, 3L), new ArrayList<>(pending.keySet()));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsPendingAndKeys() throws IOException {
+        final List<OutboxEntry> entries = new ArrayList<>();
+        try (OutboxJournal journal = open()) {
+            while (!journal.needsCompaction()) {
+                entries.add(append(journal, "key-" + entries.size(), "message " + entries.size()));
+            }
+            final Map<Long, OutboxEntry> stillPending = new TreeMap<>();
+            final Collection<String> delivered = new ArrayList<>();
+            for (OutboxEntry entry : entries) {
+                if (entry.getSeq() % 10 == 0) {
+                    stillPending.put(entry.getSeq(), entry);
+                } else {
+                    Assert.assertTrue(journal.appendAck(entry));
+                    delivered.add(entry.getKey());
+                }
+            }
+            journal.compact(stillPending.values(), delivered);
+            Assert.assertFalse("a compacted journal only holds the live records", journal.needsCompaction());
+
+            // The compacted journal accepts new records
+            append(journal, "key-new", "after compaction");
+        }
+
+        try (OutboxJournal journal = open()) {
+            for (OutboxEntry entry : entries) {
+                if (entry.getSeq() % 10 == 0) {
+                    Assert.assertEquals(entry.getKey(), pending.get(entry.getSeq()).getKey());
+                    Assert.assertFalse(deliveredKeys.contains(entry.getKey()));
+                } else {
+                    Assert.assertFalse(pending.containsKey(entry.getSeq()));
+                    Assert.assertTrue("delivered key survives compaction", deliveredKeys.contains(entry.getKey()));
+                }
+            }
+            Assert.assertEquals(entries.size() / 10 + 1, pending.size());
+            Assert.assertTrue(pending.values().stream().anyMatch(entry -> "key-new".equals(entry.getKey())));
+            Assert.assertTrue(journal.nextSeq() > entries.size() + 1);
+        }
+    }
+
+    @Test
+    public void testCompactionFailsIfPendingDoesNotFit() throws IOException {
+        final List<OutboxEntry> entries = new ArrayList<>();
+        try (OutboxJournal journal = open()) {
+            for (int i = 0; i < 2000; i++) {
+                entries.add(new OutboxEntry(journal.nextSeq(), "key-" + i, null, message("message " + i)));
+            }
+            try {
+                journal.compact(entries, new ArrayList<>());
+                Assert.fail("compaction must fail if the pending messages do not fit");
+            } catch (IOException e) {
+                // Expected
+            }
+            // The journal is left as it was
+            append(journal, "key-after", "after");
+        }
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals(1, pending.size());
+        }
+    }
+
+    @Test
+    public void testAppendToFullJournal() throws IOException {
+        int appended = 0;
+        try (OutboxJournal journal = open()) {
+            while (journal.append(new OutboxEntry(journal.nextSeq(), "key-" + appended, null,
+                    message("message " + appended)))) {
+                appended++;
+            }
+            Assert.assertTrue(appended > 0);
+        }
+
+        try (OutboxJournal journal = open()) {
+            Assert.assertEquals("records that did not fit are not journaled", appended, pending.size());
+        }
+    }
+
+    private OutboxJournal open() throws IOException {
+        pending.clear();
+        deliveredKeys.clear();
+        return new OutboxJournal(dir, CAPACITY, pending, deliveredKeys);
+    }
+
+    private static OutboxEntry append(final OutboxJournal journal, final String key, final String markdown)
+            throws IOException {
+        final OutboxEntry entry = new OutboxEntry(journal.nextSeq(), key, "bot@example.com", message(markdown));
+        Assert.assertTrue(journal.append(entry));
+        return entry;
+    }
+
+    private static Message message(final String markdown) {
+        final Message message = new Message();
+        message.setRoomId("room-1");
+        message.setMarkdown(markdown);
+        return message;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.core.webhooksvr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests the consistent hash ring: keys are spread evenly across the
+ *  members, and only the keys of a member that leaves move.
+ * @author jmedved
+ *
+ */
+public class ConsistentHashRingTest {
+    private static final int KEYS = 30000;
+
+    @Test
+    public void testEmptyRingHasNoOwner() {
+        Assert.assertNull(new ConsistentHashRing(Collections.<String>emptyList()).getOwner("room-1"));
+    }
+
+    @Test
+    public void testOwnerDoesNotDependOnMemberOrder() {
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        final ConsistentHashRing reordered = new ConsistentHashRing(
+                Arrays.asList("10.0.0.3", "10.0.0.1", "10.0.0.2"));
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertEquals(ring.getOwner(key(i)), reordered.getOwner(key(i)));
+        }
+    }
+
+    @Test
+    public void testKeysSpreadEvenly() {
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.getOwner(key(i)), 1, Integer::sum);
+        }
+        Assert.assertEquals(3, counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            Assert.assertTrue("member " + count.getKey() + " owns " + count.getValue() + " of " + KEYS + " keys",
+                    count.getValue() > KEYS / 3 * 0.75 && count.getValue() < KEYS / 3 * 1.25);
+        }
+    }
+
+    @Test
+    public void testRebalanceOnMemberLoss() {
+        final ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        final ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("10.0.0.1", "10.0.0.2"));
+        final Map<String, Integer> inherited = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            final String oldOwner = before.getOwner(key(i));
+            final String newOwner = after.getOwner(key(i));
+            if (oldOwner.equals("10.0.0.3")) {
+                Assert.assertNotEquals("10.0.0.3", newOwner);
+                inherited.merge(newOwner, 1, Integer::sum);
+                moved++;
+            } else {
+                Assert.assertEquals("only the lost member's keys move", oldOwner, newOwner);
+            }
+        }
+        // The lost member's keys are shared by the remaining members
+        Assert.assertEquals(2, inherited.size());
+        for (int count : inherited.values()) {
+            Assert.assertTrue("uneven rebalance: " + inherited, count > moved / 2 * 0.6);
+        }
+    }
+
+    @Test
+    public void testRebalanceOnMemberJoin() {
+        final ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("10.0.0.1", "10.0.0.2"));
+        final ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        for (int i = 0; i < KEYS; i++) {
+            final String newOwner = after.getOwner(key(i));
+            if (!newOwner.equals("10.0.0.3")) {
+                Assert.assertEquals("only keys taken by the new member move", before.getOwner(key(i)), newOwner);
+            }
+        }
+    }
+
+    private static String key(final int index) {
+        return "Y2lzY29zcGFyazovL3VzL1JPT00v" + index;
+    }
+}
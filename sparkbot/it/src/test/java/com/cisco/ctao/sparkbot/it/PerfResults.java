@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.it;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Records the measurements of the performance tests for trend comparison.
+ *  Every measurement is appended as a line to a CSV file in the results
+ *  directory; the file is kept across runs, so that each run adds its
+ *  measurements to those of the previous runs.
+ * @author jmedved
+ *
+ */
+final class PerfResults {
+    private static final Logger LOG = LoggerFactory.getLogger(PerfResults.class);
+    private static final String FILE_NAME = "sparkbot-perf.csv";
+    private static final String HEADER = "timestamp,scenario,metric,value,floor,passed\n";
+
+    private final File file;
+    private final String timestamp = Instant.now().toString();
+
+    PerfResults(final File directory) {
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /** Records a measurement that must be at least the floor.
+     * @param scenario the scenario, e.g. 'ingest'
+     * @param metric the metric, e.g. 'events-per-second'
+     * @param value the measured value
+     * @param floor the lowest acceptable value
+     * @return true if the value meets the floor
+     */
+    boolean recordMin(final String scenario, final String metric, final double value, final double floor) {
+        final boolean passed = value >= floor;
+        record(scenario, metric, value, floor, passed);
+        return passed;
+    }
+
+    /** Records a measurement that must be at most the ceiling.
+     * @param scenario the scenario, e.g. 'ingest'
+     * @param metric the metric, e.g. 'p99-ms'
+     * @param value the measured value
+     * @param ceiling the highest acceptable value
+     * @return true if the value meets the ceiling
+     */
+    boolean recordMax(final String scenario, final String metric, final double value, final double ceiling) {
+        final boolean passed = value <= ceiling;
+        record(scenario, metric, value, ceiling, passed);
+        return passed;
+    }
+
+    private synchronized void record(final String scenario, final String metric, final double value,
+            final double floor, final boolean passed) {
+        final String formatted = String.format(Locale.ROOT, "%.1f", value);
+        LOG.info("PerfResults: {} {} {} (floor {}){}", scenario, metric, formatted, floor, passed ? "" : " FAILED");
+        final boolean exists = file.exists();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (!exists) {
+                    writer.write(HEADER);
+                }
+                writer.write(timestamp + "," + scenario + "," + metric + "," + formatted + "," + floor + ","
+                        + passed + "\n");
+            }
+        } catch (IOException e) {
+            LOG.warn("PerfResults: failed to record {} {} in {}", scenario, metric, file, e);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright © 2016 Cisco Systems, Inc and others.  All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ */
+package com.cisco.ctao.sparkbot.it;
+
+import static org.ops4j.pax.exam.CoreOptions.composite;
+import static org.ops4j.pax.exam.CoreOptions.maven;
+import static org.ops4j.pax.exam.CoreOptions.systemProperty;
+import static org.ops4j.pax.exam.karaf.options.KarafDistributionOption.editConfigurationFilePut;
+
+import com.cisco.ctao.sparkbot.core.BroadcastReport;
+import com.cisco.ctao.sparkbot.core.BroadcastRequest;
+import com.cisco.ctao.sparkbot.core.Broadcasts;
+import com.cisco.ctao.sparkbot.core.RawEventHandler;
+import com.cisco.ctao.sparkbot.core.SparkClient;
+import com.cisco.ctao.sparkbot.core.TypedEventHandler;
+import com.cisco.ctao.sparkbot.core.bench.LocalSpark;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookFilter;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServer;
+import com.cisco.ctao.sparkbot.core.webhooksvr.WebhookServerStatus;
+import com.ciscospark.LatencyHistogram;
+import com.ciscospark.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import javax.inject.Inject;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.mdsal.it.base.AbstractMdsalTestBase;
+import org.opendaylight.controller.sal.binding.api.RpcProviderRegistry;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.commons.rev161110.ReturnCode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotLoggingParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotLoggingParmsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotMasterConfigParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotMasterConfigParmsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotWebhookParms;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.SparkbotWebhookParmsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rev150105.sparkbot.master.config.parms.SparkbotMasterSessionDescBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rooms.rev161110.ListRoomsInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rooms.rev161110.ListRoomsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sparkbot.rooms.rev161110.SparkbotRoomsService;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.karaf.options.LogLevelOption.LogLevel;
+import org.ops4j.pax.exam.options.MavenUrlReference;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Performance regression tests. The sparkbot feature is booted with an
+ *  identity that points at an in-process stand-in for the Spark API
+ *  (LocalSpark), webhook traffic is fired at the Webhook Server over HTTP,
+ *  and the throughput and latency of webhook ingest, event enrichment, the
+ *  list-rooms RPC and broadcasts are checked against floors.
+ *
+ *  <p>The floors are deliberately conservative, so that only a real
+ *  regression fails the build; each can be overridden with a system
+ *  property 'sparkbot.perf.&lt;scenario&gt;.&lt;metric&gt;', e.g.
+ *  -Dsparkbot.perf.ingest.min-throughput=2000. Every measurement is
+ *  appended to target/perf-results/sparkbot-perf.csv (or the directory in
+ *  -Dsparkbot.perf.results) for trend comparison.
+ * @author jmedved
+ *
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class SparkBotPerfIT extends AbstractMdsalTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(SparkBotPerfIT.class);
+    private static final String PROPERTY_PREFIX = "sparkbot.perf.";
+    private static final String RESULTS_PROPERTY = PROPERTY_PREFIX + "results";
+    private static final String IDENTITY = "perf-bot@localhost";
+    private static final long TIMEOUT_SECONDS = 120;
+    private static final long POLL_MILLIS = 100;
+    private static final int ROOMS = 64;
+
+    private static LocalSpark localSpark;
+    private static int webhookPort;
+    private static PerfResults results;
+
+    @Inject
+    @Filter(timeout = 120000)
+    private DataBroker dataBroker;
+
+    @Inject
+    @Filter(timeout = 120000)
+    private RpcProviderRegistry rpcRegistry;
+
+    @Override
+    public MavenUrlReference getFeatureRepo() {
+        return maven()
+                .groupId("com.cisco.ctao.sparkbot")
+                .artifactId("sparkbot-features")
+                .classifier("features")
+                .type("xml")
+                .versionAsInProject();
+    }
+
+    @Override
+    public String getFeatureName() {
+        return "odl-sparkbot-ui";
+    }
+
+    @Override
+    public Option getLoggingOption() {
+        Option option = editConfigurationFilePut(ORG_OPS4J_PAX_LOGGING_CFG,
+                logConfiguration(SparkBotPerfIT.class),
+                LogLevel.INFO.name());
+        option = composite(option, super.getLoggingOption());
+        return option;
+    }
+
+    /** Passes the floor overrides and the results directory to the
+     *  container; the measurements are made and recorded there.
+     */
+    @Override
+    @Configuration
+    public Option[] config() {
+        final List<Option> options = new ArrayList<>(Arrays.asList(super.config()));
+        if (System.getProperty(RESULTS_PROPERTY) == null) {
+            options.add(systemProperty(RESULTS_PROPERTY)
+                    .value(new File("target", "perf-results").getAbsolutePath()));
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROPERTY_PREFIX)) {
+                options.add(systemProperty(name).value(System.getProperty(name)));
+            }
+        }
+        return options.toArray(new Option[options.size()]);
+    }
+
+    /** Starts the Spark stand-in and configures the bot to use it, once per
+     *  container.
+     * @throws Exception if the bot could not be configured
+     */
+    @Before
+    public void setUp() throws Exception {
+        synchronized (SparkBotPerfIT.class) {
+            if (localSpark != null) {
+                return;
+            }
+            localSpark = LocalSpark.start(0);
+            webhookPort = freePort();
+            results = new PerfResults(new File(System.getProperty(RESULTS_PROPERTY, "perf-results")));
+
+            final WriteTransaction tx = dataBroker.newWriteOnlyTransaction();
+            tx.merge(LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(SparkbotMasterConfigParms.class),
+                    new SparkbotMasterConfigParmsBuilder()
+                        .setSparkbotMasterSessionDesc(Collections.singletonList(
+                                new SparkbotMasterSessionDescBuilder()
+                                    .setSparkEmailAddress(IDENTITY)
+                                    .setAccessToken("Bearer perf")
+                                    .setBaseUrl(localSpark.getBaseUrl().toString())
+                                    .build()))
+                        .build());
+            // Per-event logging at full rate would make the tests measure the log appender
+            tx.put(LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(SparkbotLoggingParms.class),
+                    new SparkbotLoggingParmsBuilder().setSampling(true).build());
+            tx.put(LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(SparkbotWebhookParms.class),
+                    new SparkbotWebhookParmsBuilder()
+                        .setWebhookHttpPort((long) webhookPort)
+                        .setWebhookUrlPrefix("http://127.0.0.1:" + webhookPort)
+                        .build());
+            tx.submit().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            await("Spark identity " + IDENTITY, () -> SparkClient.getIdentityNames().contains(IDENTITY));
+            await("webhook server on port " + webhookPort, () -> {
+                final WebhookServerStatus status = WebhookServer.getInstance().getStatus();
+                return status != null && status.getHttpPort() != null && status.getHttpPort() == webhookPort
+                        && (status.getState() == WebhookServerStatus.State.LISTENING
+                            || status.getState() == WebhookServerStatus.State.READY);
+            });
+            LOG.info("setUp: Spark stand-in at {}, webhook server on port {}", localSpark.getBaseUrl(),
+                    webhookPort);
+        }
+    }
+
+    /** Measures the rate at which the Webhook Server accepts callouts and
+     *  hands them to a 'raw' handler, and the latency of the callouts.
+     * @throws Exception if the traffic could not be generated
+     */
+    @Test
+    public void testWebhookIngest() throws Exception {
+        final int events = intProperty("ingest.events", 5000);
+        final AtomicInteger handled = new AtomicInteger();
+        final RawEventHandler handler = (msg, headerData) -> handled.incrementAndGet();
+        WebhookServer.registerRawEventHandler(handler, new WebhookFilter(WebhookFilter.Events.CREATED,
+                WebhookFilter.Resources.MESSAGES, null, null, "perf-ingest", IDENTITY));
+        try {
+            final long start = System.nanoTime();
+            final Load load = Load.run(events, intProperty("ingest.clients", 16),
+                index -> postEvent("perf-ingest", index));
+            await("ingested events", () -> handled.get() >= events);
+            final double throughput = perSecond(events, System.nanoTime() - start);
+
+            boolean passed = results.recordMax("ingest", "errors", load.errors.sum(), 0);
+            passed &= results.recordMin("ingest", "min-throughput", throughput,
+                    intProperty("ingest.min-throughput", 200));
+            passed &= results.recordMax("ingest", "max-p99-ms", millis(load.latency.getPercentileMicros(99)),
+                    intProperty("ingest.max-p99-ms", 250));
+            Assert.assertTrue("Webhook ingest below floor, see " + RESULTS_PROPERTY, passed);
+        } finally {
+            WebhookServer.unregisterRawEventHandler(handler);
+        }
+    }
+
+    /** Measures the rate at which message events are enriched with the
+     *  message from Spark and passed to a typed handler, and the latency
+     *  from sending a callout to the handler receiving the message.
+     * @throws Exception if the traffic could not be generated
+     */
+    @Test
+    public void testEventEnrichment() throws Exception {
+        final int events = intProperty("enrichment.events", 2000);
+        final CountingMessageHandler handler = new CountingMessageHandler();
+        WebhookServer.registerTypedEventHandler(handler, WebhookFilter.Events.CREATED, null, null,
+                "perf-enrichment", IDENTITY);
+        try {
+            final long start = System.nanoTime();
+            final Load load = Load.run(events, intProperty("enrichment.clients", 16), index -> {
+                handler.sentAt.put("perf-enrichment-" + index, System.nanoTime());
+                postEvent("perf-enrichment", index);
+            });
+            await("enriched events", () -> handler.received.sum() >= events);
+            final double throughput = perSecond(events, System.nanoTime() - start);
+
+            boolean passed = results.recordMax("enrichment", "errors",
+                    load.errors.sum() + handler.notEnriched.sum(), 0);
+            passed &= results.recordMin("enrichment", "min-throughput", throughput,
+                    intProperty("enrichment.min-throughput", 100));
+            passed &= results.recordMax("enrichment", "max-p99-ms",
+                    millis(handler.latency.getPercentileMicros(99)), intProperty("enrichment.max-p99-ms", 500));
+            Assert.assertTrue("Event enrichment below floor, see " + RESULTS_PROPERTY, passed);
+        } finally {
+            WebhookServer.unregisterSparkEventHandler(handler);
+        }
+    }
+
+    /** Measures the throughput and latency of the list-rooms RPC.
+     * @throws Exception if the RPCs could not be made
+     */
+    @Test
+    public void testListRoomsRpc() throws Exception {
+        final int calls = intProperty("list-rooms.calls", 2000);
+        final SparkbotRoomsService roomsService = rpcRegistry.getRpcService(SparkbotRoomsService.class);
+        final long start = System.nanoTime();
+        final Load load = Load.run(calls, intProperty("list-rooms.clients", 8), index -> {
+            final RpcResult<ListRoomsOutput> result = roomsService.listRooms(
+                    new ListRoomsInputBuilder().setSparkIdentity(IDENTITY).build())
+                    .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.isSuccessful() || result.getResult().getReturnStatus() != ReturnCode.OK) {
+                throw new IllegalStateException("list-rooms failed: " + result.getErrors());
+            }
+        });
+        final double throughput = perSecond(calls, System.nanoTime() - start);
+
+        boolean passed = results.recordMax("list-rooms", "errors", load.errors.sum(), 0);
+        passed &= results.recordMin("list-rooms", "min-throughput", throughput,
+                intProperty("list-rooms.min-throughput", 100));
+        passed &= results.recordMax("list-rooms", "max-p99-ms", millis(load.latency.getPercentileMicros(99)),
+                intProperty("list-rooms.max-p99-ms", 250));
+        Assert.assertTrue("List-rooms RPC below floor, see " + RESULTS_PROPERTY, passed);
+    }
+
+    /** Measures the send rate and the per-room latency of a broadcast.
+     * @throws Exception if the broadcast could not be made
+     */
+    @Test
+    public void testBroadcast() throws Exception {
+        final int rooms = intProperty("broadcast.rooms", 1000);
+        final List<String> roomIds = new ArrayList<>(rooms);
+        for (int i = 0; i < rooms; i++) {
+            roomIds.add("perf-room-" + i);
+        }
+        final BroadcastReport report = Broadcasts.broadcast(new BroadcastRequest.BroadcastRequestBuilder()
+                .setIdentity(IDENTITY)
+                .setText("Performance test broadcast")
+                .addRoomIds(roomIds)
+                .build()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        LOG.info("testBroadcast: {}", report);
+
+        boolean passed = results.recordMax("broadcast", "errors", rooms - report.getSent(), 0);
+        passed &= results.recordMin("broadcast", "min-throughput",
+                perSecond(report.getSent(), TimeUnit.MILLISECONDS.toNanos(Math.max(report.getElapsedMillis(), 1))),
+                intProperty("broadcast.min-throughput", 100));
+        passed &= results.recordMax("broadcast", "max-p99-ms", report.getLatencyPercentile(99),
+                intProperty("broadcast.max-p99-ms", 500));
+        Assert.assertTrue("Broadcast below floor, see " + RESULTS_PROPERTY, passed);
+    }
+
+    private static void postEvent(final String route, final int index) throws IOException {
+        final byte[] body = ("{\"id\":\"perf-webhook\",\"name\":\"" + route + "\",\"resource\":\"messages\","
+                + "\"event\":\"created\",\"data\":{\"id\":\"" + route + "-" + index + "\",\"roomId\":\"perf-room-"
+                + (index % ROOMS) + "\"}}").getBytes(StandardCharsets.UTF_8);
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + webhookPort + "/"
+                + route).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Webhook callout failed with status " + status);
+        }
+        // Drain the response so that the connection is kept alive
+        connection.getInputStream().close();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(final String what, final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                Assert.fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private static int intProperty(final String name, final int defaultValue) {
+        return Integer.getInteger(PROPERTY_PREFIX + name, defaultValue);
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    private static double millis(final long micros) {
+        return micros / 1000.0;
+    }
+
+    /** A request made by the load generator.
+     */
+    @FunctionalInterface
+    private interface Request {
+        void run(int index) throws Exception;
+    }
+
+    /** Makes a number of requests from a number of client threads, back to
+     *  back, and records their latencies.
+     */
+    private static final class Load {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        static Load run(final int requests, final int clients, final Request request) throws Exception {
+            final Load load = new Load();
+            final AtomicInteger next = new AtomicInteger();
+            final ExecutorService pool = Executors.newFixedThreadPool(clients);
+            try {
+                final List<Future<?>> workers = new ArrayList<>(clients);
+                for (int i = 0; i < clients; i++) {
+                    workers.add(pool.submit(() -> {
+                        int index;
+                        while ((index = next.getAndIncrement()) < requests) {
+                            final long begin = System.nanoTime();
+                            try {
+                                request.run(index);
+                            } catch (Exception e) {
+                                if (load.errors.sum() == 0) {
+                                    LOG.warn("Load: request {} failed", index, e);
+                                }
+                                load.errors.increment();
+                            }
+                            load.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+                        }
+                    }));
+                }
+                for (Future<?> worker : workers) {
+                    worker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            return load;
+        }
+    }
+
+    /** Counts the messages delivered to it and records the latency from
+     *  sending the callout to the delivery.
+     */
+    private static final class CountingMessageHandler implements TypedEventHandler<Message> {
+        private final Map<String, Long> sentAt = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder received = new LongAdder();
+        private final LongAdder notEnriched = new LongAdder();
+
+        @Override
+        public void handleSparkEvent(final String elementId, final Message element, final EventType eventType) {
+            final Long sent = sentAt.remove(elementId);
+            if (sent != null) {
+                latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+            }
+            if (element == null) {
+                notEnriched.increment();
+            }
+            received.increment();
+        }
+    }
+}
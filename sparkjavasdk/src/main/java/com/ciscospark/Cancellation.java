@@ -0,0 +1,111 @@
+package com.ciscospark;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A handle with which the requests made by a thread can be aborted from
+ * another thread. While a cancellation is attached to a thread, the thread's
+ * requests register their connections with it; cancelling disconnects them,
+ * like the deadline watchdog does, so that a request blocked reading from
+ * Spark fails right away with a SparkException. Requests started after the
+ * cancellation fail before they are sent.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class Cancellation {
+    private static final ThreadLocal<Cancellation> current = new ThreadLocal<Cancellation>();
+
+    private final Set<HttpURLConnection> connections = new HashSet<HttpURLConnection>();
+    private boolean cancelled;
+
+    private Cancellation() {
+    }
+
+    /**
+     * A cancellation attached to a thread; closing the scope restores the
+     * cancellation that was attached before.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Creates a cancellation. The cancellation is not attached to any thread.
+     */
+    public static Cancellation create() {
+        return new Cancellation();
+    }
+
+    static Cancellation current() {
+        return current.get();
+    }
+
+    /**
+     * Attaches the cancellation to the current thread.
+     */
+    public Scope attach() {
+        final Cancellation previous = current.get();
+        current.set(this);
+        return new Scope() {
+            @Override
+            public void close() {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Aborts the requests in progress and fails the requests made later.
+     */
+    public void cancel() {
+        List<HttpURLConnection> open;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            open = new ArrayList<HttpURLConnection>(connections);
+            connections.clear();
+        }
+        for (HttpURLConnection connection : open) {
+            connection.disconnect();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    void check() {
+        if (isCancelled()) {
+            throw new SparkException("request cancelled");
+        }
+    }
+
+    /**
+     * Disconnects a connection when the cancellation is cancelled, or right
+     * away if it already is.
+     */
+    void watch(HttpURLConnection connection) {
+        synchronized (this) {
+            if (!cancelled) {
+                connections.add(connection);
+                return;
+            }
+        }
+        connection.disconnect();
+    }
+
+    synchronized void unwatch(HttpURLConnection connection) {
+        connections.remove(connection);
+    }
+}
@@ -14,6 +14,7 @@ import java.net.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -35,8 +36,14 @@ class Client {
     final String clientId;
     final String clientSecret;
     final Logger logger;
-
-    Client(URI baseUri, String authCode, URI redirectUri, String accessToken, String refreshToken, String clientId, String clientSecret, Logger logger) {
+    final int connectTimeout;
+    final int readTimeout;
+    final String identity;
+    private String tokenIdentityToken;
+    private String tokenIdentity;
+
+    Client(URI baseUri, String authCode, URI redirectUri, String accessToken, String refreshToken, String clientId, String clientSecret, Logger logger,
+           int connectTimeout, int readTimeout, String identity) {
         this.authCode = authCode;
         this.redirectUri = redirectUri;
         this.baseUri = baseUri;
@@ -45,57 +52,114 @@ class Client {
         this.clientId = clientId;
         this.clientSecret = clientSecret;
         this.logger = logger;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.identity = identity;
+    }
+
+    /**
+     * Returns the identity under which the client's requests are limited: the
+     * identity name, or a fingerprint of the current access token.
+     */
+    private synchronized String getLimiterIdentity() {
+        if (identity != null) {
+            return identity;
+        }
+        if (tokenIdentity == null || tokenIdentityToken != accessToken) {
+            tokenIdentity = ConcurrencyLimiter.getTokenIdentity(accessToken);
+            tokenIdentityToken = accessToken;
+        }
+        return tokenIdentity;
     }
 
-    <T> T post(Class<T> clazz, String path, T body) {
-        return readJson(clazz, request("POST", path, null, body));
+    <T> T post(Class<T> clazz, String path, T body, Deadline deadline) {
+        return readJson(clazz, request("POST", path, null, body, deadline));
     }
 
-    <T> T post(Class<T> clazz, URL url, T body) {
-        return readJson(clazz, request(url, "POST", body).inputStream);
+    <T> T post(Class<T> clazz, URL url, T body, Deadline deadline) {
+        return readJson(clazz, request(url, "POST", body, deadline));
     }
 
-    <T> T put(Class<T> clazz, String path, T body) {
-        return readJson(clazz, request("PUT", path, null, body));
+    <T> T put(Class<T> clazz, String path, T body, Deadline deadline) {
+        return readJson(clazz, request("PUT", path, null, body, deadline));
     }
 
-    <T> T put(Class<T> clazz, URL url, T body) {
-        return readJson(clazz, request(url, "PUT", body).inputStream);
+    <T> T put(Class<T> clazz, URL url, T body, Deadline deadline) {
+        return readJson(clazz, request(url, "PUT", body, deadline));
     }
 
-    <T> T get(Class<T> clazz, String path, List<String[]> params) {
-        return readJson(clazz, request("GET", path, params, null));
+    <T> T get(Class<T> clazz, String path, List<String[]> params, Deadline deadline) {
+        return readJson(clazz, request("GET", path, params, null, deadline));
     }
 
-    <T> T get(Class<T> clazz, URL url) {
-        return readJson(clazz, request(url, "GET", null).inputStream);
+    <T> T get(Class<T> clazz, URL url, Deadline deadline) {
+        return readJson(clazz, request(url, "GET", null, deadline));
     }
 
-    <T> Iterator<T> list(Class<T> clazz, String path, List<String[]> params) {
-        return new PagingIterator<T>(clazz, getUrl(path, params));
+    <T> Iterator<T> list(Class<T> clazz, String path, List<String[]> params, Deadline deadline) {
+        return new PagingIterator<T>(clazz, getUrl(path, params), deadline);
     }
 
-    <T> Iterator<T> list(Class<T> clazz, URL url) {
-        return new PagingIterator<T>(clazz, url);
+    <T> Iterator<T> list(Class<T> clazz, URL url, Deadline deadline) {
+        return new PagingIterator<T>(clazz, url, deadline);
     }
 
-    void delete(String path) {
-        delete(getUrl(path, null));
+    void delete(String path, Deadline deadline) {
+        delete(getUrl(path, null), deadline);
     }
 
-    void delete(URL url) {
+    void delete(URL url, Deadline deadline) {
+        if (deadline != null) {
+            deadline.check();
+        }
+        Cancellation cancellation = Cancellation.current();
+        if (cancellation != null) {
+            cancellation.check();
+        }
+        ConcurrencyLimiter.Permit permit = ConcurrencyLimiter.acquire(getLimiterIdentity(), baseUri, url, deadline);
+        Measurement measurement = new Measurement(ConcurrencyLimiter.getFamily(baseUri, url), "DELETE", url, false);
+        int responseCode = 0;
+        ScheduledFuture<?> watchdog = null;
+        HttpURLConnection connection = null;
         try {
-            HttpURLConnection connection = getConnection(url);
+            connection = getConnection(url, deadline);
+            if (cancellation != null) {
+                cancellation.watch(connection);
+            }
+            measurement.trackingId = connection.getRequestProperty(TRACKING_ID);
             connection.setRequestMethod("DELETE");
-            int responseCode = connection.getResponseCode();
+            if (deadline != null) {
+                watchdog = deadline.watch(connection);
+            }
+            responseCode = connection.getResponseCode();
             checkForErrorResponse(connection, responseCode);
         } catch (IOException ex) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                // Aborted, not a failure of the endpoint
+                responseCode = 0;
+                throw new SparkException("request cancelled", ex);
+            }
+            if (responseCode == 0) {
+                responseCode = ConcurrencyLimiter.IO_ERROR;
+            }
+            if (deadline != null && deadline.isExpired()) {
+                throw new SparkException("deadline exceeded", ex);
+            }
             throw new SparkException(ex);
+        } finally {
+            permit.release(responseCode);
+            measurement.record(responseCode);
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (cancellation != null && connection != null) {
+                cancellation.unwatch(connection);
+            }
         }
     }
 
 
-    public <T> LinkedResponse<List<T>> paginate(final Class<T> clazz, URL url) {
+    public <T> LinkedResponse<List<T>> paginate(final Class<T> clazz, URL url, Deadline deadline) {
         LinkedResponse.BodyCreator<List<T>> function = new LinkedResponse.BodyCreator<List<T>>() {
             @Override
             public List<T> create(InputStream istream) {
@@ -113,51 +177,161 @@ class Client {
         };
 
         try {
-            return new LinkedResponse<List<T>>(this, url, function);
+            return new LinkedResponse<List<T>>(this, url, function, deadline);
         } catch (IOException e) {
             throw new SparkException("io error", e);
         }
     }
 
-    public <T> LinkedResponse<List<T>> paginate(Class<T> clazz, String paths, List<String[]> params) {
+    public <T> LinkedResponse<List<T>> paginate(Class<T> clazz, String paths, List<String[]> params, Deadline deadline) {
         URL url = getUrl(paths, params);
-        return paginate(clazz, url);
+        return paginate(clazz, url, deadline);
     }
 
 
-    <T> InputStream request(String method, String path, List<String[]> params, T body) {
+    <T> Response request(String method, String path, List<String[]> params, T body, Deadline deadline) {
         URL url = getUrl(path, params);
-        return request(url, method, body).inputStream;
+        return request(url, method, body, deadline);
     }
     static class Response {
         HttpURLConnection connection;
         InputStream inputStream;
+        ScheduledFuture<?> watchdog;
+        Cancellation cancellation;
+        Measurement measurement;
+        int responseCode;
 
-        public Response(HttpURLConnection connection, InputStream inputStream) {
+        public Response(HttpURLConnection connection, InputStream inputStream, ScheduledFuture<?> watchdog,
+                        Cancellation cancellation, Measurement measurement, int responseCode) {
             this.connection = connection;
             this.inputStream = inputStream;
+            this.watchdog = watchdog;
+            this.cancellation = cancellation;
+            this.measurement = measurement;
+            this.responseCode = responseCode;
+        }
+
+        /**
+         * Called when the response body has been read; stops the deadline
+         * watchdog and the cancellation, and records the request's metrics.
+         */
+        void complete() {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (cancellation != null) {
+                cancellation.unwatch(connection);
+            }
+            measurement.record(responseCode);
+        }
+    }
+
+    /**
+     * Measures a request for SparkMetrics, the flight recorder and the tracking
+     * context: counts the bytes written and read, and records the request once.
+     */
+    static class Measurement {
+        final String family;
+        final String method;
+        final URL url;
+        final boolean retry;
+        final long start = System.nanoTime();
+        final SparkRequestEvent event = FlightEvents.beginRequest();
+        final TrackingContext context = TrackingContext.current();
+        String trackingId;
+        long bytesOut;
+        long bytesIn;
+        boolean recorded;
+
+        Measurement(String family, String method, URL url, boolean retry) {
+            this.family = family;
+            this.method = method;
+            this.url = url;
+            this.retry = retry;
+        }
+
+        OutputStream count(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytesOut++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    bytesOut += len;
+                }
+            };
+        }
+
+        InputStream count(InputStream in) {
+            if (in == null) {
+                return null;
+            }
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b >= 0) {
+                        bytesIn++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = in.read(b, off, len);
+                    if (count > 0) {
+                        bytesIn += count;
+                    }
+                    return count;
+                }
+            };
+        }
+
+        /**
+         * Records the request, unless it was aborted before it was sent.
+         *
+         * @param responseCode the response code, ConcurrencyLimiter.IO_ERROR
+         *                     on I/O error, 0 if aborted
+         */
+        synchronized void record(int responseCode) {
+            if (recorded || responseCode == 0) {
+                return;
+            }
+            recorded = true;
+            int statusCode = responseCode == ConcurrencyLimiter.IO_ERROR ? RequestMetrics.IO_ERROR : responseCode;
+            long end = System.nanoTime();
+            SparkMetrics.record(new RequestMetrics(family, method, trackingId, statusCode, retry, bytesOut,
+                    bytesIn, end - start));
+            FlightEvents.endRequest(event, this, statusCode);
+            if (context != null) {
+                context.recordSpan("spark " + method + " " + family, trackingId + " " + statusCode, start, end);
+            }
         }
     }
 
-    <T> Response request(URL url, String method, T body) {
+    <T> Response request(URL url, String method, T body, Deadline deadline) {
         if (accessToken == null) {
-            if (!authenticate()) {
+            if (!authenticate(deadline)) {
                 throw new NotAuthenticatedException();
             }
         }
 
         try {
-            return doRequest(url, method, body);
+            return doRequest(url, method, body, deadline, false);
         } catch (NotAuthenticatedException ex) {
-            if (authenticate()) {
-                return doRequest(url, method, body);
+            if (authenticate(deadline)) {
+                return doRequest(url, method, body, deadline, true);
             } else {
                 throw ex;
             }
         }
     }
 
-    private boolean authenticate() {
+    private boolean authenticate(Deadline deadline) {
         if (clientId != null && clientSecret != null) {
             if (authCode != null && redirectUri != null) {
                 log(Level.FINE, "Requesting access token");
@@ -168,8 +342,8 @@ class Client {
                 body.setClient_secret(clientSecret);
                 body.setCode(authCode);
                 body.setRedirect_uri(redirectUri);
-                Response response = doRequest(url, "POST", body);
-                AccessTokenResponse responseBody = readJson(AccessTokenResponse.class, response.inputStream);
+                Response response = doRequest(url, "POST", body, deadline, false);
+                AccessTokenResponse responseBody = readJson(AccessTokenResponse.class, response);
                 accessToken = responseBody.getAccess_token();
                 refreshToken = responseBody.getRefresh_token();
                 authCode = null;
@@ -182,8 +356,8 @@ class Client {
                 body.setClient_secret(clientSecret);
                 body.setRefresh_token(refreshToken);
                 body.setGrant_type("refresh_token");
-                Response response = doRequest(url, "POST", body);
-                AccessTokenResponse responseBody = readJson(AccessTokenResponse.class, response.inputStream);
+                Response response = doRequest(url, "POST", body, deadline, false);
+                AccessTokenResponse responseBody = readJson(AccessTokenResponse.class, response);
                 accessToken = responseBody.getAccess_token();
                 return true;
             }
@@ -197,11 +371,31 @@ class Client {
         }
     }
 
-    private <T> Response doRequest(URL url, String method, T body) {
+    private <T> Response doRequest(URL url, String method, T body, Deadline deadline, boolean retry) {
+        if (deadline != null) {
+            deadline.check();
+        }
+        Cancellation cancellation = Cancellation.current();
+        if (cancellation != null) {
+            cancellation.check();
+        }
+        ConcurrencyLimiter.Permit permit = ConcurrencyLimiter.acquire(getLimiterIdentity(), baseUri, url, deadline);
+        Measurement measurement = new Measurement(ConcurrencyLimiter.getFamily(baseUri, url), method, url, retry);
+        int responseCode = 0;
+        ScheduledFuture<?> watchdog = null;
+        HttpURLConnection connection = null;
+        Response response = null;
         try {
-            HttpURLConnection connection = getConnection(url);
+            connection = getConnection(url, deadline);
+            if (cancellation != null) {
+                cancellation.watch(connection);
+            }
             String trackingId = connection.getRequestProperty(TRACKING_ID);
+            measurement.trackingId = trackingId;
             connection.setRequestMethod(method);
+            if (deadline != null) {
+                watchdog = deadline.watch(connection);
+            }
             if (logger != null && logger.isLoggable(Level.FINE)) {
                 logger.log(Level.FINE, "Request {0}: {1} {2}",
                         new Object[] { trackingId, method, connection.getURL().toString() });
@@ -213,13 +407,13 @@ class Client {
                     writeJson(body, byteArrayOutputStream);
                     logger.log(Level.FINEST, "Request Body {0}: {1}",
                             new Object[] { trackingId, byteArrayOutputStream.toString() });
-                    byteArrayOutputStream.writeTo(connection.getOutputStream());
+                    byteArrayOutputStream.writeTo(measurement.count(connection.getOutputStream()));
                 } else {
-                    writeJson(body, connection.getOutputStream());
+                    writeJson(body, measurement.count(connection.getOutputStream()));
                 }
             }
 
-            int responseCode = connection.getResponseCode();
+            responseCode = connection.getResponseCode();
             if (logger != null && logger.isLoggable(Level.FINE)) {
                 logger.log(Level.FINE, "Response {0}: {1} {2}",
                         new Object[] { trackingId, responseCode, connection.getResponseMessage() });
@@ -227,15 +421,40 @@ class Client {
             checkForErrorResponse(connection, responseCode);
 
             if (logger != null && logger.isLoggable(Level.FINEST)) {
-                InputStream inputStream = logResponse(trackingId, connection.getInputStream());
-                return new Response(connection, inputStream);
+                InputStream inputStream = logResponse(trackingId, measurement.count(connection.getInputStream()));
+                response = new Response(connection, inputStream, watchdog, cancellation, measurement,
+                        responseCode);
             } else {
-                InputStream inputStream = connection.getInputStream();
-                return new Response(connection, inputStream);
+                InputStream inputStream = measurement.count(connection.getInputStream());
+                response = new Response(connection, inputStream, watchdog, cancellation, measurement,
+                        responseCode);
 
             }
+            return response;
         } catch (IOException ex) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                // Aborted, not a failure of the endpoint
+                responseCode = 0;
+                throw new SparkException("request cancelled", ex);
+            }
+            if (responseCode == 0) {
+                responseCode = ConcurrencyLimiter.IO_ERROR;
+            }
+            if (deadline != null && deadline.isExpired()) {
+                throw new SparkException("deadline exceeded", ex);
+            }
             throw new SparkException("io error", ex);
+        } finally {
+            permit.release(responseCode);
+            if (response == null) {
+                measurement.record(responseCode);
+                if (watchdog != null) {
+                    watchdog.cancel(false);
+                }
+                if (cancellation != null && connection != null) {
+                    cancellation.unwatch(connection);
+                }
+            }
         }
     }
 
@@ -284,7 +503,7 @@ class Client {
                 errorMessageBuilder.append(errorMessage.message);
             }
 
-            throw new SparkException(errorMessageBuilder.toString());
+            throw new SparkException(errorMessageBuilder.toString(), responseCode);
         }
     }
 
@@ -309,8 +528,10 @@ class Client {
         }
     }
 
-    private HttpURLConnection getConnection(URL url) throws IOException {
+    private HttpURLConnection getConnection(URL url, Deadline deadline) throws IOException {
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(deadline != null ? deadline.cap(connectTimeout) : connectTimeout);
+        connection.setReadTimeout(deadline != null ? deadline.cap(readTimeout) : readTimeout);
         connection.setRequestProperty("Content-type", "application/json");
         if (accessToken != null) {
             String authorization = accessToken;
@@ -319,12 +540,15 @@ class Client {
             }
             connection.setRequestProperty("Authorization", authorization);
         }
-        connection.setRequestProperty(TRACKING_ID, UUID.randomUUID().toString());
+        TrackingContext context = TrackingContext.current();
+        connection.setRequestProperty(TRACKING_ID,
+                context != null ? context.nextRequestTrackingId() : UUID.randomUUID().toString());
         return connection;
     }
 
 
-    private static <T> T readJson(Class<T> clazz, InputStream inputStream) {
+    private static <T> T readJson(Class<T> clazz, Response response) {
+        InputStream inputStream = response.inputStream;
         try {
             int available;
             available = inputStream.available();
@@ -338,6 +562,8 @@ class Client {
         } catch (IOException e) {
             e.printStackTrace();
             return null;
+        } finally {
+            response.complete();
         }
         /*
         JsonParser parser = Json.createParser(inputStream);
@@ -347,6 +573,15 @@ class Client {
     }
 
     private static <T> T readObject(Class<T> clazz, JsonParser parser) {
+        JsonDecodeEvent event = FlightEvents.beginDecode();
+        try {
+            return decodeObject(clazz, parser);
+        } finally {
+            FlightEvents.endDecode(event, clazz);
+        }
+    }
+
+    private static <T> T decodeObject(Class<T> clazz, JsonParser parser) {
         try {
             T result = clazz.newInstance();
             List<Object> list = null;
@@ -518,13 +753,18 @@ class Client {
     private class PagingIterator<T> implements Iterator<T> {
         private final Class<T> clazz;
         private URL url;
+        private final Deadline deadline;
+        private Response response;
         private HttpURLConnection connection;
         private JsonParser parser;
+        private SparkPageEvent pageEvent;
+        private int pageItems;
         T current;
 
-        public PagingIterator(Class<T> clazz, URL url) {
+        public PagingIterator(Class<T> clazz, URL url, Deadline deadline) {
             this.clazz = clazz;
             this.url = url;
+            this.deadline = deadline;
         }
 
         @Override
@@ -532,7 +772,9 @@ class Client {
             try {
                 if (current == null) {
                     if (parser == null) {
-                        Response response = request(url, "GET", null);
+                        pageEvent = FlightEvents.beginPage();
+                        pageItems = 0;
+                        response = request(url, "GET", null, deadline);
                         InputStream inputStream = response.inputStream;
                         connection = response.connection;
                         parser = Json.createParser(inputStream);
@@ -542,6 +784,9 @@ class Client {
 
                     JsonParser.Event event = parser.next();
                     if (event != JsonParser.Event.START_OBJECT) {
+                        response.complete();
+                        FlightEvents.endPage(pageEvent, url, response, pageItems);
+                        pageEvent = null;
                         HttpURLConnection next = getLink(connection, "next");
                         if (next == null || (next.getURL().equals(url))) {
                             return false;
@@ -553,6 +798,7 @@ class Client {
                         }
                     }
                     current = readObject(clazz, parser);
+                    pageItems++;
                 }
                 return current != null;
             } catch (IOException ex) {
@@ -613,7 +859,7 @@ class Client {
                 String url = matcher.group(1);
                 String foundRel = matcher.group(2);
                 if (desiredRel.equals(foundRel)) {
-                    result = getConnection(new URL(url));
+                    result = getConnection(new URL(url), null);
                     break;
                 }
             }
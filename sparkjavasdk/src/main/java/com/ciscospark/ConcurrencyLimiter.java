@@ -0,0 +1,457 @@
+package com.ciscospark;
+
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive concurrency limits for the requests made by the client. Requests
+ * are grouped into endpoint families by the first path segment after the base
+ * URL (rooms, messages, people, ...). Each identity, i.e. each access token,
+ * has its own limit per family, since Spark throttles each token separately;
+ * clients built with the same identity name share their limits. Requests over
+ * the limit wait until a request of the same identity and family completes.
+ * The families of a client whose base URL is not the Spark service, e.g. a
+ * local stand-in, are qualified with its host and port, so that they neither
+ * share limits nor metrics with the service.
+ * <p>
+ * The limit follows the latency gradient: it grows while response times stay
+ * close to the minimum seen recently and shrinks when they rise above it, so the
+ * requests in flight track the capacity that Spark actually has. Throttled
+ * requests (429), server errors (5xx) and I/O errors cut the limit
+ * multiplicatively, at most once per round trip.
+ * <p>
+ * Requests waiting for the limit are admitted in priority order, highest
+ * first, and in arrival order within a priority; the priority of the requests
+ * made by a thread is set with {@link #prioritize(int)}. Requests wait on a
+ * lock condition rather than a monitor, so that virtual threads waiting for
+ * the limit do not pin their carrier threads.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class ConcurrencyLimiter {
+    private static final int INITIAL_LIMIT = 10;
+    private static final int MIN_LIMIT = 1;
+    private static final int MAX_LIMIT = 200;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_WEIGHT = 0.05;
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final long MIN_RTT_WINDOW = TimeUnit.SECONDS.toNanos(30);
+    static final int IO_ERROR = -1;
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, Family>> identities =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Family>>();
+    private static final ThreadLocal<Integer> priority = new ThreadLocal<Integer>();
+    private static volatile boolean enabled = !"false".equals(System.getProperty("ciscospark.adaptiveConcurrency"));
+
+    private ConcurrencyLimiter() {
+    }
+
+    /**
+     * Turns adaptive limiting on or off. When off, requests are not limited,
+     * but the limits and statistics are still maintained.
+     */
+    public static void setEnabled(boolean enabled) {
+        ConcurrencyLimiter.enabled = enabled;
+        if (!enabled) {
+            for (ConcurrentMap<String, Family> families : identities.values()) {
+                for (Family family : families.values()) {
+                    family.admitAll();
+                }
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * A priority set for the current thread; closing the scope restores the
+     * priority that was set before.
+     */
+    public interface PriorityScope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Sets the priority of the requests made by the current thread until the
+     * returned scope is closed. Requests without a priority have priority 0.
+     *
+     * @param newPriority the priority; higher priorities are admitted first
+     */
+    public static PriorityScope prioritize(int newPriority) {
+        final Integer previous = priority.get();
+        priority.set(newPriority);
+        return new PriorityScope() {
+            @Override
+            public void close() {
+                if (previous == null) {
+                    priority.remove();
+                } else {
+                    priority.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the identities that have made requests.
+     */
+    public static Set<String> getIdentities() {
+        return new TreeSet<String>(identities.keySet());
+    }
+
+    /**
+     * Returns the endpoint families that have seen requests of an identity.
+     */
+    public static Set<String> getFamilies(String identity) {
+        ConcurrentMap<String, Family> families = identities.get(identity);
+        return families == null ? Collections.<String>emptySet() : new TreeSet<String>(families.keySet());
+    }
+
+    /**
+     * Returns the current concurrency limit of an identity's endpoint family.
+     */
+    public static int getLimit(String identity, String family) {
+        Family state = getState(identity, family);
+        if (state == null) {
+            return INITIAL_LIMIT;
+        }
+        state.lock.lock();
+        try {
+            return (int) state.limit;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests of an identity's endpoint family in flight.
+     */
+    public static int getInFlight(String identity, String family) {
+        Family state = getState(identity, family);
+        if (state == null) {
+            return 0;
+        }
+        state.lock.lock();
+        try {
+            return state.inFlight;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests of an identity's endpoint family waiting for the limit.
+     */
+    public static int getQueued(String identity, String family) {
+        Family state = getState(identity, family);
+        if (state == null) {
+            return 0;
+        }
+        state.lock.lock();
+        try {
+            return state.waiters.size();
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the long-term average response time of an identity's endpoint family, in
+     * milliseconds.
+     */
+    public static double getAverageRttMillis(String identity, String family) {
+        Family state = getState(identity, family);
+        if (state == null) {
+            return 0;
+        }
+        state.lock.lock();
+        try {
+            return state.longRtt / 1e6;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests of an identity's endpoint family that cut the limit
+     * (throttled, failed with a server error or an I/O error).
+     */
+    public static long getDropCount(String identity, String family) {
+        Family state = getState(identity, family);
+        if (state == null) {
+            return 0;
+        }
+        state.lock.lock();
+        try {
+            return state.drops;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    private static Family getState(String identity, String family) {
+        ConcurrentMap<String, Family> families = identities.get(identity);
+        return families == null ? null : families.get(family);
+    }
+
+    /**
+     * Returns the identity under which the requests made with an access token
+     * are limited when the client has no identity name: a fingerprint of the
+     * token, so that the token itself does not show in the metrics.
+     */
+    static String getTokenIdentity(String accessToken) {
+        if (accessToken == null) {
+            return "anonymous";
+        }
+        String token = accessToken.startsWith("Bearer ") ? accessToken.substring("Bearer ".length()) : accessToken;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder identity = new StringBuilder("token-");
+            for (int i = 0; i < 4; i++) {
+                identity.append(String.format("%02x", digest[i] & 0xff));
+            }
+            return identity.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String getFamily(URI baseUri, URL url) {
+        String path = url.getPath();
+        String basePath = baseUri.getPath();
+        if (basePath != null && path.startsWith(basePath)) {
+            path = path.substring(basePath.length());
+        }
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        int end = path.indexOf('/', start);
+        String family = path.substring(start, end < 0 ? path.length() : end);
+        if (family.isEmpty()) {
+            family = "/";
+        }
+        if (baseUri.getHost() != null && !baseUri.getHost().equals(Spark.DEFAULT_BASE_URL.getHost())) {
+            family = baseUri.getAuthority() + "/" + family;
+        }
+        return family;
+    }
+
+    static Permit acquire(String identity, URI baseUri, URL url, Deadline deadline) {
+        ConcurrentMap<String, Family> families = identities.get(identity);
+        if (families == null) {
+            ConcurrentMap<String, Family> newFamilies = new ConcurrentHashMap<String, Family>();
+            families = identities.putIfAbsent(identity, newFamilies);
+            if (families == null) {
+                families = newFamilies;
+            }
+        }
+        String name = getFamily(baseUri, url);
+        Family family = families.get(name);
+        if (family == null) {
+            Family newFamily = new Family();
+            family = families.putIfAbsent(name, newFamily);
+            if (family == null) {
+                family = newFamily;
+            }
+        }
+        Integer current = priority.get();
+        family.acquire(name, current != null ? current : 0, deadline);
+        return new Permit(family);
+    }
+
+    /**
+     * A request admitted by the limiter, released when the response arrives.
+     */
+    static final class Permit {
+        private final Family family;
+        private final long start = System.nanoTime();
+        private boolean released;
+
+        private Permit(Family family) {
+            this.family = family;
+        }
+
+        /**
+         * Releases the permit.
+         *
+         * @param responseCode the response code; 0 if the request was aborted
+         *                     before it was sent, -1 on I/O error
+         */
+        void release(int responseCode) {
+            if (released) {
+                return;
+            }
+            released = true;
+            boolean dropped = responseCode == IO_ERROR || responseCode == 429 || responseCode >= 500;
+            family.release(responseCode == 0 ? -1 : System.nanoTime() - start, dropped);
+        }
+    }
+
+    private static final class Family {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<Waiter>();
+        private double limit = INITIAL_LIMIT;
+        private double longRtt;
+        private long minRtt;
+        private long minRttTime;
+        private long windowStart;
+        private long windowRttSum;
+        private int windowSamples;
+        private int windowMaxInFlight;
+        private long lastDrop = System.nanoTime() - Long.MAX_VALUE / 4;
+        private int inFlight;
+        private long drops;
+        private long arrivals;
+
+        private void acquire(String name, int priority, Deadline deadline) {
+            lock.lock();
+            try {
+                if (!enabled || inFlight < (int) limit && waiters.isEmpty()) {
+                    inFlight++;
+                    return;
+                }
+                Waiter waiter = new Waiter(priority, arrivals++, lock.newCondition());
+                waiters.add(waiter);
+                try {
+                    while (!waiter.admitted) {
+                        if (deadline == null) {
+                            waiter.condition.await();
+                        } else if (deadline.isExpired()) {
+                            waiters.remove(waiter);
+                            throw new SparkException("deadline exceeded waiting for " + name + " concurrency limit");
+                        } else {
+                            waiter.condition.awaitNanos(deadline.remainingNanos());
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    if (waiter.admitted) {
+                        inFlight--;
+                        admit();
+                    } else {
+                        waiters.remove(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new SparkException("interrupted waiting for " + name + " concurrency limit", ex);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(long rtt, boolean dropped) {
+            lock.lock();
+            try {
+                int sampleInFlight = inFlight;
+                inFlight--;
+                if (rtt >= 0) {
+                    if (dropped) {
+                        drops++;
+                        long now = System.nanoTime();
+                        if (now - lastDrop > longRtt) {
+                            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                            lastDrop = now;
+                        }
+                    } else {
+                        update(rtt, sampleInFlight);
+                    }
+                }
+                admit();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Hands the free permits to the waiting requests, in priority order.
+         * Must be called with the lock held.
+         */
+        private void admit() {
+            while (!waiters.isEmpty() && (!enabled || inFlight < (int) limit)) {
+                Waiter waiter = waiters.poll();
+                waiter.admitted = true;
+                inFlight++;
+                waiter.condition.signal();
+            }
+        }
+
+        private void admitAll() {
+            lock.lock();
+            try {
+                admit();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void update(long rtt, int sampleInFlight) {
+            longRtt = longRtt == 0 ? rtt : longRtt * (1 - LONG_RTT_WEIGHT) + rtt * LONG_RTT_WEIGHT;
+            long now = System.nanoTime();
+            if (minRtt == 0 || rtt <= minRtt || now - minRttTime > MIN_RTT_WINDOW) {
+                // The min is re-learned periodically, in case the base latency has grown
+                minRtt = Math.max(1, rtt);
+                minRttTime = now;
+            }
+            windowRttSum += rtt;
+            windowSamples++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, sampleInFlight);
+            // The limit is adjusted once per round trip, from the average response time in the round
+            if (windowSamples < MIN_WINDOW_SAMPLES || now - windowStart < longRtt) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt * windowSamples / windowRttSum));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            if (windowMaxInFlight * 2 < limit) {
+                // Not enough requests in flight to tell whether a higher limit would work
+                newLimit = Math.min(newLimit, limit);
+            }
+            newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            limit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, newLimit));
+            windowStart = now;
+            windowRttSum = 0;
+            windowSamples = 0;
+            windowMaxInFlight = 0;
+        }
+    }
+
+    /**
+     * A request waiting for a family's limit.
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        private final int priority;
+        private final long arrival;
+        private final Condition condition;
+        private boolean admitted;
+
+        private Waiter(int priority, long arrival, Condition condition) {
+            this.priority = priority;
+            this.arrival = arrival;
+            this.condition = condition;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return arrival < other.arrival ? -1 : arrival == other.arrival ? 0 : 1;
+        }
+    }
+}
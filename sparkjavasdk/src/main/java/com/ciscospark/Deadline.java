@@ -0,0 +1,79 @@
+package com.ciscospark;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which a request, including its retries, its pages and
+ * the reading of its response bodies, must complete. Connect and read timeouts
+ * are capped by the remaining time, and a watchdog disconnects a connection
+ * whose body is still being read when the deadline passes.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+final class Deadline {
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "spark-deadline-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    long remainingNanos() {
+        return expiresAt - System.nanoTime();
+    }
+
+    boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    void check() {
+        if (isExpired()) {
+            throw new SparkException("deadline exceeded");
+        }
+    }
+
+    /**
+     * Caps a timeout by the remaining time.
+     *
+     * @param timeoutMillis the timeout in milliseconds, 0 for none
+     * @return the capped timeout in milliseconds, at least 1 (0 is no timeout
+     * for HttpURLConnection)
+     */
+    int cap(int timeoutMillis) {
+        long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos()));
+        return (int) (timeoutMillis > 0 ? Math.min(timeoutMillis, remaining) : Math.min(Integer.MAX_VALUE, remaining));
+    }
+
+    /**
+     * Disconnects a connection when the deadline passes.
+     *
+     * @return the watchdog timer, to be cancelled when the response has been read
+     */
+    ScheduledFuture<?> watch(final HttpURLConnection connection) {
+        return watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        }, Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+}
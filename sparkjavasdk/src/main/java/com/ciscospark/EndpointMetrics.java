@@ -0,0 +1,139 @@
+package com.ciscospark;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The aggregated metrics of the requests to an endpoint family with one
+ * method, kept in lock-free counters.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class EndpointMetrics implements EndpointMetricsMXBean {
+    private final String family;
+    private final String method;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder[] statusClasses = new LongAdder[6];
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    EndpointMetrics(String family, String method) {
+        this.family = family;
+        this.method = method;
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new LongAdder();
+        }
+    }
+
+    void record(RequestMetrics request) {
+        requests.increment();
+        int code = request.getStatusCode();
+        statusClasses[code == RequestMetrics.IO_ERROR ? 0 : Math.max(1, Math.min(5, code / 100))].increment();
+        if (request.isRetry()) {
+            retries.increment();
+        }
+        bytesOut.add(request.getBytesOut());
+        bytesIn.add(request.getBytesIn());
+        latency.record(request.getLatencyNanos() / 1000);
+    }
+
+    /**
+     * Returns the latency histogram, for percentiles other than the JMX ones.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getFamily() {
+        return family;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return statusClasses[2].sum();
+    }
+
+    @Override
+    public long getRedirectCount() {
+        return statusClasses[3].sum();
+    }
+
+    @Override
+    public long getClientErrorCount() {
+        return statusClasses[4].sum();
+    }
+
+    @Override
+    public long getServerErrorCount() {
+        return statusClasses[5].sum();
+    }
+
+    @Override
+    public long getIoErrorCount() {
+        return statusClasses[0].sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return latency.getMeanMicros() / 1000;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.getPercentileMicros(50) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.getPercentileMicros(99) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.getPercentileMicros(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.getMaxMicros() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        requests.reset();
+        for (LongAdder statusClass : statusClasses) {
+            statusClass.reset();
+        }
+        retries.reset();
+        bytesOut.reset();
+        bytesIn.reset();
+        latency.reset();
+    }
+}
@@ -0,0 +1,43 @@
+package com.ciscospark;
+
+/**
+ * The JMX view of the metrics of an endpoint family and method, registered as
+ * com.ciscospark:type=Endpoint,family=...,method=...
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public interface EndpointMetricsMXBean {
+    String getFamily();
+
+    String getMethod();
+
+    long getRequestCount();
+
+    long getSuccessCount();
+
+    long getRedirectCount();
+
+    long getClientErrorCount();
+
+    long getServerErrorCount();
+
+    long getIoErrorCount();
+
+    long getRetryCount();
+
+    long getBytesOut();
+
+    long getBytesIn();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+
+    void reset();
+}
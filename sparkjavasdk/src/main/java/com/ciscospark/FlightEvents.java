@@ -0,0 +1,109 @@
+package com.ciscospark;
+
+import java.net.URL;
+
+/**
+ * Creates and commits the client's JDK Flight Recorder events. An event
+ * that is not enabled in a running recording costs a timestamp and is never
+ * committed, so the events can stay in place in production.
+ * <p>
+ * The event classes are only loaded when the jdk.jfr package is visible to
+ * the client (a Java 8u262 or later runtime; in OSGi, jdk.jfr must be
+ * exported by the system bundle); otherwise no events are created.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+final class FlightEvents {
+    private static final boolean available = isAvailable();
+
+    private FlightEvents() {
+    }
+
+    static SparkRequestEvent beginRequest() {
+        if (!available) {
+            return null;
+        }
+        SparkRequestEvent event = new SparkRequestEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endRequest(SparkRequestEvent event, Client.Measurement measurement, int statusCode) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = measurement.method;
+            event.family = measurement.family;
+            event.path = path(measurement.url);
+            event.trackingId = measurement.trackingId;
+            event.statusCode = statusCode;
+            event.retry = measurement.retry;
+            event.bytesOut = measurement.bytesOut;
+            event.bytesIn = measurement.bytesIn;
+            event.commit();
+        }
+    }
+
+    static SparkPageEvent beginPage() {
+        if (!available) {
+            return null;
+        }
+        SparkPageEvent event = new SparkPageEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endPage(SparkPageEvent event, URL url, Client.Response response, int items) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path(url);
+            event.trackingId = response != null ? response.measurement.trackingId : null;
+            event.items = items;
+            event.commit();
+        }
+    }
+
+    static JsonDecodeEvent beginDecode() {
+        if (!available) {
+            return null;
+        }
+        JsonDecodeEvent event = new JsonDecodeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endDecode(JsonDecodeEvent event, Class<?> type) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = type.getName();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the path of a URL; the query is left out, as it may contain
+     * email addresses.
+     */
+    private static String path(URL url) {
+        return url != null ? url.getPath() : null;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        } catch (LinkageError ex) {
+            return false;
+        }
+    }
+}
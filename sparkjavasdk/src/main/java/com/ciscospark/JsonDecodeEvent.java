@@ -0,0 +1,23 @@
+package com.ciscospark;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for the decoding of a JSON object into a Spark resource.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+@Name("com.ciscospark.JsonDecode")
+@Label("Spark JSON Decode")
+@Category({"Cisco Spark", "SDK"})
+@Description("The decoding of a JSON object into a Spark resource")
+@StackTrace(false)
+final class JsonDecodeEvent extends Event {
+    @Label("Type")
+    String type;
+}
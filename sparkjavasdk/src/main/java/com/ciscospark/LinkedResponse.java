@@ -17,22 +17,28 @@ import java.util.regex.Pattern;
 public class LinkedResponse<T> {
     private final Client client;
     private Client.Response response;
+    private URL url;
+    private SparkPageEvent pageEvent;
     private final BodyCreator<T> bodyCreator;
+    private final Deadline deadline;
     private final Map<String,URL> urls = new LinkedHashMap<String, URL>();
 
     static interface BodyCreator<T> {
         T create(InputStream stream);
     }
 
-    LinkedResponse(Client client, URL url, BodyCreator<T> bodyCreator) throws IOException {
+    LinkedResponse(Client client, URL url, BodyCreator<T> bodyCreator, Deadline deadline) throws IOException {
         this.client = client;
         this.bodyCreator = bodyCreator;
+        this.deadline = deadline;
         followUrl(url);
     }
 
     private void followUrl(URL url) {
+        this.url = url;
+        this.pageEvent = FlightEvents.beginPage();
         try {
-            this.response = client.request(url, "GET", null);
+            this.response = client.request(url, "GET", null, deadline);
             int responseCode = this.response.connection.getResponseCode();
             if (!isOk(responseCode)) {
                 throw new IOException("bad response code: " + responseCode);
@@ -67,7 +73,15 @@ public class LinkedResponse<T> {
     }
 
     public T consumeBody() {
-        return bodyCreator.create(response.inputStream);
+        T body = null;
+        try {
+            body = bodyCreator.create(response.inputStream);
+            return body;
+        } finally {
+            response.complete();
+            FlightEvents.endPage(pageEvent, url, response, body instanceof Collection ? ((Collection<?>) body).size() : -1);
+            pageEvent = null;
+        }
     }
 
     public void followLink(String rel) {
@@ -0,0 +1,13 @@
+package com.ciscospark;
+
+/**
+ * The metrics SPI: a listener that is told about every request made to Spark,
+ * for example to feed an external metrics system. Listeners are registered
+ * with SparkMetrics.addListener, or discovered with java.util.ServiceLoader.
+ * They are called on the requesting thread and must not block.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public interface MetricsListener {
+    void requestCompleted(RequestMetrics request);
+}
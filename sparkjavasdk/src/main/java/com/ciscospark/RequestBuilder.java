@@ -1,6 +1,7 @@
 package com.ciscospark;
 
 import java.net.URL;
+import java.time.Duration;
 import java.util.Iterator;
 import java.util.List;
 
@@ -12,6 +13,14 @@ public interface RequestBuilder<T> {
     RequestBuilder<T> path(Object... paths);
     <NewType> RequestBuilder<NewType> path(String path, Class<NewType> clazz);
     RequestBuilder<T> url(URL url);
+
+    /**
+     * Sets the time within which the request must complete, counted from now.
+     * The deadline covers connecting, waiting for the response and reading it,
+     * including re-authentication and, for iterate() and paginate(), all
+     * pages; a request that misses it fails with a SparkException.
+     */
+    RequestBuilder<T> withDeadline(Duration timeout);
     T post(T body);
     T put(T body);
     T get();
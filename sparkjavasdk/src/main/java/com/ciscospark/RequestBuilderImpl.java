@@ -1,6 +1,7 @@
 package com.ciscospark;
 
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -10,6 +11,7 @@ import java.util.List;
  */
 class RequestBuilderImpl<T> implements RequestBuilder<T> {
     private URL url;
+    private Deadline deadline;
     final StringBuilder pathBuilder;
     final List<String[]> params;
     final Client client;
@@ -43,7 +45,9 @@ class RequestBuilderImpl<T> implements RequestBuilder<T> {
     @Override
     public <NewType> RequestBuilder<NewType> path(String path, Class<NewType> clazz) {
         pathBuilder.append(path);
-        return new RequestBuilderImpl<NewType>(clazz, client, pathBuilder, params);
+        RequestBuilderImpl<NewType> builder = new RequestBuilderImpl<NewType>(clazz, client, pathBuilder, params);
+        builder.deadline = deadline;
+        return builder;
     }
 
     @Override
@@ -52,57 +56,63 @@ class RequestBuilderImpl<T> implements RequestBuilder<T> {
         return this;
     }
 
+    @Override
+    public RequestBuilder<T> withDeadline(Duration timeout) {
+        this.deadline = Deadline.after(timeout);
+        return this;
+    }
+
     @Override
     public T post(T body) {
         if (url != null) {
-            return client.post(clazz, url, body);
+            return client.post(clazz, url, body, deadline);
         } else {
-            return client.post(clazz, pathBuilder.toString(), body);
+            return client.post(clazz, pathBuilder.toString(), body, deadline);
         }
     }
 
     @Override
     public T put(T body) {
         if (url != null) {
-            return client.put(clazz, url, body);
+            return client.put(clazz, url, body, deadline);
         } else {
-            return client.put(clazz, pathBuilder.toString(), body);
+            return client.put(clazz, pathBuilder.toString(), body, deadline);
         }
     }
 
     @Override
     public T get() {
         if (url != null) {
-            return client.get(clazz, url);
+            return client.get(clazz, url, deadline);
         } else {
-            return client.get(clazz, pathBuilder.toString(), params);
+            return client.get(clazz, pathBuilder.toString(), params, deadline);
         }
     }
 
     @Override
     public Iterator<T> iterate() {
         if (url != null) {
-            return client.list(clazz, url);
+            return client.list(clazz, url, deadline);
         } else {
-            return client.list(clazz, pathBuilder.toString(), params);
+            return client.list(clazz, pathBuilder.toString(), params, deadline);
         }
     }
 
     @Override
     public LinkedResponse<List<T>> paginate() {
         if (url != null) {
-            return client.paginate(clazz, url);
+            return client.paginate(clazz, url, deadline);
         } else {
-            return client.paginate(clazz, pathBuilder.toString(), params);
+            return client.paginate(clazz, pathBuilder.toString(), params, deadline);
         }
     }
 
     @Override
     public void delete() {
         if (url != null) {
-            client.delete(url);
+            client.delete(url, deadline);
         } else {
-            client.delete(pathBuilder.toString());
+            client.delete(pathBuilder.toString(), deadline);
         }
     }
 }
@@ -0,0 +1,97 @@
+package com.ciscospark;
+
+/**
+ * The metrics of one request made to Spark.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class RequestMetrics {
+    /**
+     * The status code of a request that failed with an I/O error.
+     */
+    public static final int IO_ERROR = -1;
+
+    private final String family;
+    private final String method;
+    private final String trackingId;
+    private final int statusCode;
+    private final boolean retry;
+    private final long bytesOut;
+    private final long bytesIn;
+    private final long latencyNanos;
+
+    RequestMetrics(String family, String method, String trackingId, int statusCode, boolean retry, long bytesOut,
+                   long bytesIn, long latencyNanos) {
+        this.family = family;
+        this.method = method;
+        this.trackingId = trackingId;
+        this.statusCode = statusCode;
+        this.retry = retry;
+        this.bytesOut = bytesOut;
+        this.bytesIn = bytesIn;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Returns the endpoint family: the first path segment after the base URL.
+     */
+    public String getFamily() {
+        return family;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the TrackingID the request was sent with.
+     */
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    /**
+     * Returns the HTTP status code, or IO_ERROR.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the status class: "2xx", "3xx", "4xx", "5xx" or "io-error".
+     */
+    public String getStatusClass() {
+        return statusCode == IO_ERROR ? "io-error" : (statusCode / 100) + "xx";
+    }
+
+    /**
+     * Returns true if the request was sent again after re-authentication.
+     */
+    public boolean isRetry() {
+        return retry;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * Returns the number of response body bytes read.
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Returns the time from sending the request to reading the response body.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + family + " " + getStatusClass() + (retry ? " (retry)" : "") + " out " + bytesOut
+                + " in " + bytesIn + " " + latencyNanos / 1000 + "us";
+    }
+}
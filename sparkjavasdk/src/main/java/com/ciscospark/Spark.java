@@ -1,12 +1,15 @@
 package com.ciscospark;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.logging.Logger;
 
 /**
  * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
  */
 public abstract class Spark {
+    static final URI DEFAULT_BASE_URL = URI.create("https://api.ciscospark.com/v1");
+
     public abstract RequestBuilder<Room> rooms();
     public abstract RequestBuilder<Membership> memberships();
     public abstract RequestBuilder<Message> messages();
@@ -27,7 +30,10 @@ public abstract class Spark {
         private String clientId;
         private String clientSecret;
         private Logger logger;
-        private URI baseUrl = URI.create("https://api.ciscospark.com/v1");
+        private URI baseUrl = DEFAULT_BASE_URL;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration readTimeout = Duration.ofSeconds(60);
+        private String identity;
 
         public Builder baseUrl(URI uri) {
             this.baseUrl = uri;
@@ -64,13 +70,42 @@ public abstract class Spark {
             return this;
         }
 
+        /**
+         * Sets the timeout for connecting to Spark; zero for none.
+         */
+        public Builder connectTimeout(Duration timeout) {
+            this.connectTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for each read from Spark, including waiting for the
+         * response headers; zero for none.
+         */
+        public Builder readTimeout(Duration timeout) {
+            this.readTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the name of the identity the client acts for. Clients with the
+         * same identity share their concurrency limits, and the limiter's
+         * metrics are reported under the name; by default, under a
+         * fingerprint of the access token.
+         */
+        public Builder identity(String identity) {
+            this.identity = identity;
+            return this;
+        }
+
         public Builder logger(Logger logger) {
             this.logger = logger;
             return this;
         }
 
         public Spark build() {
-            return new SparkImpl(new Client(baseUrl, authCode, redirectUri, accessToken, refreshToken, clientId, clientSecret, logger));
+            return new SparkImpl(new Client(baseUrl, authCode, redirectUri, accessToken, refreshToken, clientId, clientSecret, logger,
+                    (int) connectTimeout.toMillis(), (int) readTimeout.toMillis(), identity));
         }
     }
 
@@ -4,18 +4,37 @@ package com.ciscospark;
  * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
  */
 public class SparkException extends RuntimeException {
+    private final int responseCode;
+
     public SparkException() {
+        this.responseCode = 0;
     }
 
     public SparkException(String message) {
         super(message);
+        this.responseCode = 0;
+    }
+
+    public SparkException(String message, int responseCode) {
+        super(message);
+        this.responseCode = responseCode;
     }
 
     public SparkException(String message, Throwable cause) {
         super(message, cause);
+        this.responseCode = 0;
     }
 
     public SparkException(Throwable cause) {
         super(cause);
+        this.responseCode = 0;
+    }
+
+    /**
+     * Returns the HTTP status code of the error response, or 0 if the request
+     * did not get an error response.
+     */
+    public int getResponseCode() {
+        return responseCode;
     }
 }
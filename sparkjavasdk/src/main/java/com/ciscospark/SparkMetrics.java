@@ -0,0 +1,103 @@
+package com.ciscospark;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metrics of all requests made to Spark, by endpoint family and method. Each
+ * endpoint's metrics are registered as an MXBean when its first request is
+ * made, and every request is reported to the registered metrics listeners.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class SparkMetrics {
+    private static final Logger logger = Logger.getLogger(SparkMetrics.class.getName());
+    private static final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+    private static final List<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+
+    static {
+        try {
+            for (MetricsListener listener : ServiceLoader.load(MetricsListener.class)) {
+                listeners.add(listener);
+            }
+        } catch (Throwable ex) {
+            logger.log(Level.WARNING, "Failed to load metrics listeners", ex);
+        }
+    }
+
+    private SparkMetrics() {
+    }
+
+    public static void addListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the metrics of all endpoints that have seen requests.
+     */
+    public static Collection<EndpointMetrics> getEndpointMetrics() {
+        return new ArrayList<EndpointMetrics>(endpoints.values());
+    }
+
+    /**
+     * Returns the metrics of an endpoint family and method, null if it has not
+     * seen requests.
+     */
+    public static EndpointMetrics getEndpointMetrics(String family, String method) {
+        return endpoints.get(family + " " + method);
+    }
+
+    static void record(RequestMetrics request) {
+        String key = request.getFamily() + " " + request.getMethod();
+        EndpointMetrics endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            EndpointMetrics newEndpoint = new EndpointMetrics(request.getFamily(), request.getMethod());
+            endpoint = endpoints.putIfAbsent(key, newEndpoint);
+            if (endpoint == null) {
+                endpoint = newEndpoint;
+                register(endpoint);
+            }
+        }
+        endpoint.record(request);
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.requestCompleted(request);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Metrics listener " + listener + " failed", ex);
+            }
+        }
+    }
+
+    private static void register(EndpointMetrics endpoint) {
+        try {
+            ObjectName name = new ObjectName("com.ciscospark:type=Endpoint,family="
+                    + ObjectName.quote(endpoint.getFamily()) + ",method=" + endpoint.getMethod());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.registerMBean(endpoint, name);
+            } catch (InstanceAlreadyExistsException ex) {
+                // Left behind by an earlier copy of the SDK, e.g. before a bundle refresh
+                server.unregisterMBean(name);
+                server.registerMBean(endpoint, name);
+            }
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Failed to register metrics of endpoint " + endpoint.getFamily(), ex);
+        }
+    }
+}
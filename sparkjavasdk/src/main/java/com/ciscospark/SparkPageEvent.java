@@ -0,0 +1,30 @@
+package com.ciscospark;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for the fetch of one page of a list, from the request until the
+ * last item of the page has been decoded.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+@Name("com.ciscospark.PageFetch")
+@Label("Spark Page Fetch")
+@Category({"Cisco Spark", "SDK"})
+@Description("The fetch and decoding of one page of a list")
+@StackTrace(false)
+final class SparkPageEvent extends Event {
+    @Label("Path")
+    String path;
+
+    @Label("Tracking ID")
+    String trackingId;
+
+    @Label("Items")
+    int items;
+}
@@ -0,0 +1,50 @@
+package com.ciscospark;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for an HTTP request to Spark, from the time it is admitted by
+ * the concurrency limiter until its response body has been read.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+@Name("com.ciscospark.Request")
+@Label("Spark Request")
+@Category({"Cisco Spark", "SDK"})
+@Description("An HTTP request to Spark, including the reading of its response body")
+@StackTrace(false)
+final class SparkRequestEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint Family")
+    String family;
+
+    @Label("Path")
+    String path;
+
+    @Label("Tracking ID")
+    String trackingId;
+
+    @Label("Status Code")
+    @Description("The HTTP status code, -1 on I/O error")
+    int statusCode;
+
+    @Label("Retry")
+    @Description("Whether the request was retried after re-authentication")
+    boolean retry;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesIn;
+}
@@ -0,0 +1,14 @@
+package com.ciscospark;
+
+/**
+ * The tracing SPI: a listener that is told about every completed tracking
+ * context, for example to export its spans to a tracing system. Listeners are
+ * registered with TrackingContext.addListener, or discovered with
+ * java.util.ServiceLoader. They are called on the thread that completed the
+ * context and must not block.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public interface TraceListener {
+    void traceCompleted(TrackingContext trace);
+}
@@ -0,0 +1,67 @@
+package com.ciscospark;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed phase of a tracking context: a processing step of the application
+ * or a request made to Spark. Spans map directly to the spans of a tracing
+ * system: the trace ID is the context's tracking ID, and all spans are
+ * children of the context's root span.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class TraceSpan {
+    private final String name;
+    private final String detail;
+    private final long startEpochMicros;
+    private final long offsetNanos;
+    private final long durationNanos;
+
+    TraceSpan(String name, String detail, long startEpochMicros, long offsetNanos, long durationNanos) {
+        this.name = name;
+        this.detail = detail;
+        this.startEpochMicros = startEpochMicros;
+        this.offsetNanos = offsetNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Returns the phase name, e.g. "enrich" or "spark GET rooms".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns details of the phase, e.g. the TrackingID and status of a
+     * request; may be null.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * Returns the start time, in microseconds since the epoch.
+     */
+    public long getStartEpochMicros() {
+        return startEpochMicros;
+    }
+
+    /**
+     * Returns the start time, relative to the start of the tracking context.
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + TimeUnit.NANOSECONDS.toMicros(offsetNanos) / 1000.0 + "ms="
+                + TimeUnit.NANOSECONDS.toMicros(durationNanos) / 1000.0 + "ms"
+                + (detail != null ? " (" + detail + ")" : "");
+    }
+}
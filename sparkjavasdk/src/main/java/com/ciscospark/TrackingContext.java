@@ -0,0 +1,272 @@
+package com.ciscospark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A correlation context for the requests made to Spark on behalf of one unit
+ * of work, typically the handling of a webhook event. While a context is
+ * attached to the current thread, every request carries the context's
+ * tracking ID with a sequence number suffix (trackingId_1, trackingId_2, ...)
+ * in its TrackingID header instead of a random one, and is recorded as a span
+ * of the context. The application adds spans for its own phases.
+ * <p>
+ * A context is completed when its creator and every task wrapped with
+ * {@link #wrap(Runnable)} have released it; the trace listeners are then
+ * told about it.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public final class TrackingContext {
+    private static final Logger logger = Logger.getLogger(TrackingContext.class.getName());
+    private static final int MAX_SPANS = 256;
+    private static final ThreadLocal<TrackingContext> current = new ThreadLocal<TrackingContext>();
+    private static final List<TraceListener> listeners = new CopyOnWriteArrayList<TraceListener>();
+
+    static {
+        try {
+            for (TraceListener listener : ServiceLoader.load(TraceListener.class)) {
+                listeners.add(listener);
+            }
+        } catch (Throwable ex) {
+            logger.log(Level.WARNING, "Failed to load trace listeners", ex);
+        }
+    }
+
+    private final String trackingId;
+    private final String name;
+    private final long startNanos = System.nanoTime();
+    private final long startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final List<TraceSpan> spans = new ArrayList<TraceSpan>();
+    private volatile long durationNanos = -1;
+
+    private TrackingContext(String trackingId, String name) {
+        this.trackingId = trackingId;
+        this.name = name;
+    }
+
+    /**
+     * A context attached to a thread; closing the scope restores the context
+     * that was attached before.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Creates a context. The context is not attached to any thread.
+     *
+     * @param trackingId the tracking ID, e.g. the TrackingID of the webhook
+     *                   callout being handled; a random ID if null
+     * @param name       the name of the unit of work (the root span)
+     */
+    public static TrackingContext start(String trackingId, String name) {
+        return new TrackingContext(trackingId != null && !trackingId.isEmpty()
+                ? trackingId : UUID.randomUUID().toString(), name);
+    }
+
+    /**
+     * Returns the context attached to the current thread, null if none.
+     */
+    public static TrackingContext current() {
+        return current.get();
+    }
+
+    public static void addListener(TraceListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(TraceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Wraps a task so that it runs with the current thread's context attached,
+     * and keeps the context open until the task has run.
+     *
+     * @return the wrapped task; the task itself if no context is attached
+     */
+    public static Runnable wrap(final Runnable task) {
+        final TrackingContext context = current.get();
+        if (context == null) {
+            return task;
+        }
+        context.retain();
+        return new Runnable() {
+            @Override
+            public void run() {
+                Scope scope = context.attach();
+                try {
+                    task.run();
+                } finally {
+                    scope.close();
+                    context.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so that it runs with the current thread's context attached,
+     * and keeps the context open until the task has run.
+     *
+     * @return the wrapped task; the task itself if no context is attached
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final TrackingContext context = current.get();
+        if (context == null) {
+            return task;
+        }
+        context.retain();
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Scope scope = context.attach();
+                try {
+                    return task.call();
+                } finally {
+                    scope.close();
+                    context.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Attaches the context to the current thread.
+     *
+     * @return the scope, to be closed when the work on this thread is done
+     */
+    public Scope attach() {
+        final TrackingContext previous = current.get();
+        current.set(this);
+        return new Scope() {
+            @Override
+            public void close() {
+                if (previous != null) {
+                    current.set(previous);
+                } else {
+                    current.remove();
+                }
+            }
+        };
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartEpochMicros() {
+        return startEpochMicros;
+    }
+
+    /**
+     * Returns the time from the creation of the context until it was
+     * completed, -1 if it has not been completed yet.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the spans recorded so far, in the order they ended.
+     */
+    public List<TraceSpan> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<TraceSpan>(spans);
+        }
+    }
+
+    /**
+     * Records a phase of the work.
+     *
+     * @param name       the phase name
+     * @param detail     details of the phase, may be null
+     * @param startNanos the start of the phase, from System.nanoTime()
+     * @param endNanos   the end of the phase, from System.nanoTime()
+     */
+    public void recordSpan(String name, String detail, long startNanos, long endNanos) {
+        long offset = startNanos - this.startNanos;
+        TraceSpan span = new TraceSpan(name, detail, startEpochMicros + TimeUnit.NANOSECONDS.toMicros(offset),
+                offset, endNanos - startNanos);
+        synchronized (spans) {
+            // A runaway handler must not make the context grow without bounds
+            if (spans.size() < MAX_SPANS) {
+                spans.add(span);
+            }
+        }
+    }
+
+    /**
+     * Records a phase of the work on the context attached to the current
+     * thread, if any.
+     *
+     * @param name       the phase name
+     * @param detail     details of the phase, may be null
+     * @param startNanos the start of the phase, from System.nanoTime(); the
+     *                   phase ends now
+     */
+    public static void recordCurrent(String name, String detail, long startNanos) {
+        TrackingContext context = current.get();
+        if (context != null) {
+            context.recordSpan(name, detail, startNanos, System.nanoTime());
+        }
+    }
+
+    /**
+     * Keeps the context open until a matching release.
+     */
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Releases the context; the last release completes it.
+     */
+    public void release() {
+        if (references.decrementAndGet() != 0) {
+            return;
+        }
+        durationNanos = System.nanoTime() - startNanos;
+        for (TraceListener listener : listeners) {
+            try {
+                listener.traceCompleted(this);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Trace listener " + listener + " failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the TrackingID for the next request made in this context.
+     */
+    String nextRequestTrackingId() {
+        return trackingId + "_" + requests.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append(' ').append(trackingId);
+        long duration = durationNanos;
+        if (duration >= 0) {
+            builder.append(' ').append(TimeUnit.NANOSECONDS.toMicros(duration) / 1000.0).append("ms");
+        }
+        builder.append(": ").append(getSpans());
+        return builder.toString();
+    }
+}
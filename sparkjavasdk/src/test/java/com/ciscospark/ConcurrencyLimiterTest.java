@@ -0,0 +1,218 @@
+package com.ciscospark;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the adaptive concurrency limiter: the multiplicative cut on throttling,
+ * at most once per round trip, the recovery afterwards, the latency gradient,
+ * priority admission and timed waits. Each test uses its own identity, so that
+ * the tests do not share limits.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public class ConcurrencyLimiterTest {
+    private static final URI BASE_URI = URI.create("https://api.ciscospark.com/v1");
+    private static final String FAMILY = "rooms";
+    private static final AtomicInteger identities = new AtomicInteger();
+
+    @Test
+    public void testFamilyIsFirstPathSegment() throws Exception {
+        assertEquals(ConcurrencyLimiter.getFamily(BASE_URI, new URL("https://api.ciscospark.com/v1/rooms/abc")),
+                "rooms");
+        assertEquals(ConcurrencyLimiter.getFamily(BASE_URI, new URL("https://api.ciscospark.com/v1/messages?x=1")),
+                "messages");
+        assertEquals(ConcurrencyLimiter.getFamily(URI.create("http://localhost:8080/v1"),
+                new URL("http://localhost:8080/v1/rooms")), "localhost:8080/rooms");
+    }
+
+    @Test
+    public void testTokenIdentityHidesToken() {
+        String identity = ConcurrencyLimiter.getTokenIdentity("Bearer secret-token");
+        assertEquals(identity, ConcurrencyLimiter.getTokenIdentity("secret-token"));
+        assertTrue(identity.matches("token-[0-9a-f]{8}"), identity);
+        assertEquals(ConcurrencyLimiter.getTokenIdentity(null), "anonymous");
+    }
+
+    @Test
+    public void testShrinkOnThrottlingOncePerRoundTrip() throws Exception {
+        String identity = newIdentity();
+        // Learn a round trip time of about 20 ms
+        completeRound(identity, 10, 20, 200);
+        int before = ConcurrencyLimiter.getLimit(identity, FAMILY);
+
+        ConcurrencyLimiter.Permit first = acquire(identity);
+        ConcurrencyLimiter.Permit second = acquire(identity);
+        first.release(429);
+        int afterFirst = ConcurrencyLimiter.getLimit(identity, FAMILY);
+        assertTrue(afterFirst <= (before + 1) / 2, "limit " + before + " not halved: " + afterFirst);
+
+        // Throttled responses within the same round trip cut the limit only once
+        second.release(429);
+        assertEquals(ConcurrencyLimiter.getLimit(identity, FAMILY), afterFirst);
+        assertEquals(ConcurrencyLimiter.getDropCount(identity, FAMILY), 2);
+
+        // A later round trip cuts it again
+        Thread.sleep(100);
+        acquire(identity).release(503);
+        assertTrue(ConcurrencyLimiter.getLimit(identity, FAMILY) <= (afterFirst + 1) / 2);
+        assertEquals(ConcurrencyLimiter.getInFlight(identity, FAMILY), 0);
+    }
+
+    @Test
+    public void testRecoveryAfterThrottling() throws Exception {
+        String identity = newIdentity();
+        completeRound(identity, 10, 20, 200);
+        for (int i = 0; i < 3; i++) {
+            acquire(identity).release(429);
+            Thread.sleep(60);
+        }
+        int throttled = ConcurrencyLimiter.getLimit(identity, FAMILY);
+        assertTrue(throttled < 5, "limit not cut: " + throttled);
+
+        // Fast responses with the limit in use let the limit grow again
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (ConcurrencyLimiter.getLimit(identity, FAMILY) < 10 && System.nanoTime() < end) {
+            completeRound(identity, ConcurrencyLimiter.getLimit(identity, FAMILY), 1, 200);
+        }
+        assertTrue(ConcurrencyLimiter.getLimit(identity, FAMILY) >= 10,
+                "limit did not recover: " + ConcurrencyLimiter.getLimit(identity, FAMILY));
+    }
+
+    @Test
+    public void testLimitFollowsLatencyGradient() throws Exception {
+        String identity = newIdentity();
+        // Learn the minimum round trip time, then let the latency rise well above it
+        completeRound(identity, 10, 1, 200);
+        for (int i = 0; i < 6; i++) {
+            completeRound(identity, ConcurrencyLimiter.getLimit(identity, FAMILY), 30, 200);
+        }
+        int limit = ConcurrencyLimiter.getLimit(identity, FAMILY);
+        assertTrue(limit < 10, "limit did not shrink with rising latency: " + limit);
+        assertEquals(ConcurrencyLimiter.getDropCount(identity, FAMILY), 0);
+    }
+
+    @Test
+    public void testLimitDoesNotGrowWhenUnused() throws Exception {
+        String identity = newIdentity();
+        for (int i = 0; i < 5; i++) {
+            completeRound(identity, 2, 1, 200);
+        }
+        assertEquals(ConcurrencyLimiter.getLimit(identity, FAMILY), 10);
+    }
+
+    @Test
+    public void testTimedWaitExpires() throws Exception {
+        String identity = newIdentity();
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<ConcurrencyLimiter.Permit>();
+        for (int i = 0; i < ConcurrencyLimiter.getLimit(identity, FAMILY); i++) {
+            permits.add(acquire(identity));
+        }
+        long start = System.nanoTime();
+        try {
+            ConcurrencyLimiter.acquire(identity, BASE_URI, new URL(BASE_URI + "/rooms"),
+                    Deadline.after(Duration.ofMillis(50)));
+            fail("acquired a permit over the limit");
+        } catch (SparkException ex) {
+            assertTrue(ex.getMessage().contains("deadline exceeded"), ex.getMessage());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(ConcurrencyLimiter.getQueued(identity, FAMILY), 0);
+
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            permit.release(0);
+        }
+        assertEquals(ConcurrencyLimiter.getInFlight(identity, FAMILY), 0);
+    }
+
+    @Test
+    public void testWaitersAdmittedByPriority() throws Exception {
+        final String identity = newIdentity();
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<ConcurrencyLimiter.Permit>();
+        for (int i = 0; i < ConcurrencyLimiter.getLimit(identity, FAMILY); i++) {
+            permits.add(acquire(identity));
+        }
+
+        final List<String> admitted = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(5);
+        int[] priorities = { 1, 8, 4, 8, 1 };
+        for (int i = 0; i < priorities.length; i++) {
+            final int waiterPriority = priorities[i];
+            final String name = waiterPriority + "-" + i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ConcurrencyLimiter.PriorityScope scope = ConcurrencyLimiter.prioritize(waiterPriority);
+                    try {
+                        ConcurrencyLimiter.Permit permit = acquire(identity);
+                        admitted.add(name);
+                        permit.release(0);
+                    } catch (Exception ex) {
+                        admitted.add(name + " " + ex);
+                    } finally {
+                        scope.close();
+                        done.countDown();
+                    }
+                }
+            }).start();
+            // Queue the waiters one after the other, so that their arrival order is known
+            awaitQueued(identity, i + 1);
+        }
+
+        // Free one permit: each admitted waiter frees its permit for the next one
+        permits.get(0).release(0);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(admitted, Arrays.asList("8-1", "8-3", "4-2", "1-0", "1-4"));
+        for (ConcurrencyLimiter.Permit permit : permits.subList(1, permits.size())) {
+            permit.release(0);
+        }
+        assertEquals(ConcurrencyLimiter.getInFlight(identity, FAMILY), 0);
+    }
+
+    private static String newIdentity() {
+        return "test-" + identities.incrementAndGet();
+    }
+
+    private static ConcurrencyLimiter.Permit acquire(String identity) throws Exception {
+        return ConcurrencyLimiter.acquire(identity, BASE_URI, new URL(BASE_URI + "/rooms/abc"), null);
+    }
+
+    /**
+     * Completes a round of concurrent requests that take the specified time.
+     */
+    private static void completeRound(String identity, int concurrency, long millis, int responseCode)
+            throws Exception {
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<ConcurrencyLimiter.Permit>();
+        for (int i = 0; i < concurrency; i++) {
+            permits.add(acquire(identity));
+        }
+        Thread.sleep(millis);
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            permit.release(responseCode);
+        }
+    }
+
+    private static void awaitQueued(String identity, int queued) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ConcurrencyLimiter.getQueued(identity, FAMILY) != queued) {
+            if (System.nanoTime() > end) {
+                fail("waiters not queued: " + ConcurrencyLimiter.getQueued(identity, FAMILY));
+            }
+            Thread.sleep(1);
+        }
+    }
+}
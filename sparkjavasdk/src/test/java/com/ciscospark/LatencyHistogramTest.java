@@ -0,0 +1,102 @@
+package com.ciscospark;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the percentiles of the latency histogram against the exact
+ * percentiles of the recorded values.
+ * <p>
+ * Copyright (c) 2015 Cisco Systems, Inc. See LICENSE file.
+ */
+public class LatencyHistogramTest {
+    private static final double MAX_RELATIVE_ERROR = 0.016;
+    private static final double[] PERCENTILES = { 1, 10, 50, 90, 99, 99.9, 99.99, 100 };
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getPercentileMicros(99), 0);
+        assertEquals(histogram.getMeanMicros(), 0.0, 0.0);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(histogram.getPercentileMicros(50), 50);
+        assertEquals(histogram.getPercentileMicros(99), 99);
+        assertEquals(histogram.getPercentileMicros(100), 100);
+        assertEquals(histogram.getMaxMicros(), 100);
+        assertEquals(histogram.getMeanMicros(), 50.5, 1e-9);
+    }
+
+    @Test
+    public void testUniformPercentileError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[1000000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+            histogram.record(values[i]);
+        }
+        assertPercentiles(histogram, values);
+    }
+
+    @Test
+    public void testLogNormalPercentileError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[200000];
+        for (int i = 0; i < values.length; i++) {
+            // Median about 20 ms, with a long tail
+            values[i] = Math.max(1, Math.round(Math.exp(Math.log(20000) + random.nextGaussian())));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertPercentiles(histogram, values);
+        assertEquals(histogram.getMaxMicros(), values[values.length - 1]);
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getPercentileMicros(1), 0);
+        assertTrue(histogram.getPercentileMicros(100) > 0);
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMaxMicros(), 0);
+        assertEquals(histogram.getPercentileMicros(50), 0);
+    }
+
+    /**
+     * Checks the histogram's percentiles against those of the sorted values.
+     */
+    private static void assertPercentiles(LatencyHistogram histogram, long[] sorted) {
+        assertEquals(histogram.getCount(), sorted.length);
+        for (double percentile : PERCENTILES) {
+            int rank = (int) Math.max(1, Math.ceil(percentile / 100 * sorted.length));
+            long exact = sorted[rank - 1];
+            long estimate = histogram.getPercentileMicros(percentile);
+            double error = Math.abs(estimate - exact) / (double) exact;
+            assertTrue(error <= MAX_RELATIVE_ERROR, "p" + percentile + ": exact " + exact + ", estimate " + estimate
+                    + ", error " + error);
+        }
+    }
+}